@@ -31,6 +31,8 @@ package org.n52.sos.encode;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashSet;
@@ -41,6 +43,8 @@ import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import javax.inject.Inject;
 
@@ -144,6 +148,8 @@ import ucar.nc2.jni.netcdf.Nc4Iosp;
 public abstract class AbstractNetcdfEncoder
         implements ObservationEncoder<BinaryAttachmentResponse, Object>, NetCDFUtil {
 
+    private static final String TEMP_DIR_PREFIX = "sos-netcdf";
+
     private final Set<SupportedType> SUPPORTED_TYPES =
             ImmutableSet.<SupportedType>builder().add(OmConstants.OBS_TYPE_TRUTH_OBSERVATION_TYPE).build();
 
@@ -330,6 +336,98 @@ public abstract class AbstractNetcdfEncoder
                 getNetcdfHelper().getChunkSizeTime()));
     }
 
+    /**
+     * Encode the sensor dataset to netCDF and return the content. NetCDF-Java
+     * writes to files only, so the content is written to a temporary file
+     * which is deleted before this method returns.
+     *
+     * @param filename
+     *            the netCDF file name
+     * @param sensorDataset
+     *            the sensor dataset
+     * @param version
+     *            the netCDF version
+     * @return the netCDF content
+     * @throws EncodingException
+     *             If an error occurs during the encoding
+     * @throws IOException
+     *             If an error occurs while writing the temporary file
+     */
+    protected byte[] encodeSensorDataToBytes(String filename, AbstractSensorDataset sensorDataset, Version version)
+            throws EncodingException, IOException {
+        Path tempDir = Files.createTempDirectory(TEMP_DIR_PREFIX);
+        Path netcdfFile = tempDir.resolve(filename);
+        try {
+            encodeSensorDataToNetcdf(netcdfFile.toFile(), sensorDataset, version);
+            return Files.readAllBytes(netcdfFile);
+        } finally {
+            deleteTempFiles(tempDir, netcdfFile);
+        }
+    }
+
+    /**
+     * Encode the sensor dataset to netCDF and write it as entry to the zip
+     * stream. The temporary netCDF file is copied to the stream without
+     * reading it into memory and is deleted before this method returns, so
+     * that only one temporary file per request exists at a time.
+     *
+     * @param zip
+     *            the zip stream
+     * @param sensorDataset
+     *            the sensor dataset
+     * @param version
+     *            the netCDF version
+     * @param entryNames
+     *            the names of the entries already written to the zip stream,
+     *            the name of the new entry is added
+     * @throws EncodingException
+     *             If an error occurs during the encoding
+     * @throws IOException
+     *             If an error occurs while writing the temporary file or the
+     *             zip entry
+     */
+    protected void encodeSensorDataToZip(ZipOutputStream zip, AbstractSensorDataset sensorDataset, Version version,
+            Set<String> entryNames) throws EncodingException, IOException {
+        String filename = getFilename(sensorDataset);
+        Path tempDir = Files.createTempDirectory(TEMP_DIR_PREFIX);
+        Path netcdfFile = tempDir.resolve(filename);
+        try {
+            encodeSensorDataToNetcdf(netcdfFile.toFile(), sensorDataset, version);
+            zip.putNextEntry(new ZipEntry(getUniqueEntryName(filename, entryNames)));
+            Files.copy(netcdfFile, zip);
+            zip.closeEntry();
+        } finally {
+            deleteTempFiles(tempDir, netcdfFile);
+        }
+    }
+
+    /**
+     * Get a zip entry name which is not contained in the entry names. A
+     * counter is appended to the file name, before the extension, if the
+     * name is already used.
+     *
+     * @param filename
+     *            the file name
+     * @param entryNames
+     *            the names of the entries already written to the zip stream
+     * @return the unique entry name
+     */
+    private String getUniqueEntryName(String filename, Set<String> entryNames) {
+        String entryName = filename;
+        int extension = filename.lastIndexOf('.');
+        String name = extension > 0 ? filename.substring(0, extension) : filename;
+        String suffix = extension > 0 ? filename.substring(extension) : "";
+        for (int i = 1; !entryNames.add(entryName); i++) {
+            entryName = name + "_" + i + suffix;
+        }
+        return entryName;
+    }
+
+    private void deleteTempFiles(Path tempDir, Path netcdfFile) throws IOException {
+        Files.deleteIfExists(netcdfFile);
+        Files.deleteIfExists(tempDir);
+    }
+
     protected void encodeSensorDataToNetcdf(File netcdfFile, AbstractSensorDataset sensorDataset, Version version)
             throws EncodingException, IOException {
         String sensor = sensorDataset.getSensorIdentifier();
@@ -28,10 +28,14 @@
  */
 package org.n52.sos.converter;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 
@@ -79,7 +83,6 @@ import org.n52.shetland.ogc.swe.simpleType.SweBoolean;
 import org.n52.shetland.ogc.swe.simpleType.SweQuantity;
 import org.n52.shetland.ogc.swe.simpleType.SweText;
 import org.n52.shetland.ogc.swe.simpleType.SweTime;
-import org.n52.shetland.util.CollectionHelper;
 import org.n52.shetland.util.JavaHelper;
 import org.n52.svalbard.decode.Decoder;
 import org.n52.svalbard.decode.DecoderKey;
@@ -90,7 +93,6 @@ import org.n52.svalbard.decode.exception.NoDecoderForKeyException;
 import org.w3c.dom.Node;
 
 import com.google.common.base.Joiner;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 public class EprtrConverter implements RequestResponseModifier {
@@ -190,41 +192,56 @@ public class EprtrConverter implements RequestResponseModifier {
     }
 
     private OwsServiceResponse mergeObservations(GetObservationResponse response) throws OwsExceptionReport {
-        response.setObservationCollection(
-                ObservationStream.of(mergeObservations(mergeStreamingData(response.getObservationCollection()))));
-        checkObservationFeatures(response.getObservationCollection());
+        List<OmObservation> mergedObservations = mergeObservations(response.getObservationCollection());
+        for (OmObservation observation : mergedObservations) {
+            checkFeature(observation.getObservationConstellation().getFeatureOfInterest());
+        }
+        response.setObservationCollection(ObservationStream.of(mergedObservations));
         return response;
     }
 
-    private List<OmObservation> mergeObservations(List<OmObservation> observations) throws OwsExceptionReport {
-        if (CollectionHelper.isNotEmpty(observations)) {
-            final List<OmObservation> mergedObservations = new LinkedList<OmObservation>();
-            int obsIdCounter = 1;
-            for (final OmObservation sosObservation : observations) {
-                if (checkForProcedure(sosObservation)) {
-                    if (mergedObservations.isEmpty()) {
-                        if (!sosObservation.isSetGmlID()) {
-                            sosObservation.setObservationID(Integer.toString(obsIdCounter++));
-                        }
-                        mergedObservations.add(convertObservation(sosObservation));
-                    } else {
-                        boolean combined = false;
-                        for (final OmObservation combinedSosObs : mergedObservations) {
-                            if (checkForMerge(combinedSosObs, sosObservation, INDICATOR)) {
-                                mergeValues(combinedSosObs, convertObservation(sosObservation));
-                                combined = true;
-                                break;
-                            }
-                        }
-                        if (!combined) {
-                            mergedObservations.add(convertObservation(sosObservation));
-                        }
-                    }
+    /**
+     * Merge the observations in a single pass. The merged observations are
+     * indexed by their {@link MergeKey}, so each observation is merged without
+     * comparing it to all previously merged observations. Streaming values are
+     * merged and consumed one after another.
+     *
+     * @param observationStream
+     *            the observations to merge
+     * @return the merged observations in the order of their first occurrence
+     * @throws OwsExceptionReport
+     *             If an error occurs
+     */
+    private List<OmObservation> mergeObservations(ObservationStream observationStream) throws OwsExceptionReport {
+        Map<MergeKey, OmObservation> mergedObservations = new LinkedHashMap<>();
+        while (observationStream.hasNext()) {
+            OmObservation observation = observationStream.next();
+            if (observation.getValue() instanceof AbstractStreaming) {
+                ObservationStream valueStream = ((AbstractStreaming) observation.getValue()).merge(INDICATOR);
+                while (valueStream.hasNext()) {
+                    mergeObservation(mergedObservations, valueStream.next());
+                }
+            } else {
+                mergeObservation(mergedObservations, observation);
+            }
+        }
+        return new ArrayList<>(mergedObservations.values());
+    }
+
+    private void mergeObservation(Map<MergeKey, OmObservation> mergedObservations, OmObservation sosObservation)
+            throws OwsExceptionReport {
+        if (checkForProcedure(sosObservation)) {
+            MergeKey key = new MergeKey(sosObservation, INDICATOR);
+            OmObservation combinedSosObs = mergedObservations.get(key);
+            if (combinedSosObs != null) {
+                mergeValues(combinedSosObs, convertObservation(sosObservation));
+            } else {
+                if (mergedObservations.isEmpty() && !sosObservation.isSetGmlID()) {
+                    sosObservation.setObservationID("1");
                 }
+                mergedObservations.put(key, convertObservation(sosObservation));
             }
-            return mergedObservations;
         }
-        return Lists.newArrayList(observations);
     }
 
     private OwsServiceResponse checkGetObservationFeatures(GetObservationResponse response)
@@ -303,22 +320,6 @@ public class EprtrConverter implements RequestResponseModifier {
         return false;
     }
 
-    private List<OmObservation> mergeStreamingData(ObservationStream observationStream) throws OwsExceptionReport {
-        List<OmObservation> processed = new LinkedList<>();
-        while (observationStream.hasNext()) {
-            OmObservation observation = observationStream.next();
-            if (observation.getValue() instanceof AbstractStreaming) {
-                ObservationStream valueStream = ((AbstractStreaming) observation.getValue()).merge(INDICATOR);
-                while (valueStream.hasNext()) {
-                    processed.add(valueStream.next());
-                }
-            } else {
-                processed.add(observation);
-            }
-        }
-        return processed;
-    }
-
     private boolean checkForProcedure(OmObservation sosObservation) {
         return POLLUTANT_RELEASE.equals(sosObservation.getObservationConstellation().getProcedureIdentifier())
                 || POLLUTANT_TRANSFER.equals(sosObservation.getObservationConstellation().getProcedureIdentifier())
@@ -657,4 +658,47 @@ public class EprtrConverter implements RequestResponseModifier {
 
         return new XmlNamespaceDecoderKey(namespaceURI, doc.getClass());
     }
+
+    /**
+     * Key of the observations that are merged, equivalent to
+     * {@link #checkForMerge(OmObservation, OmObservation, ObservationMergeIndicator)}.
+     */
+    private static final class MergeKey {
+
+        private final Object additionalMergeIndicator;
+
+        private final Object procedure;
+
+        private final Object featureOfInterest;
+
+        MergeKey(OmObservation observation, ObservationMergeIndicator observationMergeIndicator) {
+            this.additionalMergeIndicator =
+                    observation.isSetAdditionalMergeIndicator() ? observation.getAdditionalMergeIndicator() : null;
+            this.procedure = observationMergeIndicator.isProcedure()
+                    ? observation.getObservationConstellation().getProcedure()
+                    : null;
+            this.featureOfInterest = observationMergeIndicator.isFeatureOfInterest()
+                    ? observation.getObservationConstellation().getFeatureOfInterest()
+                    : null;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(additionalMergeIndicator, procedure, featureOfInterest);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof MergeKey)) {
+                return false;
+            }
+            MergeKey that = (MergeKey) obj;
+            return Objects.equals(additionalMergeIndicator, that.additionalMergeIndicator)
+                    && Objects.equals(procedure, that.procedure)
+                    && Objects.equals(featureOfInterest, that.featureOfInterest);
+        }
+    }
 }
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.converter;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+
+import org.n52.janmayen.AbstractThrowingIterator;
+import org.n52.shetland.ogc.om.ObservationMergeIndicator;
+import org.n52.shetland.ogc.om.ObservationStream;
+import org.n52.shetland.ogc.om.OmObservation;
+import org.n52.shetland.ogc.om.OmObservationConstellation;
+import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
+import org.n52.shetland.ogc.sos.response.AbstractStreaming;
+
+/**
+ * {@link ObservationStream} that merges the observations of another stream
+ * while they are consumed.
+ *
+ * If the stream contains streaming values, the datasource returns the
+ * observations grouped by observation constellation. Then only consecutive
+ * observations with the same constellation are merged, so only the current
+ * group is kept in memory, and the streaming values are merged when the
+ * observation is consumed. Otherwise the observations are not necessarily
+ * grouped, e.g. all first values are followed by all latest values, so all
+ * observations are read and merged by their constellation, like
+ * {@link ObservationStream#merge(ObservationMergeIndicator)} does.
+ *
+ * @since 5.3.2
+ */
+public class MergingObservationStream extends AbstractThrowingIterator<OmObservation, OwsExceptionReport>
+        implements ObservationStream {
+
+    private final ObservationStream observations;
+
+    private final ObservationMergeIndicator indicator;
+
+    private ObservationStream group;
+
+    private ObservationStream values;
+
+    private OmObservation pending;
+
+    private Boolean grouped;
+
+    /**
+     * constructor
+     *
+     * @param observations
+     *            the observations to merge
+     * @param indicator
+     *            the merge indicator
+     */
+    public MergingObservationStream(ObservationStream observations, ObservationMergeIndicator indicator) {
+        this.observations = Objects.requireNonNull(observations);
+        this.indicator = Objects.requireNonNull(indicator);
+    }
+
+    @Override
+    protected OmObservation computeNext() throws OwsExceptionReport {
+        while (true) {
+            if (values != null && values.hasNext()) {
+                return values.next();
+            }
+            values = null;
+            if (group != null && group.hasNext()) {
+                OmObservation observation = group.next();
+                if (observation.getValue() instanceof AbstractStreaming) {
+                    values = ((AbstractStreaming) observation.getValue()).merge(indicator);
+                } else {
+                    return observation;
+                }
+            } else {
+                group = nextGroup();
+                if (group == null) {
+                    return endOfData();
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the next observations with the same constellation and merge them.
+     * If the observations are not grouped, all remaining observations are
+     * read and merged.
+     *
+     * @return the merged observations or <code>null</code> if there are no
+     *         more observations
+     * @throws OwsExceptionReport
+     *             If an error occurs
+     */
+    private ObservationStream nextGroup() throws OwsExceptionReport {
+        if (pending == null) {
+            if (!observations.hasNext()) {
+                return null;
+            }
+            pending = observations.next();
+        }
+        if (grouped == null) {
+            grouped = pending.getValue() instanceof AbstractStreaming;
+        }
+        List<OmObservation> observationGroup = new LinkedList<>();
+        OmObservationConstellation constellation = pending.getObservationConstellation();
+        observationGroup.add(pending);
+        pending = null;
+        while (observations.hasNext()) {
+            OmObservation observation = observations.next();
+            if (grouped && !Objects.equals(constellation, observation.getObservationConstellation())) {
+                pending = observation;
+                break;
+            }
+            observationGroup.add(observation);
+        }
+        return ObservationStream.of(observationGroup).merge(indicator);
+    }
+
+}
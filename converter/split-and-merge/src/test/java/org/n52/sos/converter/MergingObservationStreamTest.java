@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.converter;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.List;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.Is;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+import org.n52.janmayen.AbstractThrowingIterator;
+import org.n52.shetland.ogc.gml.time.TimeInstant;
+import org.n52.shetland.ogc.om.ObservationMergeIndicator;
+import org.n52.shetland.ogc.om.ObservationStream;
+import org.n52.shetland.ogc.om.OmObservableProperty;
+import org.n52.shetland.ogc.om.OmObservation;
+import org.n52.shetland.ogc.om.OmObservationConstellation;
+import org.n52.shetland.ogc.om.SingleObservationValue;
+import org.n52.shetland.ogc.om.values.QuantityValue;
+import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
+
+import com.google.common.collect.Lists;
+
+public class MergingObservationStreamTest {
+
+    private static final DateTime TIME1 = new DateTime(2020, 1, 1, 0, 0, DateTimeZone.UTC);
+
+    private static final DateTime TIME2 = new DateTime(2020, 1, 2, 0, 0, DateTimeZone.UTC);
+
+    @Test
+    public void shouldMergeInterleavedConstellations() throws OwsExceptionReport {
+        // e.g. the first values of all datasets followed by their latest values
+        CountingObservationStream source = new CountingObservationStream(Lists.newArrayList(
+                createObservation("a", TIME1), createObservation("b", TIME1),
+                createObservation("a", TIME2), createObservation("b", TIME2)));
+        MergingObservationStream stream =
+                new MergingObservationStream(source, ObservationMergeIndicator.sameObservationConstellation());
+
+        MatcherAssert.assertThat(source.getConsumed(), Is.is(0));
+        MatcherAssert.assertThat(stream.hasNext(), Is.is(true));
+        MatcherAssert.assertThat(getObservableProperty(stream.next()), Is.is("a"));
+        // observations without streaming values are not grouped and have to be read completely
+        MatcherAssert.assertThat(source.getConsumed(), Is.is(4));
+        MatcherAssert.assertThat(getObservableProperty(stream.next()), Is.is("b"));
+        MatcherAssert.assertThat(stream.hasNext(), Is.is(false));
+    }
+
+    @Test
+    public void shouldKeepDistinctConstellations() throws OwsExceptionReport {
+        MergingObservationStream stream = new MergingObservationStream(
+                new CountingObservationStream(Lists.newArrayList(createObservation("a", TIME1),
+                        createObservation("b", TIME1), createObservation("c", TIME1))),
+                ObservationMergeIndicator.sameObservationConstellation());
+
+        MatcherAssert.assertThat(getObservableProperty(stream.next()), Is.is("a"));
+        MatcherAssert.assertThat(getObservableProperty(stream.next()), Is.is("b"));
+        MatcherAssert.assertThat(getObservableProperty(stream.next()), Is.is("c"));
+        MatcherAssert.assertThat(stream.hasNext(), Is.is(false));
+    }
+
+    @Test
+    public void shouldHandleEmptyStream() throws OwsExceptionReport {
+        MergingObservationStream stream = new MergingObservationStream(
+                new CountingObservationStream(Lists.newArrayList()),
+                ObservationMergeIndicator.sameObservationConstellation());
+
+        MatcherAssert.assertThat(stream.hasNext(), Is.is(false));
+    }
+
+    private OmObservation createObservation(String observableProperty, DateTime time) {
+        OmObservationConstellation constellation = new OmObservationConstellation();
+        constellation.setObservableProperty(new OmObservableProperty(observableProperty));
+        OmObservation observation = new OmObservation();
+        observation.setObservationConstellation(constellation);
+        SingleObservationValue<BigDecimal> value = new SingleObservationValue<>();
+        value.setPhenomenonTime(new TimeInstant(time));
+        value.setValue(new QuantityValue(1.0, "unit"));
+        observation.setValue(value);
+        return observation;
+    }
+
+    private String getObservableProperty(OmObservation observation) {
+        return observation.getObservationConstellation().getObservablePropertyIdentifier();
+    }
+
+    private static class CountingObservationStream extends AbstractThrowingIterator<OmObservation, OwsExceptionReport>
+            implements ObservationStream {
+
+        private final Iterator<OmObservation> iterator;
+
+        private int consumed;
+
+        CountingObservationStream(List<OmObservation> observations) {
+            this.iterator = observations.iterator();
+        }
+
+        @Override
+        protected OmObservation computeNext() {
+            if (iterator.hasNext()) {
+                consumed++;
+                return iterator.next();
+            }
+            return endOfData();
+        }
+
+        int getConsumed() {
+            return consumed;
+        }
+    }
+
+}
@@ -33,6 +33,7 @@ import static java.util.stream.Collectors.toList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -939,8 +940,10 @@ public class CoordinateTransformator implements RequestResponseModifier, Constru
 
     private void checkMultiPointCoverageForGeometry(MultiPointCoverage value, int targetCRS)
             throws OwsExceptionReport {
+        List<Geometry> points = value.getValue().stream().<Geometry> map(PointValuePair::getPoint).collect(toList());
+        Iterator<Geometry> transformed = getGeomtryHandler().transform(points, targetCRS).iterator();
         for (PointValuePair pvp : value.getValue()) {
-            pvp.setPoint((Point) getGeomtryHandler().transform(pvp.getPoint(), targetCRS));
+            pvp.setPoint((Point) transformed.next());
         }
     }
 
@@ -950,8 +953,11 @@ public class CoordinateTransformator implements RequestResponseModifier, Constru
     }
 
     private void checkTLVTValueForGeometry(TLVTValue value, int targetCRS) throws OwsExceptionReport {
+        Iterator<Geometry> transformed = getGeomtryHandler().transform(
+                value.getValue().stream().map(TimeLocationValueTriple::getLocation).collect(toList()), targetCRS)
+                .iterator();
         for (TimeLocationValueTriple tlvt : value.getValue()) {
-            tlvt.setLocation(getGeomtryHandler().transform(tlvt.getLocation(), targetCRS));
+            tlvt.setLocation(transformed.next());
         }
     }
 
@@ -1015,18 +1021,53 @@ public class CoordinateTransformator implements RequestResponseModifier, Constru
         if (feature != null) {
             if (feature instanceof FeatureCollection) {
                 FeatureCollection featureCollection = (FeatureCollection) feature;
+                List<AbstractSamplingFeature> features = Lists.newArrayList();
+                List<AbstractSamplingFeature> features3D = Lists.newArrayList();
                 for (AbstractFeature abstractFeature : featureCollection.getMembers().values()) {
-                    if (abstractFeature instanceof AbstractSamplingFeature) {
-                        checkResponseGeometryOfSamplingFeature((AbstractSamplingFeature) abstractFeature, targetCRS,
-                                target3DCRS);
+                    if (abstractFeature instanceof AbstractSamplingFeature
+                            && ((AbstractSamplingFeature) abstractFeature).isSetGeometry()) {
+                        AbstractSamplingFeature samplingFeature = (AbstractSamplingFeature) abstractFeature;
+                        if (Double.isNaN(samplingFeature.getGeometry().getCoordinate().z)) {
+                            features.add(samplingFeature);
+                        } else {
+                            features3D.add(samplingFeature);
+                        }
                     }
                 }
+                transformGeometryOfSamplingFeatures(features, targetCRS);
+                transformGeometryOfSamplingFeatures(features3D, target3DCRS);
             } else if (feature instanceof AbstractSamplingFeature) {
                 checkResponseGeometryOfSamplingFeature((AbstractSamplingFeature) feature, targetCRS, target3DCRS);
             }
         }
     }
 
+    /**
+     * Transform the geometries of the {@link AbstractSamplingFeature}s to the
+     * target EPSG code in one batch
+     *
+     * @param samplingFeatures
+     *            the {@link AbstractSamplingFeature}s with geometry
+     * @param targetCRS
+     *            Target EPSG code
+     * @throws OwsExceptionReport
+     *             If the transformation fails
+     */
+    private void transformGeometryOfSamplingFeatures(List<AbstractSamplingFeature> samplingFeatures, int targetCRS)
+            throws OwsExceptionReport {
+        if (samplingFeatures.isEmpty()) {
+            return;
+        }
+        List<Geometry> geometries =
+                samplingFeatures.stream().map(AbstractSamplingFeature::getGeometry).collect(toList());
+        List<Geometry> transformed = getGeomtryHandler().transform(geometries, targetCRS);
+        for (int i = 0; i < samplingFeatures.size(); i++) {
+            if (transformed.get(i) != geometries.get(i)) {
+                samplingFeatures.get(i).setGeometry(transformed.get(i));
+            }
+        }
+    }
+
     /**
      * Checks if the O&M parameter contains a geometry and transform to target
      * EPSG code, e.g. SOS 2.0 Spatial Filtering Profile
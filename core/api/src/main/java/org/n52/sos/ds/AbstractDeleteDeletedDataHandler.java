@@ -28,6 +28,9 @@
  */
 package org.n52.sos.ds;
 
+import java.util.Collections;
+import java.util.Map;
+
 import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
 
 /**
@@ -39,4 +42,13 @@ public interface AbstractDeleteDeletedDataHandler {
 
     void deleteDeletedData() throws OwsExceptionReport;
 
+    /**
+     * @return the progress of the running or the last deletion of the deleted
+     *         data, empty if the deletion is not reported
+     * @since 5.3.2
+     */
+    default Map<String, String> getProgress() {
+        return Collections.emptyMap();
+    }
+
 }
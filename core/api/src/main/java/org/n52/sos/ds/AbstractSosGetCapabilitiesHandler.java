@@ -43,6 +43,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -51,6 +52,8 @@ import java.util.stream.Stream;
 import javax.inject.Inject;
 import javax.xml.namespace.QName;
 
+import org.locationtech.jts.geom.Envelope;
+import org.n52.faroe.annotation.Setting;
 import org.n52.iceland.binding.Binding;
 import org.n52.iceland.binding.MediaTypeBindingKey;
 import org.n52.iceland.exception.ows.concrete.InvalidServiceParameterException;
@@ -101,6 +104,7 @@ import org.n52.shetland.ogc.sos.Sos2Constants;
 import org.n52.shetland.ogc.sos.SosCapabilities;
 import org.n52.shetland.ogc.sos.SosConstants;
 import org.n52.shetland.ogc.sos.SosObservationOffering;
+import org.n52.shetland.ogc.sos.SosOffering;
 import org.n52.shetland.util.CollectionHelper;
 import org.n52.shetland.util.DateTimeHelper;
 import org.n52.shetland.util.ReferencedEnvelope;
@@ -110,6 +114,7 @@ import org.n52.sos.config.CapabilitiesExtensionService;
 import org.n52.sos.ogc.sos.SosObservationOfferingExtensionRepository;
 import org.n52.sos.request.operator.AbstractTransactionalRequestOperator;
 import org.n52.sos.request.operator.TransactionalRequestChecker;
+import org.n52.sos.service.SosSettings;
 import org.n52.sos.service.TransactionalSecurityConfiguration;
 import org.n52.sos.util.GeometryHandler;
 import org.n52.svalbard.ConformanceClass;
@@ -119,6 +124,9 @@ import org.n52.svalbard.encode.EncoderRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
 
 /**
@@ -144,6 +152,8 @@ public abstract class AbstractSosGetCapabilitiesHandler extends AbstractGetCapab
     private static final int ALL =
             0x20 | SERVICE_IDENTIFICATION | SERVICE_PROVIDER | OPERATIONS_METADATA | FILTER_CAPABILITIES | CONTENTS;
 
+    private static final long CONTENTS_CACHE_SIZE = 100;
+
     @Inject
     private CapabilitiesExtensionService capabilitiesExtensionService;
 
@@ -183,6 +193,8 @@ public abstract class AbstractSosGetCapabilitiesHandler extends AbstractGetCapab
     @Inject
     private Optional<TransactionalSecurityConfiguration> transactionalSecurityConfiguration;
 
+    private volatile Cache<List<Object>, List<SosObservationOffering>> contentsCache;
+
     public AbstractSosGetCapabilitiesHandler() {
         this(SosConstants.SOS);
     }
@@ -191,6 +203,16 @@ public abstract class AbstractSosGetCapabilitiesHandler extends AbstractGetCapab
         super(service);
     }
 
+    @Setting(SosSettings.CAPABILITIES_CONTENTS_CACHE_DURATION)
+    public void setContentsCacheDuration(int seconds) {
+        if (seconds > 0) {
+            this.contentsCache = CacheBuilder.newBuilder().maximumSize(CONTENTS_CACHE_SIZE)
+                    .expireAfterWrite(seconds, TimeUnit.SECONDS).build();
+        } else {
+            this.contentsCache = null;
+        }
+    }
+
     @Override
     public GetCapabilitiesResponse getCapabilities(GetCapabilitiesRequest request) throws OwsExceptionReport {
         String capabilitiesId = request.getCapabilitiesId();
@@ -274,13 +296,7 @@ public abstract class AbstractSosGetCapabilitiesHandler extends AbstractGetCapab
                     .setFilterCapabilities(getFilterCapabilities(version));
         }
         if (isContentsSectionRequested(sectionSpecificContentObject.getRequestedSections())) {
-            if (isV2(sectionSpecificContentObject.getGetCapabilitiesResponse())) {
-                sectionSpecificContentObject.getSosCapabilities()
-                        .setContents(getContentsForSosV2(sectionSpecificContentObject));
-            } else {
-                sectionSpecificContentObject.getSosCapabilities()
-                        .setContents(getContentsForSosV1(sectionSpecificContentObject));
-            }
+            sectionSpecificContentObject.getSosCapabilities().setContents(getContents(sectionSpecificContentObject));
         }
 
         if (isV2(sectionSpecificContentObject.getGetCapabilitiesResponse())) {
@@ -296,6 +312,82 @@ public abstract class AbstractSosGetCapabilitiesHandler extends AbstractGetCapab
         }
     }
 
+    /**
+     * Get the contents of the capabilities. If the contents cache is enabled,
+     * the contents are only created once per version, language and content
+     * cache update. As the contents are modified by the response modifiers,
+     * every request gets its own copy of the cached offerings.
+     */
+    private List<SosObservationOffering> getContents(SectionSpecificContentObject sectionSpecificContentObject)
+            throws OwsExceptionReport {
+        Cache<List<Object>, List<SosObservationOffering>> current = this.contentsCache;
+        if (current == null) {
+            return createContents(sectionSpecificContentObject);
+        }
+        GetCapabilitiesResponse response = sectionSpecificContentObject.getGetCapabilitiesResponse();
+        List<Object> key = Arrays.asList(response.getService(), response.getVersion(),
+                getRequestedLocale(sectionSpecificContentObject.getGetCapabilitiesRequest()),
+                getCache().getLastUpdateTime());
+        List<SosObservationOffering> contents = current.getIfPresent(key);
+        if (contents == null) {
+            contents = ImmutableList.copyOf(createContents(sectionSpecificContentObject));
+            current.put(key, contents);
+        }
+        return contents.stream().map(AbstractSosGetCapabilitiesHandler::copyOf).collect(Collectors.toList());
+    }
+
+    private List<SosObservationOffering> createContents(SectionSpecificContentObject sectionSpecificContentObject)
+            throws OwsExceptionReport {
+        if (isV2(sectionSpecificContentObject.getGetCapabilitiesResponse())) {
+            return getContentsForSosV2(sectionSpecificContentObject);
+        } else {
+            return getContentsForSosV1(sectionSpecificContentObject);
+        }
+    }
+
+    private static SosObservationOffering copyOf(SosObservationOffering offering) {
+        SosObservationOffering copy = new SosObservationOffering();
+        if (offering.getOffering() != null) {
+            SosOffering sosOffering = offering.getOffering();
+            SosOffering sosOfferingCopy =
+                    new SosOffering(sosOffering.getIdentifier(), sosOffering.isParentOffering());
+            if (sosOffering.isSetName()) {
+                sosOffering.getName().forEach(sosOfferingCopy::addName);
+            }
+            if (sosOffering.isSetDescription()) {
+                sosOfferingCopy.setDescription(sosOffering.getDescription());
+            }
+            copy.setOffering(sosOfferingCopy);
+        }
+        if (offering.getObservedArea() != null) {
+            ReferencedEnvelope observedArea = offering.getObservedArea();
+            copy.setObservedArea(
+                    new ReferencedEnvelope(new Envelope(observedArea.getEnvelope()), observedArea.getSrid()));
+        }
+        copy.setObservableProperties(offering.getObservableProperties());
+        copy.setCompositePhenomena(offering.getCompositePhenomena());
+        Map<String, Collection<String>> phens4CompPhens = new HashMap<>();
+        offering.getPhens4CompPhens().forEach((phen, phens) -> phens4CompPhens.put(phen, new HashSet<>(phens)));
+        copy.setPhens4CompPhens(phens4CompPhens);
+        copy.setPhenomenonTime(offering.getPhenomenonTime());
+        copy.setResultTime(offering.getResultTime());
+        copy.setProcedures(offering.getProcedures());
+        copy.setFeatureOfInterest(offering.getFeatureOfInterest());
+        Map<String, Set<String>> relatedFeatures = new HashMap<>();
+        offering.getRelatedFeatures().forEach((feature, roles) -> relatedFeatures.put(feature, new HashSet<>(roles)));
+        copy.setRelatedFeatures(relatedFeatures);
+        copy.setObservationTypes(offering.getObservationTypes());
+        copy.setFeatureOfInterestTypes(offering.getFeatureOfInterestTypes());
+        copy.setProcedureDescriptionFormat(offering.getProcedureDescriptionFormats());
+        copy.setResponseFormats(offering.getResponseFormats());
+        copy.setResponseModes(offering.getResponseModes());
+        copy.setResultModels(offering.getResultModels());
+        if (offering.isSetExtensions()) {
+            copy.setExtensions(offering.getExtensions());
+        }
+        return copy;
+    }
+
     protected abstract List<SosObservationOffering> getContentsForSosV1(
             SectionSpecificContentObject sectionSpecificContentObject) throws OwsExceptionReport;
 
@@ -29,6 +29,8 @@
 package org.n52.sos.ds;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
 
 import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
 import org.n52.sos.cache.SosWritableContentCache;
@@ -63,4 +65,30 @@ public interface CacheFeederHandler {
      */
     void updateCache(SosWritableContentCache cache)
             throws OwsExceptionReport;
+
+    /**
+     * Applies the changes of the data source since the last update to the
+     * cache.
+     *
+     * @param cache the cache to update
+     *
+     * @return {@code true} if the changes were applied, {@code false} if a
+     *         complete update is required
+     *
+     * @throws OwsExceptionReport if an occurs during the cache update
+     */
+    default boolean updateCacheIncrementally(SosWritableContentCache cache)
+            throws OwsExceptionReport {
+        return false;
+    }
+
+    /**
+     * Returns the duration and row count of the phases of the last complete
+     * cache update, e.g. to show them on the admin cache page.
+     *
+     * @return the phases of the last cache update, ordered by name
+     */
+    default Map<String, String> getCacheUpdateStatistics() {
+        return Collections.emptyMap();
+    }
 }
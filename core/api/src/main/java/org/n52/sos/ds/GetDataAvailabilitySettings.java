@@ -32,4 +32,8 @@ public interface GetDataAvailabilitySettings {
     String FORCE_GDA_VALUE_COUNT = "operation.gda.forceValueCount";
 
     String FORCE_GDA_20_RESPONSE = "operation.gda.forceVersion20";
+
+    String CACHE_DURATION = "operation.gda.cacheDuration";
+
+    String DATASOURCE_THREADS = "operation.gda.datasourceThreads";
 }
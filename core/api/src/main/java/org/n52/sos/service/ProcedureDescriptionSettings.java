@@ -80,6 +80,8 @@ public class ProcedureDescriptionSettings {
 
     public static final String ENRICH_WITH_DISCOVERY_INFORMATION = "procedureDesc.ENRICH_WITH_DISCOVERY_INFORMATION";
 
+    public static final String CACHE_DURATION = "procedureDesc.CACHE_DURATION";
+
     private String descriptionTemplate;
     private boolean generateClassification;
     private String classifierIntendedApplicationValue;
@@ -36,11 +36,26 @@ public interface SosSettings {
     String STRICT_SPATIAL_FILTERING_PROFILE  = "service.strictSpatialFilteringProfile";
     String EXPOSE_CHILD_OBSERVABLE_PROPERTIES = "service.exposeChildObservableProperties";
     String LIST_ONLY_PARENT_OFFERINGS = "service.capabilities.listOnlyParentOfferings";
+    String CAPABILITIES_CONTENTS_CACHE_DURATION = "service.capabilities.contentsCacheDuration";
     String UPDATE_FEATURE_GEOMETRY = "service.updateFeatureGeometry";
     String CACHE_FILE_FOLDER = "service.cacheFileFolder";
+    String CACHE_PERSISTENCE_DELAY = "service.cachePersistenceDelay";
+    String CACHE_JOURNAL = "service.cache.journal";
+    String CACHE_JOURNAL_FLUSH_INTERVAL = "service.cache.journal.flushInterval";
+    String CACHE_SNAPSHOT_VALIDATION = "service.cache.snapshotValidation";
+    String CACHE_COPY_ON_WRITE = "service.cache.copyOnWrite";
+    String CACHE_COMPACT = "service.cache.compact";
+    String CACHE_INCREMENTAL_UPDATE = "service.cache.incrementalUpdate";
+    String CACHE_ASYNC_UPDATE = "service.cache.asyncUpdate";
+    String CACHE_ASYNC_UPDATE_MAX_STALENESS = "service.cache.asyncUpdate.maxStaleness";
     String CREATE_FOI_GEOM_FROM_SAMPLING_GEOMS = "service.createFeatureGeometryFromSamplingGeometries";
     String ALLOW_TEMPLATE_WITHOUT_PROCEDURE_FEATURE = "service.allowTemplateWithoutProcedureAndFeature";
     String INCLUDE_RESULT_TIME_FOR_MERGING = "service.includeResultTimeForMerging";
     String CHECK_FOR_DUPLICITY = "service.checkForDuplicity";
     String STA_SUPPORTS_URLS = "service.sta.supports.urls";
+    String CONCURRENT_INSERTION = "service.insertion.concurrent";
+    String COALESCE_DATASET_VALUE_UPDATES = "service.insertion.coalesceDatasetValueUpdates";
+    String CHECK_DUPLICATED_OBSERVATIONS = "service.insertion.checkDuplicatedObservations";
+    String DELETE_DELETED_DATA_BATCH_SIZE = "service.deleteDeletedData.batchSize";
+    String DELETE_DELETED_DATA_ROWS_PER_SECOND = "service.deleteDeletedData.rowsPerSecond";
 }
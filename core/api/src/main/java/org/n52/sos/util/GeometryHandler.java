@@ -28,11 +28,15 @@
  */
 package org.n52.sos.util;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 import org.geotools.geometry.jts.JTS;
@@ -75,6 +79,8 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -100,6 +106,8 @@ public class GeometryHandler implements GeometryTransformer, Constructable, Dest
 
     private static final String EPSG_NOT_SUPPORTED_TMEPLATE = "The EPSG code '%s' is not supported!";
 
+    private static final int MAX_CACHED_TRANSFORMS = 256;
+
     private boolean datasoureUsesNorthingFirst;
 
     private final List<Range> epsgsWithNorthingFirstAxisOrder = Lists.newArrayList();
@@ -122,6 +130,11 @@ public class GeometryHandler implements GeometryTransformer, Constructable, Dest
 
     private final Map<Integer, CoordinateReferenceSystem> crsCache = Maps.newConcurrentMap();
 
+    private final Cache<TransformKey, MathTransform> transformCache =
+            CacheBuilder.newBuilder().maximumSize(MAX_CACHED_TRANSFORMS).build();
+
+    private boolean eastingFirstAxisOrder = true;
+
     private String srsNamePrefixUrl;
 
     @Setting(CodingSettings.SRS_NAME_PREFIX_URL)
@@ -141,6 +154,9 @@ public class GeometryHandler implements GeometryTransformer, Constructable, Dest
         }
         Hints hints = new Hints(Hints.FORCE_LONGITUDE_FIRST_AXIS_ORDER, eastingFirstEpsgCode);
         this.crsAuthority = ReferencingFactoryFinder.getCRSAuthorityFactory(this.authority, hints);
+        this.eastingFirstAxisOrder = eastingFirstEpsgCode;
+        this.crsCache.clear();
+        this.transformCache.invalidateAll();
     }
 
     @Override
@@ -671,7 +687,7 @@ public class GeometryHandler implements GeometryTransformer, Constructable, Dest
         }
         Geometry switchedCoordiantes = switchCoordinateAxisIfNeeded(geometry, targetSRID);
         try {
-            MathTransform transform = CRS.findMathTransform(sourceCRS, targetCRS);
+            MathTransform transform = getMathTransform(geometry.getSRID(), targetSRID, sourceCRS, targetCRS);
             Geometry transformed = JTS.transform(switchedCoordiantes, transform);
             transformed.setSRID(targetSRID);
             return transformed;
@@ -681,6 +697,67 @@ public class GeometryHandler implements GeometryTransformer, Constructable, Dest
         }
     }
 
+    /**
+     * Transform the geometries to this EPSG code. The CRS and the transform
+     * are resolved once per source EPSG code and not per geometry.
+     *
+     * @param geometries
+     *            Geometries to transform
+     * @param targetSRID
+     *            Target EPSG code
+     *
+     * @return Transformed geometries in the order of the input
+     *
+     * @throws OwsExceptionReport
+     *             If an error occurs
+     */
+    public List<Geometry> transform(List<Geometry> geometries, int targetSRID) throws OwsExceptionReport {
+        List<Geometry> transformed = new ArrayList<>(geometries.size());
+        CoordinateReferenceSystem targetCRS = getCRS(targetSRID);
+        Map<Integer, CoordinateReferenceSystem> sourceCRSs = new HashMap<>();
+        for (Geometry geometry : geometries) {
+            if (geometry == null || geometry.isEmpty() || geometry.getSRID() == targetSRID) {
+                transformed.add(geometry);
+            } else {
+                CoordinateReferenceSystem sourceCRS = sourceCRSs.get(geometry.getSRID());
+                if (sourceCRS == null) {
+                    sourceCRS = getCRS(geometry.getSRID());
+                    sourceCRSs.put(geometry.getSRID(), sourceCRS);
+                }
+                transformed.add(transform(geometry, targetSRID, sourceCRS, targetCRS));
+            }
+        }
+        return transformed;
+    }
+
+    /**
+     * Get the cached transform between the CRS or find and cache it.
+     *
+     * @param sourceSRID
+     *            Source EPSG code
+     * @param targetSRID
+     *            Target EPSG code
+     * @param sourceCRS
+     *            Source CRS
+     * @param targetCRS
+     *            Target CRS
+     *
+     * @return the transform
+     *
+     * @throws FactoryException
+     *             If no transform can be found
+     */
+    private MathTransform getMathTransform(int sourceSRID, int targetSRID, CoordinateReferenceSystem sourceCRS,
+            CoordinateReferenceSystem targetCRS) throws FactoryException {
+        try {
+            return transformCache.get(new TransformKey(sourceSRID, targetSRID, eastingFirstAxisOrder),
+                    () -> CRS.findMathTransform(sourceCRS, targetCRS));
+        } catch (ExecutionException ex) {
+            Throwables.throwIfInstanceOf(ex.getCause(), FactoryException.class);
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
     /**
      * Get CRS from EPSG code.
      *
@@ -761,7 +838,7 @@ public class GeometryHandler implements GeometryTransformer, Constructable, Dest
             CoordinateReferenceSystem targetCRS = getCRS(targetSRID);
             try {
                 if (sourceCRS.getCoordinateSystem().getDimension() == targetCRS.getCoordinateSystem().getDimension()) {
-                    MathTransform transform = CRS.findMathTransform(sourceCRS, targetCRS);
+                    MathTransform transform = getMathTransform(sourceSRID, targetSRID, sourceCRS, targetCRS);
                     Envelope transformed = JTS.transform(envelope, transform);
                     return transformed;
                 }
@@ -783,6 +860,7 @@ public class GeometryHandler implements GeometryTransformer, Constructable, Dest
     @VisibleForTesting
     protected void clearSupportedCRSMap() {
         crsCache.clear();
+        transformCache.invalidateAll();
     }
 
     public Set<String> addAuthorityCrsPrefix(Collection<String> crses) {
@@ -814,4 +892,39 @@ public class GeometryHandler implements GeometryTransformer, Constructable, Dest
                 FeatureQuerySettingsProvider.EPSG_CODES_WITH_NORTHING_FIRST, entry), ex);
     }
 
+    /**
+     * Cache key for {@link MathTransform}s.
+     */
+    private static final class TransformKey {
+
+        private final int sourceSRID;
+
+        private final int targetSRID;
+
+        private final boolean eastingFirst;
+
+        TransformKey(int sourceSRID, int targetSRID, boolean eastingFirst) {
+            this.sourceSRID = sourceSRID;
+            this.targetSRID = targetSRID;
+            this.eastingFirst = eastingFirst;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sourceSRID, targetSRID, eastingFirst);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof TransformKey)) {
+                return false;
+            }
+            TransformKey other = (TransformKey) obj;
+            return sourceSRID == other.sourceSRID && targetSRID == other.targetSRID
+                    && eastingFirst == other.eastingFirst;
+        }
+    }
 }
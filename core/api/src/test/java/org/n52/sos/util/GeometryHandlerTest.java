@@ -28,6 +28,9 @@
  */
 package org.n52.sos.util;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.core.Is;
 import org.junit.Assert;
@@ -381,6 +384,19 @@ public class GeometryHandlerTest {
         });
     }
 
+    @Test
+    public void shouldTransformGeometriesInBatch() throws OwsExceptionReport {
+        geometryHandler.clearSupportedCRSMap();
+        List<Geometry> transformed = geometryHandler
+                .transform(Arrays.asList(get31467Point(), get31467LineString(), get4326Point()), EPSG_4326);
+        Assert.assertEquals(3, transformed.size());
+        MatcherAssert.assertThat(transformed.get(0)
+                .equalsExact(geometryHandler.transform(get31467Point(), EPSG_4326), DISTANCE), Is.is(true));
+        MatcherAssert.assertThat(transformed.get(1)
+                .equalsExact(geometryHandler.transform(get31467LineString(), EPSG_4326), DISTANCE), Is.is(true));
+        MatcherAssert.assertThat(transformed.get(2).equalsExact(get4326Point(), DISTANCE), Is.is(true));
+    }
+
     @Test
     public void changeSupportedCRS() throws OwsExceptionReport {
         MatcherAssert.assertThat(geometryHandler.getSupportedCRS().contains(String.valueOf(EPSG_31467)), Is.is(true));
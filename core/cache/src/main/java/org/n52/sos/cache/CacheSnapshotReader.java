@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.locationtech.jts.geom.Envelope;
+import org.n52.janmayen.i18n.MultilingualString;
+import org.n52.shetland.util.ReferencedEnvelope;
+
+/**
+ * Reads a binary snapshot written by a {@link CacheSnapshotWriter}, e.g. from a
+ * memory mapped file. Malformed snapshots are reported as
+ * {@link IllegalStateException}s or {@link java.nio.BufferUnderflowException}s.
+ *
+ * @since 5.3.2
+ */
+public class CacheSnapshotReader {
+
+    private final ByteBuffer buffer;
+
+    private final String[] strings;
+
+    public CacheSnapshotReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.getInt() != CacheSnapshotWriter.MAGIC) {
+            throw new IllegalStateException("Not a cache snapshot");
+        }
+        int version = buffer.getInt();
+        if (version != CacheSnapshotWriter.VERSION) {
+            throw new IllegalStateException("Unsupported cache snapshot version " + version);
+        }
+        this.strings = new String[checkSize(buffer.getInt())];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[checkSize(buffer.getInt())];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        if (checkSize(buffer.getInt()) != buffer.remaining()) {
+            throw new IllegalStateException("Truncated cache snapshot");
+        }
+    }
+
+    public int readVarInt() {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed variable length integer");
+    }
+
+    public long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (value >>> 1) ^ -(value & 1);
+            }
+        }
+        throw new IllegalStateException("Malformed variable length integer");
+    }
+
+    public int readInt() {
+        return (int) readVarLong();
+    }
+
+    public boolean readBoolean() {
+        return buffer.get() != 0;
+    }
+
+    public double readDouble() {
+        return buffer.getDouble();
+    }
+
+    public String readString() {
+        int ref = readVarInt();
+        return ref == 0 ? null : string(ref - 1);
+    }
+
+    public List<String> readIdentifiers() {
+        int size = checkSize(readVarInt());
+        List<String> identifiers = new ArrayList<>(size);
+        int ref = 0;
+        for (int i = 0; i < size; i++) {
+            ref += readVarInt();
+            identifiers.add(string(ref));
+        }
+        return identifiers;
+    }
+
+    public <T> void readCollection(Collection<T> target, Supplier<? extends T> elements) {
+        int size = checkSize(readVarInt());
+        for (int i = 0; i < size; i++) {
+            target.add(elements.get());
+        }
+    }
+
+    public <K, V> void readMap(Map<K, V> target, Supplier<? extends K> keys, Supplier<? extends V> values) {
+        int size = checkSize(readVarInt());
+        for (int i = 0; i < size; i++) {
+            K key = keys.get();
+            target.put(key, values.get());
+        }
+    }
+
+    public DateTime readDateTime() {
+        if (!readBoolean()) {
+            return null;
+        }
+        long millis = readVarLong();
+        return new DateTime(millis, DateTimeZone.forID(readString()));
+    }
+
+    public Locale readLocale() {
+        String tag = readString();
+        return tag == null ? null : Locale.forLanguageTag(tag);
+    }
+
+    public MultilingualString readMultilingualString() {
+        if (!readBoolean()) {
+            return null;
+        }
+        MultilingualString string = new MultilingualString();
+        int size = checkSize(readVarInt());
+        for (int i = 0; i < size; i++) {
+            Locale locale = readLocale();
+            string.addLocalization(locale, readString());
+        }
+        return string;
+    }
+
+    public ReferencedEnvelope readEnvelope() {
+        if (!readBoolean()) {
+            return null;
+        }
+        int srid = readInt();
+        Envelope envelope = null;
+        if (readBoolean()) {
+            if (readBoolean()) {
+                envelope = new Envelope();
+            } else {
+                double minX = readDouble();
+                double maxX = readDouble();
+                double minY = readDouble();
+                double maxY = readDouble();
+                envelope = new Envelope(minX, maxX, minY, maxY);
+            }
+        }
+        return new ReferencedEnvelope(envelope, srid);
+    }
+
+    /**
+     * @return if the complete snapshot was read
+     */
+    public boolean isFinished() {
+        return !buffer.hasRemaining();
+    }
+
+    private String string(int index) {
+        if (index < 0 || index >= strings.length) {
+            throw new IllegalStateException("Invalid string reference " + index);
+        }
+        return strings[index];
+    }
+
+    private int checkSize(int size) {
+        if (size < 0 || size > buffer.remaining()) {
+            throw new IllegalStateException("Invalid size " + size);
+        }
+        return size;
+    }
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.joda.time.DateTime;
+import org.locationtech.jts.geom.Envelope;
+import org.n52.janmayen.i18n.LocalizedString;
+import org.n52.janmayen.i18n.MultilingualString;
+import org.n52.shetland.util.ReferencedEnvelope;
+
+/**
+ * Writes the binary snapshot of a {@link InMemoryCacheImpl}. Every string is
+ * stored once in a string table and referenced by its index, numbers are
+ * written as variable length integers and identifier sets as sorted, delta
+ * encoded indices.
+ *
+ * @see CacheSnapshotReader
+ * @since 5.3.2
+ */
+public class CacheSnapshotWriter {
+
+    static final int MAGIC = 0x534F5343;
+
+    static final int VERSION = 1;
+
+    private final Map<String, Integer> indices = new HashMap<>();
+
+    private final List<String> strings = new ArrayList<>();
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    public void writeVarInt(int value) {
+        int v = value;
+        while ((v & ~0x7F) != 0) {
+            body.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        body.write(v);
+    }
+
+    public void writeVarLong(long value) {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            body.write((int) (v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        body.write((int) v);
+    }
+
+    public void writeInt(int value) {
+        writeVarLong(value);
+    }
+
+    public void writeBoolean(boolean value) {
+        body.write(value ? 1 : 0);
+    }
+
+    public void writeDouble(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        for (int i = 56; i >= 0; i -= 8) {
+            body.write((int) (bits >>> i) & 0xFF);
+        }
+    }
+
+    public void writeString(String value) {
+        writeVarInt(value == null ? 0 : index(value) + 1);
+    }
+
+    public void writeIdentifiers(Collection<String> identifiers) {
+        int[] refs;
+        synchronized (identifiers) {
+            refs = new int[identifiers.size()];
+            int i = 0;
+            for (String identifier : identifiers) {
+                refs[i++] = index(identifier);
+            }
+        }
+        Arrays.sort(refs);
+        writeVarInt(refs.length);
+        int previous = 0;
+        for (int ref : refs) {
+            writeVarInt(ref - previous);
+            previous = ref;
+        }
+    }
+
+    public void writeRelations(Map<String, ? extends Collection<String>> relations) {
+        writeMap(relations, this::writeString, this::writeIdentifiers);
+    }
+
+    public <T> void writeCollection(Collection<T> collection, Consumer<? super T> elements) {
+        List<T> copy;
+        synchronized (collection) {
+            copy = new ArrayList<>(collection);
+        }
+        writeVarInt(copy.size());
+        copy.forEach(elements);
+    }
+
+    public <K, V> void writeMap(Map<K, V> map, Consumer<? super K> keys, Consumer<? super V> values) {
+        List<Map.Entry<K, V>> entries = new ArrayList<>(map.size());
+        synchronized (map) {
+            map.forEach((key, value) -> entries.add(new AbstractMap.SimpleImmutableEntry<>(key, value)));
+        }
+        writeVarInt(entries.size());
+        for (Map.Entry<K, V> entry : entries) {
+            keys.accept(entry.getKey());
+            values.accept(entry.getValue());
+        }
+    }
+
+    public void writeDateTime(DateTime time) {
+        writeBoolean(time != null);
+        if (time != null) {
+            writeVarLong(time.getMillis());
+            writeString(time.getZone().getID());
+        }
+    }
+
+    public void writeLocale(Locale locale) {
+        writeString(locale == null ? null : locale.toLanguageTag());
+    }
+
+    public void writeMultilingualString(MultilingualString string) {
+        writeBoolean(string != null);
+        if (string != null) {
+            List<LocalizedString> localizations = new ArrayList<>();
+            string.forEach(localizations::add);
+            writeVarInt(localizations.size());
+            for (LocalizedString localization : localizations) {
+                writeLocale(localization.getLang());
+                writeString(localization.getText());
+            }
+        }
+    }
+
+    public void writeEnvelope(ReferencedEnvelope envelope) {
+        writeBoolean(envelope != null);
+        if (envelope != null) {
+            writeInt(envelope.getSrid());
+            Envelope e = envelope.getEnvelope();
+            writeBoolean(e != null);
+            if (e != null) {
+                writeBoolean(e.isNull());
+                if (!e.isNull()) {
+                    writeDouble(e.getMinX());
+                    writeDouble(e.getMaxX());
+                    writeDouble(e.getMinY());
+                    writeDouble(e.getMaxY());
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the header, the string table and the body to the stream.
+     *
+     * @param stream
+     *            the stream to write to
+     * @throws IOException
+     *             if the stream can not be written
+     */
+    public void writeTo(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        out.writeInt(body.size());
+        body.writeTo(out);
+        out.flush();
+    }
+
+    private int index(String string) {
+        return indices.computeIfAbsent(string, s -> {
+            strings.add(s);
+            return strings.size() - 1;
+        });
+    }
+
+}
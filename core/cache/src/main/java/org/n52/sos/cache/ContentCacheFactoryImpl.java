@@ -31,19 +31,27 @@ package org.n52.sos.cache;
 
 import javax.inject.Inject;
 
+import org.n52.faroe.annotation.Configurable;
+import org.n52.faroe.annotation.Setting;
 import org.n52.iceland.cache.WritableContentCache;
 import org.n52.iceland.cache.ctrl.ContentCacheFactory;
 import org.n52.iceland.coding.SupportedTypeRepository;
+import org.n52.sos.service.SosSettings;
 
 /**
  * TODO JavaDoc
  *
  * @author Christian Autermann
  */
+@Configurable
 public class ContentCacheFactoryImpl implements ContentCacheFactory {
 
     private SupportedTypeRepository supportedTypeRepository;
 
+    private boolean copyOnWrite;
+
+    private boolean compact;
+
     @Inject
     public void setSupportedTypeRepository(SupportedTypeRepository supportedTypeRepository) {
         this.supportedTypeRepository = supportedTypeRepository;
@@ -53,9 +61,62 @@ public class ContentCacheFactoryImpl implements ContentCacheFactory {
         return supportedTypeRepository;
     }
 
+    @Setting(SosSettings.CACHE_COPY_ON_WRITE)
+    public void setCopyOnWrite(boolean copyOnWrite) {
+        this.copyOnWrite = copyOnWrite;
+    }
+
+    public boolean isCopyOnWrite() {
+        return copyOnWrite;
+    }
+
+    @Setting(SosSettings.CACHE_COMPACT)
+    public void setCompact(boolean compact) {
+        this.compact = compact;
+    }
+
+    public boolean isCompact() {
+        return compact;
+    }
+
     @Override
     public WritableContentCache get() {
-        return (InMemoryCacheImpl) new InMemoryCacheImpl().setSupportedTypeRepository(getSupportedTypeRepository());
+        InMemoryCacheImpl cache;
+        if (isCopyOnWrite()) {
+            cache = isCompact() ? new CompactCopyOnWriteCacheImpl() : new CopyOnWriteCacheImpl();
+        } else {
+            cache = isCompact() ? new CompactCacheImpl() : new InMemoryCacheImpl();
+        }
+        return (InMemoryCacheImpl) cache.setSupportedTypeRepository(getSupportedTypeRepository());
+    }
+
+    /**
+     * Converts the specified cache, e.g. loaded from a cache file, to the
+     * selected implementation.
+     *
+     * @param cache
+     *            the cache
+     * @return the cache in the selected implementation
+     */
+    public WritableContentCache convert(WritableContentCache cache) {
+        if (cache instanceof InMemoryCacheImpl) {
+            InMemoryCacheImpl inMemory = (InMemoryCacheImpl) cache;
+            inMemory.setSupportedTypeRepository(getSupportedTypeRepository());
+            if ((inMemory instanceof CopyOnWriteCacheImpl) != isCopyOnWrite()
+                    || inMemory.isCompact() != isCompact()) {
+                return copy(inMemory);
+            }
+        } else if (cache instanceof AbstractStaticSosContentCache) {
+            ((AbstractStaticSosContentCache) cache).setSupportedTypeRepository(getSupportedTypeRepository());
+        }
+        return cache;
+    }
+
+    private InMemoryCacheImpl copy(InMemoryCacheImpl cache) {
+        if (isCopyOnWrite()) {
+            return isCompact() ? new CompactCopyOnWriteCacheImpl(cache) : new CopyOnWriteCacheImpl(cache);
+        }
+        return isCompact() ? new CompactCacheImpl(cache) : new InMemoryCacheImpl(cache);
     }
 
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.cache;
+
+/**
+ * {@link InMemoryCacheImpl} that is treated as an immutable snapshot once it
+ * is published by the cache controller. Partial updates are applied to a
+ * {@link #copy() copy} which then replaces the published instance through a
+ * single volatile write, so readers never observe a half applied update and
+ * never compete with writers for the monitors of the cache collections.
+ *
+ * @since 5.3.2
+ */
+public class CopyOnWriteCacheImpl extends InMemoryCacheImpl {
+    private static final long serialVersionUID = -1470207367213596946L;
+
+    public CopyOnWriteCacheImpl() {
+    }
+
+    /**
+     * Creates a copy-on-write cache with the content of the specified cache.
+     *
+     * @param cache
+     *            the cache to copy
+     */
+    public CopyOnWriteCacheImpl(InMemoryCacheImpl cache) {
+        super(cache);
+    }
+
+    /**
+     * @return a modifiable deep copy of this snapshot
+     */
+    public CopyOnWriteCacheImpl copy() {
+        return new CopyOnWriteCacheImpl(this);
+    }
+}
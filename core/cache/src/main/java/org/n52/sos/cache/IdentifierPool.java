@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.cache;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Dictionary that maps each identifier of a cache once to a dense int id.
+ * Ids are never reused, identifiers removed from the cache stay in the pool
+ * until the cache is replaced by the next complete update.
+ * <p>
+ * Only adding an identifier is synchronized. Lookups read a
+ * {@link ConcurrentHashMap} and the id array, which is copied when it grows and
+ * published together with the size, so readers see every identifier whose id
+ * they obtained.
+ *
+ * @since 5.3.2
+ */
+public class IdentifierPool implements Serializable {
+    private static final long serialVersionUID = 2186512047462330917L;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private transient volatile String[] identifiers = new String[INITIAL_CAPACITY];
+
+    private transient volatile int size;
+
+    private transient Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    /**
+     * The id of {@code null}, which can not be a key of {@link #ids}.
+     */
+    private transient volatile int nullId = -1;
+
+    /**
+     * Get the id of the identifier and add it to the pool if it is not yet
+     * contained.
+     *
+     * @param identifier
+     *            the identifier
+     * @return the id
+     */
+    public int intern(String identifier) {
+        if (identifier == null) {
+            return internNull();
+        }
+        Integer id = ids.get(identifier);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(identifier);
+            if (id == null) {
+                id = append(identifier);
+                ids.put(identifier, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Get the id of the identifier without adding it to the pool.
+     *
+     * @param identifier
+     *            the identifier
+     * @return the id or {@code -1} if the identifier is not contained
+     */
+    public int lookup(Object identifier) {
+        if (identifier == null) {
+            return nullId;
+        }
+        Integer id = ids.get(identifier);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param id
+     *            the id
+     * @return the identifier with the id
+     */
+    public String get(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Unknown identifier id: " + id);
+        }
+        return identifiers[id];
+    }
+
+    /**
+     * @param identifier
+     *            the identifier
+     * @return the pooled instance of an equal identifier
+     */
+    public String canonical(String identifier) {
+        return identifier == null ? null : get(intern(identifier));
+    }
+
+    /**
+     * @return the number of pooled identifiers
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Creates a new empty {@link IdentifierSet} backed by this pool.
+     *
+     * @return the set
+     */
+    public IdentifierSet newSet() {
+        return new IdentifierSet(this);
+    }
+
+    /**
+     * Creates a new {@link IdentifierSet} backed by this pool.
+     *
+     * @param identifiers
+     *            the initial identifiers, may be {@code null}
+     * @return the set
+     */
+    public IdentifierSet newSet(Collection<String> identifiers) {
+        IdentifierSet set = new IdentifierSet(this);
+        if (identifiers != null) {
+            set.addAll(identifiers);
+        }
+        return set;
+    }
+
+    /**
+     * Creates a new map that replaces each key with its pooled instance.
+     *
+     * @param <V>
+     *            the value type
+     * @return the map
+     */
+    public <V> Map<String, V> newMap() {
+        return new PooledKeyMap<>(this);
+    }
+
+    private synchronized int internNull() {
+        if (nullId < 0) {
+            nullId = append(null);
+        }
+        return nullId;
+    }
+
+    private int append(String identifier) {
+        int id = size;
+        String[] current = identifiers;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, id + (id >> 1));
+            identifiers = current;
+        }
+        current[id] = identifier;
+        size = id + 1;
+        return id;
+    }
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        int count = size;
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeObject(identifiers[i]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int count = in.readInt();
+        String[] read = new String[Math.max(INITIAL_CAPACITY, count)];
+        Map<String, Integer> readIds = new ConcurrentHashMap<>(count);
+        int readNullId = -1;
+        for (int i = 0; i < count; i++) {
+            read[i] = (String) in.readObject();
+            if (read[i] == null) {
+                readNullId = i;
+            } else {
+                readIds.put(read[i], i);
+            }
+        }
+        this.identifiers = read;
+        this.ids = readIds;
+        this.nullId = readNullId;
+        this.size = count;
+    }
+
+    private static final class PooledKeyMap<V> extends HashMap<String, V> {
+        private static final long serialVersionUID = -2446357380196421521L;
+
+        private final IdentifierPool pool;
+
+        PooledKeyMap(IdentifierPool pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public V put(String key, V value) {
+            return super.put(pool.canonical(key), value);
+        }
+
+        @Override
+        public void putAll(Map<? extends String, ? extends V> m) {
+            m.forEach(this::put);
+        }
+
+        @Override
+        public V putIfAbsent(String key, V value) {
+            return super.putIfAbsent(pool.canonical(key), value);
+        }
+
+        @Override
+        public V computeIfAbsent(String key, Function<? super String, ? extends V> mappingFunction) {
+            return super.computeIfAbsent(pool.canonical(key), mappingFunction);
+        }
+
+        @Override
+        public V compute(String key, BiFunction<? super String, ? super V, ? extends V> remappingFunction) {
+            return super.compute(pool.canonical(key), remappingFunction);
+        }
+
+        @Override
+        public V merge(String key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+            return super.merge(pool.canonical(key), value, remappingFunction);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.cache;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Thread safe set of identifiers that stores the ids of an
+ * {@link IdentifierPool} as a sorted int array instead of the identifiers
+ * themselves. Intersections and unions with sets of the same pool are
+ * computed by merging the sorted id arrays.
+ *
+ * @since 5.3.2
+ */
+public class IdentifierSet extends AbstractSet<String> implements Serializable {
+    private static final long serialVersionUID = -6880458946536226424L;
+
+    private static final int[] EMPTY = new int[0];
+
+    private final IdentifierPool pool;
+
+    private int[] ids = EMPTY;
+
+    private int size;
+
+    IdentifierSet(IdentifierPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o != null && !(o instanceof String)) {
+            return false;
+        }
+        int id = pool.lookup(o);
+        return id >= 0 && containsId(id);
+    }
+
+    @Override
+    public boolean add(String identifier) {
+        return addId(pool.intern(identifier));
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o != null && !(o instanceof String)) {
+            return false;
+        }
+        int id = pool.lookup(o);
+        return id >= 0 && removeId(id);
+    }
+
+    @Override
+    public synchronized void clear() {
+        this.ids = EMPTY;
+        this.size = 0;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends String> c) {
+        if (isSamePool(c)) {
+            int[] other = ((IdentifierSet) c).snapshot();
+            synchronized (this) {
+                int[] union = union(ids, size, other, other.length);
+                boolean modified = union.length != size;
+                this.ids = union;
+                this.size = union.length;
+                return modified;
+            }
+        }
+        return super.addAll(c);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        if (isSamePool(c)) {
+            int[] other = ((IdentifierSet) c).snapshot();
+            synchronized (this) {
+                int[] intersection = intersection(ids, size, other, other.length);
+                boolean modified = intersection.length != size;
+                this.ids = intersection;
+                this.size = intersection.length;
+                return modified;
+            }
+        }
+        return super.retainAll(c);
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new IdentifierIterator(snapshot());
+    }
+
+    private boolean isSamePool(Collection<?> c) {
+        return c instanceof IdentifierSet && ((IdentifierSet) c).pool == this.pool;
+    }
+
+    private synchronized boolean containsId(int id) {
+        return Arrays.binarySearch(ids, 0, size, id) >= 0;
+    }
+
+    private synchronized boolean addId(int id) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        if (index >= 0) {
+            return false;
+        }
+        index = -index - 1;
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(4, size + (size >> 1)));
+        }
+        System.arraycopy(ids, index, ids, index + 1, size - index);
+        ids[index] = id;
+        size++;
+        return true;
+    }
+
+    private synchronized boolean removeId(int id) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+        size--;
+        return true;
+    }
+
+    private synchronized int[] snapshot() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    private static int[] union(int[] a, int aSize, int[] b, int bSize) {
+        int[] result = new int[aSize + bSize];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < aSize && j < bSize) {
+            if (a[i] < b[j]) {
+                result[k++] = a[i++];
+            } else if (a[i] > b[j]) {
+                result[k++] = b[j++];
+            } else {
+                result[k++] = a[i++];
+                j++;
+            }
+        }
+        while (i < aSize) {
+            result[k++] = a[i++];
+        }
+        while (j < bSize) {
+            result[k++] = b[j++];
+        }
+        return k == result.length ? result : Arrays.copyOf(result, k);
+    }
+
+    private static int[] intersection(int[] a, int aSize, int[] b, int bSize) {
+        int[] result = new int[Math.min(aSize, bSize)];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < aSize && j < bSize) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[k++] = a[i++];
+                j++;
+            }
+        }
+        return k == result.length ? result : Arrays.copyOf(result, k);
+    }
+
+    private class IdentifierIterator implements Iterator<String> {
+        private final int[] snapshot;
+        private int next;
+        private int last = -1;
+
+        IdentifierIterator(int[] snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < snapshot.length;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = snapshot[next++];
+            return pool.get(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            removeId(last);
+            last = -1;
+        }
+    }
+}
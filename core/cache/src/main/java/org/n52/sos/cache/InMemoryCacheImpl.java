@@ -43,7 +43,6 @@ import java.util.function.Function;
 import org.joda.time.DateTime;
 import org.locationtech.jts.geom.Envelope;
 import org.n52.janmayen.function.Functions;
-import org.n52.janmayen.function.Suppliers;
 import org.n52.janmayen.i18n.LocalizedString;
 import org.n52.janmayen.i18n.MultilingualString;
 import org.n52.shetland.ogc.gml.time.TimePeriod;
@@ -65,6 +64,15 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
 
     private static final long serialVersionUID = 3630601584420744019L;
 
+    /**
+     * Decided by the class instead of an overridable method, because the
+     * relation maps and sets below are created while the fields are
+     * initialized, before a subclass is.
+     */
+    private final boolean compact = this instanceof CompactCacheImpl;
+
+    private final IdentifierPool identifierPool = compact ? new IdentifierPool() : null;
+
     private final Map<String, DateTime> maxPhenomenonTimeForOfferings = newSynchronizedMap();
 
     private final Map<String, DateTime> minPhenomenonTimeForOfferings = newSynchronizedMap();
@@ -77,63 +85,63 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
 
     private final Map<String, DateTime> minPhenomenonTimeForProcedures = newSynchronizedMap();
 
-    private final Map<String, Set<String>> allowedObservationTypeForOfferings = newSynchronizedMap();
+    private final Map<String, Set<String>> allowedObservationTypeForOfferings = newRelationMap();
 
-    private final Map<String, Set<String>> allowedFeatureOfInterestTypeForOfferings = newSynchronizedMap();
+    private final Map<String, Set<String>> allowedFeatureOfInterestTypeForOfferings = newRelationMap();
 
-    private final Map<String, Set<String>> childFeaturesForFeatureOfInterest = newSynchronizedMap();
+    private final Map<String, Set<String>> childFeaturesForFeatureOfInterest = newRelationMap();
 
-    private final Map<String, Set<String>> childProceduresForProcedures = newSynchronizedMap();
+    private final Map<String, Set<String>> childProceduresForProcedures = newRelationMap();
 
-    private final Map<String, Set<String>> childOfferingsForOfferings = newSynchronizedMap();
+    private final Map<String, Set<String>> childOfferingsForOfferings = newRelationMap();
 
-    private final Map<String, Set<String>> compositePhenomenonsForProcedure = newSynchronizedMap();
+    private final Map<String, Set<String>> compositePhenomenonsForProcedure = newRelationMap();
 
-    private final Map<String, Set<String>> compositePhenomenonsForOffering = newSynchronizedMap();
+    private final Map<String, Set<String>> compositePhenomenonsForOffering = newRelationMap();
 
-    private final Map<String, Set<String>> compositePhenomenonsForObservableProperty = newSynchronizedMap();
+    private final Map<String, Set<String>> compositePhenomenonsForObservableProperty = newRelationMap();
 
-    private final Map<String, Set<String>> featuresOfInterestForOfferings = newSynchronizedMap();
+    private final Map<String, Set<String>> featuresOfInterestForOfferings = newRelationMap();
 
-    private final Map<String, Set<String>> offeringsForFeaturesOfInterest = newSynchronizedMap();
+    private final Map<String, Set<String>> offeringsForFeaturesOfInterest = newRelationMap();
 
-    private final Map<String, Set<String>> featuresOfInterestForResultTemplates = newSynchronizedMap();
+    private final Map<String, Set<String>> featuresOfInterestForResultTemplates = newRelationMap();
 
-    private final Map<String, Set<String>> observablePropertiesForCompositePhenomenons = newSynchronizedMap();
+    private final Map<String, Set<String>> observablePropertiesForCompositePhenomenons = newRelationMap();
 
-    private final Map<String, Set<String>> observablePropertiesForOfferings = newSynchronizedMap();
+    private final Map<String, Set<String>> observablePropertiesForOfferings = newRelationMap();
 
-    private final Map<String, Set<String>> observablePropertiesForProcedures = newSynchronizedMap();
+    private final Map<String, Set<String>> observablePropertiesForProcedures = newRelationMap();
 
-    private final Map<String, Set<String>> observationTypesForOfferings = newSynchronizedMap();
+    private final Map<String, Set<String>> observationTypesForOfferings = newRelationMap();
 
-    private final Map<String, Set<String>> featureOfInterestTypesForOfferings = newSynchronizedMap();
+    private final Map<String, Set<String>> featureOfInterestTypesForOfferings = newRelationMap();
 
-    private final Map<String, Set<String>> observedPropertiesForResultTemplates = newSynchronizedMap();
+    private final Map<String, Set<String>> observedPropertiesForResultTemplates = newRelationMap();
 
-    private final Map<String, Set<String>> offeringsForObservableProperties = newSynchronizedMap();
+    private final Map<String, Set<String>> offeringsForObservableProperties = newRelationMap();
 
-    private final Map<String, Set<String>> offeringsForProcedures = newSynchronizedMap();
+    private final Map<String, Set<String>> offeringsForProcedures = newRelationMap();
 
-    private final Map<String, Set<String>> parentFeaturesForFeaturesOfInterest = newSynchronizedMap();
+    private final Map<String, Set<String>> parentFeaturesForFeaturesOfInterest = newRelationMap();
 
-    private final Map<String, Set<String>> parentProceduresForProcedures = newSynchronizedMap();
+    private final Map<String, Set<String>> parentProceduresForProcedures = newRelationMap();
 
-    private final Map<String, Set<String>> parentOfferingsForOfferings = newSynchronizedMap();
+    private final Map<String, Set<String>> parentOfferingsForOfferings = newRelationMap();
 
-    private final Map<String, Set<String>> proceduresForFeaturesOfInterest = newSynchronizedMap();
+    private final Map<String, Set<String>> proceduresForFeaturesOfInterest = newRelationMap();
 
-    private final Map<String, Set<String>> proceduresForObservableProperties = newSynchronizedMap();
+    private final Map<String, Set<String>> proceduresForObservableProperties = newRelationMap();
 
-    private final Map<String, Set<String>> proceduresForOfferings = newSynchronizedMap();
+    private final Map<String, Set<String>> proceduresForOfferings = newRelationMap();
 
-    private final Map<String, Set<String>> hiddenChildProceduresForOfferings = newSynchronizedMap();
+    private final Map<String, Set<String>> hiddenChildProceduresForOfferings = newRelationMap();
 
-    private final Map<String, Set<String>> relatedFeaturesForOfferings = newSynchronizedMap();
+    private final Map<String, Set<String>> relatedFeaturesForOfferings = newRelationMap();
 
-    private final Map<String, Set<String>> resultTemplatesForOfferings = newSynchronizedMap();
+    private final Map<String, Set<String>> resultTemplatesForOfferings = newRelationMap();
 
-    private final Map<String, Set<String>> rolesForRelatedFeatures = newSynchronizedMap();
+    private final Map<String, Set<String>> rolesForRelatedFeatures = newRelationMap();
 
     private final Map<String, ReferencedEnvelope> envelopeForOfferings = newSynchronizedMap();
 
@@ -145,15 +153,15 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
 
     private final Set<Integer> epsgCodes = newSynchronizedSet();
 
-    private final Set<String> featuresOfInterest = newSynchronizedSet();
+    private final Set<String> featuresOfInterest = newIdentifierSet(null);
 
-    private final Set<String> procedures = newSynchronizedSet();
+    private final Set<String> procedures = newIdentifierSet(null);
 
-    private final Set<String> resultTemplates = newSynchronizedSet();
+    private final Set<String> resultTemplates = newIdentifierSet(null);
 
-    private final Set<String> offerings = newSynchronizedSet();
+    private final Set<String> offerings = newIdentifierSet(null);
 
-    private final Set<String> compositePhenomenons = newSynchronizedSet();
+    private final Set<String> compositePhenomenons = newIdentifierSet(null);
 
     private final TimePeriod globalPhenomenonTimeEnvelope = new TimePeriod();
 
@@ -163,7 +171,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
 
     private final Set<Locale> supportedLanguages = newSynchronizedSet();
 
-    private final Set<String> requestableProcedureDescriptionFormats = newSynchronizedSet();
+    private final Set<String> requestableProcedureDescriptionFormats = newIdentifierSet(null);
 
     private final BiMap<String, String> featureOfInterestIdentifierHumanReadableName = newSynchronizedBiMap();
 
@@ -177,7 +185,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
 
     private final Map<ComponentAggregation, Set<String>> componentAggregationProcedures = newSynchronizedMap();
 
-    private final Map<String, Set<String>> typeOfProceduresMap = newSynchronizedMap();
+    private final Map<String, Set<String>> typeOfProceduresMap = newRelationMap();
 
     private int defaultEpsgCode = 4326;
 
@@ -185,15 +193,278 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
 
     private DateTime updateTime;
 
-    private final Map<String, Set<String>> procedureProcedureDescriptionFormats = newSynchronizedMap();
+    private final Map<String, Set<String>> procedureProcedureDescriptionFormats = newRelationMap();
+
+    private final Set<String> publishedFeatureOfInterest = newIdentifierSet(null);
 
-    private final Set<String> publishedFeatureOfInterest = newSynchronizedSet();
+    private final Set<String> publishedProcedure = newIdentifierSet(null);
 
-    private final Set<String> publishedProcedure = newSynchronizedSet();
+    private final Set<String> publishedOffering = newIdentifierSet(null);
 
-    private final Set<String> publishedOffering = newSynchronizedSet();
+    private final Set<String> publishedObservableProperty = newIdentifierSet(null);
+
+    public InMemoryCacheImpl() {
+    }
+
+    /**
+     * Creates a deep copy of the specified cache. Modifications of the copy
+     * are not visible in the original and vice versa.
+     *
+     * @param other
+     *            the cache to copy
+     *
+     * @since 5.3.2
+     */
+    protected InMemoryCacheImpl(InMemoryCacheImpl other) {
+        setSupportedTypeRepository(other.getSupportedTypeRepository());
+        copyValues(other.maxPhenomenonTimeForOfferings, this.maxPhenomenonTimeForOfferings);
+        copyValues(other.minPhenomenonTimeForOfferings, this.minPhenomenonTimeForOfferings);
+        copyValues(other.maxResultTimeForOfferings, this.maxResultTimeForOfferings);
+        copyValues(other.minResultTimeForOfferings, this.minResultTimeForOfferings);
+        copyValues(other.maxPhenomenonTimeForProcedures, this.maxPhenomenonTimeForProcedures);
+        copyValues(other.minPhenomenonTimeForProcedures, this.minPhenomenonTimeForProcedures);
+        copyValues(other.nameForOfferings, this.nameForOfferings);
+        copyValues(other.i18nNameForOfferings, this.i18nNameForOfferings);
+        copyValues(other.i18nDescriptionForOfferings, this.i18nDescriptionForOfferings);
+        copyValues(other.featureOfInterestIdentifierHumanReadableName, this.featureOfInterestIdentifierHumanReadableName);
+        copyValues(other.observablePropertyIdentifierHumanReadableName, this.observablePropertyIdentifierHumanReadableName);
+        copyValues(other.procedureIdentifierHumanReadableName, this.procedureIdentifierHumanReadableName);
+        copyValues(other.offeringIdentifierHumanReadableName, this.offeringIdentifierHumanReadableName);
+        copySets(other.allowedObservationTypeForOfferings, this.allowedObservationTypeForOfferings);
+        copySets(other.allowedFeatureOfInterestTypeForOfferings, this.allowedFeatureOfInterestTypeForOfferings);
+        copySets(other.childFeaturesForFeatureOfInterest, this.childFeaturesForFeatureOfInterest);
+        copySets(other.childProceduresForProcedures, this.childProceduresForProcedures);
+        copySets(other.childOfferingsForOfferings, this.childOfferingsForOfferings);
+        copySets(other.compositePhenomenonsForProcedure, this.compositePhenomenonsForProcedure);
+        copySets(other.compositePhenomenonsForOffering, this.compositePhenomenonsForOffering);
+        copySets(other.compositePhenomenonsForObservableProperty, this.compositePhenomenonsForObservableProperty);
+        copySets(other.featuresOfInterestForOfferings, this.featuresOfInterestForOfferings);
+        copySets(other.offeringsForFeaturesOfInterest, this.offeringsForFeaturesOfInterest);
+        copySets(other.featuresOfInterestForResultTemplates, this.featuresOfInterestForResultTemplates);
+        copySets(other.observablePropertiesForCompositePhenomenons, this.observablePropertiesForCompositePhenomenons);
+        copySets(other.observablePropertiesForOfferings, this.observablePropertiesForOfferings);
+        copySets(other.observablePropertiesForProcedures, this.observablePropertiesForProcedures);
+        copySets(other.observationTypesForOfferings, this.observationTypesForOfferings);
+        copySets(other.featureOfInterestTypesForOfferings, this.featureOfInterestTypesForOfferings);
+        copySets(other.observedPropertiesForResultTemplates, this.observedPropertiesForResultTemplates);
+        copySets(other.offeringsForObservableProperties, this.offeringsForObservableProperties);
+        copySets(other.offeringsForProcedures, this.offeringsForProcedures);
+        copySets(other.parentFeaturesForFeaturesOfInterest, this.parentFeaturesForFeaturesOfInterest);
+        copySets(other.parentProceduresForProcedures, this.parentProceduresForProcedures);
+        copySets(other.parentOfferingsForOfferings, this.parentOfferingsForOfferings);
+        copySets(other.proceduresForFeaturesOfInterest, this.proceduresForFeaturesOfInterest);
+        copySets(other.proceduresForObservableProperties, this.proceduresForObservableProperties);
+        copySets(other.proceduresForOfferings, this.proceduresForOfferings);
+        copySets(other.hiddenChildProceduresForOfferings, this.hiddenChildProceduresForOfferings);
+        copySets(other.relatedFeaturesForOfferings, this.relatedFeaturesForOfferings);
+        copySets(other.resultTemplatesForOfferings, this.resultTemplatesForOfferings);
+        copySets(other.rolesForRelatedFeatures, this.rolesForRelatedFeatures);
+        copySets(other.typeInstanceProcedures, this.typeInstanceProcedures);
+        copySets(other.componentAggregationProcedures, this.componentAggregationProcedures);
+        copySets(other.typeOfProceduresMap, this.typeOfProceduresMap);
+        copySets(other.procedureProcedureDescriptionFormats, this.procedureProcedureDescriptionFormats);
+        copyEnvelopes(other.envelopeForOfferings, this.envelopeForOfferings);
+        copyEnvelopes(other.spatialFilteringProfileEnvelopeForOfferings, this.spatialFilteringProfileEnvelopeForOfferings);
+        copyElements(other.epsgCodes, this.epsgCodes);
+        copyElements(other.featuresOfInterest, this.featuresOfInterest);
+        copyElements(other.procedures, this.procedures);
+        copyElements(other.resultTemplates, this.resultTemplates);
+        copyElements(other.offerings, this.offerings);
+        copyElements(other.compositePhenomenons, this.compositePhenomenons);
+        copyElements(other.supportedLanguages, this.supportedLanguages);
+        copyElements(other.requestableProcedureDescriptionFormats, this.requestableProcedureDescriptionFormats);
+        copyElements(other.publishedFeatureOfInterest, this.publishedFeatureOfInterest);
+        copyElements(other.publishedProcedure, this.publishedProcedure);
+        copyElements(other.publishedOffering, this.publishedOffering);
+        copyElements(other.publishedObservableProperty, this.publishedObservableProperty);
+        this.globalPhenomenonTimeEnvelope.setStart(other.globalPhenomenonTimeEnvelope.getStart());
+        this.globalPhenomenonTimeEnvelope.setEnd(other.globalPhenomenonTimeEnvelope.getEnd());
+        this.globalResultTimeEnvelope.setStart(other.globalResultTimeEnvelope.getStart());
+        this.globalResultTimeEnvelope.setEnd(other.globalResultTimeEnvelope.getEnd());
+        this.defaultEpsgCode = other.defaultEpsgCode;
+        this.globalEnvelope = copyOf(other.globalEnvelope);
+        this.updateTime = other.updateTime;
+    }
 
-    private final Set<String> publishedObservableProperty = newSynchronizedSet();
+    /**
+     * Writes the content of this cache to a binary snapshot. The fields are
+     * written in the order in which {@link #readSnapshot(CacheSnapshotReader)}
+     * reads them.
+     * <p>
+     * The cache is not locked while it is written. Each map and collection is
+     * copied under its own monitor and is consistent for itself, but an update
+     * that runs concurrently may be contained in some of them only. The
+     * persistence strategy writes the snapshot again after every update, so
+     * the next snapshot contains the complete update.
+     *
+     * @param out
+     *            the snapshot writer
+     *
+     * @since 5.3.2
+     */
+    protected void writeSnapshot(CacheSnapshotWriter out) {
+        out.writeMap(this.maxPhenomenonTimeForOfferings, out::writeString, out::writeDateTime);
+        out.writeMap(this.minPhenomenonTimeForOfferings, out::writeString, out::writeDateTime);
+        out.writeMap(this.maxResultTimeForOfferings, out::writeString, out::writeDateTime);
+        out.writeMap(this.minResultTimeForOfferings, out::writeString, out::writeDateTime);
+        out.writeMap(this.maxPhenomenonTimeForProcedures, out::writeString, out::writeDateTime);
+        out.writeMap(this.minPhenomenonTimeForProcedures, out::writeString, out::writeDateTime);
+        out.writeMap(this.nameForOfferings, out::writeString, out::writeString);
+        out.writeMap(this.featureOfInterestIdentifierHumanReadableName, out::writeString, out::writeString);
+        out.writeMap(this.observablePropertyIdentifierHumanReadableName, out::writeString, out::writeString);
+        out.writeMap(this.procedureIdentifierHumanReadableName, out::writeString, out::writeString);
+        out.writeMap(this.offeringIdentifierHumanReadableName, out::writeString, out::writeString);
+        out.writeMap(this.i18nNameForOfferings, out::writeString, out::writeMultilingualString);
+        out.writeMap(this.i18nDescriptionForOfferings, out::writeString, out::writeMultilingualString);
+        out.writeRelations(this.allowedObservationTypeForOfferings);
+        out.writeRelations(this.allowedFeatureOfInterestTypeForOfferings);
+        out.writeRelations(this.childFeaturesForFeatureOfInterest);
+        out.writeRelations(this.childProceduresForProcedures);
+        out.writeRelations(this.childOfferingsForOfferings);
+        out.writeRelations(this.compositePhenomenonsForProcedure);
+        out.writeRelations(this.compositePhenomenonsForOffering);
+        out.writeRelations(this.compositePhenomenonsForObservableProperty);
+        out.writeRelations(this.featuresOfInterestForOfferings);
+        out.writeRelations(this.offeringsForFeaturesOfInterest);
+        out.writeRelations(this.featuresOfInterestForResultTemplates);
+        out.writeRelations(this.observablePropertiesForCompositePhenomenons);
+        out.writeRelations(this.observablePropertiesForOfferings);
+        out.writeRelations(this.observablePropertiesForProcedures);
+        out.writeRelations(this.observationTypesForOfferings);
+        out.writeRelations(this.featureOfInterestTypesForOfferings);
+        out.writeRelations(this.observedPropertiesForResultTemplates);
+        out.writeRelations(this.offeringsForObservableProperties);
+        out.writeRelations(this.offeringsForProcedures);
+        out.writeRelations(this.parentFeaturesForFeaturesOfInterest);
+        out.writeRelations(this.parentProceduresForProcedures);
+        out.writeRelations(this.parentOfferingsForOfferings);
+        out.writeRelations(this.proceduresForFeaturesOfInterest);
+        out.writeRelations(this.proceduresForObservableProperties);
+        out.writeRelations(this.proceduresForOfferings);
+        out.writeRelations(this.hiddenChildProceduresForOfferings);
+        out.writeRelations(this.relatedFeaturesForOfferings);
+        out.writeRelations(this.resultTemplatesForOfferings);
+        out.writeRelations(this.rolesForRelatedFeatures);
+        out.writeRelations(this.typeOfProceduresMap);
+        out.writeRelations(this.procedureProcedureDescriptionFormats);
+        out.writeMap(this.typeInstanceProcedures, key -> out.writeString(key.name()), out::writeIdentifiers);
+        out.writeMap(this.componentAggregationProcedures, key -> out.writeString(key.name()), out::writeIdentifiers);
+        out.writeMap(this.envelopeForOfferings, out::writeString, out::writeEnvelope);
+        out.writeMap(this.spatialFilteringProfileEnvelopeForOfferings, out::writeString, out::writeEnvelope);
+        out.writeCollection(this.epsgCodes, out::writeInt);
+        out.writeCollection(this.supportedLanguages, out::writeLocale);
+        out.writeIdentifiers(this.featuresOfInterest);
+        out.writeIdentifiers(this.procedures);
+        out.writeIdentifiers(this.resultTemplates);
+        out.writeIdentifiers(this.offerings);
+        out.writeIdentifiers(this.compositePhenomenons);
+        out.writeIdentifiers(this.requestableProcedureDescriptionFormats);
+        out.writeIdentifiers(this.publishedFeatureOfInterest);
+        out.writeIdentifiers(this.publishedProcedure);
+        out.writeIdentifiers(this.publishedOffering);
+        out.writeIdentifiers(this.publishedObservableProperty);
+        out.writeDateTime(this.globalPhenomenonTimeEnvelope.getStart());
+        out.writeDateTime(this.globalPhenomenonTimeEnvelope.getEnd());
+        out.writeDateTime(this.globalResultTimeEnvelope.getStart());
+        out.writeDateTime(this.globalResultTimeEnvelope.getEnd());
+        out.writeInt(this.defaultEpsgCode);
+        out.writeEnvelope(this.globalEnvelope);
+        out.writeDateTime(this.updateTime);
+    }
+
+    /**
+     * Fills this empty cache from a binary snapshot written by
+     * {@link #writeSnapshot(CacheSnapshotWriter)}.
+     *
+     * @param in
+     *            the snapshot reader
+     *
+     * @since 5.3.2
+     */
+    protected void readSnapshot(CacheSnapshotReader in) {
+        in.readMap(this.maxPhenomenonTimeForOfferings, in::readString, in::readDateTime);
+        in.readMap(this.minPhenomenonTimeForOfferings, in::readString, in::readDateTime);
+        in.readMap(this.maxResultTimeForOfferings, in::readString, in::readDateTime);
+        in.readMap(this.minResultTimeForOfferings, in::readString, in::readDateTime);
+        in.readMap(this.maxPhenomenonTimeForProcedures, in::readString, in::readDateTime);
+        in.readMap(this.minPhenomenonTimeForProcedures, in::readString, in::readDateTime);
+        in.readMap(this.nameForOfferings, in::readString, in::readString);
+        in.readMap(this.featureOfInterestIdentifierHumanReadableName, in::readString, in::readString);
+        in.readMap(this.observablePropertyIdentifierHumanReadableName, in::readString, in::readString);
+        in.readMap(this.procedureIdentifierHumanReadableName, in::readString, in::readString);
+        in.readMap(this.offeringIdentifierHumanReadableName, in::readString, in::readString);
+        in.readMap(this.i18nNameForOfferings, in::readString, in::readMultilingualString);
+        in.readMap(this.i18nDescriptionForOfferings, in::readString, in::readMultilingualString);
+        in.readMap(this.allowedObservationTypeForOfferings,
+                in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.allowedFeatureOfInterestTypeForOfferings,
+                in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.childFeaturesForFeatureOfInterest,
+                in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.childProceduresForProcedures, in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.childOfferingsForOfferings, in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.compositePhenomenonsForProcedure, in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.compositePhenomenonsForOffering, in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.compositePhenomenonsForObservableProperty,
+                in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.featuresOfInterestForOfferings, in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.offeringsForFeaturesOfInterest, in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.featuresOfInterestForResultTemplates,
+                in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.observablePropertiesForCompositePhenomenons,
+                in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.observablePropertiesForOfferings, in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.observablePropertiesForProcedures,
+                in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.observationTypesForOfferings, in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.featureOfInterestTypesForOfferings,
+                in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.observedPropertiesForResultTemplates,
+                in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.offeringsForObservableProperties, in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.offeringsForProcedures, in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.parentFeaturesForFeaturesOfInterest,
+                in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.parentProceduresForProcedures, in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.parentOfferingsForOfferings, in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.proceduresForFeaturesOfInterest, in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.proceduresForObservableProperties,
+                in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.proceduresForOfferings, in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.hiddenChildProceduresForOfferings,
+                in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.relatedFeaturesForOfferings, in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.resultTemplatesForOfferings, in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.rolesForRelatedFeatures, in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.typeOfProceduresMap, in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.procedureProcedureDescriptionFormats,
+                in::readString, () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.typeInstanceProcedures,
+                () -> TypeInstance.valueOf(in.readString()), () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.componentAggregationProcedures,
+                () -> ComponentAggregation.valueOf(in.readString()), () -> newIdentifierSet(in.readIdentifiers()));
+        in.readMap(this.envelopeForOfferings, in::readString, in::readEnvelope);
+        in.readMap(this.spatialFilteringProfileEnvelopeForOfferings, in::readString, in::readEnvelope);
+        in.readCollection(this.epsgCodes, in::readInt);
+        in.readCollection(this.supportedLanguages, in::readLocale);
+        this.featuresOfInterest.addAll(in.readIdentifiers());
+        this.procedures.addAll(in.readIdentifiers());
+        this.resultTemplates.addAll(in.readIdentifiers());
+        this.offerings.addAll(in.readIdentifiers());
+        this.compositePhenomenons.addAll(in.readIdentifiers());
+        this.requestableProcedureDescriptionFormats.addAll(in.readIdentifiers());
+        this.publishedFeatureOfInterest.addAll(in.readIdentifiers());
+        this.publishedProcedure.addAll(in.readIdentifiers());
+        this.publishedOffering.addAll(in.readIdentifiers());
+        this.publishedObservableProperty.addAll(in.readIdentifiers());
+        this.globalPhenomenonTimeEnvelope.setStart(in.readDateTime());
+        this.globalPhenomenonTimeEnvelope.setEnd(in.readDateTime());
+        this.globalResultTimeEnvelope.setStart(in.readDateTime());
+        this.globalResultTimeEnvelope.setEnd(in.readDateTime());
+        this.defaultEpsgCode = in.readInt();
+        this.globalEnvelope = in.readEnvelope();
+        this.updateTime = in.readDateTime();
+    }
 
     @Override
     public DateTime getLastUpdateTime() {
@@ -344,6 +615,20 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         return copyOf(this.offeringsForProcedures.get(procedure));
     }
 
+    @Override
+    public Set<String> getOfferingsForProcedures(Set<String> procedures) {
+        Set<String> offerings = newResultSet();
+        if (procedures != null) {
+            for (String procedure : procedures) {
+                Set<String> offeringsForProcedure = this.offeringsForProcedures.get(procedure);
+                if (offeringsForProcedure != null) {
+                    offerings.addAll(offeringsForProcedure);
+                }
+            }
+        }
+        return offerings;
+    }
+
     @Override
     public Set<String> getProceduresForFeatureOfInterest(String featureOfInterest) {
         return copyOf(this.proceduresForFeaturesOfInterest.get(featureOfInterest));
@@ -579,17 +864,17 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
 
     @Override
     public Set<String> getFeaturesOfInterestWithResultTemplate() {
-        return CollectionHelper.unionOfListOfLists(this.featuresOfInterestForResultTemplates.values());
+        return unionOf(this.featuresOfInterestForResultTemplates);
     }
 
     @Override
     public Set<String> getObservableProperties() {
-        return CollectionHelper.unionOfListOfLists(this.observablePropertiesForOfferings.values());
+        return unionOf(this.observablePropertiesForOfferings);
     }
 
     @Override
     public Set<String> getObservablePropertiesWithResultTemplate() {
-        return CollectionHelper.unionOfListOfLists(this.observedPropertiesForResultTemplates.values());
+        return unionOf(this.observedPropertiesForResultTemplates);
     }
 
     @Override
@@ -599,7 +884,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
 
     @Override
     public Set<String> getRelatedFeatures() {
-        return CollectionHelper.unionOfListOfLists(this.relatedFeaturesForOfferings.values());
+        return unionOf(this.relatedFeaturesForOfferings);
     }
 
     @Override
@@ -794,77 +1079,77 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
 
     @Override
     public void setObservablePropertiesForOffering(String offering, Collection<String> observableProperties) {
-        final Set<String> newValue = newSynchronizedSet(observableProperties);
+        final Set<String> newValue = newIdentifierSet(observableProperties);
         LOG.trace("Setting ObservableProperties for Offering {} to {}", offering, observableProperties);
         this.observablePropertiesForOfferings.put(offering, newValue);
     }
 
     @Override
     public void setObservablePropertiesForProcedure(String procedure, final Collection<String> observableProperties) {
-        final Set<String> newValue = newSynchronizedSet(observableProperties);
+        final Set<String> newValue = newIdentifierSet(observableProperties);
         LOG.trace("Setting ObservableProperties for Procedure {} to {}", procedure, newValue);
         this.observablePropertiesForProcedures.put(procedure, newValue);
     }
 
     @Override
     public void setObservationTypesForOffering(String offering, Collection<String> observationTypes) {
-        final Set<String> newValue = newSynchronizedSet(observationTypes);
+        final Set<String> newValue = newIdentifierSet(observationTypes);
         LOG.trace("Setting ObservationTypes for Offering {} to {}", offering, newValue);
         this.observationTypesForOfferings.put(offering, newValue);
     }
 
     @Override
     public void setOfferingsForObservableProperty(String observableProperty, Collection<String> offerings) {
-        final Set<String> newValue = newSynchronizedSet(offerings);
+        final Set<String> newValue = newIdentifierSet(offerings);
         LOG.trace("Setting Offerings for ObservableProperty {} to {}", observableProperty, newValue);
         this.offeringsForObservableProperties.put(observableProperty, newValue);
     }
 
     @Override
     public void setOfferingsForProcedure(String procedure, Collection<String> offerings) {
-        final Set<String> newValue = newSynchronizedSet(offerings);
+        final Set<String> newValue = newIdentifierSet(offerings);
         LOG.trace("Setting Offerings for Procedure {} to {}", procedure, newValue);
         this.offeringsForProcedures.put(procedure, newValue);
     }
 
     @Override
     public void setProceduresForFeatureOfInterest(String featureOfInterest, Collection<String> procedures) {
-        final Set<String> newValue = newSynchronizedSet(procedures);
+        final Set<String> newValue = newIdentifierSet(procedures);
         LOG.trace("Setting Procedures for FeatureOfInterest {} to {}", featureOfInterest, newValue);
         this.proceduresForFeaturesOfInterest.put(featureOfInterest, newValue);
     }
 
     @Override
     public void setProceduresForObservableProperty(String observableProperty, Collection<String> procedures) {
-        final Set<String> newValue = newSynchronizedSet(procedures);
+        final Set<String> newValue = newIdentifierSet(procedures);
         LOG.trace("Setting Procedures for ObservableProperty {} to {}", observableProperty, procedures);
         this.proceduresForObservableProperties.put(observableProperty, newValue);
     }
 
     @Override
     public void setProceduresForOffering(String offering, Collection<String> procedures) {
-        final Set<String> newValue = newSynchronizedSet(procedures);
+        final Set<String> newValue = newIdentifierSet(procedures);
         LOG.trace("Setting Procedures for Offering {} to {}", offering, newValue);
         this.proceduresForOfferings.put(offering, newValue);
     }
 
     @Override
     public void setRelatedFeaturesForOffering(String offering, Collection<String> relatedFeatures) {
-        final Set<String> newValue = newSynchronizedSet(relatedFeatures);
+        final Set<String> newValue = newIdentifierSet(relatedFeatures);
         LOG.trace("Setting Related Features for Offering {} to {}", offering, newValue);
         this.relatedFeaturesForOfferings.put(offering, newValue);
     }
 
     @Override
     public void setResultTemplatesForOffering(String offering, Collection<String> resultTemplates) {
-        final Set<String> newValue = newSynchronizedSet(resultTemplates);
+        final Set<String> newValue = newIdentifierSet(resultTemplates);
         LOG.trace("Setting ResultTemplates for Offering {} to {}", offering, newValue);
         this.resultTemplatesForOfferings.put(offering, newValue);
     }
 
     @Override
     public void setRolesForRelatedFeature(String relatedFeature, Collection<String> roles) {
-        final Set<String> newValue = newSynchronizedSet(roles);
+        final Set<String> newValue = newIdentifierSet(roles);
         LOG.trace("Setting Roles for RelatedFeature {} to {}", relatedFeature, newValue);
         this.rolesForRelatedFeatures.put(relatedFeature, newValue);
     }
@@ -946,12 +1231,12 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
 
     @Override
     public Set<String> getFeaturesOfInterestWithOffering() {
-        return CollectionHelper.unionOfListOfLists(this.featuresOfInterestForOfferings.values());
+        return unionOf(this.featuresOfInterestForOfferings);
     }
 
     @Override
     public Set<String> getOfferingWithFeaturesOfInterest() {
-        return CollectionHelper.unionOfListOfLists(this.offeringsForFeaturesOfInterest.values());
+        return unionOf(this.offeringsForFeaturesOfInterest);
     }
 
     @Override
@@ -959,7 +1244,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(OFFERING, offering);
         CacheValidation.notNullOrEmpty(ALLOWED_OBSERVATION_TYPE, allowedObservationType);
         LOG.trace("Adding AllowedObservationType {} to Offering {}", allowedObservationType, offering);
-        this.allowedObservationTypeForOfferings.computeIfAbsent(offering, createSynchronizedSet())
+        this.allowedObservationTypeForOfferings.computeIfAbsent(offering, createRelationSet())
                 .add(allowedObservationType);
     }
 
@@ -968,7 +1253,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(OFFERING, offering);
         CacheValidation.noNullValues(ALLOWED_OBSERVATION_TYPES, allowedObservationTypes);
         LOG.trace("Adding AllowedObservationTypes {} to Offering {}", allowedObservationTypes, offering);
-        this.allowedObservationTypeForOfferings.computeIfAbsent(offering, createSynchronizedSet())
+        this.allowedObservationTypeForOfferings.computeIfAbsent(offering, createRelationSet())
                 .addAll(allowedObservationTypes);
     }
 
@@ -977,8 +1262,8 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(OFFERING, offering);
         CacheValidation.notNullOrEmpty(FEATURE_OF_INTEREST, featureOfInterest);
         LOG.trace("Adding featureOfInterest {} to Offering {}", featureOfInterest, offering);
-        this.featuresOfInterestForOfferings.computeIfAbsent(offering, createSynchronizedSet()).add(featureOfInterest);
-        this.offeringsForFeaturesOfInterest.computeIfAbsent(featureOfInterest, createSynchronizedSet()).add(offering);
+        this.featuresOfInterestForOfferings.computeIfAbsent(offering, createRelationSet()).add(featureOfInterest);
+        this.offeringsForFeaturesOfInterest.computeIfAbsent(featureOfInterest, createRelationSet()).add(offering);
     }
 
     @Override
@@ -986,7 +1271,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(RESULT_TEMPLATE, resultTemplate);
         CacheValidation.notNullOrEmpty(FEATURE_OF_INTEREST, featureOfInterest);
         LOG.trace("Adding FeatureOfInterest {} to SosResultTemplate {}", featureOfInterest, resultTemplate);
-        this.featuresOfInterestForResultTemplates.computeIfAbsent(resultTemplate, createSynchronizedSet())
+        this.featuresOfInterestForResultTemplates.computeIfAbsent(resultTemplate, createRelationSet())
                 .add(featureOfInterest);
     }
 
@@ -995,7 +1280,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(RESULT_TEMPLATE, resultTemplate);
         CacheValidation.noNullValues(FEATURES_OF_INTEREST, featuresOfInterest);
         LOG.trace("Adding FeatureOfInterests {} to SosResultTemplate {}", featuresOfInterest, resultTemplate);
-        this.featuresOfInterestForResultTemplates.computeIfAbsent(resultTemplate, createSynchronizedSet())
+        this.featuresOfInterestForResultTemplates.computeIfAbsent(resultTemplate, createRelationSet())
                 .addAll(featuresOfInterest);
     }
 
@@ -1004,7 +1289,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(OFFERING, offering);
         CacheValidation.notNullOrEmpty(OBSERVABLE_PROPERTY, observableProperty);
         LOG.trace("Adding observableProperty {} to offering {}", observableProperty, offering);
-        this.observablePropertiesForOfferings.computeIfAbsent(offering, createSynchronizedSet())
+        this.observablePropertiesForOfferings.computeIfAbsent(offering, createRelationSet())
                 .add(observableProperty);
     }
 
@@ -1013,7 +1298,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(PROCEDURE, procedure);
         CacheValidation.notNullOrEmpty(OBSERVABLE_PROPERTY, observableProperty);
         LOG.trace("Adding observableProperty {} to procedure {}", observableProperty, procedure);
-        this.observablePropertiesForProcedures.computeIfAbsent(procedure, createSynchronizedSet())
+        this.observablePropertiesForProcedures.computeIfAbsent(procedure, createRelationSet())
                 .add(observableProperty);
     }
 
@@ -1022,7 +1307,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(RESULT_TEMPLATE, resultTemplate);
         CacheValidation.notNullOrEmpty(OBSERVABLE_PROPERTY, observableProperty);
         LOG.trace("Adding observableProperty {} to resultTemplate {}", observableProperty, resultTemplate);
-        this.observedPropertiesForResultTemplates.computeIfAbsent(resultTemplate, createSynchronizedSet())
+        this.observedPropertiesForResultTemplates.computeIfAbsent(resultTemplate, createRelationSet())
                 .add(observableProperty);
     }
 
@@ -1031,7 +1316,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(OFFERING, offering);
         CacheValidation.notNullOrEmpty(OBSERVATION_TYPE, observationType);
         LOG.trace("Adding observationType {} to offering {}", observationType, offering);
-        this.observationTypesForOfferings.computeIfAbsent(offering, createSynchronizedSet()).add(observationType);
+        this.observationTypesForOfferings.computeIfAbsent(offering, createRelationSet()).add(observationType);
     }
 
     @Override
@@ -1039,7 +1324,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(OBSERVABLE_PROPERTY, observableProperty);
         CacheValidation.notNullOrEmpty(OFFERING, offering);
         LOG.trace("Adding offering {} to observableProperty {}", offering, observableProperty);
-        this.offeringsForObservableProperties.computeIfAbsent(observableProperty, createSynchronizedSet())
+        this.offeringsForObservableProperties.computeIfAbsent(observableProperty, createRelationSet())
                 .add(offering);
     }
 
@@ -1048,7 +1333,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(PROCEDURE, procedure);
         CacheValidation.notNullOrEmpty(OFFERING, offering);
         LOG.trace("Adding offering {} to procedure {}", offering, procedure);
-        this.offeringsForProcedures.computeIfAbsent(procedure, createSynchronizedSet()).add(offering);
+        this.offeringsForProcedures.computeIfAbsent(procedure, createRelationSet()).add(offering);
     }
 
     @Override
@@ -1056,7 +1341,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(FEATURE_OF_INTEREST, featureOfInterest);
         CacheValidation.notNullOrEmpty(PROCEDURE, procedure);
         LOG.trace("Adding procedure {} to featureOfInterest {}", procedure, featureOfInterest);
-        this.proceduresForFeaturesOfInterest.computeIfAbsent(featureOfInterest, createSynchronizedSet())
+        this.proceduresForFeaturesOfInterest.computeIfAbsent(featureOfInterest, createRelationSet())
                 .add(procedure);
     }
 
@@ -1065,7 +1350,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(FEATURE_OF_INTEREST, observableProperty);
         CacheValidation.notNullOrEmpty(PROCEDURE, procedure);
         LOG.trace("Adding procedure {} to observableProperty {}", procedure, observableProperty);
-        this.proceduresForObservableProperties.computeIfAbsent(observableProperty, createSynchronizedSet())
+        this.proceduresForObservableProperties.computeIfAbsent(observableProperty, createRelationSet())
                 .add(procedure);
     }
 
@@ -1074,7 +1359,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(OFFERING, offering);
         CacheValidation.notNullOrEmpty(PROCEDURE, procedure);
         LOG.trace("Adding procedure {} to offering {}", procedure, offering);
-        this.proceduresForOfferings.computeIfAbsent(offering, createSynchronizedSet()).add(procedure);
+        this.proceduresForOfferings.computeIfAbsent(offering, createRelationSet()).add(procedure);
     }
 
     @Override
@@ -1082,7 +1367,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(OFFERING, offering);
         CacheValidation.notNullOrEmpty(RELATED_FEATURE, relatedFeature);
         LOG.trace("Adding relatedFeature {} to offering {}", relatedFeature, offering);
-        this.relatedFeaturesForOfferings.computeIfAbsent(offering, createSynchronizedSet()).add(relatedFeature);
+        this.relatedFeaturesForOfferings.computeIfAbsent(offering, createRelationSet()).add(relatedFeature);
     }
 
     @Override
@@ -1090,7 +1375,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(OFFERING, offering);
         CacheValidation.noNullValues(RELATED_FEATURE, relatedFeature);
         LOG.trace("Adding relatedFeatures {} to offering {}", relatedFeature, offering);
-        this.relatedFeaturesForOfferings.computeIfAbsent(offering, createSynchronizedSet()).addAll(relatedFeature);
+        this.relatedFeaturesForOfferings.computeIfAbsent(offering, createRelationSet()).addAll(relatedFeature);
     }
 
     @Override
@@ -1098,7 +1383,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(OFFERING, offering);
         CacheValidation.notNullOrEmpty(RESULT_TEMPLATE, resultTemplate);
         LOG.trace("Adding resultTemplate {} to offering {}", resultTemplate, offering);
-        this.resultTemplatesForOfferings.computeIfAbsent(offering, createSynchronizedSet()).add(resultTemplate);
+        this.resultTemplatesForOfferings.computeIfAbsent(offering, createRelationSet()).add(resultTemplate);
     }
 
     @Override
@@ -1106,7 +1391,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(RELATED_FEATURE, relatedFeature);
         CacheValidation.notNullOrEmpty("role", role);
         LOG.trace("Adding role {} to relatedFeature {}", role, relatedFeature);
-        this.rolesForRelatedFeatures.computeIfAbsent(relatedFeature, createSynchronizedSet()).add(role);
+        this.rolesForRelatedFeatures.computeIfAbsent(relatedFeature, createRelationSet()).add(role);
     }
 
     @Override
@@ -1403,7 +1688,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
     @Override
     public void setAllowedObservationTypeForOffering(String offering, Collection<String> observationTypes) {
         CacheValidation.notNullOrEmpty(OFFERING, offering);
-        final Set<String> newValue = newSynchronizedSet(observationTypes);
+        final Set<String> newValue = newIdentifierSet(observationTypes);
         LOG.trace("Setting allowedObservationTypes for offering {} to {}", offering, newValue);
         this.allowedObservationTypeForOfferings.put(offering, newValue);
     }
@@ -1411,7 +1696,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
     @Override
     public void setAllowedFeatureOfInterestTypeForOffering(String offering, Collection<String> featureTypes) {
         CacheValidation.notNullOrEmpty(OFFERING, offering);
-        final Set<String> newValue = newSynchronizedSet(featureTypes);
+        final Set<String> newValue = newIdentifierSet(featureTypes);
         LOG.trace("Setting allowedFeatureOfInterestTypes for offering {} to {}", offering, newValue);
         this.allowedFeatureOfInterestTypeForOfferings.put(offering, newValue);
     }
@@ -1419,7 +1704,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
     @Override
     public void setFeaturesOfInterestForOffering(String offering, Collection<String> featureOfInterest) {
         CacheValidation.notNullOrEmpty(OFFERING, offering);
-        final Set<String> newValue = newSynchronizedSet(featureOfInterest);
+        final Set<String> newValue = newIdentifierSet(featureOfInterest);
         LOG.trace("Setting featureOfInterest for offering {} to {}", offering, newValue);
         this.featuresOfInterestForOfferings.put(offering, newValue);
     }
@@ -1430,7 +1715,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.noNullOrEmptyValues(FEATURES_OF_INTEREST, featuresOfInterest);
         LOG.trace("Adding offering {} to featureOfInterest {}", offering, featuresOfInterest);
         for (final String featureOfInterest : featuresOfInterest) {
-            this.offeringsForFeaturesOfInterest.computeIfAbsent(featureOfInterest, createSynchronizedSet())
+            this.offeringsForFeaturesOfInterest.computeIfAbsent(featureOfInterest, createRelationSet())
                     .add(offering);
         }
     }
@@ -1439,7 +1724,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
     public void setObservablePropertiesForResultTemplate(String resultTemplate,
             Collection<String> observableProperties) {
         CacheValidation.notNullOrEmpty(RESULT_TEMPLATE, resultTemplate);
-        final Set<String> newValue = newSynchronizedSet(observableProperties);
+        final Set<String> newValue = newIdentifierSet(observableProperties);
         LOG.trace("Setting observableProperties for resultTemplate {} to {}", resultTemplate, newValue);
         this.observedPropertiesForResultTemplates.put(resultTemplate, newValue);
     }
@@ -1449,9 +1734,9 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(FEATURE_OF_INTEREST, featureOfInterest);
         CacheValidation.notNullOrEmpty(PARENT_FEATURE, parentFeature);
         LOG.trace("Adding parentFeature {} to featureOfInterest {}", parentFeature, featureOfInterest);
-        this.parentFeaturesForFeaturesOfInterest.computeIfAbsent(featureOfInterest, createSynchronizedSet())
+        this.parentFeaturesForFeaturesOfInterest.computeIfAbsent(featureOfInterest, createRelationSet())
                 .add(parentFeature);
-        this.childFeaturesForFeatureOfInterest.computeIfAbsent(parentFeature, createSynchronizedSet())
+        this.childFeaturesForFeatureOfInterest.computeIfAbsent(parentFeature, createRelationSet())
                 .add(featureOfInterest);
     }
 
@@ -1460,10 +1745,10 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(FEATURE_OF_INTEREST, featureOfInterest);
         CacheValidation.noNullOrEmptyValues(PARENT_FEATURES, parentFeatures);
         LOG.trace("Adding parentFeatures {} to featureOfInterest {}", parentFeatures, featureOfInterest);
-        this.parentFeaturesForFeaturesOfInterest.computeIfAbsent(featureOfInterest, createSynchronizedSet())
+        this.parentFeaturesForFeaturesOfInterest.computeIfAbsent(featureOfInterest, createRelationSet())
                 .addAll(parentFeatures);
         parentFeatures.forEach(parentFeature -> this.childFeaturesForFeatureOfInterest
-                .computeIfAbsent(parentFeature, createSynchronizedSet()).add(featureOfInterest));
+                .computeIfAbsent(parentFeature, createRelationSet()).add(featureOfInterest));
     }
 
     @Override
@@ -1471,8 +1756,8 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(PROCEDURE, procedure);
         CacheValidation.notNullOrEmpty(PARENT_PROCEDURE, parentProcedure);
         LOG.trace("Adding parentProcedure {} to procedure {}", parentProcedure, procedure);
-        this.parentProceduresForProcedures.computeIfAbsent(procedure, createSynchronizedSet()).add(parentProcedure);
-        this.childProceduresForProcedures.computeIfAbsent(parentProcedure, createSynchronizedSet()).add(procedure);
+        this.parentProceduresForProcedures.computeIfAbsent(procedure, createRelationSet()).add(parentProcedure);
+        this.childProceduresForProcedures.computeIfAbsent(parentProcedure, createRelationSet()).add(procedure);
     }
 
     @Override
@@ -1480,10 +1765,10 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(PROCEDURE, procedure);
         CacheValidation.noNullOrEmptyValues(PARENT_PROCEDURES, parentProcedures);
         LOG.trace("Adding parentProcedures {} to procedure {}", parentProcedures, procedure);
-        this.parentProceduresForProcedures.computeIfAbsent(procedure, createSynchronizedSet())
+        this.parentProceduresForProcedures.computeIfAbsent(procedure, createRelationSet())
                 .addAll(parentProcedures);
         parentProcedures.forEach(parentProcedure -> this.childProceduresForProcedures
-                .computeIfAbsent(parentProcedure, createSynchronizedSet()).add(procedure));
+                .computeIfAbsent(parentProcedure, createRelationSet()).add(procedure));
     }
 
     @Override
@@ -1491,8 +1776,8 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(OFFERING, offering);
         CacheValidation.notNullOrEmpty(PARENT_OFFERING, parentOffering);
         LOG.trace("Adding parentOffering {} to offering {}", parentOffering, offering);
-        this.parentOfferingsForOfferings.computeIfAbsent(offering, createSynchronizedSet()).add(parentOffering);
-        this.childOfferingsForOfferings.computeIfAbsent(parentOffering, createSynchronizedSet()).add(offering);
+        this.parentOfferingsForOfferings.computeIfAbsent(offering, createRelationSet()).add(parentOffering);
+        this.childOfferingsForOfferings.computeIfAbsent(parentOffering, createRelationSet()).add(offering);
     }
 
     @Override
@@ -1500,9 +1785,9 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(OFFERING, offering);
         CacheValidation.noNullOrEmptyValues(PARENT_OFFERINGS, parentOfferings);
         LOG.trace("Adding parentOfferings {} to offering {}", parentOfferings, offering);
-        this.parentOfferingsForOfferings.computeIfAbsent(offering, createSynchronizedSet()).addAll(parentOfferings);
+        this.parentOfferingsForOfferings.computeIfAbsent(offering, createRelationSet()).addAll(parentOfferings);
         parentOfferings.forEach(parentOffering -> this.childOfferingsForOfferings
-                .computeIfAbsent(parentOffering, createSynchronizedSet()).add(offering));
+                .computeIfAbsent(parentOffering, createRelationSet()).add(offering));
     }
 
     @Override
@@ -1766,7 +2051,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(OFFERING, offering);
         CacheValidation.notNullOrEmpty(PROCEDURE, procedure);
         LOG.trace("Adding hidden child procedure {} to offering {}", procedure, offering);
-        this.hiddenChildProceduresForOfferings.computeIfAbsent(offering, createSynchronizedSet()).add(procedure);
+        this.hiddenChildProceduresForOfferings.computeIfAbsent(offering, createRelationSet()).add(procedure);
     }
 
     @Override
@@ -1779,7 +2064,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
 
     @Override
     public void setHiddenChildProceduresForOffering(String offering, Collection<String> procedures) {
-        final Set<String> newValue = newSynchronizedSet(procedures);
+        final Set<String> newValue = newIdentifierSet(procedures);
         LOG.trace("Setting hidden child Procedures for Offering {} to {}", offering, newValue);
         this.hiddenChildProceduresForOfferings.put(offering, newValue);
     }
@@ -1829,7 +2114,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(OFFERING, offering);
         CacheValidation.notNullOrEmpty(FEATURE_OF_INTEREST_TYPE, featureOfInterestType);
         LOG.trace("Adding featureOfInterestType {} to offering {}", featureOfInterestType, offering);
-        this.featureOfInterestTypesForOfferings.computeIfAbsent(offering, createSynchronizedSet())
+        this.featureOfInterestTypesForOfferings.computeIfAbsent(offering, createRelationSet())
                 .add(featureOfInterestType);
     }
 
@@ -1851,7 +2136,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
 
     @Override
     public void setFeatureOfInterestTypesForOffering(String offering, Collection<String> featureOfInterestTypes) {
-        final Set<String> newValue = newSynchronizedSet(featureOfInterestTypes);
+        final Set<String> newValue = newIdentifierSet(featureOfInterestTypes);
         LOG.trace("Setting FeatureOfInterestTypes for Offering {} to {}", offering, newValue);
         this.featureOfInterestTypesForOfferings.put(offering, newValue);
     }
@@ -1861,7 +2146,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(OFFERING, offering);
         CacheValidation.notNullOrEmpty(ALLOWED_FEATURE_OF_INTEREST_TYPE, allowedFeatureOfInterestType);
         LOG.trace("Adding AllowedFeatureOfInterestType {} to Offering {}", allowedFeatureOfInterestType, offering);
-        this.allowedFeatureOfInterestTypeForOfferings.computeIfAbsent(offering, createSynchronizedSet())
+        this.allowedFeatureOfInterestTypeForOfferings.computeIfAbsent(offering, createRelationSet())
                 .add(allowedFeatureOfInterestType);
     }
 
@@ -1871,7 +2156,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(OFFERING, offering);
         CacheValidation.noNullValues(ALLOWED_FEATURE_OF_INTEREST_TYPES, allowedFeatureOfInterestTypes);
         LOG.trace("Adding AllowedFeatureOfInterestTypes {} to Offering {}", allowedFeatureOfInterestTypes, offering);
-        this.allowedFeatureOfInterestTypeForOfferings.computeIfAbsent(offering, createSynchronizedSet())
+        this.allowedFeatureOfInterestTypeForOfferings.computeIfAbsent(offering, createRelationSet())
                 .addAll(allowedFeatureOfInterestTypes);
     }
 
@@ -2098,7 +2383,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(PROCEDURE, procedure);
         CacheValidation.notNullOrEmpty(COMPOSITE_PHENOMENON, compositePhenomenon);
         LOG.trace("Adding composite phenomenon {} to procedure {}", compositePhenomenon, procedure);
-        this.compositePhenomenonsForProcedure.computeIfAbsent(procedure, createSynchronizedSet())
+        this.compositePhenomenonsForProcedure.computeIfAbsent(procedure, createRelationSet())
                 .add(compositePhenomenon);
         addCompositePhenomenon(compositePhenomenon);
     }
@@ -2108,7 +2393,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(PROCEDURE, procedure);
         CacheValidation.noNullOrEmptyValues(COMPOSITE_PHENOMENON, compositePhenomenon);
         LOG.trace("Adding composite phenomenons {} to procedure {}", compositePhenomenon, procedure);
-        this.compositePhenomenonsForProcedure.computeIfAbsent(procedure, createSynchronizedSet())
+        this.compositePhenomenonsForProcedure.computeIfAbsent(procedure, createRelationSet())
                 .addAll(compositePhenomenon);
         addCompositePhenomenon(compositePhenomenon);
     }
@@ -2130,7 +2415,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(OFFERING, offering);
         CacheValidation.notNullOrEmpty(COMPOSITE_PHENOMENON, compositePhenomenon);
         LOG.trace("Adding composite phenomenon {} to offering {}", compositePhenomenon, offering);
-        this.compositePhenomenonsForOffering.computeIfAbsent(offering, createSynchronizedSet())
+        this.compositePhenomenonsForOffering.computeIfAbsent(offering, createRelationSet())
                 .add(compositePhenomenon);
         addCompositePhenomenon(compositePhenomenon);
     }
@@ -2140,7 +2425,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(OFFERING, offering);
         CacheValidation.noNullOrEmptyValues(COMPOSITE_PHENOMENON, compositePhenomenon);
         LOG.trace("Adding composite phenomenons {} to offering {}", compositePhenomenon, offering);
-        this.compositePhenomenonsForOffering.computeIfAbsent(offering, createSynchronizedSet())
+        this.compositePhenomenonsForOffering.computeIfAbsent(offering, createRelationSet())
                 .addAll(compositePhenomenon);
         addCompositePhenomenon(compositePhenomenon);
     }
@@ -2163,7 +2448,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(OBSERVABLE_PROPERTY, observableProperty);
         LOG.trace("Adding composite phenomenon {} to to observable property {}", compositePhenomenon,
                 observableProperty);
-        this.compositePhenomenonsForObservableProperty.computeIfAbsent(observableProperty, createSynchronizedSet())
+        this.compositePhenomenonsForObservableProperty.computeIfAbsent(observableProperty, createRelationSet())
                 .add(compositePhenomenon);
         addCompositePhenomenon(compositePhenomenon);
     }
@@ -2173,7 +2458,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.notNullOrEmpty(COMPOSITE_PHENOMENON, compositePhenomenon);
         CacheValidation.notNullOrEmpty(OBSERVABLE_PROPERTY, observableProperty);
         LOG.trace("Adding observable property {} to composite phenomenon {}", observableProperty, compositePhenomenon);
-        this.observablePropertiesForCompositePhenomenons.computeIfAbsent(compositePhenomenon, createSynchronizedSet())
+        this.observablePropertiesForCompositePhenomenons.computeIfAbsent(compositePhenomenon, createRelationSet())
                 .add(observableProperty);
         addCompositePhenomenon(compositePhenomenon);
     }
@@ -2185,7 +2470,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         CacheValidation.noNullOrEmptyValues(OBSERVABLE_PROPERTY, observableProperty);
         LOG.trace("Adding observable properties {} to composite phenomenon {}", observableProperty,
                 compositePhenomenon);
-        this.observablePropertiesForCompositePhenomenons.computeIfAbsent(compositePhenomenon, createSynchronizedSet())
+        this.observablePropertiesForCompositePhenomenons.computeIfAbsent(compositePhenomenon, createRelationSet())
                 .addAll(observableProperty);
         addCompositePhenomenon(compositePhenomenon);
     }
@@ -2227,8 +2512,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
 
     @Override
     public Set<String> getTransactionalObservationProcedures() {
-        return CollectionHelper.union(CollectionHelper.union(copyOf(hiddenChildProceduresForOfferings.values())),
-                CollectionHelper.union(copyOf(proceduresForOfferings.values())));
+        return unionOf(this.hiddenChildProceduresForOfferings, this.proceduresForOfferings);
     }
 
     @Override
@@ -2236,13 +2520,12 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         Set<String> procs = getPublishedProcedures();
         // allowQueryingForInstancesOnly
         if (instances) {
-            procs = CollectionHelper.conjunctCollectionsToSet(procedures,
-                    getTypeInstanceProcedure(TypeInstance.INSTANCE));
+            procs = intersectionOf(procedures, typeInstanceProcedures.get(TypeInstance.INSTANCE));
         }
         // showOnlyAggregatedProcedures
         if (aggregates) {
-            procs = CollectionHelper.conjunctCollectionsToSet(procedures,
-                    getComponentAggregationProcedure(ComponentAggregation.AGGREGATION));
+            procs = intersectionOf(procedures,
+                    componentAggregationProcedures.get(ComponentAggregation.AGGREGATION));
 
         }
         return procs;
@@ -2272,11 +2555,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
     public void addTypeInstanceProcedure(TypeInstance typeInstance, String identifier) {
         CacheValidation.notNullOrEmpty(TYPE_PROCEDURE, identifier);
         logAdding(TYPE_PROCEDURE, identifier);
-        if (typeInstanceProcedures.containsKey(typeInstance)) {
-            typeInstanceProcedures.get(typeInstance).add(identifier);
-        } else {
-            typeInstanceProcedures.put(typeInstance, Sets.newHashSet(identifier));
-        }
+        typeInstanceProcedures.computeIfAbsent(typeInstance, createRelationSet()).add(identifier);
     }
 
     @Override
@@ -2296,11 +2575,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
     public void addComponentAggregationProcedure(ComponentAggregation componentAggregation, String identifier) {
         CacheValidation.notNullOrEmpty(AGGREGATED_PROCEDURE, identifier);
         logAdding(AGGREGATED_PROCEDURE, identifier);
-        if (componentAggregationProcedures.containsKey(componentAggregation)) {
-            componentAggregationProcedures.get(componentAggregation).add(identifier);
-        } else {
-            componentAggregationProcedures.put(componentAggregation, Sets.newHashSet(identifier));
-        }
+        componentAggregationProcedures.computeIfAbsent(componentAggregation, createRelationSet()).add(identifier);
     }
 
     @Override
@@ -2403,7 +2678,7 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
 
     @Override
     public void addProcedureDescriptionFormatsForProcedure(String procedure, Set<String> formats) {
-        this.procedureProcedureDescriptionFormats.computeIfAbsent(procedure, createSynchronizedSet()).addAll(formats);
+        this.procedureProcedureDescriptionFormats.computeIfAbsent(procedure, createRelationSet()).addAll(formats);
     }
 
     @Override
@@ -2516,6 +2791,101 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         publishedObservableProperty.remove(observableProperty);
     }
 
+    /**
+     * Whether identifiers are pooled and relations are stored as
+     * {@link IdentifierSet}s, which is the case for {@link CompactCacheImpl}.
+     *
+     * @return if this cache is compact
+     *
+     * @since 5.3.2
+     */
+    protected final boolean isCompact() {
+        return this.compact;
+    }
+
+    /**
+     * @return the identifier pool of a compact cache, otherwise {@code null}
+     *
+     * @since 5.3.2
+     */
+    protected final IdentifierPool getIdentifierPool() {
+        return this.identifierPool;
+    }
+
+    /**
+     * Unites the value sets of the relation maps. In a compact cache the
+     * result is an {@link IdentifierSet}, so the sets are merged instead of
+     * hashing every identifier.
+     */
+    @SafeVarargs
+    private final Set<String> unionOf(Map<String, Set<String>>... relations) {
+        Set<String> union = newResultSet();
+        for (Map<String, Set<String>> relation : relations) {
+            synchronized (relation) {
+                relation.values().forEach(union::addAll);
+            }
+        }
+        return union;
+    }
+
+    /**
+     * Intersects the sets, which are merged in a compact cache.
+     */
+    private Set<String> intersectionOf(Set<String> set, Set<String> other) {
+        Set<String> intersection = newResultSet();
+        if (other != null) {
+            synchronized (set) {
+                intersection.addAll(set);
+            }
+            synchronized (other) {
+                intersection.retainAll(other);
+            }
+        }
+        return intersection;
+    }
+
+    private Set<String> newResultSet() {
+        return this.compact ? this.identifierPool.newSet() : new HashSet<>();
+    }
+
+    private Map<String, Set<String>> newRelationMap() {
+        if (this.compact) {
+            return Collections.synchronizedMap(this.identifierPool.<Set<String>> newMap());
+        }
+        return newSynchronizedMap();
+    }
+
+    private Set<String> newIdentifierSet(Collection<String> identifiers) {
+        if (this.compact) {
+            return this.identifierPool.newSet(identifiers);
+        }
+        return newSynchronizedSet(identifiers);
+    }
+
+    private static <K, V> void copyValues(Map<K, V> source, Map<K, V> target) {
+        synchronized (source) {
+            target.putAll(source);
+        }
+    }
+
+    private <K> void copySets(Map<K, Set<String>> source, Map<K, Set<String>> target) {
+        synchronized (source) {
+            source.forEach((key, values) -> target.put(key, newIdentifierSet(values)));
+        }
+    }
+
+    private static <K> void copyEnvelopes(Map<K, ReferencedEnvelope> source, Map<K, ReferencedEnvelope> target) {
+        synchronized (source) {
+            source.forEach((key, envelope) -> target.put(key, copyOf(envelope)));
+        }
+    }
+
+    private static <T> void copyElements(Set<T> source, Set<T> target) {
+        synchronized (source) {
+            target.addAll(source);
+        }
+    }
+
     @Override
     public int hashCode() {
         int hash = 5;
@@ -2772,8 +3142,8 @@ public class InMemoryCacheImpl extends AbstractStaticSosContentCache
         return true;
     }
 
-    private static <X, T> Function<X, Set<T>> createSynchronizedSet() {
-        return Suppliers.<X, Set<T>> asFunction(HashSet<T>::new).andThen(Collections::synchronizedSet);
+    private <X> Function<X, Set<String>> createRelationSet() {
+        return key -> newIdentifierSet(null);
     }
 
 }
@@ -0,0 +1,430 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import javax.inject.Inject;
+
+import org.n52.faroe.annotation.Configurable;
+import org.n52.faroe.annotation.Setting;
+import org.n52.iceland.cache.ContentCachePersistenceStrategy;
+import org.n52.iceland.cache.ContentCacheUpdate;
+import org.n52.iceland.cache.WritableContentCache;
+import org.n52.iceland.cache.ctrl.ContentCacheFactory;
+import org.n52.janmayen.GroupedAndNamedThreadFactory;
+import org.n52.janmayen.lifecycle.Constructable;
+import org.n52.janmayen.lifecycle.Destroyable;
+import org.n52.sos.cache.ctrl.action.BatchedCacheUpdate;
+import org.n52.sos.cache.ctrl.action.ObservationInsertionUpdate;
+import org.n52.sos.service.SosSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists the cache as binary snapshot (see {@link CacheSnapshotWriter}) in
+ * the cache file folder. Snapshots are written asynchronously, partial updates
+ * are coalesced for the persistence delay, and read through a memory mapped
+ * file. Without a configured cache file folder or if no snapshot exists yet,
+ * the delegate strategy is used.
+ * <p>
+ * Partial updates that implement {@link JournaledCacheUpdate} are appended to
+ * a journal next to the snapshot instead. The journal entries are written by
+ * the background thread within the journal flush interval and replayed when
+ * the snapshot is loaded. Every written snapshot truncates the journal, so
+ * the journal is compacted if it grows large, on complete updates, on partial
+ * updates that can not be journaled and on shutdown.
+ *
+ * @since 5.3.2
+ */
+@Configurable
+public class SnapshotCachePersistenceStrategy implements ContentCachePersistenceStrategy, Constructable, Destroyable {
+    private static final Logger LOG = LoggerFactory.getLogger(SnapshotCachePersistenceStrategy.class);
+
+    private static final String SNAPSHOT_FILE_NAME = "cache.snapshot";
+
+    private static final String JOURNAL_FILE_NAME = "cache.journal";
+
+    private static final long JOURNAL_COMPACTION_SIZE = 32L * 1024 * 1024;
+
+    private static final Map<String, Function<CacheSnapshotReader, ContentCacheUpdate>> JOURNAL_READERS =
+            Collections.singletonMap(ObservationInsertionUpdate.class.getName(),
+                    ObservationInsertionUpdate::readJournal);
+
+    private final AtomicReference<InMemoryCacheImpl> latest = new AtomicReference<>();
+
+    private final AtomicBoolean snapshotScheduled = new AtomicBoolean();
+
+    private final AtomicBoolean journalFlushScheduled = new AtomicBoolean();
+
+    private final Queue<byte[]> journalEntries = new ConcurrentLinkedQueue<>();
+
+    private ScheduledExecutorService executor;
+
+    private ContentCachePersistenceStrategy delegate;
+
+    private ContentCacheFactory cacheFactory;
+
+    private Path snapshotFile;
+
+    private Path journalFile;
+
+    private long persistenceDelay = 30;
+
+    private boolean journal = true;
+
+    private long journalFlushInterval = 1000;
+
+    public void setDelegate(ContentCachePersistenceStrategy delegate) {
+        this.delegate = delegate;
+    }
+
+    @Inject
+    public void setCacheFactory(ContentCacheFactory cacheFactory) {
+        this.cacheFactory = cacheFactory;
+    }
+
+    @Setting(value = SosSettings.CACHE_FILE_FOLDER, required = false)
+    public void setCacheFileFolder(File folder) {
+        this.snapshotFile = folder == null ? null : folder.toPath().resolve(SNAPSHOT_FILE_NAME);
+        this.journalFile = folder == null ? null : folder.toPath().resolve(JOURNAL_FILE_NAME);
+    }
+
+    @Setting(SosSettings.CACHE_PERSISTENCE_DELAY)
+    public void setPersistenceDelay(int seconds) {
+        this.persistenceDelay = seconds;
+    }
+
+    @Setting(SosSettings.CACHE_JOURNAL)
+    public void setJournal(boolean journal) {
+        this.journal = journal;
+    }
+
+    @Setting(SosSettings.CACHE_JOURNAL_FLUSH_INTERVAL)
+    public void setJournalFlushInterval(int millis) {
+        this.journalFlushInterval = millis;
+    }
+
+    @Override
+    public void init() {
+        this.executor = Executors.newSingleThreadScheduledExecutor(new GroupedAndNamedThreadFactory("cache-snapshot"));
+    }
+
+    @Override
+    public void destroy() {
+        if (this.executor != null) {
+            this.executor.shutdown();
+            try {
+                this.executor.awaitTermination(persistenceDelay, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public Optional<WritableContentCache> load() {
+        if (this.snapshotFile != null && Files.isRegularFile(this.snapshotFile)) {
+            try {
+                long start = System.currentTimeMillis();
+                InMemoryCacheImpl cache = readSnapshot(this.snapshotFile, createCache());
+                int entries = Files.isRegularFile(this.journalFile) ? replayJournal(this.journalFile, cache) : 0;
+                LOG.info("Loaded cache snapshot {} and {} journal entries in {} ms", this.snapshotFile, entries,
+                        System.currentTimeMillis() - start);
+                return Optional.of(cache);
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Could not read cache snapshot " + this.snapshotFile, e);
+            }
+        }
+        return this.delegate != null ? this.delegate.load() : Optional.empty();
+    }
+
+    @Override
+    public void persistOnPartialUpdate(WritableContentCache cache) {
+        if (!schedule(cache, this.persistenceDelay) && this.delegate != null) {
+            this.delegate.persistOnPartialUpdate(cache);
+        }
+    }
+
+    /**
+     * Appends the update to the journal if it (or every applied update of a
+     * {@link BatchedCacheUpdate}) is a {@link JournaledCacheUpdate}, otherwise
+     * a snapshot is scheduled as for {@link #persistOnPartialUpdate(WritableContentCache)}.
+     * Only the serialization of the journal entry is done by the calling
+     * thread.
+     *
+     * @param cache
+     *            the updated cache
+     * @param update
+     *            the executed partial update
+     */
+    public void persistOnPartialUpdate(WritableContentCache cache, ContentCacheUpdate update) {
+        List<ContentCacheUpdate> updates = update instanceof BatchedCacheUpdate
+                ? ((BatchedCacheUpdate) update).getAppliedUpdates()
+                : Collections.singletonList(update);
+        if (!this.journal || !isSnapshotSupported(cache) || this.executor == null || this.executor.isShutdown()
+                || !updates.stream().allMatch(this::isJournaled)) {
+            persistOnPartialUpdate(cache);
+            return;
+        }
+        // set before queueing, so that a snapshot taken after writing the entries contains them
+        this.latest.set((InMemoryCacheImpl) cache);
+        for (ContentCacheUpdate u : updates) {
+            this.journalEntries.add(toJournalEntry((JournaledCacheUpdate) u));
+        }
+        if (this.journalFlushScheduled.compareAndSet(false, true)) {
+            this.executor.schedule(this::flushJournal, this.journalFlushInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void persistOnCompleteUpdate(WritableContentCache cache) {
+        if (!schedule(cache, 0) && this.delegate != null) {
+            this.delegate.persistOnCompleteUpdate(cache);
+        }
+    }
+
+    @Override
+    public void persistOnShutdown(WritableContentCache cache) {
+        if (isSnapshotSupported(cache)) {
+            this.snapshotScheduled.set(false);
+            this.latest.set((InMemoryCacheImpl) cache);
+            persist();
+        } else if (this.delegate != null) {
+            this.delegate.persistOnShutdown(cache);
+        }
+    }
+
+    @Override
+    public void remove() {
+        this.snapshotScheduled.set(false);
+        this.latest.set(null);
+        this.journalEntries.clear();
+        if (this.snapshotFile != null) {
+            try {
+                Files.deleteIfExists(this.snapshotFile);
+                Files.deleteIfExists(this.journalFile);
+            } catch (IOException e) {
+                LOG.error("Could not delete cache snapshot " + this.snapshotFile, e);
+            }
+        }
+        if (this.delegate != null) {
+            this.delegate.remove();
+        }
+    }
+
+    private boolean isSnapshotSupported(WritableContentCache cache) {
+        return this.snapshotFile != null && cache instanceof InMemoryCacheImpl;
+    }
+
+    private boolean isJournaled(ContentCacheUpdate update) {
+        return update instanceof JournaledCacheUpdate && JOURNAL_READERS.containsKey(update.getClass().getName());
+    }
+
+    private boolean schedule(WritableContentCache cache, long delay) {
+        if (!isSnapshotSupported(cache) || this.executor == null || this.executor.isShutdown()) {
+            return false;
+        }
+        // only the latest cache is written, updates arriving in the meantime are coalesced
+        this.latest.set((InMemoryCacheImpl) cache);
+        if (this.snapshotScheduled.compareAndSet(false, true) || delay == 0) {
+            this.executor.schedule(() -> {
+                if (this.snapshotScheduled.getAndSet(false)) {
+                    persist();
+                }
+            }, delay, TimeUnit.SECONDS);
+        }
+        return true;
+    }
+
+    private synchronized void flushJournal() {
+        this.journalFlushScheduled.set(false);
+        try {
+            if (writeJournalEntries() >= JOURNAL_COMPACTION_SIZE) {
+                LOG.debug("Compacting cache journal {}", this.journalFile);
+                persist();
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Could not write cache journal " + this.journalFile, e);
+            // the entries are lost, so fall back to a snapshot
+            schedule(this.latest.get(), 0);
+        }
+    }
+
+    /**
+     * Appends the queued entries to the journal.
+     *
+     * @return the size of the journal
+     */
+    private synchronized long writeJournalEntries() throws IOException {
+        if (this.journalEntries.isEmpty()) {
+            return Files.isRegularFile(this.journalFile) ? Files.size(this.journalFile) : 0;
+        }
+        Files.createDirectories(this.journalFile.getParent());
+        try (FileChannel channel = FileChannel.open(this.journalFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            int entries = 0;
+            byte[] entry;
+            while ((entry = this.journalEntries.poll()) != null) {
+                out.writeInt(entry.length);
+                out.write(entry);
+                entries++;
+            }
+            out.flush();
+            channel.force(false);
+            LOG.trace("Wrote {} entries to cache journal {}", entries, this.journalFile);
+            return channel.size();
+        }
+    }
+
+    private synchronized void persist() {
+        long start = System.currentTimeMillis();
+        try {
+            // the journal may only be truncated if the snapshot contains all written entries
+            writeJournalEntries();
+            InMemoryCacheImpl cache = this.latest.get();
+            if (cache == null) {
+                return;
+            }
+            CacheSnapshotWriter writer = new CacheSnapshotWriter();
+            cache.writeSnapshot(writer);
+            Files.createDirectories(this.snapshotFile.getParent());
+            Path temp = this.snapshotFile.resolveSibling(SNAPSHOT_FILE_NAME + ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                writer.writeTo(out);
+            }
+            try {
+                Files.move(temp, this.snapshotFile, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, this.snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.deleteIfExists(this.journalFile);
+            LOG.debug("Wrote cache snapshot {} ({} bytes) in {} ms", this.snapshotFile,
+                    Files.size(this.snapshotFile), System.currentTimeMillis() - start);
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Could not write cache snapshot " + this.snapshotFile, e);
+        }
+    }
+
+    private InMemoryCacheImpl createCache() {
+        // read directly into the configured implementation to avoid converting it afterwards
+        WritableContentCache cache = this.cacheFactory != null ? this.cacheFactory.get() : null;
+        return cache instanceof InMemoryCacheImpl ? (InMemoryCacheImpl) cache : new InMemoryCacheImpl();
+    }
+
+    private static byte[] toJournalEntry(JournaledCacheUpdate update) {
+        CacheSnapshotWriter writer = new CacheSnapshotWriter();
+        writer.writeString(update.getClass().getName());
+        update.writeJournal(writer);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            writer.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    static InMemoryCacheImpl readSnapshot(Path file, InMemoryCacheImpl cache) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            CacheSnapshotReader reader =
+                    new CacheSnapshotReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            cache.readSnapshot(reader);
+            if (!reader.isFinished()) {
+                throw new IllegalStateException("Unexpected data at the end of the cache snapshot");
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Applies the entries of the journal to the cache. An incomplete entry at
+     * the end of the journal, e.g. after a crash while writing it, is ignored.
+     *
+     * @return the number of applied entries
+     */
+    static int replayJournal(Path file, InMemoryCacheImpl cache) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int entries = 0;
+            while (buffer.remaining() >= Integer.BYTES) {
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    LOG.warn("Ignoring incomplete entry at the end of the cache journal {}", file);
+                    break;
+                }
+                ByteBuffer entry = buffer.slice();
+                entry.limit(length);
+                buffer.position(buffer.position() + length);
+                CacheSnapshotReader reader = new CacheSnapshotReader(entry);
+                String type = reader.readString();
+                Function<CacheSnapshotReader, ContentCacheUpdate> entryReader = JOURNAL_READERS.get(type);
+                if (entryReader == null) {
+                    throw new IllegalStateException("Unsupported cache journal entry " + type);
+                }
+                ContentCacheUpdate update = entryReader.apply(reader);
+                if (!reader.isFinished()) {
+                    throw new IllegalStateException("Unexpected data at the end of the cache journal entry");
+                }
+                update.setCache(cache);
+                update.execute();
+                entries++;
+            }
+            return entries;
+        }
+    }
+
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.cache.ctrl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.n52.iceland.cache.ContentCacheController;
+import org.n52.iceland.cache.ContentCacheUpdate;
+import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
+import org.n52.sos.cache.ctrl.action.BatchedCacheUpdate;
+import org.n52.sos.cache.ctrl.action.ObservationInsertionUpdate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Queue of partial cache updates which are applied in batches by a dedicated
+ * thread. Adjacent {@link ObservationInsertionUpdate}s are merged, so that the
+ * cache is updated once per observation constellation of a batch, and the
+ * batch is executed as a single partial update, so that the cache is
+ * persisted once per batch.
+ *
+ * A failing update does not discard the other updates of its batch. The
+ * queued updates it consists of are retried individually, and if one of them
+ * fails again, a complete cache update is executed to restore the cache.
+ *
+ * If the oldest queued update waits longer than the max staleness, the
+ * enqueuing thread waits until its update is applied, which limits the time a
+ * modification is not visible in the cache.
+ *
+ * @since 5.3.2
+ */
+public class AsyncCacheUpdateQueue {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncCacheUpdateQueue.class);
+
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private static final long POLL_TIMEOUT = 500L;
+
+    private static final long SHUTDOWN_TIMEOUT = 30000L;
+
+    private final ContentCacheController controller;
+
+    private final long maxStaleness;
+
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+
+    private final Object monitor = new Object();
+
+    private final AtomicLong appliedUpdates = new AtomicLong();
+
+    private final AtomicLong appliedBatches = new AtomicLong();
+
+    private final AtomicLong mergedUpdates = new AtomicLong();
+
+    private final AtomicLong retriedUpdates = new AtomicLong();
+
+    private final AtomicLong lostUpdates = new AtomicLong();
+
+    private final Thread worker;
+
+    private long enqueuedSequence;
+
+    private long appliedSequence;
+
+    private volatile boolean running = true;
+
+    private volatile long lastBatchSize;
+
+    private volatile long lastBatchMillis;
+
+    public AsyncCacheUpdateQueue(ContentCacheController controller, long maxStaleness) {
+        this.controller = controller;
+        this.maxStaleness = Math.max(maxStaleness, 0L);
+        this.worker = new Thread(this::run, "cache-update-queue");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Queue the partial update. Waits until the update is applied if the
+     * oldest queued update exceeds the max staleness.
+     *
+     * @param update
+     *            the partial update
+     */
+    public void enqueue(ContentCacheUpdate update) {
+        long sequence;
+        synchronized (monitor) {
+            if (!running) {
+                throw new IllegalStateException("The cache update queue is shut down");
+            }
+            sequence = ++enqueuedSequence;
+            queue.add(new Pending(update, sequence));
+        }
+        Pending oldest = queue.peek();
+        if (oldest != null && oldest.getAge() > maxStaleness) {
+            LOGGER.debug("Cache update backlog of {} exceeds the max staleness of {} ms", queue.size(),
+                    maxStaleness);
+            awaitApplied(sequence);
+        }
+    }
+
+    /**
+     * Wait until all queued updates are applied.
+     */
+    public void flush() {
+        long sequence;
+        synchronized (monitor) {
+            sequence = enqueuedSequence;
+        }
+        awaitApplied(sequence);
+    }
+
+    /**
+     * Stop accepting updates, apply the queued updates and stop the worker
+     * thread.
+     */
+    public void shutdown() {
+        synchronized (monitor) {
+            running = false;
+        }
+        try {
+            worker.join(SHUTDOWN_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            LOGGER.warn("{} cache updates were not applied before shutdown", queue.size());
+        }
+    }
+
+    public int getBacklog() {
+        return queue.size();
+    }
+
+    public long getOldestPendingAge() {
+        Pending oldest = queue.peek();
+        return oldest != null ? oldest.getAge() : 0L;
+    }
+
+    public long getMaxStaleness() {
+        return maxStaleness;
+    }
+
+    public Map<String, String> getStatistics() {
+        SortedMap<String, String> statistics = new TreeMap<>();
+        statistics.put("backlog", Integer.toString(getBacklog()));
+        statistics.put("oldest_pending", String.format("%d ms", getOldestPendingAge()));
+        statistics.put("max_staleness", String.format("%d ms", maxStaleness));
+        statistics.put("applied_updates", Long.toString(appliedUpdates.get()));
+        statistics.put("applied_batches", Long.toString(appliedBatches.get()));
+        statistics.put("merged_updates", Long.toString(mergedUpdates.get()));
+        statistics.put("retried_updates", Long.toString(retriedUpdates.get()));
+        statistics.put("lost_updates", Long.toString(lostUpdates.get()));
+        statistics.put("last_batch", String.format("%d updates, %d ms", lastBatchSize, lastBatchMillis));
+        return statistics;
+    }
+
+    private void awaitApplied(long sequence) {
+        synchronized (monitor) {
+            while (appliedSequence < sequence && worker.isAlive()) {
+                try {
+                    monitor.wait(POLL_TIMEOUT);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            Pending first;
+            try {
+                first = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                LOGGER.debug("Interrupted while waiting for cache updates", e);
+                continue;
+            }
+            if (first != null) {
+                List<Pending> batch = new ArrayList<>();
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                apply(batch);
+                synchronized (monitor) {
+                    appliedSequence = batch.get(batch.size() - 1).getSequence();
+                    monitor.notifyAll();
+                }
+            }
+        }
+        synchronized (monitor) {
+            monitor.notifyAll();
+        }
+    }
+
+    private void apply(List<Pending> batch) {
+        long start = System.currentTimeMillis();
+        List<Merged> updates = merge(batch);
+        List<ContentCacheUpdate> failed = execute(updates);
+        if (!failed.isEmpty()) {
+            retry(failed);
+        }
+        appliedUpdates.addAndGet(batch.size());
+        appliedBatches.incrementAndGet();
+        mergedUpdates.addAndGet(batch.size() - updates.size());
+        lastBatchSize = batch.size();
+        lastBatchMillis = System.currentTimeMillis() - start;
+        LOGGER.debug("Applied {} queued cache updates as {} updates in {} ms", batch.size(), updates.size(),
+                lastBatchMillis);
+    }
+
+    /**
+     * Executes the merged updates as one partial update.
+     *
+     * @return the queued updates of the failed merged updates
+     */
+    private List<ContentCacheUpdate> execute(List<Merged> updates) {
+        if (updates.size() == 1) {
+            Merged merged = updates.get(0);
+            try {
+                controller.update(merged.getUpdate());
+                return Collections.emptyList();
+            } catch (OwsExceptionReport | RuntimeException e) {
+                LOGGER.warn("Error applying queued cache update {}", merged.getUpdate(), e);
+                return merged.getSources();
+            }
+        }
+        BatchedCacheUpdate batched =
+                new BatchedCacheUpdate(updates.stream().map(Merged::getUpdate).collect(Collectors.toList()));
+        try {
+            controller.update(batched);
+        } catch (OwsExceptionReport | RuntimeException e) {
+            LOGGER.warn("Error applying {} queued cache updates", updates.size(), e);
+            return updates.stream().flatMap(m -> m.getSources().stream()).collect(Collectors.toList());
+        }
+        List<ContentCacheUpdate> failed = new ArrayList<>();
+        for (Merged merged : updates) {
+            if (batched.getFailedUpdates().stream().anyMatch(u -> u == merged.getUpdate())) {
+                failed.addAll(merged.getSources());
+            }
+        }
+        return failed;
+    }
+
+    private void retry(List<ContentCacheUpdate> failed) {
+        int lost = 0;
+        for (ContentCacheUpdate update : failed) {
+            retriedUpdates.incrementAndGet();
+            try {
+                controller.update(update);
+            } catch (OwsExceptionReport | RuntimeException e) {
+                LOGGER.error("Error applying queued cache update {}", update, e);
+                lost++;
+            }
+        }
+        if (lost > 0) {
+            lostUpdates.addAndGet(lost);
+            LOGGER.warn("{} queued cache updates failed, updating the complete cache", lost);
+            try {
+                controller.update();
+            } catch (OwsExceptionReport | RuntimeException e) {
+                LOGGER.error("Error updating the cache after failed queued cache updates", e);
+            }
+        }
+    }
+
+    private List<Merged> merge(List<Pending> batch) {
+        List<Merged> updates = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            ContentCacheUpdate update = pending.getUpdate();
+            int last = updates.size() - 1;
+            if (update instanceof ObservationInsertionUpdate && last >= 0
+                    && updates.get(last).getUpdate() instanceof ObservationInsertionUpdate) {
+                updates.get(last).merge((ObservationInsertionUpdate) update);
+            } else {
+                updates.add(new Merged(update));
+            }
+        }
+        return updates;
+    }
+
+    /**
+     * A merged update and the queued updates it consists of.
+     */
+    private static class Merged {
+        private final List<ContentCacheUpdate> sources = new ArrayList<>();
+
+        private ContentCacheUpdate update;
+
+        Merged(ContentCacheUpdate update) {
+            this.update = update;
+            this.sources.add(update);
+        }
+
+        void merge(ObservationInsertionUpdate other) {
+            this.update = ((ObservationInsertionUpdate) update).merge(other);
+            this.sources.add(other);
+        }
+
+        ContentCacheUpdate getUpdate() {
+            return update;
+        }
+
+        List<ContentCacheUpdate> getSources() {
+            return sources;
+        }
+    }
+
+    private static class Pending {
+        private final ContentCacheUpdate update;
+
+        private final long sequence;
+
+        private final long enqueued = System.currentTimeMillis();
+
+        Pending(ContentCacheUpdate update, long sequence) {
+            this.update = update;
+            this.sequence = sequence;
+        }
+
+        ContentCacheUpdate getUpdate() {
+            return update;
+        }
+
+        long getSequence() {
+            return sequence;
+        }
+
+        long getAge() {
+            return System.currentTimeMillis() - enqueued;
+        }
+    }
+}
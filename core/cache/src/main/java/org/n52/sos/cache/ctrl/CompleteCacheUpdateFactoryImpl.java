@@ -30,17 +30,25 @@ package org.n52.sos.cache.ctrl;
 
 import javax.inject.Inject;
 
+import org.n52.faroe.annotation.Configurable;
+import org.n52.faroe.annotation.Setting;
 import org.n52.iceland.cache.ContentCacheUpdate;
 import org.n52.iceland.cache.ctrl.CompleteCacheUpdateFactory;
+import org.n52.iceland.cache.ctrl.ContentCacheFactory;
 import org.n52.iceland.coding.SupportedTypeRepository;
 import org.n52.sos.cache.ctrl.action.CompleteCacheUpdate;
+import org.n52.sos.cache.ctrl.action.IncrementalCacheUpdate;
 import org.n52.sos.ds.CacheFeederHandler;
+import org.n52.sos.service.SosSettings;
 
+@Configurable
 public class CompleteCacheUpdateFactoryImpl
         implements CompleteCacheUpdateFactory {
 
     private CacheFeederHandler cacheFeederHandler;
     private SupportedTypeRepository supportedTypeRepository;
+    private ContentCacheFactory cacheFactory;
+    private boolean incrementalUpdate;
 
     @Inject
     public void setCacheFeederHandler(CacheFeederHandler cacheFeederHandler) {
@@ -52,8 +60,33 @@ public class CompleteCacheUpdateFactoryImpl
         this.supportedTypeRepository = supportedTypeRepository;
     }
 
+    @Inject
+    public void setCacheFactory(ContentCacheFactory cacheFactory) {
+        this.cacheFactory = cacheFactory;
+    }
+
+    @Setting(SosSettings.CACHE_INCREMENTAL_UPDATE)
+    public void setIncrementalUpdate(boolean incrementalUpdate) {
+        this.incrementalUpdate = incrementalUpdate;
+    }
+
+    /**
+     * @return the update that applies the changes since the last update to
+     *         the current cache or {@code null} if incremental updates are
+     *         disabled
+     */
+    public IncrementalCacheUpdate getIncremental() {
+        if (this.incrementalUpdate) {
+            return new IncrementalCacheUpdate(this.cacheFeederHandler);
+        }
+        return null;
+    }
+
     @Override
     public ContentCacheUpdate get() {
+        if (this.cacheFactory != null) {
+            return new CompleteCacheUpdate(this.cacheFeederHandler, this.cacheFactory);
+        }
         return new CompleteCacheUpdate(this.cacheFeederHandler, this.supportedTypeRepository);
     }
 
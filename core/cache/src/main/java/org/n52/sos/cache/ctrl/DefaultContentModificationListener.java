@@ -29,17 +29,23 @@
 package org.n52.sos.cache.ctrl;
 
 import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 
 import javax.inject.Inject;
 
+import org.n52.faroe.annotation.Configurable;
+import org.n52.faroe.annotation.Setting;
 import org.n52.iceland.cache.ContentCacheController;
 import org.n52.iceland.cache.ContentCacheUpdate;
+import org.n52.iceland.cache.ctrl.CompleteCacheUpdateFactory;
 import org.n52.iceland.coding.SupportedTypeRepository;
 import org.n52.iceland.convert.ConverterRepository;
 import org.n52.janmayen.event.Event;
 import org.n52.janmayen.event.EventListener;
+import org.n52.janmayen.lifecycle.Destroyable;
 import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
+import org.n52.sos.cache.CacheUpdateBacklog;
 import org.n52.sos.cache.ctrl.action.CompleteCacheUpdate;
 import org.n52.sos.cache.ctrl.action.DeleteObservationUpdate;
 import org.n52.sos.cache.ctrl.action.FeatureInsertionUpdate;
@@ -59,17 +65,25 @@ import org.n52.sos.event.events.SensorDeletion;
 import org.n52.sos.event.events.SensorInsertion;
 import org.n52.sos.event.events.UpdateCache;
 import org.n52.sos.event.events.DeleteObservationEvent;
+import org.n52.sos.service.SosSettings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Sets;
 
 /**
+ * Updates the cache after content modifications. If asynchronous updates are
+ * enabled, the updates of observation and result insertions are queued and
+ * applied in batches by an {@link AsyncCacheUpdateQueue}. All other updates
+ * wait for the queue to be applied and are executed synchronously, so that
+ * e.g. inserted sensors are immediately available.
+ *
  * @author <a href="mailto:c.autermann@52north.org">Christian Autermann</a>
  * @since 4.0.0
  */
+@Configurable
 public class DefaultContentModificationListener
-        implements EventListener {
+        implements EventListener, CacheUpdateBacklog, Destroyable {
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultContentModificationListener.class);
 
     @SuppressWarnings("unchecked")
@@ -89,6 +103,10 @@ public class DefaultContentModificationListener
     private final ContentCacheController controller;
     private SupportedTypeRepository supportedTypeRepository;
     private ConverterRepository converterRepository;
+    private CompleteCacheUpdateFactory completeCacheUpdateFactory;
+    private boolean asynchronousUpdates;
+    private int maxStaleness;
+    private AsyncCacheUpdateQueue queue;
 
     @Inject
     public DefaultContentModificationListener(CacheFeederHandler handler, ContentCacheController controller) {
@@ -104,6 +122,15 @@ public class DefaultContentModificationListener
     @Override
     public void handle(Event event) {
         ContentCacheUpdate update = createUpdate(event);
+        AsyncCacheUpdateQueue updateQueue = getQueue();
+        if (updateQueue != null) {
+            if (isQueueable(event)) {
+                LOGGER.debug("Queueing cache update after content modification: {}", update);
+                updateQueue.enqueue(update);
+                return;
+            }
+            updateQueue.flush();
+        }
         LOGGER.debug("Updating Cache after content modification: {}", update);
         try {
             this.controller.update(update);
@@ -112,6 +139,70 @@ public class DefaultContentModificationListener
         }
     }
 
+    private boolean isQueueable(Event event) {
+        return event instanceof ObservationInsertion || event instanceof ResultInsertion;
+    }
+
+    private AsyncCacheUpdateQueue getQueue() {
+        AsyncCacheUpdateQueue stale = null;
+        AsyncCacheUpdateQueue current;
+        synchronized (this) {
+            if (asynchronousUpdates && queue == null) {
+                queue = new AsyncCacheUpdateQueue(controller, maxStaleness);
+            } else if (!asynchronousUpdates && queue != null) {
+                stale = queue;
+                queue = null;
+            }
+            current = queue;
+        }
+        shutdown(stale);
+        return current;
+    }
+
+    /**
+     * Applies the updates of a replaced queue. Called without holding the
+     * monitor of this listener, as this waits for the queued updates.
+     */
+    private void shutdown(AsyncCacheUpdateQueue stale) {
+        if (stale != null) {
+            stale.shutdown();
+        }
+    }
+
+    @Override
+    public synchronized Map<String, String> getBacklogStatistics() {
+        return queue != null ? queue.getStatistics() : Collections.emptyMap();
+    }
+
+    @Override
+    public void destroy() {
+        AsyncCacheUpdateQueue stale;
+        synchronized (this) {
+            stale = queue;
+            queue = null;
+        }
+        shutdown(stale);
+    }
+
+    @Setting(SosSettings.CACHE_ASYNC_UPDATE)
+    public synchronized void setAsynchronousUpdates(boolean asynchronousUpdates) {
+        this.asynchronousUpdates = asynchronousUpdates;
+    }
+
+    @Setting(SosSettings.CACHE_ASYNC_UPDATE_MAX_STALENESS)
+    public void setMaxStaleness(int maxStaleness) {
+        AsyncCacheUpdateQueue stale = null;
+        synchronized (this) {
+            this.maxStaleness = maxStaleness;
+            if (queue != null && queue.getMaxStaleness() != Math.max(maxStaleness, 0)) {
+                // recreated with the new staleness on the next event
+                stale = queue;
+                queue = null;
+            }
+        }
+        shutdown(stale);
+    }
+
     private ContentCacheUpdate createUpdate(Event event) {
         if (event instanceof SensorInsertion) {
             return createUpdate((SensorInsertion) event);
@@ -169,6 +260,9 @@ public class DefaultContentModificationListener
     }
 
     private ContentCacheUpdate createUpdate(UpdateCache e) {
+        if (this.completeCacheUpdateFactory != null) {
+            return this.completeCacheUpdateFactory.get();
+        }
         return new CompleteCacheUpdate(this.handler, this.supportedTypeRepository);
     }
 
@@ -177,6 +271,11 @@ public class DefaultContentModificationListener
         this.converterRepository = converterRepository;
     }
 
+    @Inject
+    public void setCompleteCacheUpdateFactory(CompleteCacheUpdateFactory completeCacheUpdateFactory) {
+        this.completeCacheUpdateFactory = completeCacheUpdateFactory;
+    }
+
     @Inject
     public void setSupportedTypeRepository(SupportedTypeRepository supportedTypeRepository) {
         this.supportedTypeRepository = supportedTypeRepository;
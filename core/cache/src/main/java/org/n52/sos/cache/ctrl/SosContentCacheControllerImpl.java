@@ -46,6 +46,8 @@ package org.n52.sos.cache.ctrl;
 
 import java.util.Optional;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
@@ -54,21 +56,28 @@ import java.util.concurrent.locks.ReentrantLock;
 import javax.inject.Inject;
 
 import org.joda.time.DateTime;
+import org.n52.faroe.annotation.Configurable;
+import org.n52.faroe.annotation.Setting;
 import org.n52.iceland.cache.ContentCacheController;
 import org.n52.iceland.cache.ContentCachePersistenceStrategy;
 import org.n52.iceland.cache.ContentCacheUpdate;
 import org.n52.iceland.cache.WritableContentCache;
 import org.n52.iceland.cache.ctrl.CompleteCacheUpdateFactory;
 import org.n52.iceland.cache.ctrl.ContentCacheFactory;
+import org.n52.janmayen.GroupedAndNamedThreadFactory;
 import org.n52.janmayen.lifecycle.Constructable;
 import org.n52.janmayen.lifecycle.Destroyable;
 import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
-import org.n52.sos.cache.AbstractStaticSosContentCache;
+import org.n52.sos.cache.CompactCacheImpl;
 import org.n52.sos.cache.ContentCacheFactoryImpl;
+import org.n52.sos.cache.CopyOnWriteCacheImpl;
+import org.n52.sos.cache.SnapshotCachePersistenceStrategy;
+import org.n52.sos.cache.ctrl.action.IncrementalCacheUpdate;
+import org.n52.sos.service.SosSettings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-
+@Configurable
 public class SosContentCacheControllerImpl implements ContentCacheController, Constructable, Destroyable {
     private static final Logger LOGGER = LoggerFactory.getLogger(SosContentCacheControllerImpl.class);
 
@@ -77,14 +86,27 @@ public class SosContentCacheControllerImpl implements ContentCacheController, Co
     private static final String STARTING_UPDATE = "Starting update {}";
     private static final String FINISHED_UPDATE = "Finished update {}";
     private static final String UPDATE_FAILED = "Update failed!";
+    /**
+     * Minimum number of pooled identifiers before a compact cache is rebuilt
+     * to drop the removed ones.
+     */
+    private static final int MIN_POOLED_IDENTIFIERS = 1024;
     private CompleteUpdate current;
     private CompleteUpdate next;
     private volatile WritableContentCache cache;
+    private volatile int pooledIdentifiers;
     private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Serializes the publication of new {@link CopyOnWriteCacheImpl}
+     * snapshots.
+     */
+    private final ReentrantLock publishLock = new ReentrantLock();
 
     private ContentCachePersistenceStrategy persistenceStrategy;
     private ContentCacheFactory cacheFactory;
     private CompleteCacheUpdateFactory completeCacheUpdateFactory;
+    private ExecutorService validationExecutor;
+    private boolean snapshotValidation;
 
     @Inject
     public void setCacheFactory(ContentCacheFactory cacheFactory) {
@@ -101,6 +123,11 @@ public class SosContentCacheControllerImpl implements ContentCacheController, Co
         this.completeCacheUpdateFactory = factory;
     }
 
+    @Setting(SosSettings.CACHE_SNAPSHOT_VALIDATION)
+    public void setSnapshotValidation(boolean snapshotValidation) {
+        this.snapshotValidation = snapshotValidation;
+    }
+
     @Override
     public void init() {
         loadOrCreateCache();
@@ -109,11 +136,13 @@ public class SosContentCacheControllerImpl implements ContentCacheController, Co
     private void loadOrCreateCache() {
         Optional<WritableContentCache> optionalCache = persistenceStrategy.load();
         if (optionalCache.isPresent()) {
-            setCache(optionalCache.get());
-            if (getCache() instanceof AbstractStaticSosContentCache
-                    && this.cacheFactory instanceof ContentCacheFactoryImpl) {
-                ((AbstractStaticSosContentCache) getCache()).setSupportedTypeRepository(
-                        ((ContentCacheFactoryImpl) this.cacheFactory).getSupportedTypeRepository());
+            if (this.cacheFactory instanceof ContentCacheFactoryImpl) {
+                setCache(((ContentCacheFactoryImpl) this.cacheFactory).convert(optionalCache.get()));
+            } else {
+                setCache(optionalCache.get());
+            }
+            if (snapshotValidation && persistenceStrategy instanceof SnapshotCachePersistenceStrategy) {
+                validateInBackground();
             }
         } else {
             // cache file doesn't exist, try to load cache from datasource
@@ -126,6 +155,24 @@ public class SosContentCacheControllerImpl implements ContentCacheController, Co
         }
     }
 
+    /**
+     * Snapshots are written asynchronously and may miss the latest changes,
+     * so the loaded cache is refreshed from the datasource while the service
+     * already answers requests.
+     */
+    private synchronized void validateInBackground() {
+        validationExecutor =
+                Executors.newSingleThreadExecutor(new GroupedAndNamedThreadFactory("cache-snapshot-validation"));
+        validationExecutor.execute(() -> {
+            try {
+                update();
+            } catch (OwsExceptionReport e) {
+                LOGGER.warn("Couldn't refresh the cache loaded from the snapshot", e);
+            }
+        });
+        // the thread terminates after the refresh
+        validationExecutor.shutdown();
+    }
 
     @Override
     public WritableContentCache getCache() {
@@ -134,10 +181,16 @@ public class SosContentCacheControllerImpl implements ContentCacheController, Co
 
     protected void setCache(WritableContentCache wcc) {
         this.cache = wcc;
+        this.pooledIdentifiers = getPooledIdentifierCount(wcc);
     }
 
     @Override
     public void destroy() {
+        synchronized (this) {
+            if (validationExecutor != null) {
+                validationExecutor.shutdownNow();
+            }
+        }
         lock();
         try {
             persistenceStrategy.persistOnShutdown(getCache());
@@ -166,7 +219,44 @@ public class SosContentCacheControllerImpl implements ContentCacheController, Co
 
     @Override
     public void update() throws OwsExceptionReport {
-        update(this.completeCacheUpdateFactory.get());
+        if (!updateIncrementally()) {
+            update(this.completeCacheUpdateFactory.get());
+        }
+    }
+
+    private boolean updateIncrementally() {
+        if (!(this.completeCacheUpdateFactory instanceof CompleteCacheUpdateFactoryImpl) || isUpdateInProgress()) {
+            return false;
+        }
+        if (isIdentifierPoolOutgrown()) {
+            LOGGER.debug("Rebuilding the compact cache to release removed identifiers");
+            return false;
+        }
+        IncrementalCacheUpdate update =
+                ((CompleteCacheUpdateFactoryImpl) this.completeCacheUpdateFactory).getIncremental();
+        if (update == null) {
+            return false;
+        }
+        try {
+            update(update);
+        } catch (OwsExceptionReport e) {
+            LOGGER.warn("Incremental cache update failed, falling back to a complete update", e);
+            return false;
+        }
+        return update.isApplied();
+    }
+
+    /**
+     * The identifier pool of a compact cache only grows, so incremental
+     * updates give way to a complete update, which builds a new pool, once it
+     * has doubled since the cache was built.
+     */
+    private boolean isIdentifierPoolOutgrown() {
+        return getPooledIdentifierCount(getCache()) > 2 * Math.max(this.pooledIdentifiers, MIN_POOLED_IDENTIFIERS);
+    }
+
+    private static int getPooledIdentifierCount(WritableContentCache cache) {
+        return cache instanceof CompactCacheImpl ? ((CompactCacheImpl) cache).getPooledIdentifierCount() : 0;
     }
 
     private void runCurrent() throws OwsExceptionReport {
@@ -185,19 +275,54 @@ public class SosContentCacheControllerImpl implements ContentCacheController, Co
     }
 
     private void executePartial(PartialUpdate update) throws OwsExceptionReport {
+        if (getCache() instanceof CopyOnWriteCacheImpl) {
+            executePartialOnCopy(update);
+            return;
+        }
         update.execute(getCache());
         lock();
         try {
             if (this.current != null) {
                 this.current.addUpdate(update);
             } else {
-                persistenceStrategy.persistOnPartialUpdate(getCache());
+                persistPartial(update);
             }
         } finally {
             unlock();
         }
     }
 
+    private void executePartialOnCopy(PartialUpdate update) throws OwsExceptionReport {
+        publishLock.lock();
+        try {
+            CopyOnWriteCacheImpl copy = ((CopyOnWriteCacheImpl) getCache()).copy();
+            update.execute(copy);
+            setCache(copy);
+            lock();
+            try {
+                if (this.current != null) {
+                    this.current.addUpdate(update);
+                } else {
+                    persistPartial(update);
+                }
+            } finally {
+                unlock();
+            }
+        } finally {
+            publishLock.unlock();
+        }
+    }
+
+    private void persistPartial(PartialUpdate update) {
+        if (persistenceStrategy instanceof SnapshotCachePersistenceStrategy) {
+            // lets the strategy journal the update instead of writing a snapshot
+            ((SnapshotCachePersistenceStrategy) persistenceStrategy).persistOnPartialUpdate(getCache(),
+                    update.getUpdate());
+        } else {
+            persistenceStrategy.persistOnPartialUpdate(getCache());
+        }
+    }
+
     private void executeComplete(CompleteUpdate update) throws OwsExceptionReport {
         boolean isCurrent = false;
         boolean isNext = false;
@@ -364,7 +489,22 @@ public class SosContentCacheControllerImpl implements ContentCacheController, Co
         }
 
         void execute() throws OwsExceptionReport {
-            setCache(execute(getCache()));
+            WritableContentCache cc = execute(getCache());
+            if (cc instanceof CopyOnWriteCacheImpl) {
+                publishLock.lock();
+                try {
+                    // apply partial updates published after the queue was drained
+                    PartialUpdate pu;
+                    while ((pu = updates.poll()) != null) {
+                        pu.execute(cc);
+                    }
+                    setCache(cc);
+                } finally {
+                    publishLock.unlock();
+                }
+            } else {
+                setCache(cc);
+            }
         }
 
         WritableContentCache execute(WritableContentCache cache) throws OwsExceptionReport {
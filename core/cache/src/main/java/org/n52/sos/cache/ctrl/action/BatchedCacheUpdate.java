@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.cache.ctrl.action;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.n52.iceland.cache.ContentCacheUpdate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes multiple partial updates on the same cache, so that the cache
+ * persistence is only required once for the whole batch. A failing update
+ * does not prevent the execution of the following updates and does not fail
+ * the batch, so the successful updates are persisted. The failed updates are
+ * available from {@link #getFailedUpdates()} to be retried individually.
+ *
+ * @since 5.3.2
+ */
+public class BatchedCacheUpdate extends InMemoryCacheUpdate {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchedCacheUpdate.class);
+
+    private final List<ContentCacheUpdate> updates;
+
+    private final List<ContentCacheUpdate> failed = new ArrayList<>();
+
+    public BatchedCacheUpdate(List<ContentCacheUpdate> updates) {
+        this.updates = updates;
+    }
+
+    public List<ContentCacheUpdate> getUpdates() {
+        return Collections.unmodifiableList(updates);
+    }
+
+    /**
+     * @return the updates of the last execution that failed
+     */
+    public List<ContentCacheUpdate> getFailedUpdates() {
+        return Collections.unmodifiableList(failed);
+    }
+
+    /**
+     * @return the updates of the last execution that were applied
+     */
+    public List<ContentCacheUpdate> getAppliedUpdates() {
+        return updates.stream().filter(u -> failed.stream().noneMatch(f -> f == u)).collect(Collectors.toList());
+    }
+
+    @Override
+    public void execute() {
+        failed.clear();
+        for (ContentCacheUpdate update : updates) {
+            try {
+                update.reset();
+                update.setCache(getCache());
+                update.execute();
+                if (update.failed()) {
+                    LOGGER.warn("Update {} of batch failed", update, update.getFailureCause());
+                    failed.add(update);
+                }
+            } catch (RuntimeException e) {
+                LOGGER.warn("Update {} of batch failed", update, e);
+                failed.add(update);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s [updates=%d]", getClass().getName(), updates.size());
+    }
+}
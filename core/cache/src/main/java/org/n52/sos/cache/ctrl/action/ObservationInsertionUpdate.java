@@ -30,20 +30,35 @@ package org.n52.sos.cache.ctrl.action;
 
 import com.google.common.base.Preconditions;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.joda.time.DateTime;
 import org.n52.shetland.ogc.sos.Sos2Constants;
 import org.n52.iceland.util.action.Action;
 import org.n52.shetland.ogc.OGCConstants;
 import org.n52.shetland.ogc.gml.AbstractFeature;
 import org.n52.shetland.ogc.gml.time.Time;
+import org.n52.shetland.ogc.gml.time.TimePeriod;
 import org.n52.shetland.ogc.om.AbstractPhenomenon;
 import org.n52.shetland.ogc.om.NamedValue;
 import org.n52.shetland.ogc.om.OmCompositePhenomenon;
 import org.n52.shetland.ogc.om.OmObservableProperty;
 import org.n52.shetland.ogc.om.OmObservation;
 import org.n52.shetland.ogc.om.features.samplingFeatures.AbstractSamplingFeature;
+import org.n52.shetland.util.ReferencedEnvelope;
+import org.n52.sos.cache.CacheSnapshotReader;
+import org.n52.sos.cache.CacheSnapshotWriter;
 import org.n52.sos.cache.InMemoryCacheImpl;
+import org.n52.sos.cache.JournaledCacheUpdate;
+import org.n52.sos.cache.WriteableTimeCache;
 import org.n52.shetland.ogc.sos.request.InsertObservationRequest;
 
 import org.locationtech.jts.geom.Envelope;
@@ -71,19 +86,94 @@ import org.locationtech.jts.geom.Geometry;
  * <li>Global temporal bounding box</li>
  * </ul>
  *
+ * The observations of the requests are merged per observation constellation
+ * before the cache is updated, so that the cache is only touched once per
+ * constellation and not once per observation. The merged constellations are
+ * also written to the cache journal, see {@link #writeJournal(CacheSnapshotWriter)}.
+ *
  * @author <a href="mailto:e.h.juerrens@52north.org">Eike Hinderk
  *         J&uuml;rrens</a>
  * @since 4.0.0
  *
  */
-public class ObservationInsertionUpdate extends InMemoryCacheUpdate {
+public class ObservationInsertionUpdate extends InMemoryCacheUpdate implements JournaledCacheUpdate {
+
+    private final List<InsertObservationRequest> requests;
 
-    private final InsertObservationRequest request;
+    private Collection<MergedConstellation> constellations;
 
     public ObservationInsertionUpdate(InsertObservationRequest request) {
-        Preconditions.checkArgument(request != null, "Missing argument: '%s': %s",
-                InsertObservationRequest.class.getName(), request);
-        this.request = request;
+        this(Collections.singletonList(request));
+    }
+
+    /**
+     * Update the cache for the observations of multiple requests at once.
+     *
+     * @param requests
+     *            the InsertObservation requests
+     * @since 5.3.2
+     */
+    public ObservationInsertionUpdate(List<InsertObservationRequest> requests) {
+        Preconditions.checkArgument(requests != null && !requests.isEmpty() && !requests.contains(null),
+                "Missing argument: '%s': %s", InsertObservationRequest.class.getName(), requests);
+        this.requests = requests;
+    }
+
+    private ObservationInsertionUpdate(Collection<MergedConstellation> constellations) {
+        this.requests = Collections.emptyList();
+        this.constellations = constellations;
+    }
+
+    /**
+     * @return the number of merged InsertObservation requests
+     * @since 5.3.2
+     */
+    public int getRequestCount() {
+        return requests.size();
+    }
+
+    /**
+     * Create an update for the observations of this and the other update.
+     *
+     * @param other
+     *            the update to merge
+     * @return the merged update
+     * @since 5.3.2
+     */
+    public ObservationInsertionUpdate merge(ObservationInsertionUpdate other) {
+        Preconditions.checkState(!requests.isEmpty() && !other.requests.isEmpty(),
+                "Updates read from the cache journal can not be merged");
+        List<InsertObservationRequest> merged = new ArrayList<>(requests.size() + other.requests.size());
+        merged.addAll(requests);
+        merged.addAll(other.requests);
+        return new ObservationInsertionUpdate(merged);
+    }
+
+    /**
+     * Writes the merged observation constellations. Replaying them only adds
+     * relations and extends bounding boxes, so replaying a journal entry that
+     * is already contained in the cache does not change it.
+     *
+     * @since 5.3.2
+     */
+    @Override
+    public void writeJournal(CacheSnapshotWriter writer) {
+        writer.writeCollection(getConstellations(), c -> c.write(writer));
+    }
+
+    /**
+     * Reads an update written by {@link #writeJournal(CacheSnapshotWriter)}.
+     * The update can not be merged with other updates.
+     *
+     * @param reader
+     *            the reader of the journal entry
+     * @return the update
+     * @since 5.3.2
+     */
+    public static ObservationInsertionUpdate readJournal(CacheSnapshotReader reader) {
+        List<MergedConstellation> constellations = new ArrayList<>();
+        reader.readCollection(constellations, () -> MergedConstellation.read(reader));
+        return new ObservationInsertionUpdate(constellations);
     }
 
     @Override
@@ -92,42 +182,36 @@ public class ObservationInsertionUpdate extends InMemoryCacheUpdate {
         // TODO Review required methods and update test accordingly (@see
         // SensorInsertionInMemoryCacheUpdate)
         // Always update the javadoc when changing this method!
-        for (OmObservation observation : request.getObservations()) {
-            AbstractPhenomenon observableProperty = observation.getObservationConstellation().getObservableProperty();
-            final String observationType = observation.getObservationConstellation().getObservationType();
-            final String procedure = observation.getObservationConstellation().getProcedure().getIdentifier();
-            final Time phenomenonTime = observation.getPhenomenonTime();
-            final Time resultTime = observation.getResultTime();
+        for (MergedConstellation constellation : getConstellations()) {
+            final String observationType = constellation.getObservationType();
+            final String procedure = constellation.getProcedure();
+            final Time phenomenonTime = constellation.getPhenomenonTime();
+            final Time resultTime = constellation.getResultTime();
+            final Collection<String> offerings = constellation.getOfferings();
 
             cache.updatePhenomenonTime(phenomenonTime);
             cache.updateResultTime(resultTime);
             cache.updatePhenomenonTimeForProcedure(procedure, phenomenonTime);
 
             // update features
-            List<AbstractSamplingFeature> observedFeatures =
-                    sosFeaturesToList(observation.getObservationConstellation().getFeatureOfInterest());
+            final Envelope envelope = constellation.getEnvelope();
 
-            final Envelope envelope = createEnvelopeFrom(observedFeatures);
-
-            for (AbstractSamplingFeature sosSamplingFeature : observedFeatures) {
-                String featureOfInterest = sosSamplingFeature.getIdentifierCodeWithAuthority().getValue();
+            for (Map.Entry<String, FeatureRecord> feature : constellation.getFeatures().entrySet()) {
+                String featureOfInterest = feature.getKey();
+                FeatureRecord sosSamplingFeature = feature.getValue();
 
                 cache.addFeatureOfInterest(featureOfInterest);
                 cache.addPublishedFeatureOfInterest(featureOfInterest);
-                cache.addPublishedFeatureOfInterest(featureOfInterest);
-                if (sosSamplingFeature.isSetName()) {
+                if (sosSamplingFeature.getName() != null) {
                     cache.addFeatureOfInterestIdentifierHumanReadableName(featureOfInterest,
-                            sosSamplingFeature.getFirstName().getValue());
+                            sosSamplingFeature.getName());
                 }
                 cache.addProcedureForFeatureOfInterest(featureOfInterest, procedure);
-                if (sosSamplingFeature.isSetSampledFeatures()) {
-                    for (AbstractFeature parentFeature : sosSamplingFeature.getSampledFeatures()) {
-                        cache.addParentFeature(sosSamplingFeature.getIdentifierCodeWithAuthority().getValue(),
-                                parentFeature.getIdentifierCodeWithAuthority().getValue());
-                        cache.addPublishedFeatureOfInterest(parentFeature.getIdentifierCodeWithAuthority().getValue());
-                    }
+                for (String parentFeature : sosSamplingFeature.getParentFeatures()) {
+                    cache.addParentFeature(featureOfInterest, parentFeature);
+                    cache.addPublishedFeatureOfInterest(parentFeature);
                 }
-                for (String offering : request.getOfferings()) {
+                for (String offering : offerings) {
                     cache.addRelatedFeatureForOffering(offering, featureOfInterest);
                     cache.addFeatureOfInterestForOffering(offering, featureOfInterest);
                     if (!OGCConstants.UNKNOWN.equals(sosSamplingFeature.getFeatureType())) {
@@ -137,23 +221,10 @@ public class ObservationInsertionUpdate extends InMemoryCacheUpdate {
             }
 
             // update Spatial Filtering Profile envelope
-            Envelope spatialFitleringProfileEnvelope = new Envelope();
-            if (observation.isSetParameter()) {
-                for (NamedValue<?> namedValue : observation.getParameter()) {
-                    if (Sos2Constants.HREF_PARAMETER_SPATIAL_FILTERING_PROFILE
-                            .equals(namedValue.getName().getHref())) {
-                        if (namedValue.getValue().isSetValue()) {
-                            spatialFitleringProfileEnvelope.expandToInclude(
-                                    ((Geometry) namedValue.getValue().getValue()).getEnvelopeInternal());
-                            spatialFitleringProfileEnvelope.expandToInclude(
-                                    ((Geometry) namedValue.getValue().getValue()).getEnvelopeInternal());
-                        }
-                    }
-                }
-            }
+            Envelope spatialFitleringProfileEnvelope = constellation.getSpatialFilteringProfileEnvelope();
 
             // update offerings
-            for (String offering : request.getOfferings()) {
+            for (String offering : offerings) {
                 // procedure
                 cache.addOffering(offering);
                 if (!cache.getHiddenChildProceduresForOffering(offering).contains(procedure)) {
@@ -172,33 +243,298 @@ public class ObservationInsertionUpdate extends InMemoryCacheUpdate {
                 }
             }
 
-            updateObservableProperties(cache, observableProperty, procedure);
+            updateObservableProperties(cache, constellation, procedure, offerings);
+        }
+    }
+
+    private Collection<MergedConstellation> getConstellations() {
+        if (constellations == null) {
+            constellations = mergeConstellations();
+        }
+        return constellations;
+    }
+
+    private Collection<MergedConstellation> mergeConstellations() {
+        Map<List<Object>, MergedConstellation> merged = new LinkedHashMap<>();
+        for (InsertObservationRequest request : requests) {
+            Set<String> offerings = new LinkedHashSet<>(request.getOfferings());
+            for (OmObservation observation : request.getObservations()) {
+                AbstractPhenomenon observableProperty =
+                        observation.getObservationConstellation().getObservableProperty();
+                String observationType = observation.getObservationConstellation().getObservationType();
+                String procedure = observation.getObservationConstellation().getProcedure().getIdentifier();
+                List<Object> key = Arrays.asList(offerings, procedure, observableProperty.getIdentifier(),
+                        observationType, observableProperty instanceof OmCompositePhenomenon);
+                merged.computeIfAbsent(key,
+                        k -> new MergedConstellation(offerings, procedure, observableProperty, observationType))
+                        .add(observation, sosFeaturesToList(
+                                observation.getObservationConstellation().getFeatureOfInterest()));
+            }
         }
+        return new ArrayList<>(merged.values());
     }
 
-    private void updateObservableProperties(InMemoryCacheImpl cache, AbstractPhenomenon observableProperty,
-            String procedure) {
+    private void updateObservableProperties(InMemoryCacheImpl cache, MergedConstellation constellation,
+            String procedure, Collection<String> offerings) {
+        String observableProperty = constellation.getObservableProperty();
         // procedure <-> observable property
-        cache.addProcedureForObservableProperty(observableProperty.getIdentifier(), procedure);
-        cache.addObservablePropertyForProcedure(procedure, observableProperty.getIdentifier());
+        cache.addProcedureForObservableProperty(observableProperty, procedure);
+        cache.addObservablePropertyForProcedure(procedure, observableProperty);
 
         // offering <-> observable property
-        for (String offering : request.getOfferings()) {
-            cache.addOfferingForObservableProperty(observableProperty.getIdentifier(), offering);
-            cache.addObservablePropertyForOffering(offering, observableProperty.getIdentifier());
+        for (String offering : offerings) {
+            cache.addOfferingForObservableProperty(observableProperty, offering);
+            cache.addObservablePropertyForOffering(offering, observableProperty);
+        }
+
+        if (constellation.isComposite()) {
+            cache.addCompositePhenomenon(observableProperty);
+            cache.addCompositePhenomenonForProcedure(procedure, observableProperty);
+            for (String offering : offerings) {
+                cache.addCompositePhenomenonForOffering(offering, observableProperty);
+            }
+
+            for (String child : constellation.getCompositeMembers()) {
+                cache.addObservablePropertyForCompositePhenomenon(observableProperty, child);
+                cache.addCompositePhenomenonForObservableProperty(child, observableProperty);
+            }
+        }
+    }
+
+    /**
+     * Time extent, features and envelopes of the observations of one
+     * observation constellation.
+     */
+    private static class MergedConstellation {
+        private final Set<String> offerings;
+        private final String procedure;
+        private final String observableProperty;
+        private final List<String> compositeMembers;
+        private final String observationType;
+        private final Map<String, FeatureRecord> features = new LinkedHashMap<>();
+        private final Envelope envelope = new Envelope();
+        private final Envelope spatialFilteringProfileEnvelope = new Envelope();
+        private final TimeExtent phenomenonTime = new TimeExtent();
+        private final TimeExtent resultTime = new TimeExtent();
+
+        MergedConstellation(Set<String> offerings, String procedure, AbstractPhenomenon observableProperty,
+                String observationType) {
+            this(offerings, procedure, observableProperty.getIdentifier(),
+                    getCompositeMembers(observableProperty), observationType);
+        }
+
+        private MergedConstellation(Set<String> offerings, String procedure, String observableProperty,
+                List<String> compositeMembers, String observationType) {
+            this.offerings = offerings;
+            this.procedure = procedure;
+            this.observableProperty = observableProperty;
+            this.compositeMembers = compositeMembers;
+            this.observationType = observationType;
+        }
+
+        private static List<String> getCompositeMembers(AbstractPhenomenon observableProperty) {
+            if (!(observableProperty instanceof OmCompositePhenomenon)) {
+                return null;
+            }
+            List<String> members = new ArrayList<>();
+            for (OmObservableProperty child : (OmCompositePhenomenon) observableProperty) {
+                members.add(child.getIdentifier());
+            }
+            return members;
+        }
+
+        void add(OmObservation observation, List<AbstractSamplingFeature> observedFeatures) {
+            phenomenonTime.add(observation.getPhenomenonTime());
+            resultTime.add(observation.getResultTime());
+            for (AbstractSamplingFeature feature : observedFeatures) {
+                features.computeIfAbsent(feature.getIdentifierCodeWithAuthority().getValue(),
+                        id -> new FeatureRecord(feature));
+                if (feature.isSetGeometry()) {
+                    envelope.expandToInclude(feature.getGeometry().getEnvelopeInternal());
+                }
+            }
+            if (observation.isSetParameter()) {
+                for (NamedValue<?> namedValue : observation.getParameter()) {
+                    if (Sos2Constants.HREF_PARAMETER_SPATIAL_FILTERING_PROFILE
+                            .equals(namedValue.getName().getHref())) {
+                        if (namedValue.getValue().isSetValue()) {
+                            spatialFilteringProfileEnvelope.expandToInclude(
+                                    ((Geometry) namedValue.getValue().getValue()).getEnvelopeInternal());
+                        }
+                    }
+                }
+            }
+        }
+
+        void write(CacheSnapshotWriter writer) {
+            writer.writeIdentifiers(offerings);
+            writer.writeString(procedure);
+            writer.writeString(observableProperty);
+            writer.writeBoolean(compositeMembers != null);
+            if (compositeMembers != null) {
+                writer.writeIdentifiers(compositeMembers);
+            }
+            writer.writeString(observationType);
+            writer.writeMap(features, writer::writeString, feature -> feature.write(writer));
+            writer.writeEnvelope(new ReferencedEnvelope(envelope, 0));
+            writer.writeEnvelope(new ReferencedEnvelope(spatialFilteringProfileEnvelope, 0));
+            phenomenonTime.write(writer);
+            resultTime.write(writer);
+        }
+
+        static MergedConstellation read(CacheSnapshotReader reader) {
+            Set<String> offerings = new LinkedHashSet<>(reader.readIdentifiers());
+            String procedure = reader.readString();
+            String observableProperty = reader.readString();
+            List<String> compositeMembers = reader.readBoolean() ? reader.readIdentifiers() : null;
+            String observationType = reader.readString();
+            MergedConstellation constellation = new MergedConstellation(offerings, procedure, observableProperty,
+                    compositeMembers, observationType);
+            reader.readMap(constellation.features, reader::readString, () -> FeatureRecord.read(reader));
+            constellation.envelope.expandToInclude(reader.readEnvelope().getEnvelope());
+            constellation.spatialFilteringProfileEnvelope.expandToInclude(reader.readEnvelope().getEnvelope());
+            constellation.phenomenonTime.read(reader);
+            constellation.resultTime.read(reader);
+            return constellation;
+        }
+
+        Set<String> getOfferings() {
+            return offerings;
+        }
+
+        String getProcedure() {
+            return procedure;
+        }
+
+        String getObservableProperty() {
+            return observableProperty;
+        }
+
+        boolean isComposite() {
+            return compositeMembers != null;
+        }
+
+        List<String> getCompositeMembers() {
+            return compositeMembers;
+        }
+
+        String getObservationType() {
+            return observationType;
+        }
+
+        Map<String, FeatureRecord> getFeatures() {
+            return features;
+        }
+
+        Envelope getEnvelope() {
+            return envelope;
+        }
+
+        Envelope getSpatialFilteringProfileEnvelope() {
+            return spatialFilteringProfileEnvelope;
+        }
+
+        Time getPhenomenonTime() {
+            return phenomenonTime.get();
         }
 
-        if (observableProperty instanceof OmCompositePhenomenon) {
-            OmCompositePhenomenon parent = (OmCompositePhenomenon) observableProperty;
-            cache.addCompositePhenomenon(parent.getIdentifier());
-            cache.addCompositePhenomenonForProcedure(procedure, parent.getIdentifier());
-            for (String offering : request.getOfferings()) {
-                cache.addCompositePhenomenonForOffering(offering, parent.getIdentifier());
+        Time getResultTime() {
+            return resultTime.get();
+        }
+    }
+
+    /**
+     * The parts of a feature of interest that are stored in the cache.
+     */
+    private static class FeatureRecord {
+        private final String name;
+        private final String featureType;
+        private final List<String> parentFeatures;
+
+        FeatureRecord(AbstractSamplingFeature feature) {
+            this.name = feature.isSetName() ? feature.getFirstName().getValue() : null;
+            this.featureType = feature.getFeatureType();
+            this.parentFeatures = new ArrayList<>();
+            if (feature.isSetSampledFeatures()) {
+                for (AbstractFeature parentFeature : feature.getSampledFeatures()) {
+                    parentFeatures.add(parentFeature.getIdentifierCodeWithAuthority().getValue());
+                }
+            }
+        }
+
+        private FeatureRecord(String name, String featureType, List<String> parentFeatures) {
+            this.name = name;
+            this.featureType = featureType;
+            this.parentFeatures = parentFeatures;
+        }
+
+        void write(CacheSnapshotWriter writer) {
+            writer.writeString(name);
+            writer.writeString(featureType);
+            writer.writeIdentifiers(parentFeatures);
+        }
+
+        static FeatureRecord read(CacheSnapshotReader reader) {
+            return new FeatureRecord(reader.readString(), reader.readString(), reader.readIdentifiers());
+        }
+
+        String getName() {
+            return name;
+        }
+
+        String getFeatureType() {
+            return featureType;
+        }
+
+        List<String> getParentFeatures() {
+            return parentFeatures;
+        }
+    }
+
+    /**
+     * Extent of merged times. A single time is kept as is, multiple times are
+     * merged into a new {@link TimePeriod} so that the times of the
+     * observations are not modified.
+     */
+    private static class TimeExtent {
+        private Time time;
+        private TimePeriod period;
+
+        void add(Time other) {
+            if (other == null || other.equals(time)) {
+                return;
+            }
+            if (time == null && period == null) {
+                time = other;
+                return;
             }
+            if (period == null) {
+                period = new TimePeriod();
+                period.extendToContain(time);
+                time = null;
+            }
+            period.extendToContain(other);
+        }
+
+        Time get() {
+            return period != null ? period : time;
+        }
+
+        void write(CacheSnapshotWriter writer) {
+            Time extent = get();
+            writer.writeBoolean(extent != null);
+            if (extent != null) {
+                TimePeriod tp = WriteableTimeCache.toTimePeriod(extent);
+                writer.writeDateTime(tp.getStart());
+                writer.writeDateTime(tp.getEnd());
+            }
+        }
 
-            for (OmObservableProperty child : parent) {
-                cache.addObservablePropertyForCompositePhenomenon(parent.getIdentifier(), child.getIdentifier());
-                cache.addCompositePhenomenonForObservableProperty(child.getIdentifier(), parent.getIdentifier());
+        void read(CacheSnapshotReader reader) {
+            if (reader.readBoolean()) {
+                DateTime start = reader.readDateTime();
+                DateTime end = reader.readDateTime();
+                add(new TimePeriod(start, end));
             }
         }
     }
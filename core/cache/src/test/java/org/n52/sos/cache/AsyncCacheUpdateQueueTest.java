@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.iceland.cache.ContentCacheUpdate;
+import org.n52.iceland.cache.ctrl.persistence.NoOpCachePersistenceStrategy;
+import org.n52.shetland.ogc.ows.exception.NoApplicableCodeException;
+import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
+import org.n52.shetland.ogc.sos.request.InsertObservationRequest;
+import org.n52.sos.cache.ctrl.AsyncCacheUpdateQueue;
+import org.n52.sos.cache.ctrl.CompleteCacheUpdateFactoryImpl;
+import org.n52.sos.cache.ctrl.SosContentCacheControllerImpl;
+import org.n52.sos.cache.ctrl.action.ObservationInsertionUpdate;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+public class AsyncCacheUpdateQueueTest {
+
+    private static final String PROCEDURE = "procedure";
+
+    private static final long NO_STALENESS = 0L;
+
+    private static final long HIGH_STALENESS = 60000L;
+
+    private final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+
+    private RecordingController controller;
+
+    private AsyncCacheUpdateQueue queue;
+
+    @Before
+    public void setUp() {
+        CompleteCacheUpdateFactoryImpl cacheUpdateFactory = new CompleteCacheUpdateFactoryImpl();
+        cacheUpdateFactory.setCacheFeederHandler(new NoOpCacheFeederHandler());
+        cacheUpdateFactory.setCacheFactory(InMemoryCacheImpl::new);
+        controller = new RecordingController();
+        controller.setCacheFactory(InMemoryCacheImpl::new);
+        controller.setPersistenceStrategy(new NoOpCachePersistenceStrategy());
+        controller.setCompleteCacheUpdateFactory(cacheUpdateFactory);
+        controller.init();
+        controller.completeUpdates.set(0);
+    }
+
+    @After
+    public void tearDown() {
+        controller.release();
+        if (queue != null) {
+            queue.shutdown();
+        }
+        controller.destroy();
+    }
+
+    @Test
+    public void shouldMergeAdjacentObservationInsertions() {
+        queue = new AsyncCacheUpdateQueue(controller, HIGH_STALENESS);
+        controller.block();
+        queue.enqueue(new AddProcedureUpdate(PROCEDURE));
+        controller.awaitBlocked();
+        for (int i = 0; i < 3; i++) {
+            queue.enqueue(new ObservationInsertionUpdate(new InsertObservationRequest()));
+        }
+        controller.release();
+        queue.flush();
+        assertThat(controller.updates, hasSize(2));
+        assertThat(controller.updates.get(1), is(instanceOf(ObservationInsertionUpdate.class)));
+        assertThat(((ObservationInsertionUpdate) controller.updates.get(1)).getRequestCount(), is(3));
+        assertThat(queue.getStatistics(), hasEntry("merged_updates", "2"));
+    }
+
+    @Test
+    public void shouldApplyUpdatesInOrderBeforeFlushReturns() {
+        queue = new AsyncCacheUpdateQueue(controller, HIGH_STALENESS);
+        controller.block();
+        List<String> procedures = IntStream.range(0, 100).mapToObj(i -> PROCEDURE + i).collect(Collectors.toList());
+        queue.enqueue(new AddProcedureUpdate(procedures.get(0)));
+        controller.awaitBlocked();
+        procedures.stream().skip(1).forEach(p -> queue.enqueue(new AddProcedureUpdate(p)));
+        controller.release();
+        queue.flush();
+        assertThat(executed, is(procedures));
+        assertThat(getCache().getProcedures(), containsInAnyOrder(procedures.toArray()));
+        assertThat(queue.getBacklog(), is(0));
+    }
+
+    @Test
+    public void shouldWaitIfTheBacklogExceedsTheMaxStaleness() throws InterruptedException {
+        queue = new AsyncCacheUpdateQueue(controller, NO_STALENESS);
+        controller.block();
+        queue.enqueue(new AddProcedureUpdate(PROCEDURE + 1));
+        controller.awaitBlocked();
+        queue.enqueue(new AddProcedureUpdate(PROCEDURE + 2));
+        Thread.sleep(20);
+        Thread enqueuing = new Thread(() -> queue.enqueue(new AddProcedureUpdate(PROCEDURE + 3)));
+        enqueuing.start();
+        enqueuing.join(200);
+        assertThat(enqueuing.isAlive(), is(true));
+        controller.release();
+        enqueuing.join(10000);
+        assertThat(enqueuing.isAlive(), is(false));
+        assertThat(executed, contains(PROCEDURE + 1, PROCEDURE + 2, PROCEDURE + 3));
+    }
+
+    @Test
+    public void shouldNotWaitWithinTheMaxStaleness() throws InterruptedException {
+        queue = new AsyncCacheUpdateQueue(controller, HIGH_STALENESS);
+        controller.block();
+        queue.enqueue(new AddProcedureUpdate(PROCEDURE + 1));
+        controller.awaitBlocked();
+        queue.enqueue(new AddProcedureUpdate(PROCEDURE + 2));
+        Thread.sleep(20);
+        queue.enqueue(new AddProcedureUpdate(PROCEDURE + 3));
+        assertThat(queue.getBacklog(), is(2));
+    }
+
+    @Test
+    public void shouldApplyQueuedUpdatesOnShutdown() {
+        queue = new AsyncCacheUpdateQueue(controller, HIGH_STALENESS);
+        controller.block();
+        for (int i = 0; i < 5; i++) {
+            queue.enqueue(new AddProcedureUpdate(PROCEDURE + i));
+        }
+        controller.awaitBlocked();
+        new Thread(() -> {
+            Uninterruptibles.sleepUninterruptibly(100, TimeUnit.MILLISECONDS);
+            controller.release();
+        }).start();
+        queue.shutdown();
+        assertThat(executed, hasSize(5));
+        assertThat(queue.getBacklog(), is(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectUpdatesAfterShutdown() {
+        queue = new AsyncCacheUpdateQueue(controller, HIGH_STALENESS);
+        queue.shutdown();
+        queue.enqueue(new AddProcedureUpdate(PROCEDURE));
+    }
+
+    @Test
+    public void shouldApplyTheOtherUpdatesOfABatchWithAFailedUpdate() {
+        queue = new AsyncCacheUpdateQueue(controller, HIGH_STALENESS);
+        controller.block();
+        queue.enqueue(new AddProcedureUpdate(PROCEDURE + 1));
+        controller.awaitBlocked();
+        FailingUpdate failing = new FailingUpdate();
+        queue.enqueue(new AddProcedureUpdate(PROCEDURE + 2));
+        queue.enqueue(failing);
+        queue.enqueue(new AddProcedureUpdate(PROCEDURE + 3));
+        controller.release();
+        queue.flush();
+        assertThat(getCache().getProcedures(), containsInAnyOrder(PROCEDURE + 1, PROCEDURE + 2, PROCEDURE + 3));
+        // executed in the batch and retried once
+        assertThat(failing.attempts.get(), is(2));
+        // the lost update is recovered by a complete update
+        assertThat(controller.completeUpdates.get(), is(1));
+        assertThat(queue.getStatistics(), hasEntry("retried_updates", "1"));
+        assertThat(queue.getStatistics(), hasEntry("lost_updates", "1"));
+    }
+
+    @Test
+    public void shouldNotScheduleACompleteUpdateIfTheRetrySucceeds() {
+        queue = new AsyncCacheUpdateQueue(controller, HIGH_STALENESS);
+        controller.block();
+        queue.enqueue(new AddProcedureUpdate(PROCEDURE + 1));
+        controller.awaitBlocked();
+        FailingUpdate failing = new FailingUpdate(1);
+        queue.enqueue(failing);
+        queue.enqueue(new AddProcedureUpdate(PROCEDURE + 2));
+        controller.release();
+        queue.flush();
+        assertThat(failing.attempts.get(), is(2));
+        assertThat(controller.completeUpdates.get(), is(0));
+        assertThat(queue.getStatistics(), hasEntry("lost_updates", "0"));
+    }
+
+    private SosContentCache getCache() {
+        return (SosContentCache) controller.getCache();
+    }
+
+    private static class RecordingController extends SosContentCacheControllerImpl {
+        private final List<ContentCacheUpdate> updates = Collections.synchronizedList(new ArrayList<>());
+
+        private final AtomicInteger completeUpdates = new AtomicInteger();
+
+        private volatile CountDownLatch blocked;
+
+        private volatile CountDownLatch released;
+
+        void block() {
+            blocked = new CountDownLatch(1);
+            released = new CountDownLatch(1);
+        }
+
+        void awaitBlocked() {
+            Uninterruptibles.awaitUninterruptibly(blocked);
+        }
+
+        void release() {
+            if (released != null) {
+                released.countDown();
+            }
+        }
+
+        @Override
+        public void update(ContentCacheUpdate update) throws OwsExceptionReport {
+            if (released != null && released.getCount() > 0) {
+                blocked.countDown();
+                Uninterruptibles.awaitUninterruptibly(released);
+            }
+            updates.add(update);
+            if (!(update instanceof ObservationInsertionUpdate)) {
+                super.update(update);
+            }
+        }
+
+        @Override
+        public void update() {
+            completeUpdates.incrementAndGet();
+        }
+    }
+
+    private class AddProcedureUpdate extends SosContentCacheUpdate {
+        private final String procedure;
+
+        AddProcedureUpdate(String procedure) {
+            this.procedure = procedure;
+        }
+
+        @Override
+        public void execute() {
+            getCache().addProcedure(procedure);
+            executed.add(procedure);
+        }
+
+        @Override
+        public boolean isCompleteUpdate() {
+            return false;
+        }
+    }
+
+    private static class FailingUpdate extends SosContentCacheUpdate {
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        private final int failures;
+
+        FailingUpdate() {
+            this(Integer.MAX_VALUE);
+        }
+
+        FailingUpdate(int failures) {
+            this.failures = failures;
+        }
+
+        @Override
+        public void execute() {
+            if (attempts.incrementAndGet() <= failures) {
+                fail(new NoApplicableCodeException().withMessage("failing update"));
+            }
+        }
+
+        @Override
+        public boolean isCompleteUpdate() {
+            return false;
+        }
+    }
+}
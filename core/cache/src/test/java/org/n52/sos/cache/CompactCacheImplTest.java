@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.n52.iceland.cache.WritableContentCache;
+import org.n52.sos.cache.SosContentCache.ComponentAggregation;
+import org.n52.sos.cache.SosContentCache.TypeInstance;
+
+import com.google.common.collect.Sets;
+
+public class CompactCacheImplTest {
+
+    @Test
+    public void shouldMaintainRelations() {
+        CompactCacheImpl cache = new CompactCacheImpl();
+        cache.addProcedure("procedure");
+        cache.setOfferingsForProcedure("procedure", Arrays.asList("offering1", "offering2"));
+        cache.addOfferingForProcedure("procedure", "offering3");
+        cache.addFeatureOfInterestForOffering("offering1", "feature");
+        cache.removeOfferingForProcedure("procedure", "offering2");
+        assertThat(cache.getProcedures(), containsInAnyOrder("procedure"));
+        assertThat(cache.getOfferingsForProcedure("procedure"), containsInAnyOrder("offering1", "offering3"));
+        assertThat(cache.getFeaturesOfInterestForOffering("offering1"), containsInAnyOrder("feature"));
+        assertThat(cache.getOfferingsForFeatureOfInterest("feature"), containsInAnyOrder("offering1"));
+        cache.removeFeatureOfInterest("feature");
+        cache.removeOfferingsForProcedure("procedure");
+        assertThat(cache.getOfferingsForProcedure("procedure"), is(empty()));
+        assertThat(cache.getIdentifierPool().size() > 0, is(true));
+    }
+
+    @Test
+    public void shouldComputeUnionsAndIntersectionsLikeInMemoryCache() {
+        InMemoryCacheImpl inMemory = new InMemoryCacheImpl();
+        CompactCacheImpl compact = new CompactCacheImpl();
+        for (InMemoryCacheImpl cache : Arrays.asList(inMemory, compact)) {
+            cache.addProcedures(Arrays.asList("procedure1", "procedure2", "procedure3"));
+            cache.addOfferingForProcedure("procedure1", "offering1");
+            cache.addOfferingForProcedure("procedure2", "offering2");
+            cache.addObservablePropertyForOffering("offering1", "property1");
+            cache.addObservablePropertyForOffering("offering2", "property1");
+            cache.addObservablePropertyForOffering("offering2", "property2");
+            cache.addTypeInstanceProcedure(TypeInstance.INSTANCE, "procedure2");
+            cache.addTypeInstanceProcedure(TypeInstance.INSTANCE, "procedure4");
+            cache.addComponentAggregationProcedure(ComponentAggregation.AGGREGATION, "procedure3");
+        }
+        assertThat(compact.getObservableProperties(), containsInAnyOrder("property1", "property2"));
+        assertThat(compact.getObservableProperties(), is(inMemory.getObservableProperties()));
+        assertThat(compact.getOfferingsForProcedures(Sets.newHashSet("procedure1", "procedure2", "procedure3")),
+                is(inMemory.getOfferingsForProcedures(Sets.newHashSet("procedure1", "procedure2", "procedure3"))));
+        assertThat(compact.getQueryableProcedures(true, false), containsInAnyOrder("procedure2"));
+        assertThat(compact.getQueryableProcedures(true, false), is(inMemory.getQueryableProcedures(true, false)));
+        assertThat(compact.getQueryableProcedures(false, true), is(inMemory.getQueryableProcedures(false, true)));
+    }
+
+    @Test
+    public void shouldConvertBetweenImplementations() {
+        InMemoryCacheImpl cache = new InMemoryCacheImpl();
+        cache.addProcedure("procedure");
+        cache.addOfferingForProcedure("procedure", "offering");
+        ContentCacheFactoryImpl factory = new ContentCacheFactoryImpl();
+        factory.setCompact(true);
+        WritableContentCache compact = factory.convert(cache);
+        assertThat(compact, is(instanceOf(CompactCacheImpl.class)));
+        assertThat(((CompactCacheImpl) compact).getOfferingsForProcedure("procedure"), containsInAnyOrder("offering"));
+        factory.setCompact(false);
+        WritableContentCache inMemory = factory.convert(compact);
+        assertThat(inMemory, is(instanceOf(InMemoryCacheImpl.class)));
+        assertThat(inMemory, is(not(instanceOf(CompactCacheImpl.class))));
+        assertThat(inMemory, is(cache));
+        factory.setCompact(true);
+        factory.setCopyOnWrite(true);
+        WritableContentCache copyOnWrite = factory.convert(inMemory);
+        assertThat(copyOnWrite, is(instanceOf(CompactCopyOnWriteCacheImpl.class)));
+        CompactCopyOnWriteCacheImpl copy = ((CompactCopyOnWriteCacheImpl) copyOnWrite).copy();
+        assertThat(copy, is(copyOnWrite));
+        assertThat(copy.getOfferingsForProcedure("procedure"), containsInAnyOrder("offering"));
+    }
+}
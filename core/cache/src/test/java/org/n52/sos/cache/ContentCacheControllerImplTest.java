@@ -569,6 +569,25 @@ public class ContentCacheControllerImplTest {
                 getCache().getResultTemplates().contains(RESULT_TEMPLATE_IDENTIFIER));
     }
 
+    @Test
+    public void should_update_bounding_boxes_after_merged_InsertObservations()
+            throws OwsExceptionReport {
+        updateCacheWithInsertSensor(PROCEDURE);
+        insertObservationRequestExample(PROCEDURE, 11.0, 22.0, WGS84, FEATURE, 1000L);
+        ObservationInsertionUpdate first = new ObservationInsertionUpdate((InsertObservationRequest) request);
+        insertObservationRequestExample(PROCEDURE, 33.0, 44.0, WGS84, FEATURE, 5000L);
+        ObservationInsertionUpdate second = new ObservationInsertionUpdate((InsertObservationRequest) request);
+
+        ObservationInsertionUpdate merged = first.merge(second);
+        Assert.assertEquals(2, merged.getRequestCount());
+        controller.update(merged);
+
+        Assert.assertEquals(MIN_TIME, 1000L, getCache().getMinPhenomenonTimeForProcedure(PROCEDURE).getMillis());
+        Assert.assertEquals(MAX_TIME, 5000L, getCache().getMaxPhenomenonTimeForProcedure(PROCEDURE).getMillis());
+        MatcherAssert.assertThat(getCache().getEnvelopeForOffering(OFFERING).getEnvelope().getWidth(),
+                Matchers.greaterThan(0.0));
+    }
+
     @Test
     public void should_reset_global_temporal_bounding_box_after_DeleteSensor_of_not_last_sensor()
             throws OwsExceptionReport {
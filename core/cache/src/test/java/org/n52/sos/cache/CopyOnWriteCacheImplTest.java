@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.iceland.cache.ctrl.persistence.NoOpCachePersistenceStrategy;
+import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
+import org.n52.sos.cache.ctrl.CompleteCacheUpdateFactoryImpl;
+import org.n52.sos.cache.ctrl.SosContentCacheControllerImpl;
+
+public class CopyOnWriteCacheImplTest {
+
+    private static final String PROCEDURE = "procedure";
+
+    private static final String OFFERING = "offering";
+
+    private SosContentCacheControllerImpl controller;
+
+    @Before
+    public void setUp() {
+        CompleteCacheUpdateFactoryImpl cacheUpdateFactory = new CompleteCacheUpdateFactoryImpl();
+        cacheUpdateFactory.setCacheFeederHandler(new NoOpCacheFeederHandler());
+        cacheUpdateFactory.setCacheFactory(CopyOnWriteCacheImpl::new);
+        controller = new SosContentCacheControllerImpl();
+        controller.setCacheFactory(CopyOnWriteCacheImpl::new);
+        controller.setPersistenceStrategy(new NoOpCachePersistenceStrategy());
+        controller.setCompleteCacheUpdateFactory(cacheUpdateFactory);
+        controller.init();
+    }
+
+    @After
+    public void tearDown() {
+        controller.destroy();
+    }
+
+    @Test
+    public void shouldCreateIndependentCopy() {
+        CopyOnWriteCacheImpl cache = new CopyOnWriteCacheImpl();
+        cache.addProcedure(PROCEDURE);
+        cache.addOfferingForProcedure(PROCEDURE, OFFERING);
+        CopyOnWriteCacheImpl copy = cache.copy();
+        assertThat(copy, is(cache));
+        copy.addOfferingForProcedure(PROCEDURE, OFFERING + 2);
+        copy.removeProcedure(PROCEDURE);
+        assertThat(cache.getProcedures(), contains(PROCEDURE));
+        assertThat(cache.getOfferingsForProcedure(PROCEDURE), contains(OFFERING));
+        assertThat(copy.getProcedures(), is(empty()));
+    }
+
+    @Test
+    public void shouldPublishPartialUpdatesAsNewSnapshot() throws OwsExceptionReport {
+        SosContentCache before = (SosContentCache) controller.getCache();
+        assertThat(before, is(instanceOf(CopyOnWriteCacheImpl.class)));
+        controller.update(new AddProcedureUpdate(PROCEDURE));
+        SosContentCache after = (SosContentCache) controller.getCache();
+        assertThat(after, is(not(sameInstance(before))));
+        assertThat(before.hasProcedure(PROCEDURE), is(false));
+        assertThat(after.hasProcedure(PROCEDURE), is(true));
+        assertThat(after.getOfferingsForProcedure(PROCEDURE), contains(PROCEDURE + OFFERING));
+    }
+
+    @Test
+    public void shouldNeverExposePartiallyAppliedUpdates() throws InterruptedException {
+        int writes = 200;
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicInteger inconsistent = new AtomicInteger(0);
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        for (int i = 0; i < 4; i++) {
+            executor.execute(() -> {
+                while (!done.get()) {
+                    SosContentCache cache = (SosContentCache) controller.getCache();
+                    for (String procedure : cache.getProcedures()) {
+                        if (cache.getOfferingsForProcedure(procedure).isEmpty()) {
+                            inconsistent.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        for (int i = 0; i < 2; i++) {
+            int writer = i;
+            executor.execute(() -> {
+                for (int j = 0; j < writes; j++) {
+                    try {
+                        controller.update(new AddProcedureUpdate(PROCEDURE + writer + "-" + j));
+                    } catch (OwsExceptionReport e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+        while (((SosContentCache) controller.getCache()).getProcedures().size() < 2 * writes) {
+            Thread.sleep(10);
+        }
+        done.set(true);
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS), is(true));
+        assertThat(inconsistent.get(), is(0));
+    }
+
+    private static class AddProcedureUpdate extends SosContentCacheUpdate {
+        private final String procedure;
+
+        AddProcedureUpdate(String procedure) {
+            this.procedure = procedure;
+        }
+
+        @Override
+        public void execute() {
+            getCache().addProcedure(procedure);
+            Thread.yield();
+            getCache().addOfferingForProcedure(procedure, procedure + OFFERING);
+        }
+
+        @Override
+        public boolean isCompleteUpdate() {
+            return false;
+        }
+    }
+}
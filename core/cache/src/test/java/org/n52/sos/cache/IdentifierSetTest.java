@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class IdentifierSetTest {
+
+    private final IdentifierPool pool = new IdentifierPool();
+
+    @Test
+    public void shouldBehaveLikeASet() {
+        IdentifierSet set = pool.newSet(Arrays.asList("c", "a", "b", "a"));
+        assertThat(set.size(), is(3));
+        assertThat(set.contains("a"), is(true));
+        assertThat(set.contains("z"), is(false));
+        assertThat(set.add("a"), is(false));
+        assertThat(set.remove("b"), is(true));
+        assertThat(set.remove("b"), is(false));
+        assertThat(set, containsInAnyOrder("a", "c"));
+        assertThat(set.equals(new HashSet<>(Arrays.asList("a", "c"))), is(true));
+        assertThat(new HashSet<>(Arrays.asList("a", "c")).equals(set), is(true));
+        set.clear();
+        assertThat(set, is(empty()));
+    }
+
+    @Test
+    public void shouldIntersectAndUniteSets() {
+        IdentifierSet a = pool.newSet(Arrays.asList("1", "2", "3"));
+        IdentifierSet b = pool.newSet(Arrays.asList("2", "3", "4"));
+        Set<String> intersection = pool.newSet(a);
+        assertThat(intersection.retainAll(b), is(true));
+        assertThat(intersection, containsInAnyOrder("2", "3"));
+        Set<String> union = pool.newSet(a);
+        assertThat(union.addAll(b), is(true));
+        assertThat(union, containsInAnyOrder("1", "2", "3", "4"));
+        assertThat(union.addAll(b), is(false));
+    }
+
+    @Test
+    public void shouldIntersectAndUniteLikeHashSets() {
+        Random random = new Random(42);
+        IdentifierPool otherPool = new IdentifierPool();
+        for (int run = 0; run < 100; run++) {
+            Set<String> a = randomIdentifiers(random);
+            Set<String> b = randomIdentifiers(random);
+            Set<String> expectedUnion = new HashSet<>(a);
+            boolean unionModified = expectedUnion.addAll(b);
+            Set<String> expectedIntersection = new HashSet<>(a);
+            boolean intersectionModified = expectedIntersection.retainAll(b);
+
+            // merged with a set of the same pool
+            IdentifierSet union = pool.newSet(a);
+            assertThat(union.addAll(pool.newSet(b)), is(unionModified));
+            assertThat(union, is(expectedUnion));
+            IdentifierSet intersection = pool.newSet(a);
+            assertThat(intersection.retainAll(pool.newSet(b)), is(intersectionModified));
+            assertThat(intersection, is(expectedIntersection));
+
+            // element wise with other collections
+            union = pool.newSet(a);
+            assertThat(union.addAll(otherPool.newSet(b)), is(unionModified));
+            assertThat(union, is(expectedUnion));
+            intersection = pool.newSet(a);
+            assertThat(intersection.retainAll(new HashSet<>(b)), is(intersectionModified));
+            assertThat(intersection, is(expectedIntersection));
+        }
+    }
+
+    @Test
+    public void shouldIntersectAndUniteWithItself() {
+        IdentifierSet set = pool.newSet(Arrays.asList("1", "2"));
+        assertThat(set.addAll(set), is(false));
+        assertThat(set.retainAll(set), is(false));
+        assertThat(set, containsInAnyOrder("1", "2"));
+        assertThat(set.retainAll(pool.newSet()), is(true));
+        assertThat(set, is(empty()));
+    }
+
+    @Test
+    public void shouldRemoveThroughIterator() {
+        IdentifierSet set = pool.newSet(Arrays.asList("a", "b", "c"));
+        Iterator<String> iterator = set.iterator();
+        while (iterator.hasNext()) {
+            if (!iterator.next().equals("b")) {
+                iterator.remove();
+            }
+        }
+        assertThat(set, containsInAnyOrder("b"));
+    }
+
+    @Test
+    public void shouldPoolMapKeys() {
+        Map<String, Set<String>> map = pool.newMap();
+        String key = new String("key");
+        map.computeIfAbsent(key, k -> pool.newSet()).add("value");
+        map.put(new String("other"), pool.newSet());
+        String pooled = map.keySet().stream().filter("key"::equals).findFirst().get();
+        assertThat(pooled, is(sameInstance(pool.get(pool.lookup("key")))));
+        assertThat(map.get("key"), containsInAnyOrder("value"));
+    }
+
+    @Test
+    public void shouldPoolNull() {
+        IdentifierSet set = pool.newSet(Arrays.asList("a", null));
+        assertThat(pool.lookup(null) >= 0, is(true));
+        assertThat(set.contains(null), is(true));
+        assertThat(set, containsInAnyOrder("a", null));
+    }
+
+    @Test
+    public void shouldInternConcurrently() throws Exception {
+        int threads = 4;
+        int identifiers = 10000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<int[]>> futures = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    int[] ids = new int[identifiers];
+                    for (int i = 0; i < identifiers; i++) {
+                        ids[i] = pool.intern(Integer.toString(i));
+                        assertThat(pool.get(ids[i]), is(Integer.toString(i)));
+                    }
+                    return ids;
+                }));
+            }
+            int[] expected = futures.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<int[]> future : futures) {
+                assertThat(future.get(10, TimeUnit.SECONDS), is(expected));
+            }
+            assertThat(pool.size(), is(identifiers));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Set<String> randomIdentifiers(Random random) {
+        Set<String> identifiers = new HashSet<>();
+        int size = random.nextInt(50);
+        for (int i = 0; i < size; i++) {
+            identifiers.add(Integer.toString(random.nextInt(100)));
+        }
+        return identifiers;
+    }
+}
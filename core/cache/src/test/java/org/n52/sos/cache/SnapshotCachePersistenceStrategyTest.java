@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Optional;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.locationtech.jts.geom.Envelope;
+import org.n52.iceland.cache.WritableContentCache;
+import org.n52.janmayen.i18n.MultilingualString;
+import org.n52.shetland.ogc.om.OmConstants;
+import org.n52.shetland.ogc.om.features.SfConstants;
+import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
+import org.n52.shetland.util.ReferencedEnvelope;
+import org.n52.sos.cache.SosContentCache.TypeInstance;
+import org.n52.sos.cache.ctrl.action.ObservationInsertionUpdate;
+import org.n52.sos.util.builder.InsertObservationRequestBuilder;
+import org.n52.sos.util.builder.ObservablePropertyBuilder;
+import org.n52.sos.util.builder.ObservationBuilder;
+import org.n52.sos.util.builder.ObservationConstellationBuilder;
+import org.n52.sos.util.builder.ProcedureDescriptionBuilder;
+import org.n52.sos.util.builder.QuantityObservationValueBuilder;
+import org.n52.sos.util.builder.QuantityValueBuilder;
+import org.n52.sos.util.builder.SamplingFeatureBuilder;
+
+public class SnapshotCachePersistenceStrategyTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private SnapshotCachePersistenceStrategy strategy;
+
+    @Before
+    public void setUp() {
+        strategy = new SnapshotCachePersistenceStrategy();
+        strategy.setCacheFileFolder(folder.getRoot());
+        strategy.setJournalFlushInterval(10);
+        strategy.init();
+    }
+
+    @After
+    public void tearDown() {
+        strategy.destroy();
+    }
+
+    @Test
+    public void shouldRestoreCache() {
+        InMemoryCacheImpl cache = createCache(new InMemoryCacheImpl(), 10);
+        strategy.persistOnShutdown(cache);
+        Optional<WritableContentCache> loaded = strategy.load();
+        assertThat(loaded.isPresent(), is(true));
+        assertThat(loaded.get(), is(cache));
+    }
+
+    @Test
+    public void shouldRestoreCompactCache() {
+        strategy.setCacheFactory(CompactCacheImpl::new);
+        CompactCacheImpl cache = createCache(new CompactCacheImpl(), 10);
+        strategy.persistOnShutdown(cache);
+        WritableContentCache loaded = strategy.load().get();
+        assertThat(loaded, is(instanceOf(CompactCacheImpl.class)));
+        assertThat(loaded, is(cache));
+        assertThat(((CompactCacheImpl) loaded).getOfferingsForProcedure("procedure1"),
+                containsInAnyOrder("offering1", "offering2"));
+    }
+
+    @Test
+    public void shouldPersistCompleteUpdatesAsynchronously() {
+        InMemoryCacheImpl cache = createCache(new InMemoryCacheImpl(), 3);
+        strategy.persistOnCompleteUpdate(cache);
+        strategy.destroy();
+        assertThat(strategy.load().get(), is(cache));
+    }
+
+    @Test
+    public void shouldIgnoreCorruptSnapshot() throws IOException {
+        Files.write(folder.getRoot().toPath().resolve("cache.snapshot"), new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        assertThat(strategy.load().isPresent(), is(false));
+    }
+
+    @Test
+    public void shouldBeSmallerThanSerializedCache() throws IOException {
+        InMemoryCacheImpl cache = createCache(new InMemoryCacheImpl(), 1000);
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+            out.writeObject(cache);
+        }
+        strategy.persistOnShutdown(cache);
+        Path snapshot = folder.getRoot().toPath().resolve("cache.snapshot");
+        assertThat(Files.size(snapshot), is(lessThan((long) serialized.size())));
+    }
+
+    @Test
+    public void shouldReplayJournaledObservationInsertions() throws OwsExceptionReport {
+        InMemoryCacheImpl cache = createCache(new InMemoryCacheImpl(), 3);
+        strategy.persistOnShutdown(cache);
+        insertObservation(cache, "procedure2", 7.0, 51.0, 1000L);
+        insertObservation(cache, "procedure2", 8.0, 52.0, 5000L);
+        strategy.destroy();
+        assertThat(Files.isRegularFile(journal()), is(true));
+        assertThat(strategy.load().get(), is(cache));
+    }
+
+    @Test
+    public void shouldTruncateJournalWithSnapshot() throws OwsExceptionReport {
+        InMemoryCacheImpl cache = createCache(new InMemoryCacheImpl(), 3);
+        strategy.persistOnShutdown(cache);
+        insertObservation(cache, "procedure2", 7.0, 51.0, 1000L);
+        strategy.persistOnShutdown(cache);
+        assertThat(Files.exists(journal()), is(false));
+        assertThat(strategy.load().get(), is(cache));
+    }
+
+    @Test
+    public void shouldReplayJournalEntriesContainedInSnapshot() throws OwsExceptionReport, IOException {
+        InMemoryCacheImpl cache = createCache(new InMemoryCacheImpl(), 3);
+        strategy.persistOnShutdown(cache);
+        insertObservation(cache, "procedure2", 7.0, 51.0, 1000L);
+        strategy.destroy();
+        byte[] entries = Files.readAllBytes(journal());
+        strategy.persistOnShutdown(cache);
+        Files.write(journal(), entries);
+        assertThat(strategy.load().get(), is(cache));
+    }
+
+    @Test
+    public void shouldIgnoreIncompleteJournalEntry() throws OwsExceptionReport, IOException {
+        InMemoryCacheImpl cache = createCache(new InMemoryCacheImpl(), 3);
+        strategy.persistOnShutdown(cache);
+        insertObservation(cache, "procedure2", 7.0, 51.0, 1000L);
+        strategy.destroy();
+        Files.write(journal(), new byte[] { 0, 0, 1, 0, 1, 2, 3 }, StandardOpenOption.APPEND);
+        assertThat(strategy.load().get(), is(cache));
+    }
+
+    private Path journal() {
+        return folder.getRoot().toPath().resolve("cache.journal");
+    }
+
+    private void insertObservation(InMemoryCacheImpl cache, String procedure, double x, double y,
+            long phenomenonTime) throws OwsExceptionReport {
+        ObservationInsertionUpdate update = new ObservationInsertionUpdate(InsertObservationRequestBuilder
+                .aInsertObservationRequest().setProcedureId(procedure).addOffering(procedure + "-offering")
+                .addObservation(ObservationBuilder.anObservation()
+                        .setObservationConstellation(ObservationConstellationBuilder.anObservationConstellation()
+                                .setFeature(SamplingFeatureBuilder.aSamplingFeature()
+                                        .setIdentifier("http://www.example.org/features/" + x + "_" + y)
+                                        .setFeatureType(SfConstants.FT_SAMPLINGPOINT)
+                                        .setGeometry(y, x, 4326).build())
+                                .setProcedure(ProcedureDescriptionBuilder.aSensorMLProcedureDescription()
+                                        .setIdentifier(procedure).build())
+                                .setObservationType(OmConstants.OBS_TYPE_MEASUREMENT)
+                                .setObservableProperty(ObservablePropertyBuilder.aObservableProperty()
+                                        .setIdentifier("observableProperty").build())
+                                .build())
+                        .setValue(QuantityObservationValueBuilder.aQuantityValue()
+                                .setValue(QuantityValueBuilder.aQuantitiy().setValue(2.0).setUnit("m").build())
+                                .setPhenomenonTime(phenomenonTime).build())
+                        .build())
+                .build());
+        update.setCache(cache);
+        update.execute();
+        strategy.persistOnPartialUpdate(cache, update);
+    }
+
+    private static <T extends InMemoryCacheImpl> T createCache(T cache, int features) {
+        DateTime time = new DateTime(2020, 1, 1, 0, 0, DateTimeZone.UTC);
+        MultilingualString name = new MultilingualString();
+        name.addLocalization(Locale.ENGLISH, "Offering");
+        name.addLocalization(Locale.GERMAN, "Angebot");
+        for (int i = 1; i <= 2; i++) {
+            String offering = "offering" + i;
+            cache.addOffering(offering);
+            cache.setNameForOffering(offering, "Offering " + i);
+            cache.setI18nNameForOffering(offering, name);
+            cache.setMaxPhenomenonTimeForOffering(offering, time.plusDays(i));
+            cache.setEnvelopeForOffering(offering, new ReferencedEnvelope(new Envelope(i, i + 1, 50, 51), 4326));
+            cache.addOfferingForProcedure("procedure1", offering);
+            for (int j = 0; j < features; j++) {
+                String feature = "http://www.example.org/features/feature" + j;
+                cache.addFeatureOfInterest(feature);
+                cache.addFeatureOfInterestForOffering(offering, feature);
+                cache.addFeatureOfInterestIdentifierHumanReadableName(feature, "Feature " + j);
+            }
+        }
+        cache.addProcedure("procedure1");
+        cache.addTypeInstanceProcedure(TypeInstance.INSTANCE, "procedure1");
+        cache.addSupportedLanguage(Locale.ENGLISH);
+        cache.setMinPhenomenonTime(time);
+        cache.setMaxPhenomenonTime(time.plusDays(2));
+        cache.setGlobalEnvelope(new ReferencedEnvelope(new Envelope(1, 3, 50, 51), 4326));
+        cache.setLastUpdateTime(time);
+        return cache;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.n52.faroe.annotation.Configurable;
+import org.n52.faroe.annotation.Setting;
+import org.n52.janmayen.event.Event;
+import org.n52.janmayen.event.EventListener;
+import org.n52.shetland.ogc.gml.ReferenceType;
+import org.n52.shetland.ogc.gml.time.TimePeriod;
+import org.n52.shetland.ogc.ows.extension.Extension;
+import org.n52.shetland.ogc.sos.gda.GetDataAvailabilityRequest;
+import org.n52.shetland.ogc.sos.gda.GetDataAvailabilityResponse.DataAvailability;
+import org.n52.sos.event.events.DeleteObservationEvent;
+import org.n52.sos.event.events.ObservationInsertion;
+import org.n52.sos.event.events.ResultInsertion;
+import org.n52.sos.event.events.SensorDeletion;
+import org.n52.sos.event.events.UpdateCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Keeps the computed {@link DataAvailability}s of GetDataAvailability requests
+ * for the configured duration. The cache is cleared on events that insert or
+ * delete observations.
+ *
+ * The {@link DataAvailability}s of a response are modified afterwards, e.g. by
+ * identifier modifiers, so they are copied when they are stored and when they
+ * are returned.
+ *
+ * @since 5.3.2
+ */
+@Configurable
+public class DataAvailabilityCache
+        implements EventListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DataAvailabilityCache.class);
+
+    private static final long MAXIMUM_SIZE = 1000;
+
+    @SuppressWarnings("unchecked")
+    private static final Set<Class<? extends Event>> TYPES = ImmutableSet
+            .<Class<? extends Event>> of(
+                    ObservationInsertion.class,
+                    ResultInsertion.class,
+                    DeleteObservationEvent.class,
+                    SensorDeletion.class,
+                    UpdateCache.class);
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private volatile Cache<List<Object>, List<DataAvailability>> cache;
+
+    @Setting(GetDataAvailabilitySettings.CACHE_DURATION)
+    public void setCacheDuration(int seconds) {
+        if (seconds > 0) {
+            this.cache = CacheBuilder.newBuilder().maximumSize(MAXIMUM_SIZE)
+                    .expireAfterWrite(seconds, TimeUnit.SECONDS).build();
+        } else {
+            this.cache = null;
+        }
+    }
+
+    @Override
+    public Set<Class<? extends Event>> getTypes() {
+        return Collections.unmodifiableSet(TYPES);
+    }
+
+    @Override
+    public void handle(Event event) {
+        invalidate();
+    }
+
+    /**
+     * Create the key of a request. Requests with extensions other than
+     * boolean flags, e.g. temporal filters, are not cached.
+     *
+     * @param request
+     *            the request
+     * @param flags
+     *            the evaluated options that influence the result
+     * @return the key or {@code null} if the request should not be cached
+     */
+    public List<Object> createKey(GetDataAvailabilityRequest request, boolean... flags) {
+        if (this.cache == null) {
+            return null;
+        }
+        for (Extension<?> extension : request.getExtensions().getExtensions()) {
+            if (!(extension.getValue() instanceof Boolean)) {
+                return null;
+            }
+        }
+        return Arrays.asList(request.getService(), request.getVersion(), request.getResponseFormat(),
+                request.getNamespace(), sorted(request.getProcedures()), sorted(request.getObservedProperties()),
+                sorted(request.getFeaturesOfInterest()), sorted(request.getOfferings()), Arrays.toString(flags));
+    }
+
+    /**
+     * @return the current generation, to be passed to
+     *         {@link #put(List, long, List)}
+     */
+    public long getGeneration() {
+        return this.generation.get();
+    }
+
+    public Optional<List<DataAvailability>> get(List<Object> key) {
+        Cache<List<Object>, List<DataAvailability>> current = this.cache;
+        if (key == null || current == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(current.getIfPresent(key)).map(DataAvailabilityCache::copy);
+    }
+
+    /**
+     * Store the result of a request, unless the cache was invalidated since
+     * the computation started.
+     *
+     * @param key
+     *            the key of the request
+     * @param generation
+     *            the generation when the computation started
+     * @param values
+     *            the computed values
+     */
+    public void put(List<Object> key, long generation, List<DataAvailability> values) {
+        Cache<List<Object>, List<DataAvailability>> current = this.cache;
+        if (key != null && current != null && generation == this.generation.get()) {
+            current.put(key, ImmutableList.copyOf(copy(values)));
+            if (generation != this.generation.get()) {
+                current.invalidate(key);
+            }
+        }
+    }
+
+    public void invalidate() {
+        LOGGER.debug("Invalidating data availability cache");
+        this.generation.incrementAndGet();
+        Cache<List<Object>, List<DataAvailability>> current = this.cache;
+        if (current != null) {
+            current.invalidateAll();
+        }
+    }
+
+    /**
+     * Copy the {@link DataAvailability}s and their references and phenomenon
+     * times. References that are shared between the values are shared between
+     * the copies, too. The result times, metadata values and format
+     * descriptors are not modified by the response processing and are shared.
+     *
+     * @param values
+     *            the values to copy
+     * @return the copies
+     */
+    static List<DataAvailability> copy(List<DataAvailability> values) {
+        Map<ReferenceType, ReferenceType> references = new IdentityHashMap<>();
+        List<DataAvailability> copies = new ArrayList<>(values.size());
+        for (DataAvailability value : values) {
+            copies.add(copy(value, references));
+        }
+        return copies;
+    }
+
+    private static DataAvailability copy(DataAvailability value, Map<ReferenceType, ReferenceType> references) {
+        TimePeriod phenomenonTime = value.getPhenomenonTime() == null ? null
+                : new TimePeriod(value.getPhenomenonTime().getStart(), value.getPhenomenonTime().getEnd());
+        DataAvailability copy = new DataAvailability(copy(value.getProcedure(), references),
+                copy(value.getObservedProperty(), references), copy(value.getFeatureOfInterest(), references),
+                copy(value.getOffering(), references), phenomenonTime);
+        if (value.getCount() >= 0) {
+            copy.setCount(value.getCount());
+        }
+        if (value.getResultTimes() != null) {
+            copy.setResultTimes(new ArrayList<>(value.getResultTimes()));
+        }
+        if (value.getMetadata() != null) {
+            copy.setMetadata(new LinkedHashMap<>(value.getMetadata()));
+        }
+        if (value.getFormatDescriptor() != null) {
+            copy.setFormatDescriptor(value.getFormatDescriptor());
+        }
+        return copy;
+    }
+
+    private static ReferenceType copy(ReferenceType reference, Map<ReferenceType, ReferenceType> references) {
+        return reference == null ? null
+                : references.computeIfAbsent(reference, r -> new ReferenceType(r.getHref(), r.getTitle()));
+    }
+
+    private static Set<String> sorted(Collection<String> values) {
+        return values == null ? Collections.emptySet() : new TreeSet<>(values);
+    }
+
+}
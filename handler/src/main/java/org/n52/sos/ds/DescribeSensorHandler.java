@@ -29,6 +29,7 @@
 package org.n52.sos.ds;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -65,6 +66,8 @@ public class DescribeSensorHandler extends AbstractDescribeSensorHandler {
 
     private ProcedureConverter procedureConverter;
 
+    private ProcedureDescriptionCache descriptionCache;
+
     public DescribeSensorHandler() {
         super(SosConstants.SOS);
     }
@@ -96,16 +99,37 @@ public class DescribeSensorHandler extends AbstractDescribeSensorHandler {
         this.procedureConverter = procedureConverter;
     }
 
+    @Inject
+    public void setProcedureDescriptionCache(ProcedureDescriptionCache descriptionCache) {
+        this.descriptionCache = descriptionCache;
+    }
+
     @Override
     public DescribeSensorResponse getSensorDescription(final DescribeSensorRequest request) throws OwsExceptionReport {
+        final DescribeSensorResponse response = new DescribeSensorResponse();
+        response.setService(request.getService());
+        response.setVersion(request.getVersion());
+        response.setOutputFormat(request.getProcedureDescriptionFormat());
+        if (descriptionCache == null) {
+            return createSensorDescriptions(request, response);
+        }
+        List<Object> key = descriptionCache.createKey(request, getRequestedLocale(request));
+        Optional<List<SosProcedureDescription<?>>> cached = descriptionCache.get(key);
+        if (cached.isPresent()) {
+            response.setSensorDescriptions(cached.get());
+            return response;
+        }
+        long generation = descriptionCache.getGeneration();
+        createSensorDescriptions(request, response);
+        descriptionCache.put(key, generation, response.getProcedureDescriptions());
+        return response;
+    }
+
+    private DescribeSensorResponse createSensorDescriptions(DescribeSensorRequest request,
+            DescribeSensorResponse response) throws OwsExceptionReport {
         Session session = null;
         try {
             session = sessionStore.getSession();
-            final DescribeSensorResponse response = new DescribeSensorResponse();
-            response.setService(request.getService());
-            response.setVersion(request.getVersion());
-            response.setOutputFormat(request.getProcedureDescriptionFormat());
-
             Collection<ProcedureEntity> entities = new ProcedureDao(session).get(createDbQuery(request));
             if (entities == null || entities.isEmpty()) {
                 throw new NoApplicableCodeException()
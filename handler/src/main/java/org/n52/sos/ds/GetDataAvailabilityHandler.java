@@ -28,6 +28,7 @@
  */
 package org.n52.sos.ds;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -36,11 +37,21 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
 import org.hibernate.Session;
+import org.n52.faroe.annotation.Configurable;
+import org.n52.faroe.annotation.Setting;
 import org.n52.io.request.IoParameters;
+import org.n52.janmayen.GroupedAndNamedThreadFactory;
+import org.n52.janmayen.lifecycle.Constructable;
+import org.n52.janmayen.lifecycle.Destroyable;
 import org.n52.series.db.DataAccessException;
 import org.n52.series.db.HibernateSessionStore;
 import org.n52.series.db.beans.DatasetEntity;
@@ -70,13 +81,22 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
+@Configurable
 public class GetDataAvailabilityHandler extends AbstractGetDataAvailabilityHandler
-        implements ApiQueryHelper, DatabaseQueryHelper {
+        implements ApiQueryHelper, DatabaseQueryHelper, Constructable, Destroyable {
+
+    private static final int DEFAULT_DATASOURCE_THREADS = 4;
 
     private HibernateSessionStore sessionStore;
 
     private Optional<GetDataAvailabilityDao> dao = Optional.empty();
 
+    private DataAvailabilityCache dataAvailabilityCache;
+
+    private int datasourceThreads = DEFAULT_DATASOURCE_THREADS;
+
+    private ThreadPoolExecutor executor;
+
     public GetDataAvailabilityHandler() {
         super(SosConstants.SOS);
     }
@@ -93,6 +113,52 @@ public class GetDataAvailabilityHandler extends AbstractGetDataAvailabilityHandl
         }
     }
 
+    @Inject
+    public void setDataAvailabilityCache(DataAvailabilityCache dataAvailabilityCache) {
+        this.dataAvailabilityCache = dataAvailabilityCache;
+    }
+
+    /**
+     * Set the number of threads that query the result times and metadata of
+     * the data availabilities.
+     *
+     * @param datasourceThreads
+     *            the number of threads
+     */
+    @Setting(GetDataAvailabilitySettings.DATASOURCE_THREADS)
+    public synchronized void setDatasourceThreads(int datasourceThreads) {
+        this.datasourceThreads = Math.max(1, datasourceThreads);
+        if (executor != null) {
+            // keep the core size less than or equal to the maximum size
+            if (this.datasourceThreads > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(this.datasourceThreads);
+                executor.setCorePoolSize(this.datasourceThreads);
+            } else {
+                executor.setCorePoolSize(this.datasourceThreads);
+                executor.setMaximumPoolSize(this.datasourceThreads);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void init() {
+        executor = new ThreadPoolExecutor(datasourceThreads, datasourceThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new GroupedAndNamedThreadFactory("gda-datasource"));
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+    }
+
     @Override
     public GetDataAvailabilityResponse getDataAvailability(GetDataAvailabilityRequest request)
             throws OwsExceptionReport {
@@ -118,15 +184,40 @@ public class GetDataAvailabilityHandler extends AbstractGetDataAvailabilityHandl
 
     private List<DataAvailability> queryDataAvailabilityValues(GetDataAvailabilityRequest request)
             throws OwsExceptionReport {
+        boolean gdaV20 = checkForGDAv20(request);
+        if (dataAvailabilityCache == null) {
+            return computeDataAvailabilityValues(request, gdaV20);
+        }
+        List<Object> key = dataAvailabilityCache.createKey(request, gdaV20, isShowCount(request),
+                isIncludeResultTime(request));
+        Optional<List<DataAvailability>> cached = dataAvailabilityCache.get(key);
+        if (cached.isPresent()) {
+            return Lists.newArrayList(cached.get());
+        }
+        long generation = dataAvailabilityCache.getGeneration();
+        List<DataAvailability> values = computeDataAvailabilityValues(request, gdaV20);
+        dataAvailabilityCache.put(key, generation, values);
+        return values;
+    }
+
+    private List<DataAvailability> computeDataAvailabilityValues(GetDataAvailabilityRequest request, boolean gdaV20)
+            throws OwsExceptionReport {
         Session session = sessionStore.getSession();
         try {
             GDARequestContext context = new GDARequestContext(request);
-            boolean gdaV20 = checkForGDAv20(request);
+            List<DatasetEntity> entities = Lists.newArrayList();
+            List<DataAvailability> values = Lists.newArrayList();
             for (final DatasetEntity entity : new DatasetDao<>(session).getAllInstances(createDbQuery(request))) {
+                entities.add(entity);
+                values.add(defaultProcessDataAvailability(entity, context));
+            }
+            // the datasource values are queried per dataset, so they are queried in parallel
+            addDatasourceValues(values, request, gdaV20);
+            for (int i = 0; i < entities.size(); i++) {
                 if (gdaV20) {
-                    processDataAvailabilityV2(entity, context, session);
+                    processDataAvailabilityV2(entities.get(i), values.get(i), context);
                 } else {
-                    processDataAvailability(entity, context, session);
+                    processDataAvailability(values.get(i), context);
                 }
             }
             if (!gdaV20) {
@@ -159,8 +250,7 @@ public class GetDataAvailabilityHandler extends AbstractGetDataAvailabilityHandl
         return new DbQuery(IoParameters.createFromSingleValueMap(map));
     }
 
-    private DataAvailability defaultProcessDataAvailability(DatasetEntity entity, GDARequestContext context,
-            Session session) throws OwsExceptionReport {
+    private DataAvailability defaultProcessDataAvailability(DatasetEntity entity, GDARequestContext context) {
         TimePeriod timePeriod = createTimePeriod(entity);
         if (timePeriod != null && !timePeriod.isEmpty()) {
             DataAvailability dataAvailability =
@@ -171,54 +261,104 @@ public class GetDataAvailabilityHandler extends AbstractGetDataAvailabilityHandl
             if (isShowCount(context.getRequest()) && entity.getObservationCount() >= 0) {
                 dataAvailability.setCount(entity.getObservationCount());
             }
-            if (isIncludeResultTime(context.getRequest()) && dao.isPresent()) {
-                dataAvailability.setResultTimes(dao.get().getResultTimes(dataAvailability, context.getRequest()));
-            }
             return dataAvailability;
         }
         return null;
     }
 
     /**
-     * Get {@link DataAvailability}s for each series
+     * Add the result times and, for GDA 2.0, the metadata of the
+     * {@link DataAvailability}s. The values are queried per
+     * {@link DataAvailability} with a separate session each, so the queries
+     * are distributed over the datasource executor.
      *
-     * @param entity
-     *            the {@link DatasetEntity} to get
-     *            {@link DataAvailability}s for
-     * @param context
-     *            Request context to get {@link DataAvailability}s
-     * @param session
-     *            Hibernate session
+     * @param values
+     *            the {@link DataAvailability}s, may contain {@code null}
+     * @param request
+     *            the request
+     * @param gdaV20
+     *            if the response is GDA 2.0
      * @throws OwsExceptionReport
      *             If an error occurs
      */
-    private void processDataAvailability(DatasetEntity entity, GDARequestContext context, Session session)
-            throws OwsExceptionReport {
-        DataAvailability dataAvailability = defaultProcessDataAvailability(entity, context, session);
+    private void addDatasourceValues(List<DataAvailability> values, GetDataAvailabilityRequest request,
+            boolean gdaV20) throws OwsExceptionReport {
+        boolean resultTimes = isIncludeResultTime(request);
+        if (!dao.isPresent() || !(resultTimes || gdaV20)) {
+            return;
+        }
+        GetDataAvailabilityDao gdaDao = dao.get();
+        List<Future<Void>> futures = Lists.newArrayList();
+        for (DataAvailability dataAvailability : values) {
+            if (dataAvailability != null) {
+                futures.add(getExecutor().submit(() -> {
+                    if (resultTimes) {
+                        dataAvailability.setResultTimes(gdaDao.getResultTimes(dataAvailability, request));
+                    }
+                    if (gdaV20) {
+                        dataAvailability.setMetadata(gdaDao.getMetadata(dataAvailability));
+                    }
+                    return null;
+                }));
+            }
+        }
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NoApplicableCodeException().causedBy(e)
+                    .withMessage("Interrupted while querying data for GetDataAvailability!");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof OwsExceptionReport) {
+                throw (OwsExceptionReport) e.getCause();
+            }
+            throw new NoApplicableCodeException().causedBy(e.getCause())
+                    .withMessage("Error while querying data for GetDataAvailability!");
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            throw new IllegalStateException("GetDataAvailabilityHandler is not initialized or already destroyed");
+        }
+        return executor;
+    }
+
+    /**
+     * Add the {@link DataAvailability} of a series
+     *
+     * @param dataAvailability
+     *            the {@link DataAvailability} of the series, may be
+     *            {@code null}
+     * @param context
+     *            Request context to get {@link DataAvailability}s
+     */
+    private void processDataAvailability(DataAvailability dataAvailability, GDARequestContext context) {
         if (dataAvailability != null) {
             context.addDataAvailability(dataAvailability);
         }
     }
 
     /**
-     * Get {@link DataAvailability}s for each offering of a series
+     * Add the {@link DataAvailability} of a series and merge it into the
+     * {@link DataAvailability}s of requested parent offerings
      *
      * @param entity
-     *            the {@link DatasetEntity} to get
-     *            {@link DataAvailability}s for
+     *            the {@link DatasetEntity} of the series
+     * @param dataAvailability
+     *            the {@link DataAvailability} of the series, may be
+     *            {@code null}
      * @param context
      *            Request context to get {@link DataAvailability}s
-     * @throws OwsExceptionReport
-     *             If an error occurs
      */
-    private void processDataAvailabilityV2(DatasetEntity entity, GDARequestContext context, Session session)
-            throws OwsExceptionReport {
-        DataAvailability dataAvailability = defaultProcessDataAvailability(entity, context, session);
+    private void processDataAvailabilityV2(DatasetEntity entity, DataAvailability dataAvailability,
+            GDARequestContext context) {
         if (dataAvailability != null) {
             dataAvailability.setFormatDescriptor(getFormatDescriptor(context, entity));
-            if (dao.isPresent()) {
-                dataAvailability.setMetadata(dao.get().getMetadata(dataAvailability));
-            }
             context.addDataAvailability(dataAvailability);
         }
         checkForParentOfferings(context, entity.getOffering());
@@ -231,8 +371,9 @@ public class GetDataAvailabilityHandler extends AbstractGetDataAvailabilityHandl
     private void checkForParentOfferings(GDARequestContext context, OfferingEntity offeringEntity) {
         if (context.isSetDataAvailabilityList()) {
             List<String> requestedOfferings = context.getRequest().getOfferings();
+            Set<String> childOfferings = context.getChildOfferings()
+                    .computeIfAbsent(offeringEntity.getIdentifier(), id -> getChildOfferings(offeringEntity));
             for (String requestedOffering : requestedOfferings) {
-                Set<String> childOfferings = getChildOfferings(offeringEntity);
                 if (!childOfferings.isEmpty()) {
                     if (context.hasDataAvailability(requestedOffering)) {
                         Set<DataAvailability> parentDataAvailabilities =
@@ -282,22 +423,25 @@ public class GetDataAvailabilityHandler extends AbstractGetDataAvailabilityHandl
     }
 
     private List<DataAvailability> checkForDuplictation(List<DataAvailability> dataAvailabilityValues) {
-        List<DataAvailability> checked = Lists.newLinkedList();
+        List<DataAvailability> checked = Lists.newArrayList();
+        // only values with the same procedure and observed property can be equal
+        Map<List<String>, List<DataAvailability>> candidates = Maps.newHashMap();
         for (DataAvailability dataAvailability : dataAvailabilityValues) {
-            if (checked.isEmpty()) {
-                checked.add(dataAvailability);
-            } else {
-                boolean notDuplicated = true;
-                for (DataAvailability checkedDA : checked) {
-                    if (dataAvailability.equals(checkedDA)) {
-                        checkedDA.getPhenomenonTime().extendToContain(dataAvailability.getPhenomenonTime());
-                        notDuplicated = false;
-                    }
-                }
-                if (notDuplicated) {
-                    checked.add(dataAvailability);
+            List<DataAvailability> bucket = candidates.computeIfAbsent(
+                    Arrays.asList(dataAvailability.getProcedure().getHref(),
+                            dataAvailability.getObservedProperty().getHref()),
+                    k -> Lists.newLinkedList());
+            boolean notDuplicated = true;
+            for (DataAvailability checkedDA : bucket) {
+                if (dataAvailability.equals(checkedDA)) {
+                    checkedDA.getPhenomenonTime().extendToContain(dataAvailability.getPhenomenonTime());
+                    notDuplicated = false;
                 }
             }
+            if (notDuplicated) {
+                bucket.add(dataAvailability);
+                checked.add(dataAvailability);
+            }
         }
         return checked;
     }
@@ -470,6 +614,8 @@ public class GetDataAvailabilityHandler extends AbstractGetDataAvailabilityHandl
 
         private Map<String, ReferenceType> offerings = new HashMap<>();
 
+        private Map<String, Set<String>> childOfferings = new HashMap<>();
+
         public GDARequestContext(GetDataAvailabilityRequest request) {
             this.request = request;
         }
@@ -494,6 +640,10 @@ public class GetDataAvailabilityHandler extends AbstractGetDataAvailabilityHandl
             return offerings;
         }
 
+        public Map<String, Set<String>> getChildOfferings() {
+            return childOfferings;
+        }
+
         public GDARequestContext setDataAvailabilityList(List<DataAvailability> dataAvailabilityValues) {
             this.dataAvailabilityValues.clear();
             return addDataAvailabilities(dataAvailabilityValues);
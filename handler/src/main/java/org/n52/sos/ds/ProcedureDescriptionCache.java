@@ -0,0 +1,484 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+
+import org.apache.xmlbeans.XmlObject;
+import org.n52.faroe.annotation.Configurable;
+import org.n52.faroe.annotation.Setting;
+import org.n52.janmayen.event.Event;
+import org.n52.janmayen.event.EventListener;
+import org.n52.shetland.ogc.gml.AbstractFeature;
+import org.n52.shetland.ogc.gml.CodeWithAuthority;
+import org.n52.shetland.ogc.gml.ReferenceType;
+import org.n52.shetland.ogc.om.AbstractPhenomenon;
+import org.n52.shetland.ogc.om.OmObservableProperty;
+import org.n52.shetland.ogc.om.OmObservation;
+import org.n52.shetland.ogc.om.features.samplingFeatures.InvalidSridException;
+import org.n52.shetland.ogc.om.features.samplingFeatures.SamplingFeature;
+import org.n52.shetland.ogc.sos.SosOffering;
+import org.n52.shetland.ogc.sos.SosProcedureDescription;
+import org.n52.shetland.ogc.sos.request.DescribeSensorRequest;
+import org.n52.sos.event.events.DeleteObservationEvent;
+import org.n52.sos.event.events.ObservationInsertion;
+import org.n52.sos.event.events.ResultInsertion;
+import org.n52.sos.event.events.SensorDeletion;
+import org.n52.sos.event.events.SensorInsertion;
+import org.n52.sos.event.events.SensorModification;
+import org.n52.sos.event.events.UpdateCache;
+import org.n52.sos.service.ProcedureDescriptionSettings;
+import org.n52.svalbard.decode.Decoder;
+import org.n52.svalbard.decode.DecoderRepository;
+import org.n52.svalbard.decode.exception.DecodingException;
+import org.n52.svalbard.encode.Encoder;
+import org.n52.svalbard.encode.EncoderRepository;
+import org.n52.svalbard.encode.XmlEncoderKey;
+import org.n52.svalbard.encode.exception.EncodingException;
+import org.n52.svalbard.util.CodingHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Keeps the enriched procedure descriptions of DescribeSensor requests for the
+ * configured duration. Observation insertions and deletions only remove the
+ * descriptions of the affected procedures, sensor insertions, modifications
+ * and deletions clear the cache.
+ * <p>
+ * The descriptions are modified in place by the request operator and the
+ * response modifiers, so the cache keeps the encoded process description
+ * together with a detached copy of the remaining metadata, which is never
+ * handed out. Each hit decodes the process and copies the metadata. A
+ * description is only cached if the decoded process encodes to the same
+ * document and all of its metadata can be copied, e.g. descriptions with
+ * child procedures or features that are not plain sampling features are not
+ * cached.
+ *
+ * @since 5.3.2
+ */
+@Configurable
+public class ProcedureDescriptionCache
+        implements EventListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProcedureDescriptionCache.class);
+
+    private static final long MAXIMUM_SIZE = 1000;
+
+    private static final int PROCEDURE_INDEX = 2;
+
+    @SuppressWarnings("unchecked")
+    private static final Set<Class<? extends Event>> TYPES = ImmutableSet
+            .<Class<? extends Event>> of(
+                    SensorInsertion.class,
+                    SensorModification.class,
+                    SensorDeletion.class,
+                    ObservationInsertion.class,
+                    ResultInsertion.class,
+                    DeleteObservationEvent.class,
+                    UpdateCache.class);
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private volatile Cache<List<Object>, List<CachedDescription>> cache;
+
+    private EncoderRepository encoderRepository;
+
+    private DecoderRepository decoderRepository;
+
+    @Inject
+    public void setEncoderRepository(EncoderRepository encoderRepository) {
+        this.encoderRepository = encoderRepository;
+    }
+
+    @Inject
+    public void setDecoderRepository(DecoderRepository decoderRepository) {
+        this.decoderRepository = decoderRepository;
+    }
+
+    @Setting(ProcedureDescriptionSettings.CACHE_DURATION)
+    public void setCacheDuration(int seconds) {
+        if (seconds > 0) {
+            this.cache = CacheBuilder.newBuilder().maximumSize(MAXIMUM_SIZE)
+                    .expireAfterWrite(seconds, TimeUnit.SECONDS).build();
+        } else {
+            this.cache = null;
+        }
+    }
+
+    @Override
+    public Set<Class<? extends Event>> getTypes() {
+        return Collections.unmodifiableSet(TYPES);
+    }
+
+    @Override
+    public void handle(Event event) {
+        Optional<Set<String>> procedures = getAffectedProcedures(event);
+        if (procedures.isPresent()) {
+            invalidate(procedures.get());
+        } else {
+            invalidate();
+        }
+    }
+
+    /**
+     * Create the key of a request.
+     *
+     * @param request
+     *            the request
+     * @param locale
+     *            the requested locale
+     * @return the key or {@code null} if the cache is disabled
+     */
+    public List<Object> createKey(DescribeSensorRequest request, Locale locale) {
+        if (this.cache == null) {
+            return null;
+        }
+        return Arrays.asList(request.getService(), request.getVersion(), request.getProcedure(),
+                request.getProcedureDescriptionFormat(), locale,
+                request.isSetValidTime() ? request.getValidTime().toString() : null);
+    }
+
+    /**
+     * @return the current generation, to be passed to
+     *         {@link #put(List, long, List)}
+     */
+    public long getGeneration() {
+        return this.generation.get();
+    }
+
+    /**
+     * Get copies of the cached descriptions of a request.
+     *
+     * @param key
+     *            the key of the request
+     * @return the descriptions or an empty optional if they are not cached or
+     *         could not be restored
+     */
+    public Optional<List<SosProcedureDescription<?>>> get(List<Object> key) {
+        Cache<List<Object>, List<CachedDescription>> current = this.cache;
+        if (key == null || current == null) {
+            return Optional.empty();
+        }
+        List<CachedDescription> cached = current.getIfPresent(key);
+        if (cached == null) {
+            return Optional.empty();
+        }
+        try {
+            List<SosProcedureDescription<?>> descriptions = new ArrayList<>(cached.size());
+            for (CachedDescription description : cached) {
+                descriptions.add(copy(decode(description.getXml()), description.getTemplate()));
+            }
+            return Optional.of(descriptions);
+        } catch (DecodingException | InvalidSridException e) {
+            LOGGER.debug("Error while restoring cached procedure description", e);
+            current.invalidate(key);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Store the descriptions of a request, unless the cache was invalidated
+     * since the creation started. Has to be called before the descriptions
+     * are modified by the request operator.
+     *
+     * @param key
+     *            the key of the request
+     * @param generation
+     *            the generation when the creation started
+     * @param descriptions
+     *            the created descriptions
+     */
+    public void put(List<Object> key, long generation, List<SosProcedureDescription<?>> descriptions) {
+        Cache<List<Object>, List<CachedDescription>> current = this.cache;
+        if (key == null || current == null || descriptions == null || generation != this.generation.get()) {
+            return;
+        }
+        List<CachedDescription> cached = new ArrayList<>(descriptions.size());
+        for (SosProcedureDescription<?> description : descriptions) {
+            Optional<CachedDescription> encoded = encode(description);
+            if (!encoded.isPresent()) {
+                return;
+            }
+            cached.add(encoded.get());
+        }
+        current.put(key, ImmutableList.copyOf(cached));
+        if (generation != this.generation.get()) {
+            current.invalidate(key);
+        }
+    }
+
+    public void invalidate() {
+        LOGGER.debug("Invalidating procedure description cache");
+        this.generation.incrementAndGet();
+        Cache<List<Object>, List<CachedDescription>> current = this.cache;
+        if (current != null) {
+            current.invalidateAll();
+        }
+    }
+
+    /**
+     * Remove the cached descriptions of the procedures.
+     *
+     * @param procedures
+     *            the procedure identifiers
+     */
+    public void invalidate(Collection<String> procedures) {
+        LOGGER.debug("Invalidating cached procedure descriptions of {}", procedures);
+        this.generation.incrementAndGet();
+        Cache<List<Object>, List<CachedDescription>> current = this.cache;
+        if (current != null && !procedures.isEmpty()) {
+            current.asMap().keySet().removeIf(key -> procedures.contains(key.get(PROCEDURE_INDEX)));
+        }
+    }
+
+    /**
+     * @return the procedures whose descriptions are changed by the event or an
+     *         empty optional if all descriptions may have been changed
+     */
+    private Optional<Set<String>> getAffectedProcedures(Event event) {
+        if (event instanceof ObservationInsertion) {
+            Set<String> procedures = new HashSet<>();
+            for (OmObservation observation : ((ObservationInsertion) event).getRequest().getObservations()) {
+                if (!addProcedure(observation, procedures)) {
+                    return Optional.empty();
+                }
+            }
+            return Optional.of(procedures);
+        } else if (event instanceof ResultInsertion) {
+            Set<String> procedures = new HashSet<>();
+            for (OmObservation observation : ((ResultInsertion) event).getResponse().getObservations()) {
+                if (!addProcedure(observation, procedures)) {
+                    return Optional.empty();
+                }
+            }
+            return Optional.of(procedures);
+        } else if (event instanceof DeleteObservationEvent
+                && ((DeleteObservationEvent) event).isSetDeletedObservation()) {
+            Set<String> procedures = new HashSet<>();
+            if (addProcedure(((DeleteObservationEvent) event).getDeletedObservation(), procedures)) {
+                return Optional.of(procedures);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private boolean addProcedure(OmObservation observation, Set<String> procedures) {
+        if (observation.getObservationConstellation() == null
+                || observation.getObservationConstellation().getProcedure() == null
+                || observation.getObservationConstellation().getProcedure().getIdentifier() == null) {
+            return false;
+        }
+        procedures.add(observation.getObservationConstellation().getProcedure().getIdentifier());
+        return true;
+    }
+
+    private Optional<CachedDescription> encode(SosProcedureDescription<?> description) {
+        if (description.isSetChildProcedures() || description.getProcedureDescription() == null
+                || description.getDescriptionFormat() == null) {
+            return Optional.empty();
+        }
+        if (description.isSetFeaturesOfInterestMap() && !description.getFeaturesOfInterestMap().values().stream()
+                .allMatch(this::isCopyable)) {
+            return Optional.empty();
+        }
+        if (description.isSetPhenomenon() && !description.getPhenomenon().values().stream()
+                .allMatch(phenomenon -> phenomenon.getClass() == OmObservableProperty.class)) {
+            return Optional.empty();
+        }
+        Object process = description.getProcedureDescription();
+        Encoder<XmlObject, Object> encoder = this.encoderRepository
+                .getEncoder(new XmlEncoderKey(description.getDescriptionFormat(), process.getClass()));
+        if (encoder == null) {
+            return Optional.empty();
+        }
+        try {
+            XmlObject xml = encoder.encode(process);
+            AbstractFeature decoded = decode(xml);
+            if (!xml.xmlText().equals(encoder.encode(decoded).xmlText())) {
+                LOGGER.debug("Procedure description {} does not survive encoding, not caching it",
+                        description.getIdentifier());
+                return Optional.empty();
+            }
+            return Optional.of(new CachedDescription(copy(decoded, description), xml));
+        } catch (EncodingException | DecodingException | InvalidSridException e) {
+            LOGGER.debug("Error while encoding procedure description for the cache", e);
+            return Optional.empty();
+        }
+    }
+
+    private boolean isCopyable(AbstractFeature feature) {
+        if (feature.getClass() != SamplingFeature.class) {
+            return false;
+        }
+        SamplingFeature samplingFeature = (SamplingFeature) feature;
+        return !samplingFeature.isSetSampledFeatures()
+                || samplingFeature.getSampledFeatures().stream().allMatch(this::isCopyable);
+    }
+
+    private SosProcedureDescription<?> copy(AbstractFeature process, SosProcedureDescription<?> template)
+            throws InvalidSridException {
+        SosProcedureDescription<?> description = new SosProcedureDescription<>(process);
+        description.setIdentifier(template.getIdentifier());
+        description.setDescriptionFormat(template.getDescriptionFormat());
+        description.setValidTime(template.getValidTime());
+        if (template.isSetHumanReadableIdentifier()) {
+            description.setHumanReadableIdentifier(template.getHumanReadableIdentifier());
+        }
+        if (template.isSetOfferings()) {
+            List<SosOffering> offerings = new ArrayList<>(template.getOfferings().size());
+            for (SosOffering offering : template.getOfferings()) {
+                offerings.add(offering.isSetName()
+                        ? new SosOffering(offering.getIdentifier(), offering.getOfferingName())
+                        : new SosOffering(offering.getIdentifier(), false));
+            }
+            description.addOfferings(offerings);
+        }
+        if (template.isSetFeaturesOfInterest()) {
+            description.addFeaturesOfInterest(new ArrayList<>(template.getFeaturesOfInterest()));
+        }
+        if (template.isSetFeaturesOfInterestMap()) {
+            Map<String, AbstractFeature> features = new HashMap<>();
+            for (Map.Entry<String, AbstractFeature> feature : template.getFeaturesOfInterestMap().entrySet()) {
+                features.put(feature.getKey(), copy((SamplingFeature) feature.getValue()));
+            }
+            description.addFeaturesOfInterestMap(features);
+        }
+        if (template.isSetPhenomenon()) {
+            for (AbstractPhenomenon phenomenon : template.getPhenomenon().values()) {
+                OmObservableProperty observableProperty = new OmObservableProperty(phenomenon.getIdentifier());
+                copyNameAndDescription(phenomenon, observableProperty);
+                description.addPhenomenon(observableProperty);
+            }
+        }
+        if (template.isSetParentProcedure()) {
+            description.setParentProcedure(copy(template.getParentProcedure()));
+        }
+        if (template.isSetTypeOf()) {
+            description.setTypeOf(copy(template.getTypeOf()));
+        }
+        return description;
+    }
+
+    private SamplingFeature copy(SamplingFeature feature) throws InvalidSridException {
+        CodeWithAuthority identifier = feature.getIdentifierCodeWithAuthority();
+        SamplingFeature copy =
+                new SamplingFeature(new CodeWithAuthority(identifier.getValue(), identifier.getCodeSpace()));
+        copyNameAndDescription(feature, copy);
+        if (feature.isSetFeatureType()) {
+            copy.setFeatureType(feature.getFeatureType());
+        }
+        if (feature.getUrl() != null) {
+            copy.setUrl(feature.getUrl());
+        }
+        if (feature.getXml() != null) {
+            copy.setXml(feature.getXml());
+        }
+        if (feature.isSetGeometry()) {
+            copy.setGeometry(feature.getGeometry().copy());
+        }
+        if (feature.isSetParameter()) {
+            feature.getParameters().forEach(copy::addParameter);
+        }
+        if (feature.isSetSampledFeatures()) {
+            List<AbstractFeature> sampledFeatures = new ArrayList<>(feature.getSampledFeatures().size());
+            for (AbstractFeature sampledFeature : feature.getSampledFeatures()) {
+                sampledFeatures.add(copy((SamplingFeature) sampledFeature));
+            }
+            copy.setSampledFeatures(sampledFeatures);
+        }
+        return copy;
+    }
+
+    private ReferenceType copy(ReferenceType reference) {
+        return new ReferenceType(reference.getHref(), reference.getTitle());
+    }
+
+    private void copyNameAndDescription(AbstractFeature from, AbstractFeature to) {
+        if (from.isSetName()) {
+            from.getName().forEach(to::addName);
+        }
+        if (from.isSetDescription()) {
+            to.setDescription(from.getDescription());
+        }
+    }
+
+    private AbstractFeature decode(XmlObject xml) throws DecodingException {
+        Decoder<AbstractFeature, XmlObject> decoder =
+                this.decoderRepository.getDecoder(CodingHelper.getDecoderKey(xml));
+        if (decoder == null) {
+            throw new DecodingException("No decoder found for the cached procedure description");
+        }
+        return decoder.decode(xml);
+    }
+
+    /**
+     * The encoded process description and a detached copy of the description,
+     * which provides the metadata that is not part of the process description.
+     * Neither is modified after creation.
+     */
+    private static final class CachedDescription {
+
+        private final SosProcedureDescription<?> template;
+
+        private final XmlObject xml;
+
+        CachedDescription(SosProcedureDescription<?> template, XmlObject xml) {
+            this.template = template;
+            this.xml = xml;
+        }
+
+        SosProcedureDescription<?> getTemplate() {
+            return template;
+        }
+
+        XmlObject getXml() {
+            return xml;
+        }
+    }
+
+}
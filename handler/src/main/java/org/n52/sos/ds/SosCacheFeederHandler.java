@@ -29,12 +29,21 @@
 package org.n52.sos.ds;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
 
+import org.hibernate.Criteria;
 import org.hibernate.Session;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.sql.JoinType;
 import org.joda.time.Period;
 import org.joda.time.format.PeriodFormat;
 import org.n52.faroe.ConfigurationError;
@@ -47,18 +56,31 @@ import org.n52.iceland.i18n.I18NSettings;
 import org.n52.iceland.ogc.ows.OwsServiceMetadataRepository;
 import org.n52.janmayen.i18n.LocaleHelper;
 import org.n52.series.db.HibernateSessionStore;
+import org.n52.series.db.beans.AbstractFeatureEntity;
+import org.n52.series.db.beans.DataEntity;
+import org.n52.series.db.beans.DatasetEntity;
+import org.n52.series.db.beans.OfferingEntity;
+import org.n52.series.db.beans.PhenomenonEntity;
+import org.n52.series.db.beans.ProcedureEntity;
 import org.n52.shetland.ogc.ows.exception.CompositeOwsException;
 import org.n52.shetland.ogc.ows.exception.NoApplicableCodeException;
 import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
 import org.n52.shetland.util.CollectionHelper;
 import org.n52.sos.cache.SosWritableContentCache;
 import org.n52.sos.ds.cache.CacheFeederSettingDefinitionProvider;
+import org.n52.sos.ds.cache.CacheUpdateStatistics;
+import org.n52.sos.ds.cache.ChangedDatasetsCacheUpdate;
+import org.n52.sos.ds.cache.DatasetChangeTracker;
+import org.n52.sos.ds.cache.DatasetChangeTracker.DatasetMark;
 import org.n52.sos.ds.cache.InitialCacheUpdate;
 import org.n52.sos.ds.cache.base.OfferingCacheUpdate;
 import org.n52.sos.util.GeometryHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
+
 /**
  * Implementation of the interface CacheFeederDAO
  *
@@ -84,6 +106,8 @@ public class SosCacheFeederHandler implements CacheFeederHandler {
     private OwsServiceMetadataRepository serviceMetadataRepository;
     private HibernateSessionStore sessionStore;
     private GeometryHandler geometryHandler;
+    private final DatasetChangeTracker datasetChangeTracker = new DatasetChangeTracker();
+    private volatile Map<String, String> cacheUpdateStatistics = Collections.emptyMap();
 
     @Inject
     public void setConnectionProvider(HibernateSessionStore sessionStore) {
@@ -121,6 +145,8 @@ public class SosCacheFeederHandler implements CacheFeederHandler {
         checkCacheNotNull(cache);
         List<OwsExceptionReport> errors = CollectionHelper.synchronizedList();
         Session session = null;
+        Map<Long, DatasetMark> marks = null;
+        CacheUpdateStatistics statistics = new CacheUpdateStatistics();
         try {
             InitialCacheUpdate update = new InitialCacheUpdate(
                     this.cacheThreadCount,
@@ -130,15 +156,23 @@ public class SosCacheFeederHandler implements CacheFeederHandler {
                     this.serviceMetadataRepository,
                     geometryHandler);
             session = this.sessionStore.getSession();
+            // read the marks first, changes during the update are picked up by the next incremental update
+            long marksStartTime = System.currentTimeMillis();
+            marks = getDatasetMarks(session);
+            statistics.record("DatasetMarks", System.currentTimeMillis() - marksStartTime, marks.size());
             update.setCache(cache);
             update.setErrors(errors);
             update.setSession(session);
+            update.setStatistics(statistics);
 
             LOGGER.info("Starting cache update");
             long cacheUpdateStartTime = System.currentTimeMillis();
 
             update.execute();
 
+            statistics.record("Total", System.currentTimeMillis() - cacheUpdateStartTime);
+            this.cacheUpdateStatistics = statistics.toMap();
+            LOGGER.debug("Cache update statistics: {}", this.cacheUpdateStatistics);
             logCacheLoadTime(cacheUpdateStartTime);
         } catch (Exception e) {
             LOGGER.error(ERROR_UPDATE_CACHE, e);
@@ -152,9 +186,73 @@ public class SosCacheFeederHandler implements CacheFeederHandler {
             }
         }
         if (!errors.isEmpty()) {
+            this.datasetChangeTracker.clear();
             throw new CompositeOwsException(errors);
         }
+        this.datasetChangeTracker.commit(marks);
+    }
+
+    @Override
+    public Map<String, String> getCacheUpdateStatistics() {
+        return this.cacheUpdateStatistics;
+    }
 
+    @Override
+    public boolean updateCacheIncrementally(SosWritableContentCache cache) throws OwsExceptionReport {
+        checkCacheNotNull(cache);
+        List<OwsExceptionReport> errors = CollectionHelper.synchronizedList();
+        Session session = null;
+        Map<Long, DatasetMark> marks = null;
+        try {
+            session = this.sessionStore.getSession();
+            marks = getDatasetMarks(session);
+            DatasetChangeTracker.Delta delta = this.datasetChangeTracker.diff(marks);
+            if (delta.isInitial() || !delta.getRemoved().isEmpty() || !isKnown(cache, delta.getAdded())) {
+                LOGGER.debug("Datasets were added or removed, incremental cache update is not applicable");
+                return false;
+            }
+            if (!delta.isEmpty()) {
+                Set<String> offerings = Sets.newHashSet();
+                Set<String> procedures = Sets.newHashSet();
+                for (DatasetMark mark : Iterables.concat(delta.getAdded(), delta.getChanged())) {
+                    offerings.add(mark.getOffering());
+                    procedures.add(mark.getProcedure());
+                }
+                ChangedDatasetsCacheUpdate update = new ChangedDatasetsCacheUpdate(
+                        this.cacheThreadCount,
+                        this.defaultLocale,
+                        this.sessionStore,
+                        this.geometryHandler,
+                        offerings,
+                        procedures);
+                update.setCache(cache);
+                update.setErrors(errors);
+                update.setSession(session);
+
+                LOGGER.info("Starting incremental cache update for {} offering(s) of {} changed dataset(s)",
+                        offerings.size(), delta.getAdded().size() + delta.getChanged().size());
+                long cacheUpdateStartTime = System.currentTimeMillis();
+
+                update.execute();
+
+                logCacheLoadTime(cacheUpdateStartTime);
+            }
+        } catch (Exception e) {
+            LOGGER.error(ERROR_UPDATE_CACHE, e);
+            errors.add(new NoApplicableCodeException().causedBy(e).withMessage(ERROR_UPDATE_CACHE));
+        } finally {
+            try {
+                this.sessionStore.returnSession(session);
+            } catch (Exception e2) {
+                // TODO check why this is necessary
+                LOGGER.error(ERROR_RETURNING_CONNECTION, e2);
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new CompositeOwsException(errors);
+        }
+        this.datasetChangeTracker.commit(marks);
+        return true;
     }
 
     @Override
@@ -170,7 +268,8 @@ public class SosCacheFeederHandler implements CacheFeederHandler {
                 this.cacheThreadCount,
                 this.defaultLocale,
                 this.geometryHandler,
-                this.sessionStore);
+                this.sessionStore,
+                offeringsNeedingUpdate);
         update.setCache(cache);
         update.setErrors(errors);
         update.setSession(session);
@@ -197,6 +296,80 @@ public class SosCacheFeederHandler implements CacheFeederHandler {
         if (!errors.isEmpty()) {
             throw new CompositeOwsException(errors);
         }
+        // the offering times may have shrunk, e.g. after deleted observations
+        cache.recalculatePhenomenonTime();
+        cache.recalculateResultTime();
+    }
+
+    /**
+     * Datasets that were added in the data source can be applied
+     * incrementally only if all their references are already known, e.g.
+     * because they were inserted by this service.
+     */
+    private boolean isKnown(SosWritableContentCache cache, Collection<DatasetMark> added) {
+        for (DatasetMark mark : added) {
+            if (!cache.hasOffering(mark.getOffering()) || !cache.hasProcedure(mark.getProcedure())
+                    || !cache.hasObservableProperty(mark.getPhenomenon())
+                    || mark.getFeature() != null && !cache.hasFeatureOfInterest(mark.getFeature())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Long, DatasetMark> getDatasetMarks(Session session) {
+        Criteria criteria = session.createCriteria(DatasetEntity.class)
+                .createAlias(DatasetEntity.PROPERTY_OFFERING, "off")
+                .createAlias(DatasetEntity.PROPERTY_PROCEDURE, "proc")
+                .createAlias(DatasetEntity.PROPERTY_PHENOMENON, "phen")
+                .createAlias(DatasetEntity.PROPERTY_FEATURE, "foi", JoinType.LEFT_OUTER_JOIN)
+                .add(Restrictions.eq(DatasetEntity.PROPERTY_DELETED, false))
+                .setProjection(Projections.projectionList()
+                        .add(Projections.property(DatasetEntity.PROPERTY_ID))
+                        .add(Projections.property("off." + OfferingEntity.PROPERTY_IDENTIFIER))
+                        .add(Projections.property("proc." + ProcedureEntity.PROPERTY_IDENTIFIER))
+                        .add(Projections.property("foi." + AbstractFeatureEntity.PROPERTY_IDENTIFIER))
+                        .add(Projections.property("phen." + PhenomenonEntity.PROPERTY_IDENTIFIER))
+                        .add(Projections.property(DatasetEntity.PROPERTY_FIRST_VALUE_AT))
+                        .add(Projections.property(DatasetEntity.PROPERTY_LAST_VALUE_AT)));
+        Map<Long, Object[]> observations = getObservationMarks(session);
+        Map<Long, DatasetMark> marks = new HashMap<>();
+        for (Object[] row : (List<Object[]>) criteria.list()) {
+            Long id = (Long) row[0];
+            Object[] observation = observations.getOrDefault(id, new Object[5]);
+            marks.put(id, new DatasetMark((String) row[1], (String) row[2], (String) row[3],
+                    (String) row[4], toTime((Date) row[5]), toTime((Date) row[6]), toTime((Date) observation[1]),
+                    toTime((Date) observation[2]), (Long) observation[3],
+                    observation[4] != null ? ((Number) observation[4]).longValue() : 0L));
+        }
+        return marks;
+    }
+
+    /**
+     * The result time bounds, the last observation id and the observation
+     * count of the datasets. These change with observations that were
+     * inserted or deleted within the first and last value time.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Long, Object[]> getObservationMarks(Session session) {
+        Criteria criteria = session.createCriteria(DataEntity.class)
+                .add(Restrictions.eq(DataEntity.PROPERTY_DELETED, false))
+                .setProjection(Projections.projectionList()
+                        .add(Projections.groupProperty(DataEntity.PROPERTY_DATASET_ID))
+                        .add(Projections.min(DataEntity.PROPERTY_RESULT_TIME))
+                        .add(Projections.max(DataEntity.PROPERTY_RESULT_TIME))
+                        .add(Projections.max(DataEntity.PROPERTY_ID))
+                        .add(Projections.rowCount()));
+        Map<Long, Object[]> observations = new HashMap<>();
+        for (Object[] row : (List<Object[]>) criteria.list()) {
+            observations.put((Long) row[0], row);
+        }
+        return observations;
+    }
+
+    private Long toTime(Date date) {
+        return date != null ? date.getTime() : null;
     }
 
     private void checkCacheNotNull(WritableContentCache cache) {
@@ -39,6 +39,8 @@ import org.n52.sos.ds.DatasourceCacheUpdate;
 public abstract class AbstractDatasourceCacheUpdate extends DatasourceCacheUpdate {
     private Session session;
 
+    private CacheUpdateStatistics statistics;
+
     public Session getSession() {
         return session;
     }
@@ -47,4 +49,29 @@ public abstract class AbstractDatasourceCacheUpdate extends DatasourceCacheUpdat
         this.session = session;
     }
 
+    public CacheUpdateStatistics getStatistics() {
+        return statistics;
+    }
+
+    public void setStatistics(CacheUpdateStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Records the duration (and row count) of a phase of this update if
+     * statistics are collected.
+     *
+     * @param phase
+     *            the name of the phase
+     * @param start
+     *            the start of the phase in milliseconds
+     * @param rows
+     *            the number of processed rows, negative if not applicable
+     */
+    protected void recordPhase(String phase, long start, long rows) {
+        if (statistics != null) {
+            statistics.record(phase, System.currentTimeMillis() - start, rows);
+        }
+    }
+
 }
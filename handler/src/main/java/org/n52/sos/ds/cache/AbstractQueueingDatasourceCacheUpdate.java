@@ -28,6 +28,10 @@
  */
 package org.n52.sos.ds.cache;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 import org.n52.iceland.util.action.CompositeParallelAction;
 import org.n52.series.db.HibernateSessionStore;
 import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
@@ -50,6 +54,9 @@ public abstract class AbstractQueueingDatasourceCacheUpdate<T extends AbstractTh
 
     private final ThreadLocalSessionFactory sessionFactory;
 
+    private final Map<AbstractThreadableDatasourceCacheUpdate, Long> actionStart =
+            Collections.synchronizedMap(new IdentityHashMap<>());
+
     public AbstractQueueingDatasourceCacheUpdate(int threads, String threadGroupName,
             HibernateSessionStore sessionStore) {
         this.threads = threads;
@@ -59,6 +66,14 @@ public abstract class AbstractQueueingDatasourceCacheUpdate<T extends AbstractTh
 
     protected abstract T[] getUpdatesToExecute() throws OwsExceptionReport;
 
+    /**
+     * @return if the duration of each update should be recorded in the
+     *         statistics, which is not useful for per-entity updates
+     */
+    protected boolean isRecordingUpdateStatistics() {
+        return false;
+    }
+
     @Override
     public void execute() {
         LOGGER.debug("AbstractQueueingDatasourceCacheUpdate init");
@@ -78,10 +93,16 @@ public abstract class AbstractQueueingDatasourceCacheUpdate<T extends AbstractTh
                     action.setCache(getCache());
                     action.setErrors(getErrors());
                     action.setSessionFactory(sessionFactory);
+                    action.setStatistics(getStatistics());
+                    actionStart.put(action, System.currentTimeMillis());
                 }
 
                 @Override
                 protected void post(AbstractThreadableDatasourceCacheUpdate action) {
+                    Long start = actionStart.remove(action);
+                    if (start != null && isRecordingUpdateStatistics()) {
+                        recordPhase(action.getClass().getSimpleName(), start, -1);
+                    }
                     if (action.getSession() != null) {
                         try {
                             action.getSession().clear();
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.cache;
+
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Collects the duration and the number of processed rows of the phases of a
+ * cache update. Phases may be recorded concurrently by the threads of a
+ * parallel cache update.
+ *
+ * @since 5.3.2
+ */
+public class CacheUpdateStatistics {
+
+    private final ConcurrentMap<String, Phase> phases = new ConcurrentHashMap<>();
+
+    /**
+     * Records a phase without a row count.
+     *
+     * @param phase
+     *            the name of the phase
+     * @param millis
+     *            the duration in milliseconds
+     */
+    public void record(String phase, long millis) {
+        record(phase, millis, -1);
+    }
+
+    /**
+     * Records a phase. Repeated phases are summed up.
+     *
+     * @param phase
+     *            the name of the phase
+     * @param millis
+     *            the duration in milliseconds
+     * @param rows
+     *            the number of processed rows, negative if not applicable
+     */
+    public void record(String phase, long millis, long rows) {
+        phases.merge(phase, new Phase(millis, rows), Phase::add);
+    }
+
+    /**
+     * @return the recorded phases as human readable values, ordered by name
+     */
+    public SortedMap<String, String> toMap() {
+        SortedMap<String, String> map = new TreeMap<>();
+        phases.forEach((name, phase) -> map.put(name, phase.toString()));
+        return Collections.unmodifiableSortedMap(map);
+    }
+
+    public boolean isEmpty() {
+        return phases.isEmpty();
+    }
+
+    private static final class Phase {
+        private final long millis;
+        private final long rows;
+
+        Phase(long millis, long rows) {
+            this.millis = millis;
+            this.rows = rows;
+        }
+
+        Phase add(Phase other) {
+            long sum = rows < 0 && other.rows < 0 ? -1 : Math.max(rows, 0) + Math.max(other.rows, 0);
+            return new Phase(millis + other.millis, sum);
+        }
+
+        @Override
+        public String toString() {
+            return rows < 0 ? String.format("%d ms", millis) : String.format("%d ms, %d rows", millis, rows);
+        }
+    }
+
+}
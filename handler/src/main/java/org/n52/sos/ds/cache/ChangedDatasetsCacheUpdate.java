@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.cache;
+
+import java.util.Collection;
+import java.util.Locale;
+
+import org.n52.series.db.HibernateSessionStore;
+import org.n52.sos.ds.cache.base.ObservationTimeCacheUpdate;
+import org.n52.sos.ds.cache.base.OfferingCacheUpdate;
+import org.n52.sos.ds.cache.base.ProcedureCacheUpdate;
+import org.n52.sos.util.GeometryHandler;
+
+/**
+ * Updates the offerings and procedures of changed datasets and the global
+ * time extents in an existing cache. The global time extents are
+ * recalculated from the updated offering times of the cache.
+ *
+ * @see DatasetChangeTracker
+ * @since 5.3.2
+ */
+public class ChangedDatasetsCacheUpdate extends CompositeCacheUpdate {
+
+    public ChangedDatasetsCacheUpdate(int threadCount,
+                                      Locale defaultLocale,
+                                      HibernateSessionStore sessionStore,
+                                      GeometryHandler geometryHandler,
+                                      Collection<String> offerings,
+                                      Collection<String> procedures) {
+        super(new OfferingCacheUpdate(threadCount,
+                                      defaultLocale,
+                                      geometryHandler,
+                                      sessionStore,
+                                      offerings),
+              new ProcedureCacheUpdate(threadCount, sessionStore, procedures),
+              new ObservationTimeCacheUpdate(true));
+    }
+
+}
@@ -48,6 +48,8 @@ public abstract class CompositeCacheUpdate extends AbstractDatasourceCacheUpdate
 
     private CompositeAction<AbstractDatasourceCacheUpdate> delegatedAction;
 
+    private long actionStart;
+
     public CompositeCacheUpdate(AbstractDatasourceCacheUpdate... actions) {
         this.delegatedAction = new CompositeSerialAction<AbstractDatasourceCacheUpdate>(actions) {
             @Override
@@ -55,10 +57,13 @@ public abstract class CompositeCacheUpdate extends AbstractDatasourceCacheUpdate
                 action.setCache(getCache());
                 action.setErrors(getErrors());
                 action.setSession(getSession());
+                action.setStatistics(getStatistics());
+                actionStart = System.currentTimeMillis();
             }
 
             @Override
             protected void post(AbstractDatasourceCacheUpdate action) {
+                recordPhase(action.getClass().getSimpleName(), actionStart, -1);
                 if (getSession() !=  null) {
                     try {
                         getSession().clear();
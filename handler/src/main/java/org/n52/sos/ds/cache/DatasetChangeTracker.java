@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.cache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Keeps the marks (references, value and result time bounds, last
+ * observation id and observation count) of the datasets that were applied to
+ * the cache by the last cache update and computes the datasets that changed
+ * since then. The marks are kept in memory only, so
+ * the first cache update after a restart is always a complete update.
+ *
+ * @since 5.3.2
+ */
+public class DatasetChangeTracker {
+
+    private Map<Long, DatasetMark> marks;
+
+    /**
+     * Compares the current marks with the marks of the last applied update.
+     *
+     * @param current
+     *            the current marks, keyed by dataset id
+     * @return the changes, {@link Delta#isInitial()} if no update was applied
+     *         yet
+     */
+    public synchronized Delta diff(Map<Long, DatasetMark> current) {
+        if (marks == null) {
+            return new Delta();
+        }
+        Delta delta = new Delta(false);
+        for (Map.Entry<Long, DatasetMark> entry : current.entrySet()) {
+            DatasetMark previous = marks.get(entry.getKey());
+            if (previous == null) {
+                delta.added.add(entry.getValue());
+            } else if (!previous.equals(entry.getValue())) {
+                delta.changed.add(entry.getValue());
+            }
+        }
+        for (Map.Entry<Long, DatasetMark> entry : marks.entrySet()) {
+            if (!current.containsKey(entry.getKey())) {
+                delta.removed.add(entry.getValue());
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * Stores the marks of a successfully applied update.
+     *
+     * @param current
+     *            the applied marks, keyed by dataset id
+     */
+    public synchronized void commit(Map<Long, DatasetMark> current) {
+        this.marks = new HashMap<>(current);
+    }
+
+    /**
+     * Forgets the stored marks, the next {@link #diff(Map)} is initial.
+     */
+    public synchronized void clear() {
+        this.marks = null;
+    }
+
+    /**
+     * The state of a dataset relevant for the cache. Besides the time bounds,
+     * the id of the last observation detects observations that were inserted
+     * within the bounds and the count detects deleted observations.
+     */
+    public static class DatasetMark {
+        private final String offering;
+        private final String procedure;
+        private final String feature;
+        private final String phenomenon;
+        private final Long firstValueAt;
+        private final Long lastValueAt;
+        private final Long firstResultTime;
+        private final Long lastResultTime;
+        private final Long lastObservationId;
+        private final long observationCount;
+
+        public DatasetMark(String offering, String procedure, String feature, String phenomenon,
+                Long firstValueAt, Long lastValueAt, Long firstResultTime, Long lastResultTime,
+                Long lastObservationId, long observationCount) {
+            this.offering = offering;
+            this.procedure = procedure;
+            this.feature = feature;
+            this.phenomenon = phenomenon;
+            this.firstValueAt = firstValueAt;
+            this.lastValueAt = lastValueAt;
+            this.firstResultTime = firstResultTime;
+            this.lastResultTime = lastResultTime;
+            this.lastObservationId = lastObservationId;
+            this.observationCount = observationCount;
+        }
+
+        public String getOffering() {
+            return offering;
+        }
+
+        public String getProcedure() {
+            return procedure;
+        }
+
+        public String getFeature() {
+            return feature;
+        }
+
+        public String getPhenomenon() {
+            return phenomenon;
+        }
+
+        public Long getFirstValueAt() {
+            return firstValueAt;
+        }
+
+        public Long getLastValueAt() {
+            return lastValueAt;
+        }
+
+        public Long getFirstResultTime() {
+            return firstResultTime;
+        }
+
+        public Long getLastResultTime() {
+            return lastResultTime;
+        }
+
+        public Long getLastObservationId() {
+            return lastObservationId;
+        }
+
+        public long getObservationCount() {
+            return observationCount;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(offering, procedure, feature, phenomenon, firstValueAt, lastValueAt, firstResultTime,
+                    lastResultTime, lastObservationId, observationCount);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            DatasetMark other = (DatasetMark) obj;
+            return Objects.equals(offering, other.offering) && Objects.equals(procedure, other.procedure)
+                    && Objects.equals(feature, other.feature) && Objects.equals(phenomenon, other.phenomenon)
+                    && Objects.equals(firstValueAt, other.firstValueAt)
+                    && Objects.equals(lastValueAt, other.lastValueAt)
+                    && Objects.equals(firstResultTime, other.firstResultTime)
+                    && Objects.equals(lastResultTime, other.lastResultTime)
+                    && Objects.equals(lastObservationId, other.lastObservationId)
+                    && observationCount == other.observationCount;
+        }
+    }
+
+    /**
+     * The datasets that were added, changed or removed since the last applied
+     * update.
+     */
+    public static class Delta {
+        private final boolean initial;
+        private final List<DatasetMark> added = new LinkedList<>();
+        private final List<DatasetMark> changed = new LinkedList<>();
+        private final List<DatasetMark> removed = new LinkedList<>();
+
+        Delta() {
+            this(true);
+        }
+
+        Delta(boolean initial) {
+            this.initial = initial;
+        }
+
+        public boolean isInitial() {
+            return initial;
+        }
+
+        public boolean isEmpty() {
+            return !initial && added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+        }
+
+        public List<DatasetMark> getAdded() {
+            return Collections.unmodifiableList(added);
+        }
+
+        public List<DatasetMark> getChanged() {
+            return Collections.unmodifiableList(changed);
+        }
+
+        public List<DatasetMark> getRemoved() {
+            return Collections.unmodifiableList(removed);
+        }
+    }
+}
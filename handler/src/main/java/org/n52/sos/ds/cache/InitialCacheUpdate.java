@@ -33,12 +33,11 @@ import java.util.Locale;
 import org.n52.iceland.i18n.I18NDAORepository;
 import org.n52.iceland.ogc.ows.OwsServiceMetadataRepository;
 import org.n52.series.db.HibernateSessionStore;
+import org.n52.sos.ds.cache.base.BulkOfferingProcedureCacheUpdate;
 import org.n52.sos.ds.cache.base.FeatureOfInterestCacheUpdate;
 import org.n52.sos.ds.cache.base.I18NCacheUpdate;
 import org.n52.sos.ds.cache.base.ObservablePropertiesCacheUpdate;
 import org.n52.sos.ds.cache.base.ObservationTimeCacheUpdate;
-import org.n52.sos.ds.cache.base.OfferingCacheUpdate;
-import org.n52.sos.ds.cache.base.ProcedureCacheUpdate;
 import org.n52.sos.ds.cache.base.RelatedFeaturesCacheUpdate;
 import org.n52.sos.ds.cache.base.ResultTemplateCacheUpdate;
 import org.n52.sos.util.GeometryHandler;
@@ -51,8 +50,7 @@ import org.n52.sos.util.GeometryHandler;
  * @see ObservationTimeCacheUpdate
  * @see FeatureOfInterestCacheUpdate
  * @see ObservablePropertiesCacheUpdate
- * @see OfferingCacheUpdate
- * @see ProcedureCacheUpdate
+ * @see BulkOfferingProcedureCacheUpdate
  * @see RelatedFeaturesCacheUpdate
  * @see ResultTemplateCacheUpdate
  * @see I18NCacheUpdate
@@ -68,8 +66,8 @@ public class InitialCacheUpdate extends CompositeCacheUpdate {
                               HibernateSessionStore sessionStore,
                               OwsServiceMetadataRepository serviceMetadataRepository,
                               GeometryHandler geometryHandler) {
-        //execute all updates except offerings and procedures in parallel, then execute offering and procedure updates
-        //(which spawn their own threads)
+        //execute all updates except offerings and procedures in parallel, then execute the bulk offering and
+        //procedure update (which spawns its own threads)
         super(new ParallelCacheUpdate(threadCount,
                                       sessionStore,
                                       new ObservablePropertiesCacheUpdate(),
@@ -79,11 +77,10 @@ public class InitialCacheUpdate extends CompositeCacheUpdate {
                                       new ResultTemplateCacheUpdate()),
               new I18NCacheUpdate(serviceMetadataRepository,
                                   i18NDAORepository),
-              new OfferingCacheUpdate(threadCount,
-                                      defaultLocale,
-                                      geometryHandler,
-                                      sessionStore),
-              new ProcedureCacheUpdate(threadCount, sessionStore));
+              new BulkOfferingProcedureCacheUpdate(threadCount,
+                                                   defaultLocale,
+                                                   geometryHandler,
+                                                   sessionStore));
     }
 
 }
@@ -46,4 +46,9 @@ public class ParallelCacheUpdate
     protected AbstractThreadableDatasourceCacheUpdate[] getUpdatesToExecute() {
         return updates;
     }
+
+    @Override
+    protected boolean isRecordingUpdateStatistics() {
+        return true;
+    }
 }
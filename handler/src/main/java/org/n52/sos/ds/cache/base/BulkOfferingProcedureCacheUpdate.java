@@ -0,0 +1,416 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.cache.base;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
+import org.hibernate.Hibernate;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.criterion.Restrictions;
+import org.n52.io.request.IoParameters;
+import org.n52.series.db.HibernateSessionStore;
+import org.n52.series.db.beans.AbstractFeatureEntity;
+import org.n52.series.db.beans.DatasetEntity;
+import org.n52.series.db.beans.DescribableEntity;
+import org.n52.series.db.beans.OfferingEntity;
+import org.n52.series.db.beans.PhenomenonEntity;
+import org.n52.series.db.beans.ProcedureEntity;
+import org.n52.series.db.beans.RelatedFeatureEntity;
+import org.n52.series.db.dao.DatasetDao;
+import org.n52.series.db.dao.DbQuery;
+import org.n52.series.db.dao.OfferingDao;
+import org.n52.series.db.dao.ProcedureDao;
+import org.n52.shetland.ogc.ows.exception.NoApplicableCodeException;
+import org.n52.shetland.util.CollectionHelper;
+import org.n52.sos.ds.cache.AbstractQueueingDatasourceCacheUpdate;
+import org.n52.sos.ds.cache.AbstractThreadableDatasourceCacheUpdate;
+import org.n52.sos.util.GeometryHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Updates the offering and procedure cache maps from a few set based queries
+ * instead of querying the datasets and the associations of each offering and
+ * procedure separately. The offerings and the procedures are split into
+ * partitions that are processed in parallel, each in its own session: the
+ * entities of a partition are loaded together with their collections, the
+ * datasets of the partition are loaded at once, only the entities the
+ * datasets refer to are loaded, and the cache maps are assembled by the
+ * {@link OfferingCacheUpdateTask}s and {@link ProcedureCacheUpdateTask}s from
+ * the loaded entities. The duration and the row count of each phase are
+ * recorded in the statistics, summed up over the partitions.
+ *
+ * @since 5.3.2
+ */
+public class BulkOfferingProcedureCacheUpdate
+        extends AbstractQueueingDatasourceCacheUpdate<AbstractThreadableDatasourceCacheUpdate> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkOfferingProcedureCacheUpdate.class);
+
+    private static final String THREAD_GROUP_NAME = "bulk-offering-procedure-cache-update";
+
+    /**
+     * The maximum number of ids in a single {@code in} restriction.
+     */
+    private static final int MAX_IDS_PER_QUERY = 500;
+
+    private static final String TRANSLATIONS = "translations";
+
+    private static final String RELATED_FEATURES = "relatedFeatures";
+
+    private static final String OBSERVATION_TYPES = "observationTypes";
+
+    private static final String FEATURE_TYPES = "featureTypes";
+
+    private static final String CHILDREN = "children";
+
+    private final int threads;
+
+    private final Locale defaultLanguage;
+
+    private final GeometryHandler geometryHandler;
+
+    private List<Long> offeringIds = Collections.emptyList();
+
+    private List<Long> procedureIds = Collections.emptyList();
+
+    public BulkOfferingProcedureCacheUpdate(int threads, Locale defaultLanguage, GeometryHandler geometryHandler,
+            HibernateSessionStore sessionStore) {
+        super(threads, THREAD_GROUP_NAME, sessionStore);
+        this.threads = Math.max(threads, 1);
+        this.defaultLanguage = defaultLanguage;
+        this.geometryHandler = geometryHandler;
+    }
+
+    @Override
+    public void execute() {
+        LOGGER.debug("Executing BulkOfferingProcedureCacheUpdate");
+        startStopwatch();
+        try {
+            long start = System.currentTimeMillis();
+            offeringIds = toIds(new OfferingDao(getSession()).get(createDefaultQuery()));
+            recordPhase("offerings.load_ids", start, offeringIds.size());
+            start = System.currentTimeMillis();
+            procedureIds = toIds(new ProcedureDao(getSession()).get(createDefaultQuery()));
+            recordPhase("procedures.load_ids", start, procedureIds.size());
+        } catch (HibernateException he) {
+            getErrors().add(new NoApplicableCodeException().causedBy(he)
+                    .withMessage("Error while updating offering and procedure cache!"));
+            return;
+        }
+        super.execute();
+        LOGGER.debug("Finished executing BulkOfferingProcedureCacheUpdate ({})", getStopwatchResult());
+    }
+
+    @Override
+    protected AbstractThreadableDatasourceCacheUpdate[] getUpdatesToExecute() {
+        List<AbstractThreadableDatasourceCacheUpdate> updates = new ArrayList<>();
+        for (List<Long> partition : partition(offeringIds)) {
+            updates.add(new OfferingPartitionTask(partition, defaultLanguage, geometryHandler));
+        }
+        for (List<Long> partition : partition(procedureIds)) {
+            updates.add(new ProcedurePartitionTask(partition));
+        }
+        return updates.toArray(new AbstractThreadableDatasourceCacheUpdate[updates.size()]);
+    }
+
+    private List<List<Long>> partition(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Lists.partition(ids, (ids.size() + threads - 1) / threads);
+    }
+
+    private static List<Long> toIds(Collection<? extends DescribableEntity> entities) {
+        return entities.stream().map(DescribableEntity::getId).distinct().collect(Collectors.toList());
+    }
+
+    private static DbQuery createDefaultQuery() {
+        return new DbQuery(IoParameters.createDefaults());
+    }
+
+    private abstract static class AbstractPartitionTask<E extends DescribableEntity>
+            extends AbstractThreadableDatasourceCacheUpdate {
+
+        private final String name;
+
+        private final List<Long> ids;
+
+        AbstractPartitionTask(String name, List<Long> ids) {
+            this.name = name;
+            this.ids = ids;
+        }
+
+        @Override
+        public void execute() {
+            LOGGER.debug("Executing bulk {} cache update for {} entities", name, ids.size());
+            try {
+                Session session = getSession();
+                long start = System.currentTimeMillis();
+                List<E> entities = loadEntities(session, ids);
+                recordPhase(name + ".load", start, entities.size());
+
+                start = System.currentTimeMillis();
+                Collection<DatasetEntity> datasets = new ArrayList<>();
+                for (List<Long> chunk : Lists.partition(ids, MAX_IDS_PER_QUERY)) {
+                    datasets.addAll(new DatasetDao<>(session).get(createDatasetQuery(Joiner.on(',').join(chunk))));
+                }
+                Map<Long, Collection<DatasetEntity>> datasetsById = Maps.newHashMapWithExpectedSize(ids.size());
+                for (DatasetEntity dataset : datasets) {
+                    DescribableEntity reference = getReference(dataset);
+                    if (reference != null) {
+                        CollectionHelper.addToCollectionMap(reference.getId(), dataset, datasetsById);
+                    }
+                }
+                recordPhase(name + ".load_datasets", start, datasets.size());
+
+                start = System.currentTimeMillis();
+                recordPhase(name + ".load_references", start, loadReferences(session, datasets));
+
+                start = System.currentTimeMillis();
+                for (E entity : entities) {
+                    AbstractThreadableDatasourceCacheUpdate task = createTask(entity,
+                            datasetsById.getOrDefault(entity.getId(), Collections.emptyList()));
+                    task.setCache(getCache());
+                    task.setErrors(getErrors());
+                    task.setSession(session);
+                    task.execute();
+                }
+                recordPhase(name + ".assemble", start, entities.size());
+            } catch (HibernateException he) {
+                getErrors().add(new NoApplicableCodeException().causedBy(he)
+                        .withMessage("Error while updating %s cache!", name));
+            }
+        }
+
+        protected abstract DbQuery createDatasetQuery(String ids);
+
+        protected abstract List<E> loadEntities(Session session, List<Long> ids);
+
+        /**
+         * Loads the entities the datasets refer to and that are not yet
+         * loaded into the session, so that the references are resolved
+         * without further queries.
+         *
+         * @param session
+         *            the session
+         * @param datasets
+         *            the datasets of the partition
+         * @return the number of loaded entities
+         */
+        protected abstract long loadReferences(Session session, Collection<DatasetEntity> datasets);
+
+        protected abstract DescribableEntity getReference(DatasetEntity dataset);
+
+        protected abstract AbstractThreadableDatasourceCacheUpdate createTask(E entity,
+                Collection<DatasetEntity> datasets);
+
+        protected DbQuery createDatasetQuery(String parameter, String ids) {
+            Map<String, String> map = Maps.newHashMap();
+            map.put(parameter, ids);
+            return new DbQuery(IoParameters.createFromSingleValueMap(map));
+        }
+
+        /**
+         * Loads the entities with the given ids and initializes the given
+         * associations with one additional query per association, which
+         * avoids the cartesian product of joining several collections at
+         * once. If an association can not be fetched it is left to be loaded
+         * lazily.
+         *
+         * @param session
+         *            the session
+         * @param type
+         *            the entity type
+         * @param idProperty
+         *            the id property of the entity type
+         * @param ids
+         *            the ids of the entities to load
+         * @param associations
+         *            the associations to initialize
+         * @return the loaded entities
+         */
+        @SuppressWarnings("unchecked")
+        protected <T> List<T> loadByIds(Session session, Class<T> type, String idProperty, Collection<Long> ids,
+                String... associations) {
+            List<T> entities = new ArrayList<>(ids.size());
+            for (List<Long> chunk : Lists.partition(new ArrayList<>(ids), MAX_IDS_PER_QUERY)) {
+                entities.addAll(session.createCriteria(type).add(Restrictions.in(idProperty, chunk)).list());
+                for (String association : associations) {
+                    try {
+                        Criteria criteria = session.createCriteria(type).add(Restrictions.in(idProperty, chunk))
+                                .setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
+                        for (String path : association.split(",")) {
+                            criteria.setFetchMode(path, FetchMode.JOIN);
+                        }
+                        criteria.list();
+                    } catch (HibernateException | IllegalArgumentException e) {
+                        LOGGER.debug("Could not fetch {} of {}, loading it lazily", association,
+                                type.getSimpleName(), e);
+                    }
+                }
+            }
+            return entities;
+        }
+
+        /**
+         * Loads the not yet initialized entities the datasets refer to.
+         *
+         * @param session
+         *            the session
+         * @param datasets
+         *            the datasets
+         * @param reference
+         *            the reference of the datasets
+         * @param type
+         *            the type of the referenced entities
+         * @param idProperty
+         *            the id property of the type
+         * @param associations
+         *            the associations of the referenced entities to
+         *            initialize
+         * @return the number of loaded entities
+         */
+        protected long loadUninitialized(Session session, Collection<DatasetEntity> datasets,
+                Function<DatasetEntity, ? extends DescribableEntity> reference, Class<?> type, String idProperty,
+                String... associations) {
+            Set<Long> uninitialized = new HashSet<>();
+            for (DatasetEntity dataset : datasets) {
+                DescribableEntity entity = reference.apply(dataset);
+                if (entity != null && !Hibernate.isInitialized(entity)) {
+                    uninitialized.add(entity.getId());
+                }
+            }
+            if (uninitialized.isEmpty()) {
+                return 0;
+            }
+            return loadByIds(session, type, idProperty, uninitialized, associations).size();
+        }
+    }
+
+    private static class OfferingPartitionTask extends AbstractPartitionTask<OfferingEntity> {
+
+        private final Locale defaultLanguage;
+
+        private final GeometryHandler geometryHandler;
+
+        OfferingPartitionTask(List<Long> ids, Locale defaultLanguage, GeometryHandler geometryHandler) {
+            super("offerings", ids);
+            this.defaultLanguage = defaultLanguage;
+            this.geometryHandler = geometryHandler;
+        }
+
+        @Override
+        protected List<OfferingEntity> loadEntities(Session session, List<Long> ids) {
+            return loadByIds(session, OfferingEntity.class, OfferingEntity.PROPERTY_ID, ids, TRANSLATIONS,
+                    OfferingEntity.PROPERTY_PARENTS,
+                    RELATED_FEATURES + "," + RELATED_FEATURES + "." + RelatedFeatureEntity.FEATURE_OF_INTEREST,
+                    OBSERVATION_TYPES, FEATURE_TYPES);
+        }
+
+        @Override
+        protected DbQuery createDatasetQuery(String ids) {
+            return createDatasetQuery(IoParameters.OFFERINGS, ids);
+        }
+
+        @Override
+        protected long loadReferences(Session session, Collection<DatasetEntity> datasets) {
+            return loadUninitialized(session, datasets, DatasetEntity::getProcedure, ProcedureEntity.class,
+                    ProcedureEntity.PROPERTY_ID, ProcedureEntity.PROPERTY_PARENTS, CHILDREN)
+                    + loadUninitialized(session, datasets, DatasetEntity::getPhenomenon, PhenomenonEntity.class,
+                            PhenomenonEntity.PROPERTY_ID)
+                    + loadUninitialized(session, datasets, DatasetEntity::getFeature, AbstractFeatureEntity.class,
+                            AbstractFeatureEntity.PROPERTY_ID);
+        }
+
+        @Override
+        protected DescribableEntity getReference(DatasetEntity dataset) {
+            return dataset.getOffering();
+        }
+
+        @Override
+        protected AbstractThreadableDatasourceCacheUpdate createTask(OfferingEntity offering,
+                Collection<DatasetEntity> datasets) {
+            return new OfferingCacheUpdateTask(offering, datasets, defaultLanguage, geometryHandler);
+        }
+    }
+
+    private static class ProcedurePartitionTask extends AbstractPartitionTask<ProcedureEntity> {
+
+        ProcedurePartitionTask(List<Long> ids) {
+            super("procedures", ids);
+        }
+
+        @Override
+        protected List<ProcedureEntity> loadEntities(Session session, List<Long> ids) {
+            return loadByIds(session, ProcedureEntity.class, ProcedureEntity.PROPERTY_ID, ids,
+                    ProcedureEntity.PROPERTY_PARENTS);
+        }
+
+        @Override
+        protected DbQuery createDatasetQuery(String ids) {
+            return createDatasetQuery(IoParameters.PROCEDURES, ids);
+        }
+
+        @Override
+        protected long loadReferences(Session session, Collection<DatasetEntity> datasets) {
+            return loadUninitialized(session, datasets, DatasetEntity::getOffering, OfferingEntity.class,
+                    OfferingEntity.PROPERTY_ID)
+                    + loadUninitialized(session, datasets, DatasetEntity::getPhenomenon, PhenomenonEntity.class,
+                            PhenomenonEntity.PROPERTY_ID);
+        }
+
+        @Override
+        protected DescribableEntity getReference(DatasetEntity dataset) {
+            return dataset.getProcedure();
+        }
+
+        @Override
+        protected AbstractThreadableDatasourceCacheUpdate createTask(ProcedureEntity procedure,
+                Collection<DatasetEntity> datasets) {
+            return new ProcedureCacheUpdateTask(procedure, datasets);
+        }
+    }
+}
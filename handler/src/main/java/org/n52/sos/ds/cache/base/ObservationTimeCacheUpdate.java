@@ -28,21 +28,23 @@
  */
 package org.n52.sos.ds.cache.base;
 
-import java.util.List;
-
 import org.hibernate.HibernateException;
-import org.n52.io.request.IoParameters;
-import org.n52.series.db.DataAccessException;
+import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.criterion.Subqueries;
+import org.n52.series.db.beans.DatasetEntity;
 import org.n52.series.db.beans.OfferingEntity;
-import org.n52.series.db.dao.DbQuery;
-import org.n52.series.db.dao.OfferingDao;
-import org.n52.shetland.ogc.gml.time.TimePeriod;
 import org.n52.shetland.ogc.ows.exception.NoApplicableCodeException;
+import org.n52.shetland.util.DateTimeHelper;
 import org.n52.sos.ds.cache.AbstractThreadableDatasourceCacheUpdate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Updates the global phenomenon and result time. The extents are either
+ * queried as aggregate of the offering times or, if the offering times in the
+ * cache are current, recalculated from the cache without a query.
  *
  * @author <a href="mailto:c.autermann@52north.org">Christian Autermann</a>
  *
@@ -51,30 +53,56 @@ import org.slf4j.LoggerFactory;
 public class ObservationTimeCacheUpdate extends AbstractThreadableDatasourceCacheUpdate {
     private static final Logger LOGGER = LoggerFactory.getLogger(ObservationTimeCacheUpdate.class);
 
+    private final boolean fromOfferingTimes;
+
+    public ObservationTimeCacheUpdate() {
+        this(false);
+    }
+
+    /**
+     * @param fromOfferingTimes
+     *            if the global extents should be recalculated from the
+     *            offering times in the cache instead of queried
+     * @since 5.3.2
+     */
+    public ObservationTimeCacheUpdate(boolean fromOfferingTimes) {
+        this.fromOfferingTimes = fromOfferingTimes;
+    }
+
     @Override
     public void execute() {
         LOGGER.debug("Executing ObservationTimeCacheUpdate");
         startStopwatch();
-        try {
-            // TODD Use TimerPeriod.expand from OfferingTimes
-            List<OfferingEntity> offerings =
-                    new OfferingDao(getSession()).getAllInstances(new DbQuery(IoParameters.createDefaults()));
-            TimePeriod phenomenonTime = new TimePeriod();
-            TimePeriod resultTime = new TimePeriod();
-            for (OfferingEntity offering : offerings) {
-                phenomenonTime.extendToContain(
-                        new TimePeriod(offering.getSamplingTimeStart(), offering.getSamplingTimeEnd()));
-                resultTime.extendToContain(new TimePeriod(offering.getResultTimeStart(), offering.getResultTimeEnd()));
+        if (fromOfferingTimes) {
+            getCache().recalculatePhenomenonTime();
+            getCache().recalculateResultTime();
+        } else {
+            try {
+                Object[] extents = (Object[]) getSession().createCriteria(OfferingEntity.class)
+                        .add(Subqueries.propertyIn(OfferingEntity.PROPERTY_ID, getPublishedOfferings()))
+                        .setProjection(Projections.projectionList()
+                                .add(Projections.min(OfferingEntity.PROPERTY_SAMPLING_TIME_START))
+                                .add(Projections.max(OfferingEntity.PROPERTY_SAMPLING_TIME_END))
+                                .add(Projections.min(OfferingEntity.PROPERTY_RESULT_TIME_START))
+                                .add(Projections.max(OfferingEntity.PROPERTY_RESULT_TIME_END)))
+                        .uniqueResult();
+                getCache().setMinPhenomenonTime(DateTimeHelper.makeDateTime(extents[0]));
+                getCache().setMaxPhenomenonTime(DateTimeHelper.makeDateTime(extents[1]));
+                getCache().setMinResultTime(DateTimeHelper.makeDateTime(extents[2]));
+                getCache().setMaxResultTime(DateTimeHelper.makeDateTime(extents[3]));
+            } catch (HibernateException he) {
+                getErrors().add(new NoApplicableCodeException().causedBy(he)
+                        .withMessage("Error while updating observation time cache!"));
             }
-            getCache().setMinPhenomenonTime(phenomenonTime.getStart());
-            getCache().setMaxPhenomenonTime(phenomenonTime.getEnd());
-            getCache().setMinResultTime(resultTime.getStart());
-            getCache().setMaxResultTime(resultTime.getEnd());
-        } catch (HibernateException | DataAccessException dae) {
-            getErrors().add(new NoApplicableCodeException().causedBy(dae)
-                    .withMessage("Error while updating observation time cache!"));
         }
         LOGGER.debug("Finished executing ObservationTimeCacheUpdate ({})", getStopwatchResult());
     }
 
+    private DetachedCriteria getPublishedOfferings() {
+        return DetachedCriteria.forClass(DatasetEntity.class)
+                .add(Restrictions.eq(DatasetEntity.PROPERTY_DELETED, false))
+                .add(Restrictions.eq(DatasetEntity.PROPERTY_PUBLISHED, true))
+                .setProjection(Projections.distinct(Projections.property(DatasetEntity.PROPERTY_OFFERING)));
+    }
+
 }
@@ -29,7 +29,9 @@
 package org.n52.sos.ds.cache.base;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import org.n52.iceland.exception.ows.concrete.GenericThrowableWrapperException;
 import org.n52.io.request.IoParameters;
@@ -41,11 +43,13 @@ import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
 import org.n52.sos.ds.ApiQueryHelper;
 import org.n52.sos.ds.cache.AbstractQueueingDatasourceCacheUpdate;
 import org.n52.sos.ds.cache.DatasourceCacheUpdateHelper;
+import org.n52.sos.ds.hibernate.util.QueryHelper;
 import org.n52.sos.util.GeometryHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
  *
@@ -93,6 +97,11 @@ public class OfferingCacheUpdate extends AbstractQueueingDatasourceCacheUpdate<O
                 if (offeringsIdToUpdate == null || offeringsIdToUpdate.isEmpty()) {
                     return offeringDAO.get(new DbQuery(IoParameters.createDefaults()));
                 }
+                Collection<OfferingEntity> offerings = Lists.newArrayList();
+                for (List<String> identifiers : QueryHelper.getListsForIdentifiers(offeringsIdToUpdate)) {
+                    offerings.addAll(offeringDAO.get(createDbQuery(identifiers)));
+                }
+                return offerings;
             }
         } catch (Exception e) {
             getErrors().add(new GenericThrowableWrapperException(e)
@@ -101,6 +110,13 @@ public class OfferingCacheUpdate extends AbstractQueueingDatasourceCacheUpdate<O
         return offeringsToUpdate;
     }
 
+    private DbQuery createDbQuery(Collection<String> identifiers) {
+        Map<String, String> map = Maps.newHashMap();
+        map.put(IoParameters.OFFERINGS, listToString(identifiers));
+        map.put(IoParameters.MATCH_DOMAIN_IDS, Boolean.toString(true));
+        return new DbQuery(IoParameters.createFromSingleValueMap(map));
+    }
+
     @Override
     public void execute() {
         LOGGER.debug("Executing OfferingCacheUpdate (Single Threaded Tasks)");
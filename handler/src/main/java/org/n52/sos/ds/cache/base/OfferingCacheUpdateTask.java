@@ -101,7 +101,29 @@ public class OfferingCacheUpdateTask extends AbstractThreadableDatasourceCacheUp
         this.datasets.clear();
     }
 
+    /**
+     * Constructor for an offering and its datasets that were already loaded
+     * in bulk by the session this task is executed with.
+     *
+     * @param offering
+     *            Offering entity
+     * @param datasets
+     *            the datasets of the offering
+     * @param defaultLanguage
+     *            the default language
+     */
+    OfferingCacheUpdateTask(OfferingEntity offering, Collection<DatasetEntity> datasets, Locale defaultLanguage,
+            GeometryHandler geometryHandler) {
+        this(offering.getId(), defaultLanguage, geometryHandler);
+        this.offering = offering;
+        this.identifier = offering.getIdentifier();
+        this.datasets.addAll(datasets);
+    }
+
     private void init(Session session) {
+        if (offering != null) {
+            return;
+        }
         this.offering = session.load(OfferingEntity.class, offeringId);
         this.identifier = offering.getIdentifier();
         if (datasets != null) {
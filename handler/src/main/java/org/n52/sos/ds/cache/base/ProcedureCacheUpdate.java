@@ -30,18 +30,23 @@ package org.n52.sos.ds.cache.base;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 import org.n52.io.request.IoParameters;
 import org.n52.series.db.HibernateSessionStore;
 import org.n52.series.db.beans.ProcedureEntity;
 import org.n52.series.db.dao.DbQuery;
 import org.n52.series.db.dao.ProcedureDao;
+import org.n52.sos.ds.ApiQueryHelper;
 import org.n52.sos.ds.cache.AbstractQueueingDatasourceCacheUpdate;
 import org.n52.sos.ds.cache.DatasourceCacheUpdateHelper;
+import org.n52.sos.ds.hibernate.util.QueryHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
  * @author <a href="mailto:c.autermann@52north.org">Christian Autermann</a>
@@ -50,13 +55,15 @@ import com.google.common.collect.Lists;
  * @since 4.0.0
  */
 public class ProcedureCacheUpdate extends AbstractQueueingDatasourceCacheUpdate<ProcedureCacheUpdateTask>
-        implements DatasourceCacheUpdateHelper {
+        implements ApiQueryHelper, DatasourceCacheUpdateHelper {
     private static final Logger LOGGER = LoggerFactory.getLogger(ProcedureCacheUpdate.class);
 
     private static final String THREAD_GROUP_NAME = "procedure-cache-update";
 
     private Collection<ProcedureEntity> procedures = new ArrayList<>();
 
+    private final Collection<String> procedureIdsToUpdate = new ArrayList<>();
+
     /**
      * constructor
      *
@@ -64,7 +71,24 @@ public class ProcedureCacheUpdate extends AbstractQueueingDatasourceCacheUpdate<
      *            Thread count
      */
     public ProcedureCacheUpdate(int threads, HibernateSessionStore sessionStore) {
+        this(threads, sessionStore, null);
+    }
+
+    /**
+     * constructor
+     *
+     * @param threads
+     *            Thread count
+     * @param procedureIdsToUpdate
+     *            the identifiers of the procedures to update, all procedures
+     *            are updated if {@code null} or empty
+     */
+    public ProcedureCacheUpdate(int threads, HibernateSessionStore sessionStore,
+            Collection<String> procedureIdsToUpdate) {
         super(threads, THREAD_GROUP_NAME, sessionStore);
+        if (procedureIdsToUpdate != null) {
+            this.procedureIdsToUpdate.addAll(procedureIdsToUpdate);
+        }
     }
 
     @Override
@@ -72,7 +96,7 @@ public class ProcedureCacheUpdate extends AbstractQueueingDatasourceCacheUpdate<
         // single threaded updates
         LOGGER.debug("Executing ProcedureCacheUpdate (Single Threaded Tasks)");
         startStopwatch();
-        procedures = new ProcedureDao(getSession()).get(new DbQuery(IoParameters.createDefaults()));
+        procedures = getProceduresToUpdate();
         LOGGER.debug("Finished executing ProcedureCacheUpdate (Single Threaded Tasks) ({})", getStopwatchResult());
 
         // multi-threaded execution
@@ -82,6 +106,25 @@ public class ProcedureCacheUpdate extends AbstractQueueingDatasourceCacheUpdate<
         LOGGER.debug("Finished executing ProcedureCacheUpdate (Multi-Threaded Tasks) ({})", getStopwatchResult());
     }
 
+    private Collection<ProcedureEntity> getProceduresToUpdate() {
+        ProcedureDao procedureDao = new ProcedureDao(getSession());
+        if (procedureIdsToUpdate.isEmpty()) {
+            return procedureDao.get(new DbQuery(IoParameters.createDefaults()));
+        }
+        Collection<ProcedureEntity> proceduresToUpdate = new ArrayList<>();
+        for (List<String> identifiers : QueryHelper.getListsForIdentifiers(procedureIdsToUpdate)) {
+            proceduresToUpdate.addAll(procedureDao.get(createDbQuery(identifiers)));
+        }
+        return proceduresToUpdate;
+    }
+
+    private DbQuery createDbQuery(Collection<String> identifiers) {
+        Map<String, String> map = Maps.newHashMap();
+        map.put(IoParameters.PROCEDURES, listToString(identifiers));
+        map.put(IoParameters.MATCH_DOMAIN_IDS, Boolean.toString(true));
+        return new DbQuery(IoParameters.createFromSingleValueMap(map));
+    }
+
     @Override
     protected ProcedureCacheUpdateTask[] getUpdatesToExecute() {
         Collection<ProcedureCacheUpdateTask> procedureUpdateTasks = Lists.newArrayList();
@@ -78,7 +78,25 @@ class ProcedureCacheUpdateTask extends AbstractThreadableDatasourceCacheUpdate i
         this.datasets.clear();
     }
 
+    /**
+     * Constructor for a procedure and its datasets that were already loaded
+     * in bulk by the session this task is executed with.
+     *
+     * @param procedure
+     *            Procedure entity
+     * @param datasets
+     *            the datasets of the procedure
+     */
+    ProcedureCacheUpdateTask(ProcedureEntity procedure, Collection<DatasetEntity> datasets) {
+        this(procedure.getId());
+        this.procedure = procedure;
+        this.datasets.addAll(datasets);
+    }
+
     private void init(Session session) {
+        if (procedure != null) {
+            return;
+        }
         this.procedure = session.load(ProcedureEntity.class, procedureId);
         if (datasets != null) {
             this.datasets.addAll(new DatasetDao(session).get(createDatasetDbQuery(procedureId)));
@@ -96,7 +96,7 @@ public class AbstractIdentifierNameDescriptionDAO extends TimeCreator {
                     entity.setIdentifierCodespace(localCache.get(identifier.getCodeSpace()));
                 } else {
                     entity.setIdentifierCodespace(
-                            new CodespaceDAO().getOrInsertCodespace(identifier.getCodeSpace(), session));
+                            getDaoFactory().getCodespaceDAO().getOrInsertCodespace(identifier.getCodeSpace(), session));
                 }
             }
         } else {
@@ -136,7 +136,7 @@ public class AbstractIdentifierNameDescriptionDAO extends TimeCreator {
                     entity.setIdentifierCodespace(localCache.get(codespace));
                 } else {
                     entity.setIdentifierCodespace(
-                            new CodespaceDAO().getOrInsertCodespace(codespace, session));
+                            getDaoFactory().getCodespaceDAO().getOrInsertCodespace(codespace, session));
                 }
             }
         }
@@ -193,7 +193,7 @@ public class AbstractIdentifierNameDescriptionDAO extends TimeCreator {
 
     public void insertNames(AbstractFeatureEntity<?> feature, List<CodeType> name, I18NDAORepository i18nr,
             Session session) {
-        CodespaceDAO codespaceDAO = new CodespaceDAO();
+        CodespaceDAO codespaceDAO = getDaoFactory().getCodespaceDAO();
         // I18NDAO<I18NFeatureMetadata> dao =
         // i18nr.getDAO(I18NFeatureMetadata.class);
         for (CodeType codeType : name) {
@@ -35,6 +35,7 @@ import org.n52.series.db.beans.CategoryEntity;
 import org.n52.series.db.beans.PhenomenonEntity;
 import org.n52.shetland.ogc.swe.simpleType.SweText;
 import org.n52.sos.ds.hibernate.util.HibernateHelper;
+import org.n52.sos.ds.hibernate.util.SharedEntityInsertion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,46 +60,34 @@ public class CategoryDAO extends AbstractIdentifierNameDescriptionDAO {
     }
 
     public CategoryEntity getOrInsertCategory(String value, String name, String description, Session session) {
-        CategoryEntity category = getCategoryForIdentifier(value, session);
-        if (category == null) {
-            category = new CategoryEntity();
-            addIdentifier(category, value, session);
-            addName(category, name, session);
+        return SharedEntityInsertion.getOrInsert(s -> getCategoryForIdentifier(value, s), s -> {
+            CategoryEntity category = new CategoryEntity();
+            addIdentifier(category, value, s);
+            addName(category, name, s);
             addDescription(category, description);
-            session.save(category);
-            session.flush();
-            session.refresh(category);
-        }
-        return category;
+            return category;
+        }, getDaoFactory().isConcurrentInsertion(), session);
     }
 
     public CategoryEntity getOrInsertCategory(SweText sweText, Session session) {
-        CategoryEntity category = getCategoryForIdentifier(sweText.getValue(), session);
-        if (category == null) {
-            category = new CategoryEntity();
-            addIdentifier(category, sweText.getValue(), session);
-            addName(category, sweText.getName(), session);
+        return SharedEntityInsertion.getOrInsert(s -> getCategoryForIdentifier(sweText.getValue(), s), s -> {
+            CategoryEntity category = new CategoryEntity();
+            addIdentifier(category, sweText.getValue(), s);
+            addName(category, sweText.getName(), s);
             addDescription(category, sweText.getDescription());
-            session.save(category);
-            session.flush();
-            session.refresh(category);
-        }
-        return category;
+            return category;
+        }, getDaoFactory().isConcurrentInsertion(), session);
     }
 
     public CategoryEntity getOrInsertCategory(PhenomenonEntity obsProp, Session session) {
-        CategoryEntity category = getCategoryForIdentifier(obsProp.getIdentifier(), session);
-        if (category == null) {
-            category = new CategoryEntity();
+        return SharedEntityInsertion.getOrInsert(s -> getCategoryForIdentifier(obsProp.getIdentifier(), s), s -> {
+            CategoryEntity category = new CategoryEntity();
             category.setIdentifier(obsProp.getIdentifier(), getDaoFactory().isStaSupportsUrls());
             category.setIdentifierCodespace(obsProp.getIdentifierCodespace());
             category.setName(obsProp.getName());
             category.setNameCodespace(obsProp.getNameCodespace());
             category.setDescription(obsProp.getDescription());
-            session.save(category);
-            session.flush();
-            session.refresh(category);
-        }
-        return category;
+            return category;
+        }, getDaoFactory().isConcurrentInsertion(), session);
     }
 }
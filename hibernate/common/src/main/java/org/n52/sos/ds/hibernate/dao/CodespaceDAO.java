@@ -33,6 +33,7 @@ import org.hibernate.Session;
 import org.hibernate.criterion.Restrictions;
 import org.n52.series.db.beans.CodespaceEntity;
 import org.n52.sos.ds.hibernate.util.HibernateHelper;
+import org.n52.sos.ds.hibernate.util.SharedEntityInsertion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,6 +47,20 @@ public class CodespaceDAO {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CodespaceDAO.class);
 
+    private final boolean concurrentInsertion;
+
+    public CodespaceDAO() {
+        this(false);
+    }
+
+    /**
+     * @param concurrentInsertion
+     *            if concurrent insertion is enabled
+     */
+    public CodespaceDAO(boolean concurrentInsertion) {
+        this.concurrentInsertion = concurrentInsertion;
+    }
+
     /**
      * Get codespace object for identifier
      *
@@ -72,14 +87,10 @@ public class CodespaceDAO {
      * @return Codespace object
      */
     public CodespaceEntity getOrInsertCodespace(final String codespace, final Session session) {
-        CodespaceEntity result = getCodespace(codespace, session);
-        if (result == null) {
-            result = new CodespaceEntity();
+        return SharedEntityInsertion.getOrInsert(s -> getCodespace(codespace, s), s -> {
+            CodespaceEntity result = new CodespaceEntity();
             result.setName(codespace);
-            session.save(result);
-            session.flush();
-            session.refresh(result);
-        }
-        return result;
+            return result;
+        }, concurrentInsertion, session);
     }
 }
@@ -92,6 +92,7 @@ public class DaoFactory {
     private FeatureQueryHandler featureQueryHandler;
     private boolean includeChildObservableProperties;
     private boolean staSupportsUrls;
+    private boolean concurrentInsertion;
     private SosHelper sosHelper;
 
     @Inject
@@ -160,6 +161,15 @@ public class DaoFactory {
         this.staSupportsUrls = staSupportsUrls;
     }
 
+    public boolean isConcurrentInsertion() {
+        return concurrentInsertion;
+    }
+
+    @Setting(SosSettings.CONCURRENT_INSERTION)
+    public void setConcurrentInsertion(boolean concurrentInsertion) {
+        this.concurrentInsertion = concurrentInsertion;
+    }
+
     @Inject
     public void setFeatureQueryHandler(FeatureQueryHandler featureQueryHandler) {
         this.featureQueryHandler = featureQueryHandler;
@@ -249,7 +259,7 @@ public class DaoFactory {
     }
 
     public UnitDAO getUnitDAO() {
-        return new UnitDAO();
+        return new UnitDAO(isConcurrentInsertion());
     }
 
     public ResultTemplateDAO getResultTemplateDAO() {
@@ -257,15 +267,15 @@ public class DaoFactory {
     }
 
     public CodespaceDAO getCodespaceDAO() {
-        return new CodespaceDAO();
+        return new CodespaceDAO(isConcurrentInsertion());
     }
 
     public FormatDAO getObservationTypeDAO() {
-        return new FormatDAO();
+        return new FormatDAO(isConcurrentInsertion());
     }
 
     public FormatDAO getFeatureTypeDAO() {
-        return new FormatDAO();
+        return new FormatDAO(isConcurrentInsertion());
     }
 
     public OfferingDAO getOfferingDAO() {
@@ -273,11 +283,11 @@ public class DaoFactory {
     }
 
     public ParameterDAO getParameterDAO() {
-        return new ParameterDAO();
+        return new ParameterDAO(isConcurrentInsertion());
     }
 
     public FormatDAO getProcedureDescriptionFormatDAO() {
-        return new FormatDAO();
+        return new FormatDAO(isConcurrentInsertion());
     }
 
     public VerticalMetadataDAO getVerticalMetadataDAO() {
@@ -291,7 +291,8 @@ public class FeatureOfInterestDAO extends AbstractFeatureOfInterestDAO {
             if (url != null && !url.isEmpty()) {
                 feature.setUrl(url);
             }
-            FormatEntity type = new FormatDAO().getOrInsertFormatEntity(OGCConstants.UNKNOWN, session);
+            FormatEntity type =
+                    getDaoFactory().getFeatureTypeDAO().getOrInsertFormatEntity(OGCConstants.UNKNOWN, session);
             feature.setFeatureType(type);
             session.save(feature);
         } else if (feature.getUrl() != null && !feature.getUrl().isEmpty() && url != null && !url.isEmpty()) {
@@ -525,13 +526,13 @@ public class FeatureOfInterestDAO extends AbstractFeatureOfInterestDAO {
                 }
                 if (abstractFeature instanceof FeatureWithFeatureType
                         && ((FeatureWithFeatureType) abstractFeature).isSetFeatureType()) {
-                    feature.setFeatureType(new FormatDAO().getOrInsertFormatEntity(
+                    feature.setFeatureType(dao.getDaoFactory().getFeatureTypeDAO().getOrInsertFormatEntity(
                             ((FeatureWithFeatureType) abstractFeature).getFeatureType(), session));
                 }
                 if (abstractFeature instanceof AbstractSamplingFeature
                         && ((AbstractSamplingFeature) abstractFeature).isSetParameter()) {
                     Map<UoM, UnitEntity> unitCache = Maps.newHashMap();
-                    Set<ParameterEntity<?>> parameter = new ParameterDAO().insertParameter(
+                    Set<ParameterEntity<?>> parameter = dao.getDaoFactory().getParameterDAO().insertParameter(
                             ((AbstractSamplingFeature) abstractFeature).getParameters(), unitCache, session);
                     feature.setParameters(parameter);
                 }
@@ -563,7 +564,9 @@ public class FeatureOfInterestDAO extends AbstractFeatureOfInterestDAO {
         }
 
         private UnitEntity getUnit(Value<?> value) {
-            return value.isSetUnit() ? new UnitDAO().getOrInsertUnit(value.getUnitObject(), session) : null;
+            return value.isSetUnit()
+                    ? dao.getDaoFactory().getUnitDAO().getOrInsertUnit(value.getUnitObject(), session)
+                    : null;
         }
 
         private AbstractFeatureEntity getFeatureOfInterest(AbstractSamplingFeature value) throws OwsExceptionReport {
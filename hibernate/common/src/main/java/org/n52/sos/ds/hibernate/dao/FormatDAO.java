@@ -40,6 +40,7 @@ import org.hibernate.criterion.Restrictions;
 import org.n52.series.db.beans.AbstractFeatureEntity;
 import org.n52.series.db.beans.FormatEntity;
 import org.n52.sos.ds.hibernate.util.HibernateHelper;
+import org.n52.sos.ds.hibernate.util.SharedEntityInsertion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,6 +54,20 @@ public class FormatDAO {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(FormatDAO.class);
 
+    private final boolean concurrentInsertion;
+
+    public FormatDAO() {
+        this(false);
+    }
+
+    /**
+     * @param concurrentInsertion
+     *            if concurrent insertion is enabled
+     */
+    public FormatDAO(boolean concurrentInsertion) {
+        this.concurrentInsertion = concurrentInsertion;
+    }
+
     @SuppressWarnings("unchecked")
     public List<String> getFormatEntity(Session session) {
         Criteria c = session.createCriteria(FormatEntity.class);
@@ -110,15 +125,11 @@ public class FormatDAO {
      */
     public FormatEntity getOrInsertFormatEntity(String format,
             Session session) {
-        FormatEntity hFormatEntity =
-                getFormatEntityObject(format, session);
-        if (hFormatEntity == null) {
-            hFormatEntity = new FormatEntity();
+        return SharedEntityInsertion.getOrInsert(s -> getFormatEntityObject(format, s), s -> {
+            FormatEntity hFormatEntity = new FormatEntity();
             hFormatEntity.setFormat(format);
-            session.save(hFormatEntity);
-            session.flush();
-        }
-        return hFormatEntity;
+            return hFormatEntity;
+        }, concurrentInsertion, session);
     }
 
     /**
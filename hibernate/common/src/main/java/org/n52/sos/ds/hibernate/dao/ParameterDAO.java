@@ -84,6 +84,20 @@ public class ParameterDAO {
 
     private static final Logger LOG = LoggerFactory.getLogger(ParameterDAO.class);
 
+    private final boolean concurrentInsertion;
+
+    public ParameterDAO() {
+        this(false);
+    }
+
+    /**
+     * @param concurrentInsertion
+     *            if concurrent insertion is enabled
+     */
+    public ParameterDAO(boolean concurrentInsertion) {
+        this.concurrentInsertion = concurrentInsertion;
+    }
+
     public Set<ParameterEntity<?>> insertParameter(Collection<NamedValue<?>> parameter, Map<UoM, UnitEntity> unitCache,
             Session session) throws OwsExceptionReport {
         Set<ParameterEntity<?>> parameters = new HashSet<>();
@@ -125,7 +139,7 @@ public class ParameterDAO {
             return localCache.get(unit);
         } else {
             // query unit and set cache
-            UnitEntity hUnit = new UnitDAO().getOrInsertUnit(unit, session);
+            UnitEntity hUnit = new UnitDAO(concurrentInsertion).getOrInsertUnit(unit, session);
             if (localCache != null) {
                 localCache.put(unit, hUnit);
             }
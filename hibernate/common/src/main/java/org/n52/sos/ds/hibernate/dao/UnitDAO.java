@@ -40,6 +40,7 @@ import org.n52.series.db.beans.i18n.I18nEntity;
 import org.n52.series.db.beans.i18n.I18nUnitEntity;
 import org.n52.shetland.ogc.UoM;
 import org.n52.sos.ds.hibernate.util.HibernateHelper;
+import org.n52.sos.ds.hibernate.util.SharedEntityInsertion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,6 +56,20 @@ public class UnitDAO {
 
     private static final String QUERY_UNIT_TEMPLATE = "QUERY getUnit(): {}";
 
+    private final boolean concurrentInsertion;
+
+    public UnitDAO() {
+        this(false);
+    }
+
+    /**
+     * @param concurrentInsertion
+     *            if concurrent insertion is enabled
+     */
+    public UnitDAO(boolean concurrentInsertion) {
+        this.concurrentInsertion = concurrentInsertion;
+    }
+
     public List<UnitEntity> getUnits(Session session) {
         Criteria criteria = session.createCriteria(UnitEntity.class);
         LOGGER.trace(QUERY_UNIT_TEMPLATE, HibernateHelper.getSqlString(criteria));
@@ -116,9 +131,8 @@ public class UnitDAO {
      * @return Unit object
      */
     public UnitEntity getOrInsertUnit(UoM unit, Session session) {
-        UnitEntity result = getUnit(unit.getUom(), session);
-        if (result == null) {
-            result = new UnitEntity();
+        return SharedEntityInsertion.getOrInsert(s -> getUnit(unit.getUom(), s), s -> {
+            UnitEntity result = new UnitEntity();
             result.setUnit(unit.getUom());
             if (unit.isSetName()) {
                 result.setName(unit.getName());
@@ -126,25 +140,16 @@ public class UnitDAO {
             if (unit.isSetLink()) {
                 result.setLink(unit.getLink());
             }
-            session.save(result);
-            session.flush();
-            session.refresh(result);
-        }
-        return result;
+            return result;
+        }, concurrentInsertion, session);
     }
 
     public UnitEntity getOrInsertUnit(UnitEntity unit, Session session) {
-        UnitEntity result = getUnit(unit.getIdentifier(), session);
-        if (result == null) {
-            result = unit;
-            session.save(result);
-            session.flush();
-            session.refresh(result);
+        return SharedEntityInsertion.getOrInsert(s -> getUnit(unit.getIdentifier(), s), s -> unit, (result, s) -> {
             if (unit.hasTranslations()) {
-                insertTranslations(result, unit.getTranslations(), session);
+                insertTranslations(result, unit.getTranslations(), s);
             }
-        }
-        return result;
+        }, concurrentInsertion, session);
     }
 
     private void insertTranslations(UnitEntity result, Set<I18nEntity<? extends Describable>> translations,
@@ -33,6 +33,7 @@ import org.hibernate.Session;
 import org.hibernate.criterion.Restrictions;
 import org.n52.series.db.beans.VerticalMetadataEntity;
 import org.n52.sos.ds.hibernate.util.HibernateHelper;
+import org.n52.sos.ds.hibernate.util.SharedEntityInsertion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,14 +47,8 @@ public class VerticalMetadataDAO {
     }
 
     public VerticalMetadataEntity getOrInsertVerticalMetadata(VerticalMetadataEntity entity, Session session) {
-        VerticalMetadataEntity verticalMetadata = getVerticalMetadataFor(entity, session);
-        if (verticalMetadata == null) {
-            session.save(entity);
-            session.flush();
-            session.refresh(entity);
-            return entity;
-        }
-        return verticalMetadata;
+        return SharedEntityInsertion.getOrInsert(s -> getVerticalMetadataFor(entity, s), s -> entity,
+                daoFactory.isConcurrentInsertion(), session);
     }
 
     private VerticalMetadataEntity getVerticalMetadataFor(VerticalMetadataEntity verticalMetadata, Session session) {
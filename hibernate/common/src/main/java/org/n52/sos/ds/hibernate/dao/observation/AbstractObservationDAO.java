@@ -36,6 +36,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.hibernate.Criteria;
 import org.hibernate.FetchMode;
@@ -88,9 +89,8 @@ import org.n52.shetland.util.DateTimeHelper;
 import org.n52.shetland.util.JavaHelper;
 import org.n52.shetland.util.ReferencedEnvelope;
 import org.n52.sos.ds.hibernate.dao.AbstractIdentifierNameDescriptionDAO;
-import org.n52.sos.ds.hibernate.dao.CodespaceDAO;
 import org.n52.sos.ds.hibernate.dao.DaoFactory;
-import org.n52.sos.ds.hibernate.dao.UnitDAO;
+import org.n52.sos.ds.hibernate.dao.observation.series.DatasetFirstLatestValues;
 import org.n52.sos.ds.hibernate.util.HibernateConstants;
 import org.n52.sos.ds.hibernate.util.HibernateHelper;
 import org.n52.sos.ds.hibernate.util.ParameterFactory;
@@ -106,6 +106,8 @@ import org.n52.sos.util.GeometryHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
@@ -591,11 +593,47 @@ public abstract class AbstractObservationDAO extends AbstractIdentifierNameDescr
             AbstractFeatureEntity feature, OmObservation containerObservation,
             Map<String, CodespaceEntity> codespaceCache, Map<UoM, UnitEntity> unitCache,
             Map<String, FormatEntity> formatCache, Session session) throws OwsExceptionReport {
+        return insertObservationMultiValue(observationConstellation, feature, containerObservation, codespaceCache,
+                unitCache, formatCache, null, session);
+    }
+
+    /**
+     * Insert a multi value observation for observation constellations and
+     * featureOfInterest and collect the first/latest values of the datasets
+     * instead of updating them per observation
+     *
+     * @param observationConstellation
+     *            Observation constellation objects
+     * @param feature
+     *            FeatureOfInterest object
+     * @param containerObservation
+     *            SOS observation
+     * @param codespaceCache
+     *            Map based codespace object cache to prevent redundant queries
+     * @param unitCache
+     *            Map based unit object cache to prevent redundant queries
+     * @param formatCache
+     *            Map cache for format objects (to prevent redundant querying)
+     * @param datasetValues
+     *            Collector for the first/latest dataset values, if
+     *            <code>null</code> the dataset is updated per observation
+     * @param session
+     *            Hibernate session
+     * @return The {@link DatasetEntity}
+     *
+     * @throws OwsExceptionReport
+     *             If an error occurs
+     */
+    public DatasetEntity insertObservationMultiValue(DatasetEntity observationConstellation,
+            AbstractFeatureEntity feature, OmObservation containerObservation,
+            Map<String, CodespaceEntity> codespaceCache, Map<UoM, UnitEntity> unitCache,
+            Map<String, FormatEntity> formatCache, DatasetFirstLatestValues datasetValues, Session session)
+            throws OwsExceptionReport {
         List<OmObservation> unfoldObservations = new ObservationUnfolder(containerObservation,
                 getDaoFactory().getSweHelper(), getDaoFactory().getGeometryHandler()).unfold();
         for (OmObservation sosObservation : unfoldObservations) {
             DatasetEntity dataset = insertObservationSingleValue(observationConstellation, feature, sosObservation,
-                    codespaceCache, unitCache, formatCache, session);
+                    codespaceCache, unitCache, formatCache, datasetValues, session);
             if (!dataset.equals(observationConstellation)) {
                 return dataset;
             }
@@ -655,10 +693,49 @@ public abstract class AbstractObservationDAO extends AbstractIdentifierNameDescr
             AbstractFeatureEntity hFeature, OmObservation sosObservation, Map<String, CodespaceEntity> codespaceCache,
             Map<UoM, UnitEntity> unitCache, Map<String, FormatEntity> formatCache, Session session)
             throws OwsExceptionReport {
+        return insertObservationSingleValue(hObservationConstellation, hFeature, sosObservation, codespaceCache,
+                unitCache, formatCache, null, session);
+    }
+
+    /**
+     * Insert a single observation for observation constellations and
+     * featureOfInterest with local caching for codespaces and units and
+     * collect the first/latest values of the dataset instead of updating it
+     * per observation
+     *
+     * @param hObservationConstellation
+     *            Observation constellation objects
+     * @param hFeature
+     *            FeatureOfInterest object
+     * @param sosObservation
+     *            SOS observation to insert
+     * @param codespaceCache
+     *            Map cache for codespace objects (to prevent redundant
+     *            querying)
+     * @param unitCache
+     *            Map cache for unit objects (to prevent redundant querying)
+     * @param formatCache
+     *            Map cache for format objects (to prevent redundant querying)
+     * @param datasetValues
+     *            Collector for the first/latest dataset values, if
+     *            <code>null</code> the dataset is updated per observation
+     * @param session
+     *            Hibernate session
+     * @return The {@link DatasetEntity}
+     *
+     * @throws OwsExceptionReport
+     *             If an error occurs
+     */
+    @SuppressWarnings("rawtypes")
+    public DatasetEntity insertObservationSingleValue(DatasetEntity hObservationConstellation,
+            AbstractFeatureEntity hFeature, OmObservation sosObservation, Map<String, CodespaceEntity> codespaceCache,
+            Map<UoM, UnitEntity> unitCache, Map<String, FormatEntity> formatCache,
+            DatasetFirstLatestValues datasetValues, Session session) throws OwsExceptionReport {
         SingleObservationValue<?> value = (SingleObservationValue) sosObservation.getValue();
         ObservationPersister persister =
                 new ObservationPersister(getDaoFactory(), this, sosObservation, hObservationConstellation, hFeature,
-                        codespaceCache, unitCache, formatCache, getOfferings(hObservationConstellation), session);
+                        codespaceCache, unitCache, formatCache, datasetValues, getOfferings(hObservationConstellation),
+                        session);
         return value.getValue().accept(persister).getDataset();
     }
 
@@ -695,7 +772,7 @@ public abstract class AbstractObservationDAO extends AbstractIdentifierNameDescr
             return localCache.get(codespace);
         } else {
             // query codespace and set cache
-            CodespaceEntity hCodespace = new CodespaceDAO().getOrInsertCodespace(codespace, session);
+            CodespaceEntity hCodespace = getDaoFactory().getCodespaceDAO().getOrInsertCodespace(codespace, session);
             if (localCache != null) {
                 localCache.put(codespace, hCodespace);
             }
@@ -734,7 +811,7 @@ public abstract class AbstractObservationDAO extends AbstractIdentifierNameDescr
             return localCache.get(unit);
         } else {
             // query unit and set cache
-            UnitEntity hUnit = new UnitDAO().getOrInsertUnit(unit, session);
+            UnitEntity hUnit = getDaoFactory().getUnitDAO().getOrInsertUnit(unit, session);
             if (localCache != null) {
                 localCache.put(unit, hUnit);
             }
@@ -1384,25 +1461,96 @@ public abstract class AbstractObservationDAO extends AbstractIdentifierNameDescr
         c.setMaxResults(1);
         LOGGER.trace("QUERY checkForDuplicatedObservations(): {}", HibernateHelper.getSqlString(c));
         if (!c.list().isEmpty()) {
-            StringBuilder builder = new StringBuilder();
-            builder.append("procedure=").append(sosObservation.getObservationConstellation().getProcedureIdentifier());
-            builder.append("observedProperty=")
-                    .append(sosObservation.getObservationConstellation().getObservablePropertyIdentifier());
-            builder.append("featureOfInter=")
-                    .append(sosObservation.getObservationConstellation().getFeatureOfInterestIdentifier());
-            builder.append("phenomenonTime=").append(sosObservation.getPhenomenonTime().toString());
-            builder.append("resultTime=").append(sosObservation.getResultTime().toString());
-            // TODO for e-Reporting SampligPoint should be added.
-            if (sosObservation.isSetHeightDepthParameter()) {
-                NamedValue<BigDecimal> hdp = sosObservation.getHeightDepthParameter();
-                builder.append("height/depth=").append(hdp.getName().getHref()).append("/")
-                        .append(hdp.getValue().getValue());
+            throw createDuplicatedObservationException(sosObservation);
+        }
+    }
+
+    /**
+     * Check the observations of one dataset for duplicates. Instead of a query
+     * for each observation, the phenomenon times of all observations are
+     * resolved with one query (per chunk of
+     * {@link HibernateConstants#LIMIT_EXPRESSION_DEPTH} times). Observations
+     * which start after the last value of the dataset can not be duplicates
+     * and are not queried at all, so appending observations does not query
+     * the database. Observations without determinate phenomenon and result
+     * times are not checked, they are left to the unique constraint of the
+     * database like without this check. Only observations with a
+     * height/depth parameter whose times match an existing observation are
+     * checked separately, as the existing observation may have another
+     * height/depth.
+     *
+     * @param sosObservations
+     *            {@link OmObservation}s of the dataset to check
+     * @param observationConstellation
+     *            the dataset of the observations
+     * @param session
+     *            Hibernate {@link Session}
+     *
+     * @throws OwsExceptionReport
+     *             If a duplicated observation is found or an error occurs
+     */
+    @SuppressWarnings("unchecked")
+    public void checkForDuplicatedObservations(Collection<OmObservation> sosObservations,
+            DatasetEntity observationConstellation, Session session) throws OwsExceptionReport {
+        Date lastValueAt = observationConstellation.getLastValueAt();
+        ListMultimap<ObservationTimeKey, OmObservation> candidates = ArrayListMultimap.create();
+        for (OmObservation sosObservation : sosObservations) {
+            ObservationTimeKey key = ObservationTimeKey.of(sosObservation);
+            if (key != null && (lastValueAt == null || !key.getStart().after(lastValueAt))) {
+                candidates.put(key, sosObservation);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+        OmObservation template = candidates.values().iterator().next();
+        Set<OmObservation> checkedHeightDepth = Sets.newIdentityHashSet();
+        List<Date> starts = Lists.newArrayList(
+                candidates.keySet().stream().map(ObservationTimeKey::getStart).collect(Collectors.toSet()));
+        for (List<Date> chunk : Lists.partition(starts, HibernateConstants.LIMIT_EXPRESSION_DEPTH - 1)) {
+            Criteria c = getTemoralReferencedObservationCriteriaFor(template, observationConstellation, session);
+            c.add(Restrictions.in(DataEntity.PROPERTY_SAMPLING_TIME_START, chunk));
+            c.setProjection(Projections.projectionList()
+                    .add(Projections.property(DataEntity.PROPERTY_SAMPLING_TIME_START))
+                    .add(Projections.property(DataEntity.PROPERTY_SAMPLING_TIME_END))
+                    .add(Projections.property(DataEntity.PROPERTY_RESULT_TIME)));
+            LOGGER.trace("QUERY checkForDuplicatedObservations(observations): {}", HibernateHelper.getSqlString(c));
+            for (Object[] times : (List<Object[]>) c.list()) {
+                ObservationTimeKey key = new ObservationTimeKey((Date) times[0], (Date) times[1], (Date) times[2]);
+                for (OmObservation duplicate : candidates.get(key)) {
+                    if (duplicate.isSetHeightDepthParameter()) {
+                        // the existing observation may have another
+                        // height/depth, check each observation only once
+                        if (checkedHeightDepth.add(duplicate)) {
+                            checkForDuplicatedObservations(duplicate, observationConstellation, session);
+                        }
+                    } else {
+                        throw createDuplicatedObservationException(duplicate);
+                    }
+                }
             }
-            throw new NoApplicableCodeException().withMessage("The observation for %s already exists in the database!",
-                    builder.toString());
         }
     }
 
+    private OwsExceptionReport createDuplicatedObservationException(OmObservation sosObservation) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("procedure=").append(sosObservation.getObservationConstellation().getProcedureIdentifier());
+        builder.append("observedProperty=")
+                .append(sosObservation.getObservationConstellation().getObservablePropertyIdentifier());
+        builder.append("featureOfInter=")
+                .append(sosObservation.getObservationConstellation().getFeatureOfInterestIdentifier());
+        builder.append("phenomenonTime=").append(sosObservation.getPhenomenonTime().toString());
+        builder.append("resultTime=").append(sosObservation.getResultTime().toString());
+        // TODO for e-Reporting SampligPoint should be added.
+        if (sosObservation.isSetHeightDepthParameter()) {
+            NamedValue<BigDecimal> hdp = sosObservation.getHeightDepthParameter();
+            builder.append("height/depth=").append(hdp.getName().getHref()).append("/")
+                    .append(hdp.getValue().getValue());
+        }
+        return new NoApplicableCodeException()
+                .withMessage("The observation for %s already exists in the database!", builder.toString());
+    }
+
     private void addParameterRestriction(Criteria c, NamedValue<?> hdp) throws OwsExceptionReport {
         c.add(Subqueries.propertyIn(DataEntity.PROPERTY_PARAMETERS, getParameterRestriction(c, hdp.getName().getHref(),
                 hdp.getValue().getValue(), hdp.getValue().accept(getParameterFactory()).getClass())));
@@ -1458,6 +1606,80 @@ public abstract class AbstractObservationDAO extends AbstractIdentifierNameDescr
         return getDaoFactory().getGeometryHandler();
     }
 
+    /**
+     * Phenomenon and result time of an observation as used by the duplicate
+     * check
+     */
+    protected static class ObservationTimeKey {
+
+        private final Date start;
+
+        private final Date end;
+
+        private final Date resultTime;
+
+        ObservationTimeKey(Date start, Date end, Date resultTime) {
+            this.start = new Date(start.getTime());
+            this.end = end != null ? new Date(end.getTime()) : this.start;
+            this.resultTime = resultTime != null ? new Date(resultTime.getTime()) : null;
+        }
+
+        /**
+         * Create the key for an observation
+         *
+         * @param observation
+         *            the observation
+         * @return the key or <code>null</code> if the times are not
+         *         determinate
+         */
+        static ObservationTimeKey of(OmObservation observation) {
+            Time phenomenonTime = observation.getPhenomenonTime();
+            DateTime start = null;
+            DateTime end = null;
+            if (phenomenonTime instanceof TimeInstant) {
+                start = ((TimeInstant) phenomenonTime).getValue();
+                end = start;
+            } else if (phenomenonTime instanceof TimePeriod) {
+                start = ((TimePeriod) phenomenonTime).getStart();
+                end = ((TimePeriod) phenomenonTime).getEnd();
+            }
+            if (start == null || end == null) {
+                return null;
+            }
+            DateTime resultTime = start.equals(end) ? start : null;
+            if (observation.getResultTime() != null && observation.getResultTime().getValue() != null) {
+                resultTime = observation.getResultTime().getValue();
+            }
+            if (resultTime == null) {
+                return null;
+            }
+            return new ObservationTimeKey(start.toDate(), end.toDate(), resultTime.toDate());
+        }
+
+        public Date getStart() {
+            return start;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(start.getTime(), end.getTime(), resultTime != null ? resultTime.getTime() : null);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ObservationTimeKey)) {
+                return false;
+            }
+            ObservationTimeKey that = (ObservationTimeKey) obj;
+            return start.getTime() == that.start.getTime() && end.getTime() == that.end.getTime()
+                    && Objects.equals(resultTime != null ? resultTime.getTime() : null,
+                            that.resultTime != null ? that.resultTime.getTime() : null);
+        }
+    }
+
     /**
      * Observation time extrema {@link ResultTransformer}
      *
@@ -29,6 +29,7 @@
 package org.n52.sos.ds.hibernate.dao.observation;
 
 import java.sql.Timestamp;
+import java.util.Date;
 
 import org.hibernate.Criteria;
 import org.hibernate.FetchMode;
@@ -219,6 +220,85 @@ public abstract class AbstractValueDAO extends TimeCreator {
         }
     }
 
+    /**
+     * Add keyset chunk information to {@link Criteria}. Instead of skipping
+     * the rows of the previous chunks, the query resumes after the last value
+     * of the previous chunk, so the criteria has to be ordered by
+     * {@link #getOrderColumn(AbstractObservationRequest)} and the id.
+     *
+     * @param c
+     *            {@link Criteria} to add information
+     * @param chunkSize
+     *            Chunk size
+     * @param lastValue
+     *            Last value of the previous chunk, <code>null</code> for the
+     *            first chunk
+     * @param request
+     *            the request
+     * @param logArgs
+     *            log arguments
+     */
+    protected void addKeysetChunkValuesToCriteria(Criteria c, int chunkSize, DataEntity<?> lastValue,
+            AbstractObservationRequest request, StringBuilder logArgs) {
+        if (lastValue != null) {
+            addKeysetChunkValuesToCriteria(c, chunkSize, getOrderValue(lastValue, getOrderColumn(request)),
+                    lastValue.getId(), request, logArgs);
+        } else {
+            addKeysetChunkValuesToCriteria(c, chunkSize, null, null, request, logArgs);
+        }
+    }
+
+    /**
+     * Add keyset chunk information to {@link Criteria}, see
+     * {@link #addKeysetChunkValuesToCriteria(Criteria, int, DataEntity, AbstractObservationRequest, StringBuilder)}.
+     *
+     * @param c
+     *            {@link Criteria} to add information
+     * @param chunkSize
+     *            Chunk size
+     * @param lastTime
+     *            Order column value of the last value of the previous chunk,
+     *            <code>null</code> for the first chunk
+     * @param lastId
+     *            Id of the last value of the previous chunk, <code>null</code>
+     *            for the first chunk
+     * @param request
+     *            the request
+     * @param logArgs
+     *            log arguments
+     */
+    protected void addKeysetChunkValuesToCriteria(Criteria c, int chunkSize, Date lastTime, Long lastId,
+            AbstractObservationRequest request, StringBuilder logArgs) {
+        if (lastId != null) {
+            String orderColumn = getOrderColumn(request);
+            c.add(Restrictions.or(Restrictions.gt(orderColumn, lastTime),
+                    Restrictions.and(Restrictions.eq(orderColumn, lastTime),
+                            Restrictions.gt(DataEntity.PROPERTY_ID, lastId))));
+            logArgs.append(", after(" + lastId + ")");
+        }
+        if (chunkSize > 0) {
+            c.setMaxResults(chunkSize);
+            logArgs.append(", chunk(" + chunkSize + ")");
+        }
+    }
+
+    /**
+     * Get the value of the order column from a {@link DataEntity}
+     *
+     * @param value
+     *            the value
+     * @param orderColumn
+     *            the order column, see
+     *            {@link #getOrderColumn(AbstractObservationRequest)}
+     * @return the time of the order column
+     */
+    protected Date getOrderValue(DataEntity<?> value, String orderColumn) {
+        if (DataEntity.PROPERTY_RESULT_TIME.equals(orderColumn)) {
+            return value.getResultTime();
+        }
+        return value.getSamplingTimeStart();
+    }
+
     protected String getOrderColumn(AbstractObservationRequest request) {
         if (request instanceof GetObservationRequest) {
             if (((GetObservationRequest) request).isSetTemporalFilter()) {
@@ -248,6 +328,10 @@ public abstract class AbstractValueDAO extends TimeCreator {
         return criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
     }
 
+    protected boolean isIncludeChildObservableProperties() {
+        return daoFactory.isIncludeChildObservableProperties();
+    }
+
     protected abstract void addSpecificRestrictions(Criteria c, GetObservationRequest request, StringBuilder logArgs)
             throws OwsExceptionReport;
 
@@ -113,6 +113,7 @@ import org.n52.sos.ds.hibernate.dao.PlatformDAO;
 import org.n52.sos.ds.hibernate.dao.UnitDAO;
 import org.n52.sos.ds.hibernate.dao.VerticalMetadataDAO;
 import org.n52.sos.ds.hibernate.dao.observation.series.AbstractSeriesDAO;
+import org.n52.sos.ds.hibernate.dao.observation.series.DatasetFirstLatestValues;
 import org.n52.sos.request.InternalInsertResultTemplateRequest;
 import org.n52.sos.util.GeometryHandler;
 
@@ -146,8 +147,18 @@ public class ObservationPersister
             Map<String, CodespaceEntity> codespaceCache, Map<UoM, UnitEntity> unitCache,
             Map<String, FormatEntity> formatCache, Set<OfferingEntity> hOfferings, Session session)
             throws OwsExceptionReport {
-        this(daoFactory, new DAOs(observationDao, daoFactory), new Caches(codespaceCache, unitCache, formatCache),
-                sosObservation, hDataset, hFeature, null, hOfferings, session, null);
+        this(daoFactory, observationDao, sosObservation, hDataset, hFeature, codespaceCache, unitCache, formatCache,
+                null, hOfferings, session);
+    }
+
+    public ObservationPersister(DaoFactory daoFactory, AbstractObservationDAO observationDao,
+            OmObservation sosObservation, DatasetEntity hDataset, AbstractFeatureEntity<?> hFeature,
+            Map<String, CodespaceEntity> codespaceCache, Map<UoM, UnitEntity> unitCache,
+            Map<String, FormatEntity> formatCache, DatasetFirstLatestValues datasetValues,
+            Set<OfferingEntity> hOfferings, Session session) throws OwsExceptionReport {
+        this(daoFactory, new DAOs(observationDao, daoFactory),
+                new Caches(codespaceCache, unitCache, formatCache, datasetValues), sosObservation, hDataset, hFeature,
+                null, hOfferings, session, null);
     }
 
     private ObservationPersister(DaoFactory daoFactory, DAOs daos, Caches caches, OmObservation observation,
@@ -672,7 +683,11 @@ public class ObservationPersister
         session.save(observation);
         session.flush();
         session.refresh(observation);
-        daos.dataset.updateSeriesWithFirstLatestValues(persitedDataset, observation, session);
+        if (caches.datasetValues() != null) {
+            caches.datasetValues().add(persitedDataset, observation);
+        } else {
+            daos.dataset.updateSeriesWithFirstLatestValues(persitedDataset, observation, session);
+        }
         return observation;
     }
 
@@ -810,11 +825,14 @@ public class ObservationPersister
 
         private final Map<String, FormatEntity> formats;
 
+        private final DatasetFirstLatestValues datasetValues;
+
         Caches(Map<String, CodespaceEntity> codespaces, Map<UoM, UnitEntity> units,
-                Map<String, FormatEntity> formats) {
+                Map<String, FormatEntity> formats, DatasetFirstLatestValues datasetValues) {
             this.codespaces = codespaces;
             this.units = units;
             this.formats = formats;
+            this.datasetValues = datasetValues;
         }
 
         public Map<String, CodespaceEntity> codespaces() {
@@ -829,6 +847,10 @@ public class ObservationPersister
             return formats;
         }
 
+        public DatasetFirstLatestValues datasetValues() {
+            return datasetValues;
+        }
+
     }
 
     private static class DAOs {
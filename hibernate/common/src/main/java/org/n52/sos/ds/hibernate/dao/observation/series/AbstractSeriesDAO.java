@@ -29,6 +29,7 @@
 package org.n52.sos.ds.hibernate.dao.observation.series;
 
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -390,26 +391,27 @@ public abstract class AbstractSeriesDAO extends AbstractIdentifierNameDescriptio
         }
     }
 
-    private void updateSta(DatasetEntity dataset, DataEntity<?> observation, Session session) {
+    private void updateSta(DatasetEntity dataset, Date samplingTimeStart, Date samplingTimeEnd,
+            Date resultTimeStart, Date resultTimeEnd, Session session) {
         if (HibernateHelper.isEntitySupported(DatastreamEntity.class)) {
             if (dataset.getPlatform() != null) {
                 DatastreamEntity datastream = existsDatastream(dataset, session);
                 if (datastream != null) {
                     if (datastream.getSamplingTimeStart() == null || (datastream.getSamplingTimeStart() != null
-                            && datastream.getSamplingTimeStart().after(observation.getSamplingTimeStart()))) {
-                        datastream.setSamplingTimeStart(observation.getSamplingTimeStart());
+                            && datastream.getSamplingTimeStart().after(samplingTimeStart))) {
+                        datastream.setSamplingTimeStart(samplingTimeStart);
                     }
                     if (datastream.getSamplingTimeEnd() == null || (datastream.getSamplingTimeEnd() != null
-                            && datastream.getSamplingTimeEnd().before(observation.getSamplingTimeEnd()))) {
-                        datastream.setSamplingTimeEnd(observation.getSamplingTimeEnd());
+                            && datastream.getSamplingTimeEnd().before(samplingTimeEnd))) {
+                        datastream.setSamplingTimeEnd(samplingTimeEnd);
                     }
                     if (datastream.getResultTimeStart() == null || (datastream.getResultTimeStart() != null
-                            && datastream.getResultTimeStart().after(observation.getResultTime()))) {
-                        datastream.setResultTimeStart(observation.getResultTime());
+                            && datastream.getResultTimeStart().after(resultTimeStart))) {
+                        datastream.setResultTimeStart(resultTimeStart);
                     }
                     if (datastream.getResultTimeEnd() == null || (datastream.getResultTimeEnd() != null
-                            && datastream.getResultTimeEnd().before(observation.getResultTime()))) {
-                        datastream.setResultTimeEnd(observation.getResultTime());
+                            && datastream.getResultTimeEnd().before(resultTimeEnd))) {
+                        datastream.setResultTimeEnd(resultTimeEnd);
                     }
                     datastream.addDataset(dataset);
                     session.saveOrUpdate(datastream);
@@ -919,32 +921,68 @@ public abstract class AbstractSeriesDAO extends AbstractIdentifierNameDescriptio
      *            Hibernate session
      */
     public void updateSeriesWithFirstLatestValues(DatasetEntity dataset, DataEntity<?> hObservation, Session session) {
-        boolean minChanged = false;
-        boolean maxChanged = false;
+        setFirstValue(dataset, hObservation);
+        setLastValue(dataset, hObservation);
+        session.saveOrUpdate(dataset);
+        session.flush();
+        session.refresh(dataset);
+        updateSta(dataset, hObservation.getSamplingTimeStart(), hObservation.getSamplingTimeEnd(),
+                hObservation.getResultTime(), hObservation.getResultTime(), session);
+    }
+
+    /**
+     * Update the first/latest values of the collected datasets with one
+     * update per dataset. The datasets are reloaded, so the values can be
+     * collected across session flushes and clears.
+     *
+     * @param values
+     *            Collected first/latest observations per dataset
+     * @param session
+     *            Hibernate session
+     */
+    public void updateSeriesWithFirstLatestValues(DatasetFirstLatestValues values, Session session) {
+        for (DatasetFirstLatestValues.Extrema extrema : values.getExtrema()) {
+            DatasetEntity dataset = session.get(DatasetEntity.class, extrema.getDatasetId());
+            if (dataset != null) {
+                boolean minChanged = setFirstValue(dataset, extrema.getFirst());
+                boolean maxChanged = setLastValue(dataset, extrema.getLast());
+                if (minChanged || maxChanged) {
+                    session.saveOrUpdate(dataset);
+                }
+                updateSta(dataset, extrema.getFirst().getSamplingTimeStart(),
+                        extrema.getLast().getSamplingTimeEnd(), extrema.getResultTimeStart(),
+                        extrema.getResultTimeEnd(), session);
+            }
+        }
+        LOGGER.debug("Updated first/latest values of {} datasets for {} observations.", values.getExtrema().size(),
+                values.getObservationCount());
+        values.clear();
+    }
+
+    private boolean setFirstValue(DatasetEntity dataset, DataEntity<?> hObservation) {
         if (!dataset.isSetFirstValueAt() || (dataset.isSetFirstValueAt()
                 && dataset.getFirstValueAt().after(hObservation.getSamplingTimeStart()))) {
-            minChanged = true;
             dataset.setFirstValueAt(hObservation.getSamplingTimeStart());
             dataset.setFirstObservation(hObservation);
+            if (hObservation instanceof QuantityDataEntity) {
+                dataset.setFirstQuantityValue(((QuantityDataEntity) hObservation).getValue());
+            }
+            return true;
         }
+        return false;
+    }
+
+    private boolean setLastValue(DatasetEntity dataset, DataEntity<?> hObservation) {
         if (!dataset.isSetLastValueAt()
                 || (dataset.isSetLastValueAt() && dataset.getLastValueAt().before(hObservation.getSamplingTimeEnd()))) {
-            maxChanged = true;
             dataset.setLastValueAt(hObservation.getSamplingTimeEnd());
             dataset.setLastObservation(hObservation);
-        }
-        if (hObservation instanceof QuantityDataEntity) {
-            if (minChanged) {
-                dataset.setFirstQuantityValue(((QuantityDataEntity) hObservation).getValue());
-            }
-            if (maxChanged) {
+            if (hObservation instanceof QuantityDataEntity) {
                 dataset.setLastQuantityValue(((QuantityDataEntity) hObservation).getValue());
             }
+            return true;
         }
-        session.saveOrUpdate(dataset);
-        session.flush();
-        session.refresh(dataset);
-        updateSta(dataset, hObservation, session);
+        return false;
     }
 
     /**
@@ -28,14 +28,19 @@
  */
 package org.n52.sos.ds.hibernate.dao.observation.series;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
 import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
 import org.hibernate.Session;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.n52.series.db.beans.DataEntity;
 import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
@@ -44,6 +49,7 @@ import org.n52.shetland.ogc.sos.request.GetObservationRequest;
 import org.n52.sos.ds.hibernate.dao.DaoFactory;
 import org.n52.sos.ds.hibernate.dao.observation.AbstractValueDAO;
 import org.n52.sos.ds.hibernate.util.HibernateHelper;
+import org.n52.sos.ds.hibernate.util.QueryHelper;
 import org.n52.sos.ds.hibernate.util.ResultFilterRestrictions;
 import org.n52.sos.ds.hibernate.util.ResultFilterRestrictions.SubQueryIdentifier;
 import org.slf4j.Logger;
@@ -232,6 +238,257 @@ public abstract class AbstractSeriesValueDAO extends AbstractValueDAO {
         }
     }
 
+    /**
+     * Query the next chunk of streaming values for parameter. The chunk starts
+     * after the last value of the previous chunk instead of an offset, so the
+     * database does not have to skip the rows of all previous chunks.
+     *
+     * @param request
+     *            {@link AbstractObservationRequest}
+     * @param series
+     *            Datasource series id
+     * @param temporalFilterCriterion
+     *            Temporal filter {@link Criterion}, may be <code>null</code>
+     * @param chunkSize
+     *            chunk size
+     * @param lastValue
+     *            Last value of the previous chunk, <code>null</code> for the
+     *            first chunk
+     * @param session
+     *            Hibernate Session
+     * @return Resulting chunk {@link List}
+     * @throws OwsExceptionReport
+     *             If an error occurs when querying
+     */
+    public List<DataEntity<?>> getStreamingSeriesValuesAfter(AbstractObservationRequest request, long series,
+            Criterion temporalFilterCriterion, int chunkSize, DataEntity<?> lastValue, Session session)
+            throws OwsExceptionReport {
+        if (lastValue == null) {
+            return getStreamingSeriesValuesAfter(request, series, temporalFilterCriterion, chunkSize, null, null,
+                    session);
+        }
+        return getStreamingSeriesValuesAfter(request, series, temporalFilterCriterion, chunkSize,
+                getOrderValue(lastValue, getOrderColumn(request)), lastValue.getId(), session);
+    }
+
+    /**
+     * Query the next chunk of streaming values for parameter after the value
+     * with the order column value and id, see
+     * {@link #getStreamingSeriesValuesAfter(AbstractObservationRequest, long, Criterion, int, DataEntity, Session)}.
+     *
+     * @param request
+     *            {@link AbstractObservationRequest}
+     * @param series
+     *            Datasource series id
+     * @param temporalFilterCriterion
+     *            Temporal filter {@link Criterion}, may be <code>null</code>
+     * @param chunkSize
+     *            chunk size
+     * @param lastTime
+     *            Order column value of the last value of the previous chunk,
+     *            <code>null</code> for the first chunk
+     * @param lastId
+     *            Id of the last value of the previous chunk,
+     *            <code>null</code> for the first chunk
+     * @param session
+     *            Hibernate Session
+     * @return Resulting chunk {@link List}
+     * @throws OwsExceptionReport
+     *             If an error occurs when querying
+     */
+    @SuppressWarnings("unchecked")
+    public List<DataEntity<?>> getStreamingSeriesValuesAfter(AbstractObservationRequest request, long series,
+            Criterion temporalFilterCriterion, int chunkSize, Date lastTime, Long lastId, Session session)
+            throws OwsExceptionReport {
+        if (request instanceof GetObservationRequest && ((GetObservationRequest) request).hasResultFilter()) {
+            List<DataEntity<?>> list = new ArrayList<>();
+            for (SubQueryIdentifier identifier : ResultFilterRestrictions
+                    .getSubQueryIdentifier(getResultFilterClasses())) {
+                StringBuilder logArgs = new StringBuilder();
+                Criteria c = getSeriesValueCriteriaFor(request, series, temporalFilterCriterion, session, logArgs);
+                addKeysetChunkValuesToCriteria(c, chunkSize, lastTime, lastId, request, logArgs);
+                checkAndAddResultFilterCriterion(c, (GetObservationRequest) request, identifier, session, logArgs);
+                LOGGER.trace(QUERY_STREAMING_SERIES_VALUE, logArgs.toString(),
+                        HibernateHelper.getSqlString(c));
+                list.addAll(c.list());
+            }
+            // each sub query returns its own chunk, keep the first values of
+            // the union so that the next chunk can resume after the last one
+            String orderColumn = getOrderColumn(request);
+            list.sort(Comparator.<DataEntity<?>, Date> comparing(v -> getOrderValue(v, orderColumn))
+                    .thenComparing(DataEntity::getId));
+            if (chunkSize > 0 && list.size() > chunkSize) {
+                return new ArrayList<>(list.subList(0, chunkSize));
+            }
+            return list;
+        } else {
+            StringBuilder logArgs = new StringBuilder();
+            Criteria c = getSeriesValueCriteriaFor(request, series, temporalFilterCriterion, session, logArgs);
+            addKeysetChunkValuesToCriteria(c, chunkSize, lastTime, lastId, request, logArgs);
+            LOGGER.trace(QUERY_STREAMING_SERIES_VALUE, logArgs.toString(),
+                    HibernateHelper.getSqlString(c));
+            return (List<DataEntity<?>>) c.list();
+        }
+    }
+
+    /**
+     * Check if the values of a series can be queried with
+     * {@link #getStreamingQuantityValuesAfter(AbstractObservationRequest, long, Criterion, int, Date, Long, Session)}
+     * for the request.
+     *
+     * @param request
+     *            {@link AbstractObservationRequest}
+     * @return <code>true</code>, if the quantity values can be projected
+     */
+    public boolean isQuantityValueProjectionSupported(AbstractObservationRequest request) {
+        return !isIncludeChildObservableProperties() && !(request instanceof GetObservationRequest
+                && ((GetObservationRequest) request).hasResultFilter());
+    }
+
+    /**
+     * Query the next chunk of quantity values of a series. Only the id, the
+     * times and the value are projected into a {@link QuantityValueChunk}, no
+     * {@link DataEntity}s are created. The chunk starts after the last value
+     * of the previous chunk, see
+     * {@link #getStreamingSeriesValuesAfter(AbstractObservationRequest, long, Criterion, int, DataEntity, Session)}.
+     *
+     * @param request
+     *            {@link AbstractObservationRequest}
+     * @param series
+     *            Datasource series id of a quantity series
+     * @param temporalFilterCriterion
+     *            Temporal filter {@link Criterion}, may be <code>null</code>
+     * @param chunkSize
+     *            chunk size
+     * @param lastTime
+     *            Order column value of the last value of the previous chunk,
+     *            <code>null</code> for the first chunk
+     * @param lastId
+     *            Id of the last value of the previous chunk,
+     *            <code>null</code> for the first chunk
+     * @param session
+     *            Hibernate Session
+     * @return Resulting chunk
+     * @throws OwsExceptionReport
+     *             If an error occurs when querying
+     */
+    @SuppressWarnings("unchecked")
+    public QuantityValueChunk getStreamingQuantityValuesAfter(AbstractObservationRequest request, long series,
+            Criterion temporalFilterCriterion, int chunkSize, Date lastTime, Long lastId, Session session)
+            throws OwsExceptionReport {
+        StringBuilder logArgs = new StringBuilder();
+        Criteria c = getDefaultCriteria(getValuedObservationFactory().numericClass(), session);
+        addDefaultSeriesValueRestrictions(c, request, temporalFilterCriterion, false, session, logArgs);
+        c.add(Restrictions.eq(DataEntity.PROPERTY_DATASET_ID, series));
+        // no parameters are needed for the values
+        c.setFetchMode(DataEntity.PROPERTY_PARAMETERS, FetchMode.SELECT);
+        addKeysetChunkValuesToCriteria(c, chunkSize, lastTime, lastId, request, logArgs);
+        c.setProjection(Projections.projectionList()
+                .add(Projections.property(DataEntity.PROPERTY_ID))
+                .add(Projections.property(DataEntity.PROPERTY_SAMPLING_TIME_START))
+                .add(Projections.property(DataEntity.PROPERTY_SAMPLING_TIME_END))
+                .add(Projections.property(getOrderColumn(request)))
+                .add(Projections.property(DataEntity.PROPERTY_VALUE)));
+        LOGGER.trace(QUERY_STREAMING_SERIES_VALUE, logArgs.toString(), HibernateHelper.getSqlString(c));
+        List<Object[]> rows = c.list();
+        QuantityValueChunk chunk = new QuantityValueChunk(rows.size());
+        for (Object[] row : rows) {
+            chunk.add((Long) row[0], (Date) row[1], (Date) row[2], (Date) row[3], (Number) row[4]);
+        }
+        return chunk;
+    }
+
+    /**
+     * Query the next chunk of streaming values for multiple series with one
+     * query. The values are ordered by series, time and id and the chunk
+     * starts after the last value of the previous chunk.
+     *
+     * @param request
+     *            {@link AbstractObservationRequest}
+     * @param series
+     *            Datasource series ids
+     * @param temporalFilterCriterion
+     *            Temporal filter {@link Criterion}, may be <code>null</code>
+     * @param chunkSize
+     *            chunk size
+     * @param lastValue
+     *            Last value of the previous chunk, <code>null</code> for the
+     *            first chunk
+     * @param session
+     *            Hibernate Session
+     * @return Resulting chunk {@link List}
+     * @throws OwsExceptionReport
+     *             If an error occurs when querying
+     */
+    @SuppressWarnings("unchecked")
+    public List<DataEntity<?>> getStreamingSeriesValuesAfter(AbstractObservationRequest request, Set<Long> series,
+            Criterion temporalFilterCriterion, int chunkSize, DataEntity<?> lastValue, Session session)
+            throws OwsExceptionReport {
+        if (request instanceof GetObservationRequest && ((GetObservationRequest) request).hasResultFilter()) {
+            List<DataEntity<?>> list = new ArrayList<>();
+            for (SubQueryIdentifier identifier : ResultFilterRestrictions
+                    .getSubQueryIdentifier(getResultFilterClasses())) {
+                StringBuilder logArgs = new StringBuilder();
+                Criteria c = getSeriesOrderedValueCriteriaFor(request, series, temporalFilterCriterion, session,
+                        logArgs);
+                addSeriesKeysetChunkValuesToCriteria(c, chunkSize, lastValue, request, logArgs);
+                checkAndAddResultFilterCriterion(c, (GetObservationRequest) request, identifier, session, logArgs);
+                LOGGER.trace(QUERY_STREAMING_SERIES_VALUE, logArgs.toString(),
+                        HibernateHelper.getSqlString(c));
+                list.addAll(c.list());
+            }
+            String orderColumn = getOrderColumn(request);
+            list.sort(Comparator.<DataEntity<?>, Long> comparing(v -> v.getDataset().getId())
+                    .thenComparing(v -> getOrderValue(v, orderColumn)).thenComparing(DataEntity::getId));
+            if (chunkSize > 0 && list.size() > chunkSize) {
+                return new ArrayList<>(list.subList(0, chunkSize));
+            }
+            return list;
+        } else {
+            StringBuilder logArgs = new StringBuilder();
+            Criteria c = getSeriesOrderedValueCriteriaFor(request, series, temporalFilterCriterion, session, logArgs);
+            addSeriesKeysetChunkValuesToCriteria(c, chunkSize, lastValue, request, logArgs);
+            LOGGER.trace(QUERY_STREAMING_SERIES_VALUE, logArgs.toString(),
+                    HibernateHelper.getSqlString(c));
+            return (List<DataEntity<?>>) c.list();
+        }
+    }
+
+    /**
+     * Add keyset chunk information for values ordered by series to
+     * {@link Criteria}
+     *
+     * @param c
+     *            {@link Criteria} to add information
+     * @param chunkSize
+     *            Chunk size
+     * @param lastValue
+     *            Last value of the previous chunk, <code>null</code> for the
+     *            first chunk
+     * @param request
+     *            the request
+     * @param logArgs
+     *            log arguments
+     */
+    private void addSeriesKeysetChunkValuesToCriteria(Criteria c, int chunkSize, DataEntity<?> lastValue,
+            AbstractObservationRequest request, StringBuilder logArgs) {
+        if (lastValue != null) {
+            String orderColumn = getOrderColumn(request);
+            Date lastTime = getOrderValue(lastValue, orderColumn);
+            Long lastSeries = lastValue.getDataset().getId();
+            c.add(Restrictions.or(Restrictions.gt(DataEntity.PROPERTY_DATASET_ID, lastSeries),
+                    Restrictions.and(Restrictions.eq(DataEntity.PROPERTY_DATASET_ID, lastSeries),
+                            Restrictions.or(Restrictions.gt(orderColumn, lastTime),
+                                    Restrictions.and(Restrictions.eq(orderColumn, lastTime),
+                                            Restrictions.gt(DataEntity.PROPERTY_ID, lastValue.getId()))))));
+            logArgs.append(", after(" + lastSeries + "," + lastValue.getId() + ")");
+        }
+        if (chunkSize > 0) {
+            c.setMaxResults(chunkSize);
+            logArgs.append(", chunk(" + chunkSize + ")");
+        }
+    }
+
     /**
      * Get {@link Criteria} for parameter
      *
@@ -276,14 +533,54 @@ public abstract class AbstractSeriesValueDAO extends AbstractValueDAO {
     private Criteria getSeriesValueCriteriaFor(AbstractObservationRequest request, Set<Long> series,
             Criterion temporalFilterCriterion, Session session, StringBuilder logArgs) throws OwsExceptionReport {
         final Criteria c = getDefaultSeriesValueCriteriaFor(request, temporalFilterCriterion, session, logArgs);
-        c.add(Restrictions.in(DataEntity.PROPERTY_DATASET_ID, series));
+        c.add(QueryHelper.getCriterionForObjects(DataEntity.PROPERTY_DATASET_ID, series));
+        return c.setReadOnly(true);
+    }
+
+    /**
+     * Get {@link Criteria} for parameter ordered by series first
+     *
+     * @param request
+     *            {@link AbstractObservationRequest}
+     * @param series
+     *            Datasource series ids
+     * @param temporalFilterCriterion
+     *            Temporal filter {@link Criterion}
+     * @param session
+     *            Hibernate Session
+     * @param logArgs log arguments
+     * @return Resulting {@link Criteria}
+     * @throws OwsExceptionReport
+     *             If an error occurs when adding Spatial Filtering Profile
+     *             restrictions
+     */
+    private Criteria getSeriesOrderedValueCriteriaFor(AbstractObservationRequest request, Set<Long> series,
+            Criterion temporalFilterCriterion, Session session, StringBuilder logArgs) throws OwsExceptionReport {
+        final Criteria c = getDefaultSeriesValueCriteriaFor(request, temporalFilterCriterion, true, session, logArgs);
+        c.add(QueryHelper.getCriterionForObjects(DataEntity.PROPERTY_DATASET_ID, series));
         return c.setReadOnly(true);
     }
 
     private Criteria getDefaultSeriesValueCriteriaFor(AbstractObservationRequest request,
             Criterion temporalFilterCriterion, Session session, StringBuilder logArgs) throws OwsExceptionReport {
-        final Criteria c = getDefaultObservationCriteria(session);
+        return getDefaultSeriesValueCriteriaFor(request, temporalFilterCriterion, false, session, logArgs);
+    }
+
+    private Criteria getDefaultSeriesValueCriteriaFor(AbstractObservationRequest request,
+            Criterion temporalFilterCriterion, boolean orderBySeries, Session session, StringBuilder logArgs)
+            throws OwsExceptionReport {
+        return addDefaultSeriesValueRestrictions(getDefaultObservationCriteria(session), request,
+                temporalFilterCriterion, orderBySeries, session, logArgs);
+    }
+
+    private Criteria addDefaultSeriesValueRestrictions(Criteria c, AbstractObservationRequest request,
+            Criterion temporalFilterCriterion, boolean orderBySeries, Session session, StringBuilder logArgs)
+            throws OwsExceptionReport {
+        if (orderBySeries) {
+            c.addOrder(Order.asc(DataEntity.PROPERTY_DATASET_ID));
+        }
         c.addOrder(Order.asc(getOrderColumn(request)));
+        c.addOrder(Order.asc(DataEntity.PROPERTY_ID));
         logArgs.append("request, series");
         if (request instanceof GetObservationRequest) {
             GetObservationRequest getObsReq = (GetObservationRequest) request;
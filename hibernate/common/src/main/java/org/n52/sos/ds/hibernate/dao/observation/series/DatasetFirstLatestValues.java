@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.hibernate.dao.observation.series;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.n52.series.db.beans.DataEntity;
+import org.n52.series.db.beans.DatasetEntity;
+
+/**
+ * Collects the first and latest observations of the datasets affected by an
+ * insertion batch, so that the first/latest values of each
+ * {@link DatasetEntity} are updated once per batch instead of once per
+ * inserted observation.
+ *
+ * @since 5.3.2
+ */
+public class DatasetFirstLatestValues {
+
+    private final Map<Long, Extrema> extrema = new LinkedHashMap<>();
+
+    private int observations;
+
+    /**
+     * Add an inserted observation of the dataset
+     *
+     * @param dataset
+     *            the dataset of the observation
+     * @param observation
+     *            the inserted observation
+     */
+    public void add(DatasetEntity dataset, DataEntity<?> observation) {
+        extrema.computeIfAbsent(dataset.getId(), Extrema::new).add(observation);
+        observations++;
+    }
+
+    public Collection<Extrema> getExtrema() {
+        return Collections.unmodifiableCollection(extrema.values());
+    }
+
+    /**
+     * @return the number of added observations
+     */
+    public int getObservationCount() {
+        return observations;
+    }
+
+    public boolean isEmpty() {
+        return extrema.isEmpty();
+    }
+
+    public void clear() {
+        extrema.clear();
+        observations = 0;
+    }
+
+    /**
+     * First and latest observation and the result time extent of a dataset
+     */
+    public static class Extrema {
+
+        private final Long datasetId;
+
+        private DataEntity<?> first;
+
+        private DataEntity<?> last;
+
+        private Date resultTimeStart;
+
+        private Date resultTimeEnd;
+
+        Extrema(Long datasetId) {
+            this.datasetId = datasetId;
+        }
+
+        void add(DataEntity<?> observation) {
+            if (first == null || first.getSamplingTimeStart().after(observation.getSamplingTimeStart())) {
+                first = observation;
+            }
+            if (last == null || last.getSamplingTimeEnd().before(observation.getSamplingTimeEnd())) {
+                last = observation;
+            }
+            Date resultTime = observation.getResultTime();
+            if (resultTime != null) {
+                if (resultTimeStart == null || resultTimeStart.after(resultTime)) {
+                    resultTimeStart = resultTime;
+                }
+                if (resultTimeEnd == null || resultTimeEnd.before(resultTime)) {
+                    resultTimeEnd = resultTime;
+                }
+            }
+        }
+
+        public Long getDatasetId() {
+            return datasetId;
+        }
+
+        public DataEntity<?> getFirst() {
+            return first;
+        }
+
+        public DataEntity<?> getLast() {
+            return last;
+        }
+
+        public Date getResultTimeStart() {
+            return resultTimeStart;
+        }
+
+        public Date getResultTimeEnd() {
+            return resultTimeEnd;
+        }
+    }
+}
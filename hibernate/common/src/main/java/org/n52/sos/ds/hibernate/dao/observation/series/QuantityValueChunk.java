@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.hibernate.dao.observation.series;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+
+/**
+ * Chunk of quantity values of a single series stored in primitive arrays
+ * instead of {@link org.n52.series.db.beans.QuantityDataEntity}s. Times are
+ * stored as milliseconds since the epoch.
+ *
+ * @since 5.3.2
+ */
+public class QuantityValueChunk {
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private long[] ids;
+
+    private long[] phenomenonTimeStarts;
+
+    private long[] phenomenonTimeEnds;
+
+    private long[] orderTimes;
+
+    private double[] values;
+
+    private final BitSet missingPhenomenonTimeEnds = new BitSet();
+
+    private final BitSet missingValues = new BitSet();
+
+    private int size;
+
+    public QuantityValueChunk() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public QuantityValueChunk(int capacity) {
+        int initial = Math.max(capacity, 1);
+        this.ids = new long[initial];
+        this.phenomenonTimeStarts = new long[initial];
+        this.phenomenonTimeEnds = new long[initial];
+        this.orderTimes = new long[initial];
+        this.values = new double[initial];
+    }
+
+    /**
+     * Add a value to the chunk
+     *
+     * @param id
+     *            the id of the value
+     * @param phenomenonTimeStart
+     *            the phenomenon time start
+     * @param phenomenonTimeEnd
+     *            the phenomenon time end, may be <code>null</code>
+     * @param orderTime
+     *            the time of the order column
+     * @param value
+     *            the value, may be <code>null</code>
+     */
+    public void add(long id, Date phenomenonTimeStart, Date phenomenonTimeEnd, Date orderTime, Number value) {
+        ensureCapacity(size + 1);
+        ids[size] = id;
+        phenomenonTimeStarts[size] = phenomenonTimeStart.getTime();
+        if (phenomenonTimeEnd != null) {
+            phenomenonTimeEnds[size] = phenomenonTimeEnd.getTime();
+        } else {
+            missingPhenomenonTimeEnds.set(size);
+        }
+        orderTimes[size] = orderTime.getTime();
+        if (value != null) {
+            values[size] = value.doubleValue();
+        } else {
+            missingValues.set(size);
+        }
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long getId(int index) {
+        checkIndex(index);
+        return ids[index];
+    }
+
+    public long getPhenomenonTimeStart(int index) {
+        checkIndex(index);
+        return phenomenonTimeStarts[index];
+    }
+
+    public boolean hasPhenomenonTimeEnd(int index) {
+        checkIndex(index);
+        return !missingPhenomenonTimeEnds.get(index);
+    }
+
+    public long getPhenomenonTimeEnd(int index) {
+        checkIndex(index);
+        return hasPhenomenonTimeEnd(index) ? phenomenonTimeEnds[index] : phenomenonTimeStarts[index];
+    }
+
+    public long getOrderTime(int index) {
+        checkIndex(index);
+        return orderTimes[index];
+    }
+
+    public boolean hasValue(int index) {
+        checkIndex(index);
+        return !missingValues.get(index);
+    }
+
+    public double getValue(int index) {
+        checkIndex(index);
+        return hasValue(index) ? values[index] : Double.NaN;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > ids.length) {
+            int newCapacity = Math.max(capacity, ids.length * 2);
+            ids = Arrays.copyOf(ids, newCapacity);
+            phenomenonTimeStarts = Arrays.copyOf(phenomenonTimeStarts, newCapacity);
+            phenomenonTimeEnds = Arrays.copyOf(phenomenonTimeEnds, newCapacity);
+            orderTimes = Arrays.copyOf(orderTimes, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(String.format("Index: %d, Size: %d", index, size));
+        }
+    }
+
+}
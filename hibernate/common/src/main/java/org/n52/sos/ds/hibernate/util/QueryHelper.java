@@ -234,7 +234,7 @@ public final class QueryHelper {
                     ids.add(identifiersList.get(i));
                 }
             }
-            return criterion;
+            return Restrictions.or(criterion, Restrictions.in(propertyName, ids));
         } else {
             return Restrictions.in(propertyName, identifiers);
         }
@@ -264,6 +264,7 @@ public final class QueryHelper {
                     ids.add(identifiersList.get(i));
                 }
             }
+            list.add(ids);
         } else {
             list.add(identifiersList);
         }
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.hibernate.util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import javax.persistence.PersistenceException;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.StatelessSession;
+import org.hibernate.exception.ConstraintViolationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Inserts entities which are shared by concurrent transactions, e.g. units,
+ * codespaces, formats or categories.
+ *
+ * If concurrent insertion is disabled, all insertions are serialized by the
+ * handlers and a missing entity is simply saved in the session of the caller.
+ *
+ * If concurrent insertion is enabled, another transaction may insert the same
+ * entity in the meantime. The missing entity is then inserted on the
+ * connection of the caller behind a savepoint, so it is part of the
+ * transaction of the caller and no further connection is required. If the
+ * insertion fails with a constraint violation, only the savepoint is rolled
+ * back and the entity committed by the other transaction is read instead.
+ * This requires the isolation level READ COMMITTED, which is the default of
+ * the supported databases. With a stricter isolation level the entity of the
+ * other transaction is not visible and the insertion fails with a
+ * {@link HibernateException}, so that the request can be retried.
+ *
+ * @since 5.3.2
+ */
+public final class SharedEntityInsertion {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedEntityInsertion.class);
+
+    private SharedEntityInsertion() {
+    }
+
+    /**
+     * Get the entity or insert it if it does not exist.
+     *
+     * @param <T>
+     *            the entity type
+     * @param get
+     *            queries the entity in the given session, returns
+     *            {@code null} if it does not exist
+     * @param create
+     *            creates the transient entity to insert
+     * @param concurrent
+     *            if concurrent insertion is enabled
+     * @param session
+     *            the session of the caller
+     * @return the entity, attached to the session of the caller
+     */
+    public static <T> T getOrInsert(Function<Session, T> get, Function<Session, T> create, boolean concurrent,
+            Session session) {
+        return getOrInsert(get, create, null, concurrent, session);
+    }
+
+    /**
+     * Get the entity or insert it if it does not exist.
+     *
+     * @param <T>
+     *            the entity type
+     * @param get
+     *            queries the entity in the given session, returns
+     *            {@code null} if it does not exist
+     * @param create
+     *            creates the transient entity to insert
+     * @param afterInsert
+     *            called with the entity if it was inserted by the caller,
+     *            e.g. to insert dependent entities, may be {@code null}
+     * @param concurrent
+     *            if concurrent insertion is enabled
+     * @param session
+     *            the session of the caller
+     * @return the entity, attached to the session of the caller
+     */
+    public static <T> T getOrInsert(Function<Session, T> get, Function<Session, T> create,
+            BiConsumer<T, Session> afterInsert, boolean concurrent, Session session) {
+        T entity = get.apply(session);
+        if (entity != null) {
+            return entity;
+        }
+        entity = create.apply(session);
+        if (!concurrent) {
+            session.save(entity);
+            session.flush();
+            session.refresh(entity);
+        } else {
+            // the entity may reference entities which are not yet flushed
+            session.flush();
+            if (!insert(entity, session)) {
+                entity = get.apply(session);
+                if (entity == null) {
+                    throw new HibernateException(
+                            "The entity inserted by a concurrent transaction is not visible, retry the request");
+                }
+                return entity;
+            }
+            entity = get.apply(session);
+        }
+        if (afterInsert != null) {
+            afterInsert.accept(entity, session);
+        }
+        return entity;
+    }
+
+    private static boolean insert(Object entity, Session session) {
+        return session.doReturningWork(connection -> {
+            Savepoint savepoint = connection.setSavepoint();
+            // shares the connection of the caller and leaves its persistence context untouched
+            StatelessSession insertSession = session.getSessionFactory().openStatelessSession(connection);
+            try {
+                insertSession.insert(entity);
+            } catch (PersistenceException e) {
+                connection.rollback(savepoint);
+                if (!isConstraintViolation(e)) {
+                    throw e;
+                }
+                LOGGER.debug("Entity was inserted by a concurrent transaction", e);
+                return false;
+            } finally {
+                insertSession.close();
+            }
+            release(savepoint, connection);
+            return true;
+        });
+    }
+
+    private static void release(Savepoint savepoint, Connection connection) throws SQLException {
+        try {
+            connection.releaseSavepoint(savepoint);
+        } catch (SQLFeatureNotSupportedException e) {
+            // e.g. Oracle releases the savepoint with the end of the transaction
+            LOGGER.trace("Releasing savepoints is not supported", e);
+        }
+    }
+
+    private static boolean isConstraintViolation(PersistenceException e) {
+        return e instanceof ConstraintViolationException || e.getCause() instanceof ConstraintViolationException;
+    }
+}
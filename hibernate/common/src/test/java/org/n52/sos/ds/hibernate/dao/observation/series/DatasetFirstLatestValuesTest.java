@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.hibernate.dao.observation.series;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.Iterator;
+
+import org.junit.Test;
+import org.n52.series.db.beans.DatasetEntity;
+import org.n52.series.db.beans.QuantityDataEntity;
+
+public class DatasetFirstLatestValuesTest {
+
+    @Test
+    public void shouldKeepFirstAndLatestObservationPerDataset() {
+        DatasetEntity dataset = createDataset(1L);
+        QuantityDataEntity first = createObservation(1000L, 1000L, 5000L);
+        QuantityDataEntity middle = createObservation(2000L, 3000L, 2000L);
+        QuantityDataEntity last = createObservation(3000L, 4000L, 3000L);
+
+        DatasetFirstLatestValues values = new DatasetFirstLatestValues();
+        values.add(dataset, middle);
+        values.add(dataset, last);
+        values.add(dataset, first);
+
+        assertEquals(3, values.getObservationCount());
+        assertEquals(1, values.getExtrema().size());
+        DatasetFirstLatestValues.Extrema extrema = values.getExtrema().iterator().next();
+        assertEquals(Long.valueOf(1L), extrema.getDatasetId());
+        assertSame(first, extrema.getFirst());
+        assertSame(last, extrema.getLast());
+        assertEquals(new Date(2000L), extrema.getResultTimeStart());
+        assertEquals(new Date(5000L), extrema.getResultTimeEnd());
+    }
+
+    @Test
+    public void shouldCollectDatasetsSeparately() {
+        DatasetFirstLatestValues values = new DatasetFirstLatestValues();
+        QuantityDataEntity first = createObservation(1000L, 1000L, 1000L);
+        QuantityDataEntity second = createObservation(2000L, 2000L, 2000L);
+        values.add(createDataset(1L), first);
+        values.add(createDataset(2L), second);
+
+        Iterator<DatasetFirstLatestValues.Extrema> iterator = values.getExtrema().iterator();
+        DatasetFirstLatestValues.Extrema extrema = iterator.next();
+        assertSame(first, extrema.getFirst());
+        assertSame(first, extrema.getLast());
+        extrema = iterator.next();
+        assertSame(second, extrema.getFirst());
+        assertSame(second, extrema.getLast());
+
+        values.clear();
+        assertTrue(values.isEmpty());
+        assertEquals(0, values.getObservationCount());
+    }
+
+    private DatasetEntity createDataset(Long id) {
+        DatasetEntity dataset = new DatasetEntity();
+        dataset.setId(id);
+        return dataset;
+    }
+
+    private QuantityDataEntity createObservation(long start, long end, long resultTime) {
+        QuantityDataEntity observation = new QuantityDataEntity();
+        observation.setSamplingTimeStart(new Date(start));
+        observation.setSamplingTimeEnd(new Date(end));
+        observation.setResultTime(new Date(resultTime));
+        return observation;
+    }
+}
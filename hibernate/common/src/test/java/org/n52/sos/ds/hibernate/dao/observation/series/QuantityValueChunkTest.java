@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.hibernate.dao.observation.series;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.junit.Test;
+
+public class QuantityValueChunkTest {
+
+    private static final double DELTA = 0.0;
+
+    @Test
+    public void shouldGrowBeyondInitialCapacity() {
+        QuantityValueChunk chunk = new QuantityValueChunk(1);
+        for (int i = 0; i < 100; i++) {
+            chunk.add(i, new Date(i * 1000L), null, new Date(i * 1000L), BigDecimal.valueOf(i));
+        }
+        assertEquals(100, chunk.size());
+        assertEquals(99L, chunk.getId(99));
+        assertEquals(99000L, chunk.getPhenomenonTimeStart(99));
+        assertEquals(99.0, chunk.getValue(99), DELTA);
+    }
+
+    @Test
+    public void shouldUseStartTimeIfEndTimeIsMissing() {
+        QuantityValueChunk chunk = new QuantityValueChunk();
+        chunk.add(1L, new Date(1000L), null, new Date(1000L), 1.5);
+        chunk.add(2L, new Date(2000L), new Date(3000L), new Date(4000L), 2.5);
+        assertFalse(chunk.hasPhenomenonTimeEnd(0));
+        assertEquals(1000L, chunk.getPhenomenonTimeEnd(0));
+        assertTrue(chunk.hasPhenomenonTimeEnd(1));
+        assertEquals(3000L, chunk.getPhenomenonTimeEnd(1));
+        assertEquals(4000L, chunk.getOrderTime(1));
+    }
+
+    @Test
+    public void shouldDistinguishMissingValues() {
+        QuantityValueChunk chunk = new QuantityValueChunk();
+        chunk.add(1L, new Date(1000L), null, new Date(1000L), null);
+        chunk.add(2L, new Date(2000L), null, new Date(2000L), Double.NaN);
+        assertFalse(chunk.hasValue(0));
+        assertTrue(chunk.hasValue(1));
+        assertTrue(Double.isNaN(chunk.getValue(1)));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void shouldRejectIndexBeyondSize() {
+        QuantityValueChunk chunk = new QuantityValueChunk(10);
+        chunk.add(1L, new Date(1000L), null, new Date(1000L), 1.0);
+        chunk.getId(1);
+    }
+}
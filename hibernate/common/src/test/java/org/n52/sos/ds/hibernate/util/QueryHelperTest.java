@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.hibernate.util;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class QueryHelperTest {
+
+    @Test
+    public void shouldKeepAllIdentifiersWhenSplitting() {
+        List<String> identifiers = getList(2500);
+        List<String> joined = Lists.newArrayList();
+        for (List<String> list : QueryHelper.getListsForIdentifiers(identifiers)) {
+            Assert.assertTrue(list.size() < 1000);
+            joined.addAll(list);
+        }
+        Assert.assertEquals(identifiers, joined);
+    }
+
+    @Test
+    public void shouldNotSplitSmallLists() {
+        Assert.assertEquals(1, QueryHelper.getListsForIdentifiers(getList(10)).size());
+    }
+
+    @Test
+    public void shouldRestrictAllIdentifiers() {
+        String criterion = QueryHelper.getCriterionForObjects("identifier", getList(2500)).toString();
+        Assert.assertTrue(criterion.contains("id0,") && criterion.contains("id2499)"));
+    }
+
+    private List<String> getList(int size) {
+        List<String> list = Lists.newArrayList();
+        for (int i = 0; i < size; i++) {
+            list.add("id" + i);
+        }
+        return list;
+    }
+}
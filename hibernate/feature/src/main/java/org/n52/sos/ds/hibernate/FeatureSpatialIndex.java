@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.hibernate;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.n52.janmayen.event.Event;
+import org.n52.janmayen.event.EventListener;
+import org.n52.shetland.ogc.gml.AbstractFeature;
+import org.n52.shetland.ogc.om.OmObservation;
+import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
+import org.n52.sos.event.events.FeatureInsertion;
+import org.n52.sos.event.events.ObservationInsertion;
+import org.n52.sos.event.events.ResultInsertion;
+import org.n52.sos.event.events.SensorDeletion;
+import org.n52.sos.event.events.UpdateCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+/**
+ * In-memory packed R-tree of feature identifiers and envelopes. It is used to
+ * resolve spatial filters to candidate feature identifiers for non spatial
+ * datasources before any feature entity is loaded.
+ *
+ * The index is built lazily from the datasource on first use and is
+ * invalidated on events that delete features or replace the cache. Features
+ * inserted afterwards are added to the current index without an envelope and
+ * are candidates of every query until the next rebuild, as their geometry is
+ * not known in the coordinate system of the index. If too many features were
+ * added, the index is rebuilt.
+ *
+ * Every invalidation increments a generation counter. A rebuild that was
+ * started before an invalidation is discarded and loaded again, so a
+ * concurrent rebuild never publishes outdated envelopes.
+ *
+ * @since 5.3.2
+ */
+public class FeatureSpatialIndex
+        implements EventListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FeatureSpatialIndex.class);
+
+    private static final int NODE_CAPACITY = 10;
+
+    private static final int MAX_ADDED_FEATURES = 1000;
+
+    private static final int MAX_BUILD_ATTEMPTS = 3;
+
+    @SuppressWarnings("unchecked")
+    private static final Set<Class<? extends Event>> TYPES = ImmutableSet
+            .<Class<? extends Event>> of(
+                    FeatureInsertion.class,
+                    SensorDeletion.class,
+                    ObservationInsertion.class,
+                    ResultInsertion.class,
+                    UpdateCache.class);
+
+    private final Object buildLock = new Object();
+
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Features inserted while no valid index exists, added to the next built
+     * index.
+     */
+    private final AtomicReference<Set<String>> pending = new AtomicReference<>(ConcurrentHashMap.newKeySet());
+
+    private volatile Snapshot snapshot;
+
+    @Override
+    public Set<Class<? extends Event>> getTypes() {
+        return Collections.unmodifiableSet(TYPES);
+    }
+
+    @Override
+    public void handle(Event event) {
+        if (event instanceof ObservationInsertion) {
+            add(getFeatures(((ObservationInsertion) event).getRequest().getObservations().stream()));
+        } else if (event instanceof ResultInsertion) {
+            add(getFeatures(((ResultInsertion) event).getResponse().getObservations().stream()));
+        } else if (event instanceof FeatureInsertion) {
+            add(((FeatureInsertion) event).getRequest().getFeatureMembers().stream()
+                    .map(AbstractFeature::getIdentifier)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toSet()));
+        } else {
+            invalidate();
+        }
+    }
+
+    /**
+     * Get the identifiers of all features whose envelope intersects the
+     * envelope of at least one of the filter geometries. The result is a
+     * superset of the matching features and has to be checked against the
+     * exact filter afterwards.
+     *
+     * @param filters
+     *            the filter geometries
+     * @param loader
+     *            the loader to (re)build the index from if it is not valid
+     * @return the modifiable set of candidate identifiers
+     * @throws OwsExceptionReport
+     *             if the index can not be built
+     */
+    public Set<String> getCandidates(Collection<Geometry> filters, FeatureEnvelopeLoader loader)
+            throws OwsExceptionReport {
+        Snapshot current = getSnapshot(loader);
+        Set<String> candidates = Sets.newHashSet();
+        for (Geometry filter : filters) {
+            if (filter != null && !filter.isEmpty()) {
+                current.query(filter.getEnvelopeInternal(), candidates);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Discard the current index. It is rebuilt on the next query.
+     */
+    public void invalidate() {
+        LOGGER.debug("Invalidating feature spatial index");
+        this.generation.incrementAndGet();
+        this.snapshot = null;
+    }
+
+    /**
+     * @return whether the index is currently built
+     */
+    public boolean isValid() {
+        return getValidSnapshot() != null;
+    }
+
+    private Set<String> getFeatures(Stream<OmObservation> observations) {
+        return observations.map(o -> o.getObservationConstellation().getFeatureOfInterestIdentifier())
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+    }
+
+    private void add(Set<String> features) {
+        if (features.isEmpty()) {
+            return;
+        }
+        Snapshot current = getValidSnapshot();
+        if (current == null) {
+            this.pending.get().addAll(features);
+            // the index may have been published after the pending features were drained
+            current = getValidSnapshot();
+        }
+        if (current != null && current.add(features) > MAX_ADDED_FEATURES) {
+            invalidate();
+        }
+    }
+
+    private Snapshot getValidSnapshot() {
+        Snapshot current = this.snapshot;
+        return current != null && current.generation == this.generation.get() ? current : null;
+    }
+
+    private Snapshot getSnapshot(FeatureEnvelopeLoader loader) throws OwsExceptionReport {
+        Snapshot current = getValidSnapshot();
+        if (current == null) {
+            synchronized (buildLock) {
+                current = getValidSnapshot();
+                for (int attempt = 1; current == null; attempt++) {
+                    long expected = this.generation.get();
+                    Snapshot built = new Snapshot(loader.load(), expected);
+                    this.snapshot = built;
+                    built.add(this.pending.getAndSet(ConcurrentHashMap.newKeySet()));
+                    if (built.generation == this.generation.get()) {
+                        current = built;
+                    } else if (attempt >= MAX_BUILD_ATTEMPTS) {
+                        // use it for this query, the next query rebuilds it
+                        LOGGER.debug("Feature spatial index was invalidated during {} rebuilds", attempt);
+                        current = built;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Loads the envelopes of all features of the datasource. Features without
+     * geometry should be contained with a {@code null} envelope.
+     */
+    @FunctionalInterface
+    public interface FeatureEnvelopeLoader {
+        Map<String, Envelope> load()
+                throws OwsExceptionReport;
+    }
+
+    private static final class Snapshot {
+        private final STRtree tree = new STRtree(NODE_CAPACITY);
+        private final Set<String> identifiers;
+        private final Set<String> added = ConcurrentHashMap.newKeySet();
+        private final long generation;
+
+        Snapshot(Map<String, Envelope> envelopes, long generation) {
+            this.generation = generation;
+            this.identifiers = ImmutableSet.copyOf(envelopes.keySet());
+            envelopes.forEach((identifier, envelope) -> {
+                if (envelope != null && !envelope.isNull()) {
+                    tree.insert(envelope, identifier);
+                }
+            });
+            // build eagerly, queries on a built tree do not modify it
+            tree.build();
+            LOGGER.debug("Built feature spatial index with {} of {} features", tree.size(), identifiers.size());
+        }
+
+        /**
+         * Adds the unknown features as candidates of every query.
+         *
+         * @return the number of added features
+         */
+        int add(Set<String> features) {
+            features.stream().filter(id -> !identifiers.contains(id)).forEach(added::add);
+            return added.size();
+        }
+
+        @SuppressWarnings("unchecked")
+        void query(Envelope envelope, Set<String> candidates) {
+            candidates.addAll((List<String>) tree.query(envelope));
+            candidates.addAll(added);
+        }
+    }
+}
@@ -36,6 +36,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
 
@@ -109,6 +110,8 @@ public class HibernateFeatureQueryHandler
 
     private ContentCacheController contentCacheController;
 
+    private FeatureSpatialIndex featureSpatialIndex;
+
     @Inject
     public void setDaoFactory(DaoFactory daoFactory) {
         this.daoFactory = daoFactory;
@@ -129,6 +132,11 @@ public class HibernateFeatureQueryHandler
         this.contentCacheController = ctrl;
     }
 
+    @Inject
+    public void setFeatureSpatialIndex(FeatureSpatialIndex featureSpatialIndex) {
+        this.featureSpatialIndex = featureSpatialIndex;
+    }
+
     @Setting(I18NSettings.I18N_DEFAULT_LANGUAGE)
     public void setDefaultLocale(String defaultLocale) {
         this.defaultLocale = LocaleHelper.decode(defaultLocale);
@@ -426,8 +434,20 @@ public class HibernateFeatureQueryHandler
                 envelopes.add(getGeometryHandler().getFilterForNonSpatialDatasource(filter));
             }
         }
+        Collection<String> identifiers = queryObject.getFeatures();
+        if (hasSpatialFilter && featureSpatialIndex != null) {
+            Set<String> candidates =
+                    featureSpatialIndex.getCandidates(envelopes, () -> getFeatureEnvelopes(queryObject, session));
+            if (queryObject.isSetFeatures()) {
+                candidates.retainAll(queryObject.getFeatures());
+            }
+            if (candidates.isEmpty()) {
+                return featureMap;
+            }
+            identifiers = candidates;
+        }
         final List<AbstractFeatureEntity> featuresOfInterest =
-                daoFactory.getFeatureDAO().getFeatureOfInterestObjects(queryObject.getFeatures(), session);
+                daoFactory.getFeatureDAO().getFeatureOfInterestObjects(identifiers, session);
         for (final AbstractFeatureEntity feature : featuresOfInterest) {
             final AbstractSamplingFeature sosAbstractFeature =
                     (AbstractSamplingFeature) createSosAbstractFeature(feature, queryObject, session);
@@ -440,6 +460,34 @@ public class HibernateFeatureQueryHandler
         return featureMap;
     }
 
+    /**
+     * Loads the envelopes of all features to build the
+     * {@link FeatureSpatialIndex} from.
+     *
+     * @param queryObject
+     *            Query object
+     * @param session
+     *            the session
+     * @return Map with FOI identifier and envelope, {@code null} if the feature
+     *         has no geometry
+     * @throws OwsExceptionReport
+     *             If an error occurs
+     */
+    private Map<String, Envelope> getFeatureEnvelopes(FeatureQueryHandlerQueryObject queryObject, Session session)
+            throws OwsExceptionReport {
+        final List<AbstractFeatureEntity> features = daoFactory.getFeatureDAO().getFeatures(session);
+        final Map<String, Envelope> envelopes = new HashMap<>(features.size());
+        FeatureVisitorContext context = getDefaultContext()
+                .setSession(session)
+                .setRequestedLanguage(queryObject.getI18N());
+        for (final AbstractFeatureEntity feature : features) {
+            final Geometry geom = new HibernateGeometryVisitor(context).visit(feature);
+            envelopes.put(feature.getIdentifier(),
+                    geom != null && !geom.isEmpty() ? geom.getEnvelopeInternal() : null);
+        }
+        return envelopes;
+    }
+
     protected Map<String, AbstractFeature> getFeaturesForSpatialDatasource(FeatureQueryHandlerQueryObject queryObject)
             throws OwsExceptionReport {
         final Session session = HibernateSessionHolder.getSession(queryObject.getConnection());
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.hibernate;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.n52.shetland.ogc.gml.CodeWithAuthority;
+import org.n52.shetland.ogc.om.features.samplingFeatures.SamplingFeature;
+import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
+import org.n52.shetland.ogc.sos.ifoi.InsertFeatureOfInterestRequest;
+import org.n52.shetland.ogc.sos.ifoi.InsertFeatureOfInterestResponse;
+import org.n52.sos.ds.hibernate.FeatureSpatialIndex.FeatureEnvelopeLoader;
+import org.n52.sos.event.events.FeatureInsertion;
+
+public class FeatureSpatialIndexTest {
+
+    private final GeometryFactory factory = new GeometryFactory();
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final Map<String, Envelope> envelopes = new HashMap<>();
+
+    private final FeatureEnvelopeLoader loader = () -> {
+        loads.incrementAndGet();
+        return envelopes;
+    };
+
+    private FeatureSpatialIndex index;
+
+    @Before
+    public void setUp() {
+        envelopes.put("a", new Envelope(1, 1, 1, 1));
+        envelopes.put("b", new Envelope(5, 5, 5, 5));
+        envelopes.put("c", new Envelope(8, 9, 8, 9));
+        envelopes.put("noGeometry", null);
+        index = new FeatureSpatialIndex();
+    }
+
+    @Test
+    public void shouldReturnIntersectingFeatures() throws OwsExceptionReport {
+        assertThat(index.getCandidates(Collections.singleton(bbox(0, 6, 0, 6)), loader),
+                containsInAnyOrder("a", "b"));
+        assertThat(index.getCandidates(Collections.singleton(bbox(8.5, 10, 8.5, 10)), loader),
+                containsInAnyOrder("c"));
+        assertThat(index.getCandidates(Collections.singleton(bbox(20, 30, 20, 30)), loader), is(empty()));
+        assertThat(loads.get(), is(1));
+    }
+
+    @Test
+    public void shouldRebuildAfterInvalidation() throws OwsExceptionReport {
+        assertThat(index.getCandidates(Collections.singleton(bbox(10, 20, 10, 20)), loader), is(empty()));
+        envelopes.put("d", new Envelope(15, 15, 15, 15));
+        index.invalidate();
+        assertThat(index.isValid(), is(false));
+        assertThat(index.getCandidates(Collections.singleton(bbox(10, 20, 10, 20)), loader),
+                containsInAnyOrder("d"));
+        assertThat(index.isValid(), is(true));
+        assertThat(loads.get(), is(2));
+    }
+
+    @Test
+    public void shouldAddInsertedFeaturesWithoutRebuild() throws OwsExceptionReport {
+        assertThat(index.getCandidates(Collections.singleton(bbox(20, 30, 20, 30)), loader), is(empty()));
+        InsertFeatureOfInterestRequest request = new InsertFeatureOfInterestRequest();
+        request.addFeatureMember(new SamplingFeature(new CodeWithAuthority("d")));
+        request.addFeatureMember(new SamplingFeature(new CodeWithAuthority("a")));
+        index.handle(new FeatureInsertion(request, new InsertFeatureOfInterestResponse()));
+        assertThat(index.isValid(), is(true));
+        assertThat(index.getCandidates(Collections.singleton(bbox(20, 30, 20, 30)), loader),
+                containsInAnyOrder("d"));
+        assertThat(loads.get(), is(1));
+    }
+
+    @Test
+    public void shouldReloadIfInvalidatedDuringRebuild() throws OwsExceptionReport {
+        FeatureEnvelopeLoader invalidating = () -> {
+            Map<String, Envelope> loaded = new HashMap<>(envelopes);
+            if (loads.incrementAndGet() == 1) {
+                // a concurrent modification, the loaded envelopes are outdated
+                envelopes.put("d", new Envelope(15, 15, 15, 15));
+                index.invalidate();
+            }
+            return loaded;
+        };
+        assertThat(index.getCandidates(Collections.singleton(bbox(10, 20, 10, 20)), invalidating),
+                containsInAnyOrder("d"));
+        assertThat(index.isValid(), is(true));
+        assertThat(loads.get(), is(2));
+    }
+
+    private Geometry bbox(double minX, double maxX, double minY, double maxY) {
+        return factory.toGeometry(new Envelope(minX, maxX, minY, maxY));
+    }
+}
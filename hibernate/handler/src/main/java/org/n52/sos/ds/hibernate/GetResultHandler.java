@@ -35,8 +35,11 @@ import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 
+import org.hibernate.CacheMode;
 import org.hibernate.Criteria;
 import org.hibernate.HibernateException;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
@@ -65,6 +68,7 @@ import org.n52.sos.ds.hibernate.util.QueryHelper;
 import org.n52.sos.ds.hibernate.util.ResultHandlingHelper;
 import org.n52.sos.ds.hibernate.util.SosTemporalRestrictions;
 import org.n52.sos.ds.hibernate.util.SpatialRestrictions;
+import org.n52.sos.ds.hibernate.values.HibernateStreamingSettings;
 import org.n52.sos.exception.ows.concrete.UnsupportedOperatorException;
 import org.n52.sos.exception.ows.concrete.UnsupportedTimeException;
 import org.n52.sos.exception.ows.concrete.UnsupportedValueReferenceException;
@@ -97,6 +101,10 @@ public class GetResultHandler extends AbstractGetResultHandler implements Abstra
 
     private boolean supportsDatabaseEntities;
 
+    private int chunkSize;
+
+    private boolean scroll;
+
     public GetResultHandler() {
         super(SosConstants.SOS);
     }
@@ -116,6 +124,31 @@ public class GetResultHandler extends AbstractGetResultHandler implements Abstra
         this.strictSpatialFilteringProfile = strictSpatialFilteringProfile;
     }
 
+    /**
+     * Set the chunk size for scrolling the observations. If the chunk size is
+     * &lt;= 0, all observations are queried at once even if scrolling is
+     * enabled.
+     *
+     * @param chunkSize
+     *            Size to set
+     */
+    @Setting(HibernateStreamingSettings.CHUNK_SIZE)
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Set whether the observations should be scrolled in chunks instead of
+     * queried at once.
+     *
+     * @param scroll
+     *            <code>true</code>, if the observations should be scrolled
+     */
+    @Setting(HibernateStreamingSettings.SCROLL_GET_RESULT)
+    public void setScroll(boolean scroll) {
+        this.scroll = scroll;
+    }
+
     @Override
     public void init() {
         this.supportsDatabaseEntities = HibernateHelper.isEntitySupported(ResultTemplateEntity.class);
@@ -182,12 +215,18 @@ public class GetResultHandler extends AbstractGetResultHandler implements Abstra
                 sosResultStructure = generateSosResultStructure(request.getObservedProperty(), request.getOffering(),
                         featureIdentifier, session);
             }
-            final List<DataEntity<?>> observations;
-            observations = querySeriesObservation(request, featureIdentifier, session);
-            response.setResultValues(getResultHandlingHelper().createResultValuesFromObservations(observations,
-                    sosResultEncoding, sosResultStructure, getProfileHandler().getActiveProfile()
-                            .getResponseNoDataPlaceholder(),
-                    session));
+            String noDataPlaceholder = getProfileHandler().getActiveProfile()
+                    .getResponseNoDataPlaceholder();
+            if (scroll && chunkSize > 0) {
+                response.setResultValues(
+                        scrollResultValues(request, featureIdentifier, sosResultEncoding, sosResultStructure,
+                                noDataPlaceholder, session));
+            } else {
+                final List<DataEntity<?>> observations =
+                        querySeriesObservation(request, featureIdentifier, session);
+                response.setResultValues(getResultHandlingHelper().createResultValuesFromObservations(observations,
+                        sosResultEncoding, sosResultStructure, noDataPlaceholder, session));
+            }
             return response;
         } catch (final HibernateException he) {
             throw new NoApplicableCodeException().causedBy(he)
@@ -198,6 +237,51 @@ public class GetResultHandler extends AbstractGetResultHandler implements Abstra
         }
     }
 
+    /**
+     * Create the result values by scrolling forward only through the
+     * observations. The observations are fetched in chunks of
+     * {@link #chunkSize} and released from the session after each chunk, so
+     * the loaded entities do not depend on the result size.
+     *
+     * @param request
+     *            GetResult request
+     * @param featureIdentifiers
+     *            Set of feature identifiers
+     * @param sosResultEncoding
+     *            The result encoding
+     * @param sosResultStructure
+     *            The result structure
+     * @param noDataPlaceholder
+     *            The no data placeholder
+     * @param session
+     *            Hibernate session
+     * @return the result values
+     * @throws OwsExceptionReport
+     *             If an error occurs.
+     */
+    private String scrollResultValues(GetResultRequest request, Collection<String> featureIdentifiers,
+            SosResultEncoding sosResultEncoding, SosResultStructure sosResultStructure, String noDataPlaceholder,
+            Session session) throws OwsExceptionReport {
+        Criteria c = createSeriesObservationCriteria(request, featureIdentifiers, session);
+        if (c == null) {
+            return "";
+        }
+        // DISTINCT_ROOT_ENTITY is not applied when scrolling, the id order
+        // keeps the rows of the same observation together to skip them
+        c.addOrder(Order.asc(DataEntity.PROPERTY_ID));
+        LOGGER.trace("QUERY scrollResultValues(request, featureIdentifiers): {}", HibernateHelper.getSqlString(c));
+        ScrollableResults results = c.setFetchSize(chunkSize)
+                .setReadOnly(true)
+                .setCacheMode(CacheMode.IGNORE)
+                .scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            return getResultHandlingHelper().createResultValuesFromObservations(results, chunkSize,
+                    sosResultEncoding, sosResultStructure, noDataPlaceholder, session);
+        } finally {
+            results.close();
+        }
+    }
+
     /**
      * Query series observations from database depending on requested filters
      *
@@ -216,6 +300,16 @@ public class GetResultHandler extends AbstractGetResultHandler implements Abstra
     @SuppressWarnings("unchecked")
     protected List<DataEntity<?>> querySeriesObservation(GetResultRequest request,
             Collection<String> featureIdentifiers, Session session) throws OwsExceptionReport {
+        Criteria c = createSeriesObservationCriteria(request, featureIdentifiers, session);
+        if (c == null) {
+            return null;
+        }
+        LOGGER.trace("QUERY queryObservation(request, featureIdentifiers): {}", HibernateHelper.getSqlString(c));
+        return c.list();
+    }
+
+    private Criteria createSeriesObservationCriteria(GetResultRequest request,
+            Collection<String> featureIdentifiers, Session session) throws OwsExceptionReport {
         final Criteria c = createCriteriaFor(DataEntity.class, session);
         addSpatialFilteringProfileRestrictions(c, request, session);
         addParentChildRestriction(c);
@@ -234,10 +328,7 @@ public class GetResultHandler extends AbstractGetResultHandler implements Abstra
                 .isEmpty()) {
             addTemporalFilter(c, request.getTemporalFilter());
         }
-
-        LOGGER.trace("QUERY queryObservation(request, featureIdentifiers): {}", HibernateHelper.getSqlString(c));
-        return c.list();
-
+        return c;
     }
 
     /**
@@ -30,7 +30,9 @@ package org.n52.sos.ds.hibernate;
 
 import java.sql.SQLException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -70,6 +72,8 @@ import org.n52.shetland.ogc.sos.response.InsertObservationResponse;
 import org.n52.sos.ds.AbstractInsertObservationHandler;
 import org.n52.sos.ds.hibernate.dao.DaoFactory;
 import org.n52.sos.ds.hibernate.dao.observation.AbstractObservationDAO;
+import org.n52.sos.ds.hibernate.dao.observation.series.DatasetFirstLatestValues;
+import org.n52.sos.ds.hibernate.util.DatasetLocks;
 import org.n52.sos.ds.hibernate.util.HibernateHelper;
 import org.n52.sos.service.SosSettings;
 
@@ -112,6 +116,14 @@ public class InsertObservationHandler extends AbstractInsertObservationHandler i
 
     private boolean strictSpatialFilteringProfile;
 
+    private boolean concurrentInsertion;
+
+    private boolean coalesceDatasetValueUpdates;
+
+    private boolean checkDuplicatedObservations;
+
+    private DatasetLocks datasetLocks;
+
     /**
      * constructor
      */
@@ -119,6 +131,15 @@ public class InsertObservationHandler extends AbstractInsertObservationHandler i
         super(SosConstants.SOS);
     }
 
+    /**
+     * @param datasetLocks
+     *            the locks shared by all transactional handlers
+     */
+    @Inject
+    public void setDatasetLocks(DatasetLocks datasetLocks) {
+        this.datasetLocks = datasetLocks;
+    }
+
     @Override
     public void init() {
         this.sessionHolder = new HibernateSessionHolder(connectionProvider);
@@ -133,13 +154,61 @@ public class InsertObservationHandler extends AbstractInsertObservationHandler i
         return strictSpatialFilteringProfile;
     }
 
+    @Setting(SosSettings.CONCURRENT_INSERTION)
+    public synchronized void setConcurrentInsertion(final boolean concurrentInsertion) {
+        this.concurrentInsertion = concurrentInsertion;
+    }
+
+    public synchronized boolean isConcurrentInsertion() {
+        return concurrentInsertion;
+    }
+
+    @Setting(SosSettings.COALESCE_DATASET_VALUE_UPDATES)
+    public synchronized void setCoalesceDatasetValueUpdates(final boolean coalesceDatasetValueUpdates) {
+        this.coalesceDatasetValueUpdates = coalesceDatasetValueUpdates;
+    }
+
+    public synchronized boolean isCoalesceDatasetValueUpdates() {
+        return coalesceDatasetValueUpdates;
+    }
+
+    @Setting(SosSettings.CHECK_DUPLICATED_OBSERVATIONS)
+    public synchronized void setCheckDuplicatedObservations(final boolean checkDuplicatedObservations) {
+        this.checkDuplicatedObservations = checkDuplicatedObservations;
+    }
+
+    public synchronized boolean isCheckDuplicatedObservations() {
+        return checkDuplicatedObservations;
+    }
+
     @Override
     public boolean isSupported() {
         return HibernateHelper.isEntitySupported(ProcedureHistoryEntity.class);
     }
 
     @Override
-    public synchronized InsertObservationResponse insertObservation(final InsertObservationRequest request)
+    public InsertObservationResponse insertObservation(final InsertObservationRequest request)
+            throws OwsExceptionReport {
+        if (isConcurrentInsertion()) {
+            // only serialize insertions which share a dataset or feature
+            try (DatasetLocks.Lease lease = datasetLocks.lock(getLockKeys(request))) {
+                return doInsertObservation(request);
+            }
+        }
+        synchronized (this) {
+            return doInsertObservation(request);
+        }
+    }
+
+    private Set<String> getLockKeys(InsertObservationRequest request) {
+        Set<String> keys = Sets.newHashSet();
+        for (OmObservation observation : request.getObservations()) {
+            keys.addAll(DatasetLocks.getKeys(observation.getObservationConstellation()));
+        }
+        return keys;
+    }
+
+    private InsertObservationResponse doInsertObservation(final InsertObservationRequest request)
             throws OwsExceptionReport {
         final InsertObservationResponse response = new InsertObservationResponse();
         response.setService(request.getService());
@@ -155,8 +224,19 @@ public class InsertObservationHandler extends AbstractInsertObservationHandler i
 
             CompositeOwsException exceptions = new CompositeOwsException();
             InsertObservationCache cache = new InsertObservationCache();
+            if (isCoalesceDatasetValueUpdates()) {
+                cache.setDatasetValues(new DatasetFirstLatestValues());
+            }
 
             cache.addOfferings(request.getOfferings());
+            if (isCheckDuplicatedObservations()) {
+                for (OmObservation sosObservation : request.getObservations()) {
+                    if (sosObservation.getValue() instanceof SingleObservationValue) {
+                        OmObservationConstellation sosObsConst = sosObservation.getObservationConstellation();
+                        cache.addObservationToCheck(sosObsConst, getOfferingIdentifier(sosObsConst), sosObservation);
+                    }
+                }
+            }
 
             // counter for batch flushing
             int obsCount = 0;
@@ -186,6 +266,9 @@ public class InsertObservationHandler extends AbstractInsertObservationHandler i
                 throw exceptions;
             }
 
+            if (cache.getDatasetValues() != null) {
+                getDaoFactory().getSeriesDAO().updateSeriesWithFirstLatestValues(cache.getDatasetValues(), session);
+            }
             session.flush();
             transaction.commit();
         } catch (PersistenceException pe) {
@@ -204,6 +287,18 @@ public class InsertObservationHandler extends AbstractInsertObservationHandler i
         return response;
     }
 
+    /**
+     * @param sosObsConst
+     *            the observation constellation
+     * @return the offering of the dataset the observations of the
+     *         constellation are inserted into
+     */
+    private String getOfferingIdentifier(OmObservationConstellation sosObsConst) {
+        return sosObsConst.getOfferings()
+                .iterator()
+                .next();
+    }
+
     private void insertObservation(OmObservation sosObservation, InsertObservationCache cache,
             CompositeOwsException exceptions, Session session) throws OwsExceptionReport, CodedException {
 
@@ -218,9 +313,7 @@ public class InsertObservationHandler extends AbstractInsertObservationHandler i
         //
         // }
 
-        String offeringID = sosObsConst.getOfferings()
-                .iterator()
-                .next();
+        String offeringID = getOfferingIdentifier(sosObsConst);
         DatasetEntity hDataset = cache.get(sosObsConst, offeringID);
         if (hDataset == null) {
             if (!cache.isChecked(sosObsConst, offeringID)) {
@@ -235,6 +328,12 @@ public class InsertObservationHandler extends AbstractInsertObservationHandler i
                 }
                 // mark as checked
                 cache.checkConstellation(sosObsConst, offeringID);
+                // check all observations of the dataset at once
+                List<OmObservation> observationsToCheck = cache.removeObservationsToCheck(sosObsConst, offeringID);
+                if (hDataset != null && !observationsToCheck.isEmpty()) {
+                    getDaoFactory().getObservationDAO()
+                            .checkForDuplicatedObservations(observationsToCheck, hDataset, session);
+                }
             }
         }
         if (hDataset != null) {
@@ -252,10 +351,12 @@ public class InsertObservationHandler extends AbstractInsertObservationHandler i
             DatasetEntity dataset = null;
             if (sosObservation.getValue() instanceof SingleObservationValue) {
                 dataset = observationDAO.insertObservationSingleValue(hDataset, hFeature, sosObservation,
-                        cache.getCodespaceCache(), cache.getUnitCache(), cache.getFormatCache(), session);
+                        cache.getCodespaceCache(), cache.getUnitCache(), cache.getFormatCache(),
+                        cache.getDatasetValues(), session);
             } else if (sosObservation.getValue() instanceof MultiObservationValues) {
                 dataset = observationDAO.insertObservationMultiValue(hDataset, hFeature, sosObservation,
-                        cache.getCodespaceCache(), cache.getUnitCache(), cache.getFormatCache(), session);
+                        cache.getCodespaceCache(), cache.getUnitCache(), cache.getFormatCache(),
+                        cache.getDatasetValues(), session);
             }
             if (dataset != null && !cache.get(sosObsConst, offeringID)
                     .equals(dataset)) {
@@ -397,6 +498,11 @@ public class InsertObservationHandler extends AbstractInsertObservationHandler i
 
         private final HashMultimap<AbstractFeature, String> relatedFeatureCheckedMap = HashMultimap.create();
 
+        private final Table<OmObservationConstellation, String, List<OmObservation>> observationsToCheckTable =
+                HashBasedTable.create();
+
+        private DatasetFirstLatestValues datasetValues;
+
         public DatasetEntity get(OmObservationConstellation oc, String offering) {
             return this.obsConstOfferingDatasetTable.get(oc, offering);
         }
@@ -405,6 +511,21 @@ public class InsertObservationHandler extends AbstractInsertObservationHandler i
             this.obsConstOfferingDatasetTable.put(soc, offering, hoc);
         }
 
+        public void addObservationToCheck(OmObservationConstellation oc, String offering,
+                OmObservation observation) {
+            List<OmObservation> observations = this.observationsToCheckTable.get(oc, offering);
+            if (observations == null) {
+                observations = Lists.newArrayList();
+                this.observationsToCheckTable.put(oc, offering, observations);
+            }
+            observations.add(observation);
+        }
+
+        public List<OmObservation> removeObservationsToCheck(OmObservationConstellation oc, String offering) {
+            List<OmObservation> observations = this.observationsToCheckTable.remove(oc, offering);
+            return observations != null ? observations : Collections.emptyList();
+        }
+
         public void clearConstellation() {
             Set<Cell<OmObservationConstellation, String, DatasetEntity>> removable = new HashSet<>();
             for (Cell<OmObservationConstellation, String, DatasetEntity> cell : this.obsConstOfferingDatasetTable
@@ -459,6 +580,14 @@ public class InsertObservationHandler extends AbstractInsertObservationHandler i
             return formatCache;
         }
 
+        public DatasetFirstLatestValues getDatasetValues() {
+            return datasetValues;
+        }
+
+        public void setDatasetValues(DatasetFirstLatestValues datasetValues) {
+            this.datasetValues = datasetValues;
+        }
+
         public Set<String> getAllOfferings() {
             return allOfferings;
         }
@@ -28,7 +28,6 @@
  */
 package org.n52.sos.ds.hibernate;
 
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -93,9 +92,13 @@ import org.n52.sos.ds.hibernate.dao.DaoFactory;
 import org.n52.sos.ds.hibernate.dao.FormatDAO;
 import org.n52.sos.ds.hibernate.dao.observation.AbstractObservationDAO;
 import org.n52.sos.ds.hibernate.dao.observation.series.AbstractSeriesDAO;
+import org.n52.sos.ds.hibernate.dao.observation.series.DatasetFirstLatestValues;
+import org.n52.sos.ds.hibernate.util.DatasetLocks;
 import org.n52.sos.ds.hibernate.util.HibernateHelper;
 import org.n52.sos.ds.hibernate.util.ResultHandlingHelper;
+import org.n52.sos.ds.hibernate.util.ResultValuesTokenizer;
 import org.n52.sos.ds.hibernate.util.observation.ObservationUnfolder;
+import org.n52.sos.service.SosSettings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -115,9 +118,11 @@ public class InsertResultHandler extends AbstractInsertResultHandler implements
     public static final String ABORT_INSERT_RESULT_FOR_EXISTING_OBSERVATIONS =
             "service.abortInsertResultForExistingObservations";
 
+    public static final String INSERT_RESULT_BATCH_SIZE = "service.insertResult.batchSize";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(InsertResultHandler.class);
 
-    private static final int FLUSH_THRESHOLD = 50;
+    private static final int DEFAULT_BATCH_SIZE = 50;
 
     @Inject
     private ConnectionProvider connectionProvider;
@@ -131,12 +136,29 @@ public class InsertResultHandler extends AbstractInsertResultHandler implements
 
     private boolean abortInsertResultForExistingObservations;
 
+    private boolean concurrentInsertion;
+
+    private boolean coalesceDatasetValueUpdates;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private DatasetLocks datasetLocks;
+
     private ResultHandlingHelper helper;
 
     public InsertResultHandler() {
         super(SosConstants.SOS);
     }
 
+    /**
+     * @param datasetLocks
+     *            the locks shared by all transactional handlers
+     */
+    @Inject
+    public void setDatasetLocks(DatasetLocks datasetLocks) {
+        this.datasetLocks = datasetLocks;
+    }
+
     @Override
     public void init() {
         this.sessionHolder = new HibernateSessionHolder(connectionProvider);
@@ -145,23 +167,26 @@ public class InsertResultHandler extends AbstractInsertResultHandler implements
     }
 
     @Override
-    public synchronized InsertResultResponse insertResult(final InsertResultRequest request)
+    public InsertResultResponse insertResult(final InsertResultRequest request) throws OwsExceptionReport {
+        if (isConcurrentInsertion()) {
+            return doInsertResult(request, true);
+        }
+        synchronized (this) {
+            return doInsertResult(request, false);
+        }
+    }
+
+    private InsertResultResponse doInsertResult(final InsertResultRequest request, boolean concurrent)
             throws OwsExceptionReport {
         final InsertResultResponse response = new InsertResultResponse();
         response.setService(request.getService());
         response.setVersion(request.getVersion());
         Session session = null;
         Transaction transaction = null;
-
-        Map<String, CodespaceEntity> codespaceCache = Maps.newHashMap();
-        Map<UoM, UnitEntity> unitCache = Maps.newHashMap();
-        Map<String, FormatEntity> formatCache = Maps.newHashMap();
-
         try {
             session = getHibernateSessionHolder().getSession();
             final ResultTemplateEntity resultTemplate = getDaoFactory().getResultTemplateDAO()
                     .getResultTemplateObject(request.getTemplateIdentifier(), session);
-            transaction = session.beginTransaction();
             final OmObservation o = getSingleObservationFromResultValues(response.getVersion(), resultTemplate,
                     request.getResultValues(), session);
             final List<OmObservation> observations = getSingleObservationsFromObservation(o);
@@ -171,74 +196,16 @@ public class InsertResultHandler extends AbstractInsertResultHandler implements
             } else {
                 response.setObservations(observations);
             }
-
-            final AbstractSeriesDAO obsConstDao = getDaoFactory().getSeriesDAO();
-            final FormatDAO obsTypeDao = getDaoFactory().getObservationTypeDAO();
-            Map<OmObservationConstellation, DatasetEntity> obsConsts = new HashMap<>();
-
-            int insertion = 0;
-            final int size = observations.size();
-            final AbstractObservationDAO observationDAO = getDaoFactory().getObservationDAO();
-            LOGGER.debug("Start saving {} observations.", size);
-            Map<String, AbstractFeatureEntity> featureEntityMap = new HashMap<>();
-            for (final OmObservation observation : observations) {
-                OmObservationConstellation omObsConst = observation.getObservationConstellation();
-                if (!obsConsts.containsKey(omObsConst)) {
-                    DatasetEntity oc = obsConstDao.getSeries(omObsConst, session);
-                    if (oc != null) {
-                        obsConsts.put(omObsConst, oc);
-                    } else if (isConvertComplexProfileToSingleProfiles() && observation.isSetValue()
-                            && observation.getValue().isSetValue()
-                            && observation.getValue().getValue() instanceof ProfileValue) {
-                        obsConsts.put(omObsConst, insertObservationConstellationForProfiles(obsConstDao, obsTypeDao,
-                                observation, session));
-                    }
-                }
-                DatasetEntity obsConst = obsConsts.get(observation.getObservationConstellation());
-                AbstractFeatureEntity feature = null;
-                if (resultTemplate.isSetFeature()) {
-                    feature = resultTemplate.getFeature();
-                } else {
-                    feature = getFeature(omObsConst.getFeatureOfInterest(), featureEntityMap, session);
-                    // if
-                    // (featureEntityMap.containsKey(omObsConst.getFeatureOfInterestIdentifier()))
-                    // {
-                    // feature =
-                    // featureEntityMap.get(omObsConst.getFeatureOfInterestIdentifier());
-                    // } else {
-                    // FeatureOfInterestDAO featureOfInterestDAO =
-                    // getDaoFactory() .getFeatureOfInterestDAO();
-                    // feature =
-                    // featureOfInterestDAO.checkOrInsert(omObsConst.getFeatureOfInterest(),
-                    // session);
-                    // featureOfInterestDAO.checkOrInsertRelatedFeatureRelation(feature,
-                    // obsConst.getOffering(), session);
-                    // featureEntityMap.put(feature.getIdentifier(), feature);
-                    // }
-                }
-                try {
-                    if (observation.getValue() instanceof SingleObservationValue) {
-                        observationDAO.insertObservationSingleValue(obsConst, feature, observation, codespaceCache,
-                                unitCache, formatCache, session);
-                    } else if (observation.getValue() instanceof MultiObservationValues) {
-                        observationDAO.insertObservationMultiValue(obsConst, feature, observation, codespaceCache,
-                                unitCache, formatCache, session);
-                    }
-                } catch (NoApplicableCodeException nace) {
-                    if (abortInsertResultForExistingObservations()) {
-                        throw nace;
-                    } else {
-                        LOGGER.debug("Already existing observation would be ignored!", nace);
-                    }
-                }
-                if ((++insertion % FLUSH_THRESHOLD) == 0) {
-                    session.flush();
-                    session.clear();
-                    LOGGER.debug("Saved {}/{} observations.", insertion, size);
-                }
+            // the values are parsed without lock, only the persisting is
+            // serialized for the affected template and datasets. All
+            // observations are created up front, the response and the
+            // ResultInsertion event need them.
+            try (DatasetLocks.Lease lease =
+                    concurrent ? datasetLocks.lock(getLockKeys(request, observations)) : null) {
+                transaction = session.beginTransaction();
+                persist(resultTemplate, observations, session);
+                transaction.commit();
             }
-            LOGGER.debug("Saved {} observations.", size);
-            transaction.commit();
         } catch (final HibernateException he) {
             if (transaction != null) {
                 transaction.rollback();
@@ -251,6 +218,90 @@ public class InsertResultHandler extends AbstractInsertResultHandler implements
         return response;
     }
 
+    private Set<String> getLockKeys(InsertResultRequest request, List<OmObservation> observations) {
+        Set<String> keys = Sets.newHashSet(DatasetLocks.getTemplateKey(request.getTemplateIdentifier()));
+        for (OmObservation observation : observations) {
+            keys.addAll(DatasetLocks.getKeys(observation.getObservationConstellation()));
+        }
+        return keys;
+    }
+
+    private void persist(ResultTemplateEntity resultTemplate, List<OmObservation> observations, Session session)
+            throws OwsExceptionReport {
+        DatasetFirstLatestValues datasetValues =
+                isCoalesceDatasetValueUpdates() ? new DatasetFirstLatestValues() : null;
+        final int flushThreshold = getBatchSize();
+        Integer jdbcBatchSize = session.getJdbcBatchSize();
+        session.setJdbcBatchSize(flushThreshold);
+        try {
+            persistObservations(resultTemplate, observations, flushThreshold, datasetValues, session);
+        } finally {
+            session.setJdbcBatchSize(jdbcBatchSize);
+        }
+    }
+
+    private void persistObservations(ResultTemplateEntity resultTemplate, List<OmObservation> observations,
+            int flushThreshold, DatasetFirstLatestValues datasetValues, Session session) throws OwsExceptionReport {
+        Map<String, CodespaceEntity> codespaceCache = Maps.newHashMap();
+        Map<UoM, UnitEntity> unitCache = Maps.newHashMap();
+        Map<String, FormatEntity> formatCache = Maps.newHashMap();
+
+        final AbstractSeriesDAO obsConstDao = getDaoFactory().getSeriesDAO();
+        final FormatDAO obsTypeDao = getDaoFactory().getObservationTypeDAO();
+        Map<OmObservationConstellation, DatasetEntity> obsConsts = new HashMap<>();
+
+        int insertion = 0;
+        final int size = observations.size();
+        final AbstractObservationDAO observationDAO = getDaoFactory().getObservationDAO();
+        LOGGER.debug("Start saving {} observations.", size);
+        Map<String, AbstractFeatureEntity> featureEntityMap = new HashMap<>();
+        for (final OmObservation observation : observations) {
+            OmObservationConstellation omObsConst = observation.getObservationConstellation();
+            if (!obsConsts.containsKey(omObsConst)) {
+                DatasetEntity oc = obsConstDao.getSeries(omObsConst, session);
+                if (oc != null) {
+                    obsConsts.put(omObsConst, oc);
+                } else if (isConvertComplexProfileToSingleProfiles() && observation.isSetValue()
+                        && observation.getValue().isSetValue()
+                        && observation.getValue().getValue() instanceof ProfileValue) {
+                    obsConsts.put(omObsConst, insertObservationConstellationForProfiles(obsConstDao, obsTypeDao,
+                            observation, session));
+                }
+            }
+            DatasetEntity obsConst = obsConsts.get(observation.getObservationConstellation());
+            AbstractFeatureEntity feature = null;
+            if (resultTemplate.isSetFeature()) {
+                feature = resultTemplate.getFeature();
+            } else {
+                feature = getFeature(omObsConst.getFeatureOfInterest(), featureEntityMap, session);
+            }
+            try {
+                if (observation.getValue() instanceof SingleObservationValue) {
+                    observationDAO.insertObservationSingleValue(obsConst, feature, observation, codespaceCache,
+                            unitCache, formatCache, datasetValues, session);
+                } else if (observation.getValue() instanceof MultiObservationValues) {
+                    observationDAO.insertObservationMultiValue(obsConst, feature, observation, codespaceCache,
+                            unitCache, formatCache, datasetValues, session);
+                }
+            } catch (NoApplicableCodeException nace) {
+                if (abortInsertResultForExistingObservations()) {
+                    throw nace;
+                } else {
+                    LOGGER.debug("Already existing observation would be ignored!", nace);
+                }
+            }
+            if ((++insertion % flushThreshold) == 0) {
+                session.flush();
+                session.clear();
+                LOGGER.debug("Saved {}/{} observations.", insertion, size);
+            }
+        }
+        if (datasetValues != null) {
+            obsConstDao.updateSeriesWithFirstLatestValues(datasetValues, session);
+        }
+        LOGGER.debug("Saved {} observations.", size);
+    }
+
     @Override
     public boolean isSupported() {
         return HibernateHelper.isEntitySupported(ResultTemplateEntity.class);
@@ -300,14 +351,8 @@ public class InsertResultHandler extends AbstractInsertResultHandler implements
             throws OwsExceptionReport {
         final SosResultEncoding resultEncoding = createSosResultEncoding(resultTemplate.getEncoding());
         final SosResultStructure resultStructure = createSosResultStructure(resultTemplate.getStructure());
-        final String[] blockValues = getBlockValues(resultValues, resultEncoding.get().get());
-        final OmObservation singleObservation = getObservation(resultTemplate, blockValues,
-                resultStructure.get().get(), resultEncoding.get().get(), session);
-        // final AbstractFeature feature =
-        // getSosAbstractFeature(resultTemplate.getFeatureOfInterest(), version,
-        // session);
-        // singleObservation.getObservationConstellation().setFeatureOfInterest(feature);
-        return singleObservation;
+        return getObservation(resultTemplate, resultValues, resultStructure.get().get(), resultEncoding.get().get(),
+                session);
     }
 
     /**
@@ -387,8 +432,8 @@ public class InsertResultHandler extends AbstractInsertResultHandler implements
      *
      * @param resultTemplate
      *            Associated ResultTemplate
-     * @param blockValues
-     *            Block values from result values
+     * @param resultValues
+     *            Result values
      * @param resultStructure
      *            Associated ResultStructure
      * @param encoding
@@ -399,7 +444,7 @@ public class InsertResultHandler extends AbstractInsertResultHandler implements
      * @throws OwsExceptionReport
      *             If processing fails
      */
-    private OmObservation getObservation(final ResultTemplateEntity resultTemplate, final String[] blockValues,
+    private OmObservation getObservation(final ResultTemplateEntity resultTemplate, final String resultValues,
             final SweAbstractDataComponent resultStructure, final SweAbstractEncoding encoding, final Session session)
             throws OwsExceptionReport {
         final int resultTimeIndex = helper.hasResultTime(resultStructure);
@@ -417,7 +462,7 @@ public class InsertResultHandler extends AbstractInsertResultHandler implements
                 Sets.newHashSet(resultTimeIndex, phenomenonTimeIndex), encoding);
 
         final MultiObservationValues<SweDataArray> sosValues =
-                createObservationValueFrom(blockValues, record, encoding, resultTimeIndex, phenomenonTimeIndex);
+                createObservationValueFrom(resultValues, record, encoding, resultTimeIndex, phenomenonTimeIndex);
 
         final OmObservation observation = new OmObservation();
         observation.setObservationConstellation(getSosObservationConstellation(resultTemplate, session));
@@ -480,8 +525,8 @@ public class InsertResultHandler extends AbstractInsertResultHandler implements
     /**
      * Create internal observation value
      *
-     * @param blockValues
-     *            Block values from result values
+     * @param resultValues
+     *            Result values
      * @param recordFromResultStructure
      *            Associated ResultStructure
      * @param encoding
@@ -494,7 +539,7 @@ public class InsertResultHandler extends AbstractInsertResultHandler implements
      * @throws OwsExceptionReport
      *             If processing fails
      */
-    private MultiObservationValues<SweDataArray> createObservationValueFrom(final String[] blockValues,
+    private MultiObservationValues<SweDataArray> createObservationValueFrom(final String resultValues,
             final SweAbstractDataComponent recordFromResultStructure, final SweAbstractEncoding encoding,
             final int resultTimeIndex, final int phenomenonTimeIndex) throws OwsExceptionReport {
         final SweDataArray dataArray = new SweDataArray();
@@ -504,12 +549,12 @@ public class InsertResultHandler extends AbstractInsertResultHandler implements
         final SweDataArrayValue dataArrayValue = new SweDataArrayValue();
         dataArrayValue.setValue(dataArray);
 
-        for (final String block : blockValues) {
-            if (block != null && !block.isEmpty()) {
-                final String[] singleValues = getSingleValues(block, encoding);
-                if (singleValues != null && singleValues.length > 0) {
-                    dataArrayValue.addBlock(Arrays.asList(singleValues));
-                }
+        if (encoding instanceof SweTextEncoding) {
+            final SweTextEncoding textEncoding = (SweTextEncoding) encoding;
+            final ResultValuesTokenizer blocks = new ResultValuesTokenizer(resultValues,
+                    textEncoding.getTokenSeparator(), textEncoding.getBlockSeparator());
+            while (blocks.hasNext()) {
+                dataArrayValue.addBlock(blocks.next());
             }
         }
         final MultiObservationValues<SweDataArray> sosValues = new MultiObservationValues<SweDataArray>();
@@ -517,77 +562,6 @@ public class InsertResultHandler extends AbstractInsertResultHandler implements
         return sosValues;
     }
 
-    /**
-     * Get single values from a block value
-     *
-     * @param block
-     *            Block value
-     * @param encoding
-     *            ResultEncoding
-     * @return Single value array
-     */
-    private String[] getSingleValues(final String block, final SweAbstractEncoding encoding) {
-        if (encoding instanceof SweTextEncoding) {
-            final SweTextEncoding textEncoding = (SweTextEncoding) encoding;
-            return separateValues(block, textEncoding.getTokenSeparator());
-        }
-        return null;
-    }
-
-    /**
-     * Get block values from result values
-     *
-     * @param resultValues
-     *            Result values
-     * @param encoding
-     *            ResultEncoding
-     * @return Block value array
-     */
-    private String[] getBlockValues(final String resultValues, final SweAbstractEncoding encoding) {
-        if (encoding instanceof SweTextEncoding) {
-            final SweTextEncoding textEncoding = (SweTextEncoding) encoding;
-            final String[] blockValues = separateValues(resultValues, textEncoding.getBlockSeparator());
-            return checkForCountValue(blockValues, textEncoding.getTokenSeparator());
-        }
-        return null;
-    }
-
-    /**
-     * Check if the block values from result values contains a preceding count
-     * value
-     *
-     * @param blockValues
-     *            Block values from result values
-     * @param tokenSeparator
-     *            Token separator
-     * @return Block value array without preceding count value
-     */
-    private String[] checkForCountValue(final String[] blockValues, final String tokenSeparator) {
-        if (blockValues != null && blockValues.length > 0) {
-            if (blockValues[0].contains(tokenSeparator)) {
-                return blockValues;
-            } else {
-                final String[] blockValuesWithoutCount = new String[blockValues.length - 1];
-                System.arraycopy(blockValues, 1, blockValuesWithoutCount, 0, blockValuesWithoutCount.length);
-                return blockValuesWithoutCount;
-            }
-        }
-        return null;
-    }
-
-    /**
-     * Separate values from String with separator
-     *
-     * @param values
-     *            Value String
-     * @param separator
-     *            Separator
-     * @return Separated values as array
-     */
-    private String[] separateValues(final String values, final String separator) {
-        return values.split(separator, Integer.MAX_VALUE);
-    }
-
     private DatasetEntity insertObservationConstellationForProfiles(AbstractSeriesDAO obsConstDao,
             FormatDAO obsTypeDao, OmObservation o, Session session) throws OwsExceptionReport {
         ProcedureEntity procedure = getDaoFactory().getProcedureDAO()
@@ -624,6 +598,33 @@ public class InsertResultHandler extends AbstractInsertResultHandler implements
         return sessionHolder;
     }
 
+    @Setting(SosSettings.CONCURRENT_INSERTION)
+    public synchronized void setConcurrentInsertion(boolean concurrentInsertion) {
+        this.concurrentInsertion = concurrentInsertion;
+    }
+
+    private synchronized boolean isConcurrentInsertion() {
+        return concurrentInsertion;
+    }
+
+    @Setting(SosSettings.COALESCE_DATASET_VALUE_UPDATES)
+    public synchronized void setCoalesceDatasetValueUpdates(boolean coalesceDatasetValueUpdates) {
+        this.coalesceDatasetValueUpdates = coalesceDatasetValueUpdates;
+    }
+
+    private synchronized boolean isCoalesceDatasetValueUpdates() {
+        return coalesceDatasetValueUpdates;
+    }
+
+    @Setting(INSERT_RESULT_BATCH_SIZE)
+    public synchronized void setBatchSize(int batchSize) {
+        this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+    }
+
+    private synchronized int getBatchSize() {
+        return batchSize;
+    }
+
     @Setting(ABORT_INSERT_RESULT_FOR_EXISTING_OBSERVATIONS)
     public void setAbortInsertResultForExistingObservations(boolean abortInsertResultForExistingObservations) {
         this.abortInsertResultForExistingObservations = abortInsertResultForExistingObservations;
@@ -159,7 +159,7 @@ public class InsertSensorHandler extends AbstractInsertSensorHandler implements
         try {
             session = getHibernateSessionHolder().getSession();
             transaction = session.beginTransaction();
-            FormatDAO formatDAO = new FormatDAO();
+            FormatDAO formatDAO = getDaoFactory().getProcedureDescriptionFormatDAO();
             final FormatEntity procedureDescriptionFormat =
                     formatDAO.getOrInsertFormatEntity(request.getProcedureDescriptionFormat(), session);
             if (procedureDescriptionFormat != null) {
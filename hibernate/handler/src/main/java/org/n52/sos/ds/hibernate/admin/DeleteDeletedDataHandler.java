@@ -28,31 +28,64 @@
  */
 package org.n52.sos.ds.hibernate.admin;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.inject.Inject;
 
-import org.hibernate.Criteria;
-import org.hibernate.HibernateException;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.query.Query;
+import org.joda.time.DateTime;
 import org.n52.faroe.annotation.Configurable;
+import org.n52.faroe.annotation.Setting;
 import org.n52.iceland.ds.ConnectionProvider;
+import org.n52.janmayen.GroupedAndNamedThreadFactory;
 import org.n52.janmayen.lifecycle.Constructable;
+import org.n52.janmayen.lifecycle.Destroyable;
+import org.n52.series.db.beans.DataEntity;
 import org.n52.series.db.beans.DatasetEntity;
 import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
 import org.n52.sos.ds.AbstractDeleteDeletedDataHandler;
 import org.n52.sos.ds.hibernate.DeleteDataHelper;
 import org.n52.sos.ds.hibernate.HibernateSessionHolder;
 import org.n52.sos.ds.hibernate.dao.DaoFactory;
+import org.n52.sos.service.SosSettings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
+
+/**
+ * Physically deletes the deleted datasets and observations in a background
+ * job. The observations of each deleted dataset are deleted in batches, each
+ * batch in its own transaction, before the dataset itself is deleted. The
+ * batches are throttled to the configured rows per second. As every batch is
+ * committed and the remaining work is selected from the deleted flags, an
+ * interrupted job continues where it stopped. If a cache file folder is
+ * configured, a requested job is recorded there and resumed after a restart.
+ */
 @Configurable
-public class DeleteDeletedDataHandler implements AbstractDeleteDeletedDataHandler, DeleteDataHelper, Constructable {
+public class DeleteDeletedDataHandler
+        implements AbstractDeleteDeletedDataHandler, DeleteDataHelper, Constructable, Destroyable {
 
     private static final Logger LOG = LoggerFactory.getLogger(DeleteDeletedDataHandler.class);
+
+    private static final String PENDING_FILE_NAME = "delete-deleted-data.pending";
+
+    private static final int MAX_IN_PARAMETERS = 500;
+
     private HibernateSessionHolder sessionHolder;
 
     @Inject
@@ -61,41 +94,254 @@ public class DeleteDeletedDataHandler implements AbstractDeleteDeletedDataHandle
     @Inject
     private ConnectionProvider connectionProvider;
 
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final Progress progress = new Progress();
+
+    private ExecutorService executor;
+
+    private volatile boolean stopped;
+
+    private int batchSize = 10000;
+
+    private int rowsPerSecond;
+
+    private Path pendingFile;
+
+    @Setting(SosSettings.DELETE_DELETED_DATA_BATCH_SIZE)
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    @Setting(SosSettings.DELETE_DELETED_DATA_ROWS_PER_SECOND)
+    public void setRowsPerSecond(int rowsPerSecond) {
+        this.rowsPerSecond = rowsPerSecond;
+    }
+
+    @Setting(value = SosSettings.CACHE_FILE_FOLDER, required = false)
+    public void setCacheFileFolder(File folder) {
+        this.pendingFile = folder == null ? null : folder.toPath().resolve(PENDING_FILE_NAME);
+    }
+
     @Override
     public void init() {
         sessionHolder = new HibernateSessionHolder(connectionProvider);
+        executor = Executors.newSingleThreadExecutor(new GroupedAndNamedThreadFactory("delete-deleted-data"));
+        if (pendingFile != null && Files.isRegularFile(pendingFile)) {
+            LOG.info("Resuming the interrupted deletion of deleted data");
+            start();
+        }
     }
 
     @Override
-    public synchronized void deleteDeletedData() throws OwsExceptionReport {
-        Session session = null;
-        Transaction transaction = null;
+    public void destroy() {
+        stopped = true;
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Starts the deletion of the deleted data in the background, if it is not
+     * already running.
+     */
+    @Override
+    public void deleteDeletedData() throws OwsExceptionReport {
+        if (pendingFile != null) {
+            try {
+                Files.createDirectories(pendingFile.getParent());
+                if (!Files.exists(pendingFile)) {
+                    Files.createFile(pendingFile);
+                }
+            } catch (IOException e) {
+                LOG.warn("Could not record the deletion of deleted data in " + pendingFile, e);
+            }
+        }
+        start();
+    }
+
+    @Override
+    public Map<String, String> getProgress() {
+        return progress.toMap();
+    }
+
+    private void start() {
+        if (running.compareAndSet(false, true)) {
+            progress.start();
+            executor.execute(this::purge);
+        }
+    }
+
+    private void purge() {
         try {
-            session = getHibernateSessionHolder().getSession();
-            transaction = session.beginTransaction();
-            Criteria c = daoFactory.getSeriesDAO()
+            List<Long> datasets = inSession(session -> daoFactory.getSeriesDAO()
                     .getDefaultAllSeriesCriteria(session)
                     .add(Restrictions.eq(DatasetEntity.PROPERTY_DELETED, true))
-                    .add(Restrictions.eq(DatasetEntity.PROPERTY_PUBLISHED, false));
-            List<DatasetEntity> list = c.list();
-            if (list != null && !list.isEmpty()) {
-                for (DatasetEntity dataset : list) {
-                    deleteDataset(dataset, session);
+                    .add(Restrictions.eq(DatasetEntity.PROPERTY_PUBLISHED, false))
+                    .setProjection(Projections.id())
+                    .list());
+            progress.setDatasets(datasets.size());
+            for (Long dataset : datasets) {
+                if (stopped) {
+                    break;
                 }
+                purgeDataset(dataset);
+                progress.datasetDeleted();
+            }
+            if (!stopped) {
+                progress.setCurrentDataset(null);
+                deleteObservationBatches(null);
             }
-            deleteDeletedObservations(session);
-            session.flush();
-            transaction.commit();
-        } catch (HibernateException he) {
-            if (transaction != null) {
-                transaction.rollback();
+            if (stopped) {
+                progress.stop();
+            } else {
+                if (pendingFile != null) {
+                    Files.deleteIfExists(pendingFile);
+                }
+                progress.finish();
+                LOG.info("Deleted {} deleted datasets and {} observations", datasets.size(), progress.getRows());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            progress.stop();
+        } catch (OwsExceptionReport | IOException | RuntimeException e) {
+            LOG.error("Error while deleting deleted data", e);
+            progress.fail(e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void purgeDataset(Long id) throws OwsExceptionReport, InterruptedException {
+        progress.setCurrentDataset(id);
+        // release the references to the first and last observation before deleting them
+        boolean exists = inTransaction(session -> {
+            DatasetEntity dataset = session.get(DatasetEntity.class, id);
+            if (dataset == null) {
+                return false;
+            }
+            dataset.setFirstObservation(null);
+            dataset.setLastObservation(null);
+            session.update(dataset);
+            return true;
+        });
+        if (exists) {
+            deleteObservationBatches(id);
+            if (!stopped) {
+                inTransaction(session -> {
+                    DatasetEntity dataset = session.get(DatasetEntity.class, id);
+                    if (dataset != null) {
+                        deleteDataset(dataset, session);
+                    }
+                    return null;
+                });
+            }
+        }
+    }
+
+    /**
+     * Deletes the observations of the dataset or, without dataset, the
+     * observations flagged as deleted in batches until none is left.
+     */
+    private void deleteObservationBatches(Long dataset) throws OwsExceptionReport, InterruptedException {
+        int deleted;
+        do {
+            long start = System.currentTimeMillis();
+            deleted = inTransaction(session -> deleteObservationBatch(dataset, session));
+            progress.rowsDeleted(deleted);
+            throttle(deleted, start);
+        } while (deleted > 0 && !stopped);
+    }
+
+    private int deleteObservationBatch(Long dataset, Session session) throws OwsExceptionReport {
+        String observationClass = getDaoFactory().getObservationDAO()
+                .getObservationFactory()
+                .observationClass()
+                .getSimpleName();
+        StringBuilder builder = new StringBuilder();
+        builder.append("select ")
+                .append(DataEntity.PROPERTY_ID)
+                .append(FROM_PARAMETER)
+                .append(observationClass)
+                .append(WHERE_PARAMETER);
+        if (dataset != null) {
+            builder.append(DataEntity.PROPERTY_DATASET_ID)
+                    .append(EQUAL_PARAMETER)
+                    .append(DataEntity.PROPERTY_DATASET);
+        } else {
+            builder.append(DataEntity.PROPERTY_DELETED)
+                    .append(EQUAL_PARAMETER)
+                    .append(DataEntity.PROPERTY_DELETED);
+        }
+        Query<Long> select = session.createQuery(builder.toString(), Long.class);
+        if (dataset != null) {
+            select.setParameter(DataEntity.PROPERTY_DATASET, dataset);
+        } else {
+            select.setParameter(DataEntity.PROPERTY_DELETED, true);
+        }
+        List<Long> ids = select.setMaxResults(batchSize).list();
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        int deleted = 0;
+        // bind at most MAX_IN_PARAMETERS ids per statement, e.g. Oracle allows 1000 elements per in list
+        for (List<Long> chunk : Lists.partition(ids, MAX_IN_PARAMETERS)) {
+            Query<?> children = session.createQuery(getDeletChildQueryString(chunk));
+            children.setParameter(DataEntity.PROPERTY_PARENT, chunk);
+            deleted += children.executeUpdate();
+            Query<?> observations = session.createQuery(DELETE_PARAMETER + observationClass + WHERE_PARAMETER
+                    + DataEntity.PROPERTY_ID + IN_PARAMETER + DataEntity.PROPERTY_ID);
+            observations.setParameter(DataEntity.PROPERTY_ID, chunk);
+            deleted += observations.executeUpdate();
+        }
+        LOG.debug("{} observations were physically deleted!", deleted);
+        return deleted;
+    }
+
+    private void throttle(int rows, long start) throws InterruptedException {
+        if (rowsPerSecond > 0 && rows > 0) {
+            long wait = rows * 1000L / rowsPerSecond - (System.currentTimeMillis() - start);
+            if (wait > 0) {
+                Thread.sleep(wait);
             }
-            throw he;
+        }
+    }
+
+    private <T> T inSession(Work<T> work) throws OwsExceptionReport {
+        Session session = null;
+        try {
+            session = getHibernateSessionHolder().getSession();
+            return work.execute(session);
         } finally {
             getHibernateSessionHolder().returnSession(session);
         }
     }
 
+    private <T> T inTransaction(Work<T> work) throws OwsExceptionReport {
+        return inSession(session -> {
+            Transaction transaction = null;
+            try {
+                transaction = session.beginTransaction();
+                T result = work.execute(session);
+                session.flush();
+                transaction.commit();
+                return result;
+            } catch (OwsExceptionReport | RuntimeException e) {
+                if (transaction != null && transaction.isActive()) {
+                    transaction.rollback();
+                }
+                throw e;
+            } finally {
+                session.clear();
+            }
+        });
+    }
+
     @Override
     public DaoFactory getDaoFactory() {
         return daoFactory;
@@ -115,4 +361,104 @@ public class DeleteDeletedDataHandler implements AbstractDeleteDeletedDataHandle
         return sessionHolder;
     }
 
+    protected synchronized void initForTesting(DaoFactory daoFactory, ConnectionProvider connectionProvider) {
+        this.daoFactory = daoFactory;
+        this.connectionProvider = connectionProvider;
+    }
+
+    @FunctionalInterface
+    private interface Work<T> {
+        T execute(Session session) throws OwsExceptionReport;
+    }
+
+    /**
+     * Progress of the running or last deletion, as shown on the admin page.
+     */
+    private static class Progress {
+        private String state = "idle";
+        private DateTime started;
+        private DateTime finished;
+        private int datasets;
+        private int deletedDatasets;
+        private long rows;
+        private Long currentDataset;
+        private String error;
+
+        synchronized void start() {
+            state = "running";
+            started = DateTime.now();
+            finished = null;
+            datasets = 0;
+            deletedDatasets = 0;
+            rows = 0;
+            currentDataset = null;
+            error = null;
+        }
+
+        synchronized void setDatasets(int datasets) {
+            this.datasets = datasets;
+        }
+
+        synchronized void setCurrentDataset(Long currentDataset) {
+            this.currentDataset = currentDataset;
+        }
+
+        synchronized void datasetDeleted() {
+            deletedDatasets++;
+        }
+
+        synchronized void rowsDeleted(int deleted) {
+            rows += deleted;
+        }
+
+        synchronized long getRows() {
+            return rows;
+        }
+
+        synchronized void finish() {
+            end("finished");
+        }
+
+        synchronized void stop() {
+            end("stopped");
+        }
+
+        synchronized void fail(Exception e) {
+            error = e.getMessage();
+            end("failed");
+        }
+
+        private void end(String endState) {
+            state = endState;
+            finished = DateTime.now();
+            currentDataset = null;
+        }
+
+        synchronized Map<String, String> toMap() {
+            Map<String, String> values = new LinkedHashMap<>();
+            values.put("state", state);
+            if (started != null) {
+                values.put("started", started.toString());
+                values.put("datasets", Integer.toString(datasets));
+                values.put("deletedDatasets", Integer.toString(deletedDatasets));
+                values.put("deletedObservations", Long.toString(rows));
+                double seconds = ((finished != null ? finished : DateTime.now()).getMillis() - started.getMillis())
+                        / 1000.0;
+                if (seconds > 0) {
+                    values.put("observationsPerSecond", Long.toString(Math.round(rows / seconds)));
+                }
+            }
+            if (currentDataset != null) {
+                values.put("currentDataset", currentDataset.toString());
+            }
+            if (finished != null) {
+                values.put("finished", finished.toString());
+            }
+            if (error != null) {
+                values.put("error", error);
+            }
+            return values;
+        }
+    }
+
 }
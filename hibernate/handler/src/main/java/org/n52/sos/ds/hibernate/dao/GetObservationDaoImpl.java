@@ -30,11 +30,13 @@ package org.n52.sos.ds.hibernate.dao;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 
@@ -66,8 +68,11 @@ import org.n52.sos.ds.hibernate.dao.observation.series.AbstractSeriesDAO;
 import org.n52.sos.ds.hibernate.util.ObservationTimeExtrema;
 import org.n52.sos.ds.hibernate.util.observation.HibernateObservationUtilities;
 import org.n52.sos.ds.hibernate.util.observation.OmObservationCreatorContext;
+import org.n52.sos.ds.hibernate.values.HibernateStreamingSettings;
 import org.n52.sos.ds.hibernate.values.series.HibernateChunkSeriesStreamingValue;
+import org.n52.sos.ds.hibernate.values.series.HibernateMultiSeriesStreamingValue;
 import org.n52.sos.ds.hibernate.values.series.HibernateSeriesStreamingValue;
+import org.n52.sos.ds.hibernate.values.series.HibernateSeriesValueCursor;
 import org.n52.sos.service.profile.ProfileHandler;
 import org.n52.svalbard.encode.Encoder;
 import org.n52.svalbard.encode.ObservationEncoder;
@@ -94,6 +99,8 @@ public class GetObservationDaoImpl extends AbstractObservationDao implements org
 
     private boolean overallExtrema;
 
+    private boolean multiSeriesStreaming;
+
     private Locale defaultLanguage;
 
     @Inject
@@ -121,6 +128,11 @@ public class GetObservationDaoImpl extends AbstractObservationDao implements org
         this.overallExtrema = overallExtrema;
     }
 
+    @Setting(HibernateStreamingSettings.MULTI_SERIES)
+    public void setMultiSeriesStreaming(boolean multiSeriesStreaming) {
+        this.multiSeriesStreaming = multiSeriesStreaming;
+    }
+
     @Setting(I18NSettings.I18N_DEFAULT_LANGUAGE)
     public void setDefaultLanguage(String defaultLanguage) {
         this.defaultLanguage = LocaleHelper.decode(defaultLanguage);
@@ -292,15 +304,33 @@ public class GetObservationDaoImpl extends AbstractObservationDao implements org
         List<DatasetEntity> serieses = daoFactory.getSeriesDAO().getSeries(request, features, session);
         checkMaxNumberOfReturnedSeriesSize(serieses.size());
         int maxNumberOfValuesPerSeries = getMaxNumberOfValuesPerSeries(serieses.size());
+        HibernateSeriesValueCursor cursor = null;
+        if (multiSeriesStreaming && serieses.size() > 1) {
+            // the cursor reads the values ordered by series, so the
+            // observations should be encoded in the same order
+            serieses = serieses.stream().sorted(Comparator.comparing(DatasetEntity::getId))
+                    .collect(Collectors.toList());
+            cursor = new HibernateSeriesValueCursor(sessionHolder.getConnectionProvider(),
+                    daoFactory.getValueDAO(), request,
+                    serieses.stream().map(DatasetEntity::getId).collect(Collectors.toSet()), getChunkSize());
+            cursor.setTemporalFilterCriterion(temporalFilterCriterion);
+        }
         for (DatasetEntity series : serieses) {
             ObservationStream createSosObservationFromSeries =
                     HibernateObservationUtilities.createSosObservationFromSeries(series, request,
                             getRequestedLocale(request), getProcedureDescriptionFormat(request.getResponseFormat()),
                             observationCreatorContext, session);
             OmObservation observationTemplate = createSosObservationFromSeries.next();
-            HibernateSeriesStreamingValue streamingValue =
-                    new HibernateChunkSeriesStreamingValue(sessionHolder.getConnectionProvider(), daoFactory, request,
-                            series.getId(), observationCreatorContext.getBindingRepository(), getChunkSize());
+            HibernateSeriesStreamingValue streamingValue;
+            if (cursor != null) {
+                streamingValue = new HibernateMultiSeriesStreamingValue(sessionHolder.getConnectionProvider(),
+                        daoFactory, request, series.getId(), observationCreatorContext.getBindingRepository(), cursor,
+                        getChunkSize());
+            } else {
+                streamingValue = new HibernateChunkSeriesStreamingValue(sessionHolder.getConnectionProvider(),
+                        daoFactory, request, series.getId(), observationCreatorContext.getBindingRepository(),
+                        getChunkSize());
+            }
             streamingValue.setResponseFormat(request.getResponseFormat());
             streamingValue.setTemporalFilterCriterion(temporalFilterCriterion);
             streamingValue.setObservationTemplate(observationTemplate);
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.hibernate.util;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+import org.n52.shetland.ogc.om.OmObservationConstellation;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Striped;
+
+/**
+ * Striped locks for transactional operations. Instead of serializing all
+ * insertions of a service instance, only insertions which touch the same
+ * dataset (procedure, observableProperty, offering) or the same
+ * featureOfInterest are serialized. Independent insertions run in parallel.
+ *
+ * The locks of a {@link Lease} are always acquired in stripe order, so two
+ * leases with overlapping keys can not deadlock. A single instance is shared
+ * by all transactional handlers, so e.g. InsertObservation and InsertResult
+ * requests for the same dataset exclude each other.
+ *
+ * @since 5.3.2
+ *
+ */
+public class DatasetLocks {
+
+    public static final int DEFAULT_STRIPES = 256;
+
+    private static final String DATASET_PREFIX = "dataset:";
+
+    private static final String FEATURE_PREFIX = "feature:";
+
+    private static final String TEMPLATE_PREFIX = "template:";
+
+    private static final Joiner KEY_JOINER = Joiner.on('|').useForNull("");
+
+    private final Striped<Lock> locks;
+
+    public DatasetLocks() {
+        this(DEFAULT_STRIPES);
+    }
+
+    public DatasetLocks(int stripes) {
+        this.locks = Striped.lock(stripes);
+    }
+
+    /**
+     * Acquire the locks for all keys. Blocks until all locks are held.
+     *
+     * @param keys
+     *            the lock keys
+     * @return the lease which releases the locks when closed
+     */
+    public Lease lock(Collection<String> keys) {
+        List<Lock> acquired = new LinkedList<>();
+        try {
+            for (Lock lock : locks.bulkGet(Sets.newHashSet(keys))) {
+                lock.lock();
+                acquired.add(0, lock);
+            }
+        } catch (RuntimeException e) {
+            unlock(acquired);
+            throw e;
+        }
+        return new Lease(acquired);
+    }
+
+    /**
+     * Create the keys for the dataset and the featureOfInterest of the
+     * observation constellation.
+     *
+     * @param constellation
+     *            the observation constellation
+     * @return the lock keys
+     */
+    public static Collection<String> getKeys(OmObservationConstellation constellation) {
+        List<String> keys = new LinkedList<>();
+        String procedure = constellation.isSetProcedure() ? constellation.getProcedureIdentifier() : null;
+        String observableProperty = constellation.getObservableProperty() != null
+                ? constellation.getObservablePropertyIdentifier()
+                : null;
+        if (constellation.isSetOfferings()) {
+            for (String offering : constellation.getOfferings()) {
+                keys.add(getDatasetKey(procedure, observableProperty, offering));
+            }
+        } else {
+            keys.add(getDatasetKey(procedure, observableProperty, null));
+        }
+        if (constellation.isSetFeatureOfInterest()) {
+            keys.add(getFeatureKey(constellation.getFeatureOfInterestIdentifier()));
+        }
+        return keys;
+    }
+
+    public static String getDatasetKey(String procedure, String observableProperty, String offering) {
+        return DATASET_PREFIX + KEY_JOINER.join(procedure, observableProperty, offering);
+    }
+
+    public static String getFeatureKey(String feature) {
+        return FEATURE_PREFIX + Strings.nullToEmpty(feature);
+    }
+
+    public static String getTemplateKey(String template) {
+        return TEMPLATE_PREFIX + Strings.nullToEmpty(template);
+    }
+
+    private static void unlock(List<Lock> acquired) {
+        Iterator<Lock> iterator = acquired.iterator();
+        while (iterator.hasNext()) {
+            iterator.next().unlock();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * The locks held for a set of keys, released in reverse acquisition order
+     * on {@link #close()}.
+     */
+    public static final class Lease implements AutoCloseable {
+
+        private final List<Lock> acquired;
+
+        private Lease(List<Lock> acquired) {
+            this.acquired = acquired;
+        }
+
+        @Override
+        public void close() {
+            unlock(acquired);
+        }
+    }
+}
@@ -39,6 +39,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
 
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
@@ -111,6 +112,8 @@ public class ResultHandlingHelper implements HibernateUnproxy {
 
     public static final String PHENOMENON_TIME = "phenomenonTime";
 
+    private static final int COUNT_PLACEHOLDER_LENGTH = Integer.toString(Integer.MAX_VALUE).length();
+
     private final SweHelper helper;
 
     private GeometryHandler geometryHandler;
@@ -164,69 +167,8 @@ public class ResultHandlingHelper implements HibernateUnproxy {
                 addElementCount(builder, observations.size(), blockSeparator);
             }
             for (final DataEntity<?> obs : observations) {
-                DataEntity<?> observation = unproxy(obs, session);
-                if (observation instanceof ProfileDataEntity) {
-                    builder.append(createResultValuesFromObservations(((ProfileDataEntity) observation).getValue(),
-                            sosResultEncoding, sosResultStructure, noDataPlaceholder, valueOrder, false,
-                            ((ProfileDataEntity) observation).getDataset()
-                                    .getVerticalMetadata(),
-                            session));
-                    builder.append(blockSeparator);
-                } else {
-                    for (final Entry<Integer, String> entry : valueOrder.entrySet()) {
-                        final String definition = entry.getValue();
-                        switch (definition) {
-                            case OmConstants.PHENOMENON_TIME:
-                                builder.append(getTimeStringForPhenomenonTime(observation.getSamplingTimeStart(),
-                                        observation.getSamplingTimeEnd(), noDataPlaceholder));
-                                break;
-                            case OmConstants.RESULT_TIME:
-                                builder.append(
-                                        getTimeStringForResultTime(observation.getResultTime(), noDataPlaceholder));
-                                break;
-                            case OmConstants.PARAM_NAME_SAMPLING_GEOMETRY:
-                                builder.append(
-                                        getSamplingGeometry(observation, tokenSeparator, sosResultStructure.get()
-                                                .get(), noDataPlaceholder));
-                                break;
-                            case OmConstants.OM_PARAMETER:
-                            case OmConstants.PARAMETER:
-                                builder.append(getParameters(observation, tokenSeparator, sosResultStructure.get()
-                                        .get(), vertical));
-                                break;
-                            case OM_PROCEDURE:
-                                if (observation.getDataset()
-                                        .getProcedure() != null && observation.getDataset()
-                                                .getProcedure()
-                                                .isSetIdentifier()) {
-                                    builder.append(observation.getDataset()
-                                            .getProcedure()
-                                            .getIdentifier());
-                                } else {
-                                    builder.append("");
-                                }
-                                break;
-                            case OM_FEATURE_OF_INTEREST:
-                                if (observation.getDataset()
-                                        .getFeature() != null && observation.getDataset()
-                                                .getFeature()
-                                                .isSetIdentifier()) {
-                                    builder.append(observation.getDataset()
-                                            .getFeature()
-                                            .getIdentifier());
-                                } else {
-                                    builder.append("");
-                                }
-                                break;
-                            default:
-                                builder.append(getValueAsStringForObservedProperty(observation, definition));
-                                break;
-                        }
-                        builder.append(tokenSeparator);
-                    }
-                    builder.delete(builder.lastIndexOf(tokenSeparator), builder.length());
-                    builder.append(blockSeparator);
-                }
+                appendResultValues(builder, unproxy(obs, session), sosResultEncoding, sosResultStructure,
+                        noDataPlaceholder, valueOrder, vertical, session);
             }
             if (builder.length() > 0) {
                 builder.delete(builder.lastIndexOf(blockSeparator), builder.length());
@@ -235,6 +177,141 @@ public class ResultHandlingHelper implements HibernateUnproxy {
         return builder.toString();
     }
 
+    /**
+     * Create the result values from scrollable observation results. The
+     * observations are processed one by one and the session is cleared every
+     * <code>chunkSize</code> observations, so only the observations of the
+     * current chunk are kept in the persistence context. Repeated rows of the
+     * same observation are skipped, they have to be consecutive.
+     *
+     * @param observations
+     *            Forward only scrollable observation results, ordered by id
+     *            within equal times
+     * @param chunkSize
+     *            Number of observations after which the session is cleared
+     * @param sosResultEncoding
+     *            The result encoding
+     * @param sosResultStructure
+     *            The result structure
+     * @param noDataPlaceholder
+     *            The no data placeholder
+     * @param session
+     *            Hibernate session
+     * @return the result values
+     * @throws OwsExceptionReport
+     *             If an error occurs
+     */
+    public String createResultValuesFromObservations(final ScrollableResults observations, int chunkSize,
+            final SosResultEncoding sosResultEncoding, final SosResultStructure sosResultStructure,
+            String noDataPlaceholder, Session session) throws OwsExceptionReport {
+        final Map<Integer, String> valueOrder = getValueOrderMap(sosResultStructure.get()
+                .get());
+        final String blockSeparator = getBlockSeparator(sosResultEncoding.get()
+                .get());
+        // the count is only known after the last observation, so space is
+        // reserved for it instead of shifting all values afterwards
+        final int countSlot = COUNT_PLACEHOLDER_LENGTH + blockSeparator.length();
+        final StringBuilder builder = new StringBuilder(countSlot);
+        builder.setLength(countSlot);
+        int count = 0;
+        Object previousId = null;
+        while (observations.next()) {
+            DataEntity<?> observation = (DataEntity<?>) observations.get(0);
+            // skip the repeated rows of joined collections
+            Object id = observation.getId();
+            if (id != null && id.equals(previousId)) {
+                continue;
+            }
+            previousId = id;
+            appendResultValues(builder, unproxy(observation, session), sosResultEncoding, sosResultStructure,
+                    noDataPlaceholder, valueOrder, null, session);
+            if (++count % chunkSize == 0) {
+                session.clear();
+            }
+        }
+        if (count == 0) {
+            return "";
+        }
+        builder.delete(builder.lastIndexOf(blockSeparator), builder.length());
+        String prefix = count + blockSeparator;
+        int start = countSlot - prefix.length();
+        // same length, so nothing is shifted
+        builder.replace(start, countSlot, prefix);
+        return builder.substring(start);
+    }
+
+    private void appendResultValues(final StringBuilder builder, final DataEntity<?> observation,
+            final SosResultEncoding sosResultEncoding, final SosResultStructure sosResultStructure,
+            String noDataPlaceholder, Map<Integer, String> valueOrder, VerticalMetadataEntity vertical,
+            Session session) throws OwsExceptionReport {
+        final String tokenSeparator = getTokenSeparator(sosResultEncoding.get()
+                .get());
+        final String blockSeparator = getBlockSeparator(sosResultEncoding.get()
+                .get());
+        if (observation instanceof ProfileDataEntity) {
+            builder.append(createResultValuesFromObservations(((ProfileDataEntity) observation).getValue(),
+                    sosResultEncoding, sosResultStructure, noDataPlaceholder, valueOrder, false,
+                    ((ProfileDataEntity) observation).getDataset()
+                            .getVerticalMetadata(),
+                    session));
+            builder.append(blockSeparator);
+        } else {
+            for (final Entry<Integer, String> entry : valueOrder.entrySet()) {
+                final String definition = entry.getValue();
+                switch (definition) {
+                    case OmConstants.PHENOMENON_TIME:
+                        builder.append(getTimeStringForPhenomenonTime(observation.getSamplingTimeStart(),
+                                observation.getSamplingTimeEnd(), noDataPlaceholder));
+                        break;
+                    case OmConstants.RESULT_TIME:
+                        builder.append(
+                                getTimeStringForResultTime(observation.getResultTime(), noDataPlaceholder));
+                        break;
+                    case OmConstants.PARAM_NAME_SAMPLING_GEOMETRY:
+                        builder.append(
+                                getSamplingGeometry(observation, tokenSeparator, sosResultStructure.get()
+                                        .get(), noDataPlaceholder));
+                        break;
+                    case OmConstants.OM_PARAMETER:
+                    case OmConstants.PARAMETER:
+                        builder.append(getParameters(observation, tokenSeparator, sosResultStructure.get()
+                                .get(), vertical));
+                        break;
+                    case OM_PROCEDURE:
+                        if (observation.getDataset()
+                                .getProcedure() != null && observation.getDataset()
+                                        .getProcedure()
+                                        .isSetIdentifier()) {
+                            builder.append(observation.getDataset()
+                                    .getProcedure()
+                                    .getIdentifier());
+                        } else {
+                            builder.append("");
+                        }
+                        break;
+                    case OM_FEATURE_OF_INTEREST:
+                        if (observation.getDataset()
+                                .getFeature() != null && observation.getDataset()
+                                        .getFeature()
+                                        .isSetIdentifier()) {
+                            builder.append(observation.getDataset()
+                                    .getFeature()
+                                    .getIdentifier());
+                        } else {
+                            builder.append("");
+                        }
+                        break;
+                    default:
+                        builder.append(getValueAsStringForObservedProperty(observation, definition));
+                        break;
+                }
+                builder.append(tokenSeparator);
+            }
+            builder.delete(builder.lastIndexOf(tokenSeparator), builder.length());
+            builder.append(blockSeparator);
+        }
+    }
+
     /**
      * Get token separator from encoding
      *
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.hibernate.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.google.common.base.Strings;
+
+/**
+ * Cursor over the text encoded result values of an InsertResult request. The
+ * blocks are tokenized on demand in a single pass over the original character
+ * sequence instead of splitting it into an intermediate block array and
+ * splitting each block again with regular expressions. Each token is still
+ * copied into its own string, because the blocks of a
+ * {@link org.n52.shetland.ogc.swe.SweDataArray} are string lists. A preceding
+ * count value (a first block without token separator) is skipped and empty
+ * blocks are ignored.
+ *
+ * The separators are matched literally.
+ *
+ * @since 5.3.2
+ *
+ */
+public class ResultValuesTokenizer implements Iterator<List<String>> {
+
+    private final CharSequence values;
+
+    private final String tokenSeparator;
+
+    private final String blockSeparator;
+
+    private final int length;
+
+    private int position;
+
+    private List<String> next;
+
+    private int tokenCount = -1;
+
+    public ResultValuesTokenizer(CharSequence values, String tokenSeparator, String blockSeparator) {
+        if (Strings.isNullOrEmpty(tokenSeparator) || Strings.isNullOrEmpty(blockSeparator)) {
+            throw new IllegalArgumentException("The token and block separator must not be empty!");
+        }
+        this.values = values == null ? "" : values;
+        this.tokenSeparator = tokenSeparator;
+        this.blockSeparator = blockSeparator;
+        this.length = this.values.length();
+        skipCountValue();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null && position <= length) {
+            int end = indexOf(blockSeparator, position, length);
+            if (end > position) {
+                next = tokenize(position, end);
+            }
+            position = end + blockSeparator.length();
+        }
+        return next != null;
+    }
+
+    @Override
+    public List<String> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        List<String> block = next;
+        next = null;
+        return block;
+    }
+
+    private void skipCountValue() {
+        int end = indexOf(blockSeparator, 0, length);
+        if (indexOf(tokenSeparator, 0, end) == end) {
+            position = end + blockSeparator.length();
+        }
+    }
+
+    private List<String> tokenize(int start, int end) {
+        List<String> tokens = new ArrayList<>(tokenCount > 0 ? tokenCount : 10);
+        int begin = start;
+        while (begin <= end) {
+            int tokenEnd = indexOf(tokenSeparator, begin, end);
+            tokens.add(values.subSequence(begin, tokenEnd).toString());
+            begin = tokenEnd + tokenSeparator.length();
+        }
+        tokenCount = tokens.size();
+        return tokens;
+    }
+
+    /**
+     * Find the separator in the range of the values.
+     *
+     * @return the index of the separator or <code>end</code> if it is not
+     *         contained in the range
+     */
+    private int indexOf(String separator, int start, int end) {
+        int last = end - separator.length();
+        for (int i = start; i <= last; i++) {
+            if (matches(separator, i)) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private boolean matches(String separator, int offset) {
+        for (int i = 0; i < separator.length(); i++) {
+            if (values.charAt(offset + i) != separator.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -39,4 +39,8 @@ public interface HibernateStreamingSettings {
 
     String CHUNK_SIZE = "service.streaming.datasource.chunkSize";
 
+    String MULTI_SERIES = "service.streaming.datasource.multiSeries";
+
+    String SCROLL_GET_RESULT = "service.streaming.datasource.scrollGetResult";
+
 }
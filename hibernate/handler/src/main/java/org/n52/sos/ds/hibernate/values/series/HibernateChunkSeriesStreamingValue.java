@@ -28,27 +28,45 @@
  */
 package org.n52.sos.ds.hibernate.values.series;
 
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
 
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.n52.iceland.binding.BindingRepository;
 import org.n52.iceland.ds.ConnectionProvider;
 import org.n52.janmayen.http.HTTPStatus;
 import org.n52.series.db.beans.DataEntity;
+import org.n52.series.db.beans.DatasetEntity;
+import org.n52.series.db.beans.dataset.ValueType;
+import org.n52.shetland.ogc.UoM;
+import org.n52.shetland.ogc.om.ObservationStream;
 import org.n52.shetland.ogc.om.OmObservation;
 import org.n52.shetland.ogc.om.TimeValuePair;
+import org.n52.shetland.ogc.om.values.QuantityValue;
 import org.n52.shetland.ogc.ows.exception.CodedException;
 import org.n52.shetland.ogc.ows.exception.NoApplicableCodeException;
 import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
 import org.n52.shetland.ogc.sos.request.AbstractObservationRequest;
 import org.n52.shetland.util.CollectionHelper;
 import org.n52.sos.ds.hibernate.dao.DaoFactory;
+import org.n52.sos.ds.hibernate.dao.observation.series.QuantityValueChunk;
 
 /**
- * Hibernate series streaming value implementation for chunk results
+ * Hibernate series streaming value implementation for chunk results.
+ *
+ * How the values are read is decided by the first consuming call. If it asks
+ * for a {@link TimeValuePair}, the values of quantity series are read as
+ * {@link QuantityValueChunk}s without creating {@link DataEntity}s, otherwise
+ * as {@link DataEntity} chunks. Until then, {@link #hasNext()} only queries
+ * the first value. If observations or entities are requested later on, the
+ * streaming value switches to {@link DataEntity} chunks after the last
+ * consumed value.
  *
  * @author <a href="mailto:c.hollmann@52north.org">Carsten Hollmann</a>
  * @since 4.0.2
@@ -62,12 +80,28 @@ public class HibernateChunkSeriesStreamingValue extends HibernateSeriesStreaming
 
     private int chunkSize;
 
-    private int currentRow;
+    private DataEntity<?> lastValue;
 
     private boolean noChunk;
 
     private int currentResultSize;
 
+    private Date lastTime;
+
+    private Long lastId;
+
+    private Boolean quantityValues;
+
+    private boolean firstValueQueried;
+
+    private DataEntity<?> firstValue;
+
+    private UoM quantityUnit;
+
+    private QuantityValueChunk quantityValueChunk;
+
+    private int quantityValueIndex;
+
     /**
      * constructor
      *
@@ -91,6 +125,12 @@ public class HibernateChunkSeriesStreamingValue extends HibernateSeriesStreaming
 
     @Override
     public boolean hasNext() throws OwsExceptionReport {
+        if (quantityValues == null) {
+            return hasFirstValue();
+        }
+        if (quantityValues) {
+            return hasNextQuantityValue();
+        }
         boolean next = false;
         if ((seriesValuesResult == null || !seriesValuesResult.hasNext()) && getSession().isOpen()) {
             if (!noChunk) {
@@ -112,12 +152,22 @@ public class HibernateChunkSeriesStreamingValue extends HibernateSeriesStreaming
 
     @Override
     public DataEntity<?> nextEntity() throws OwsExceptionReport {
+        decideValueMode(false);
+        switchToEntities();
+        if (seriesValuesResult == null) {
+            // the values were read as quantity values before
+            hasNext();
+        }
         return (DataEntity<?>) seriesValuesResult.next();
     }
 
     @Override
     public TimeValuePair nextValue() throws OwsExceptionReport {
         try {
+            decideValueMode(true);
+            if (quantityValues) {
+                return hasNextQuantityValue() ? createTimeValuePairFrom(quantityValueIndex++) : null;
+            }
             if (hasNext()) {
                 DataEntity<?> resultObject = seriesValuesResult.next();
                 TimeValuePair value = createTimeValuePairFrom(resultObject);
@@ -135,6 +185,8 @@ public class HibernateChunkSeriesStreamingValue extends HibernateSeriesStreaming
     @Override
     public OmObservation next() throws OwsExceptionReport {
         try {
+            decideValueMode(false);
+            switchToEntities();
             if (hasNext()) {
                 OmObservation observation = getObservationTemplate().cloneTemplate();
                 DataEntity<?> resultObject = seriesValuesResult.next();
@@ -151,6 +203,12 @@ public class HibernateChunkSeriesStreamingValue extends HibernateSeriesStreaming
         }
     }
 
+    @Override
+    public ObservationStream merge() throws OwsExceptionReport {
+        decideValueMode(false);
+        return super.merge();
+    }
+
     /**
      * Get the next results from database
      *
@@ -161,17 +219,16 @@ public class HibernateChunkSeriesStreamingValue extends HibernateSeriesStreaming
         Session session = null;
         try {
             session = getSession();
-            // query with temporal filter
-            Collection<DataEntity<?>> resutltValues = new ArrayList<>();
-            if (temporalFilterCriterion != null) {
-                resutltValues.addAll(seriesValueDAO.getStreamingSeriesValuesFor(request, series,
-                        temporalFilterCriterion, chunkSize, currentRow, session));
-            } else {
-                // query without temporal or indeterminate filters
-                resutltValues.addAll(seriesValueDAO.getStreamingSeriesValuesFor(request, series, chunkSize, currentRow,
-                        getSession()));
+            // query the chunk after the last value, with or without temporal
+            // filter
+            List<DataEntity<?>> resutltValues = lastValue != null
+                    ? seriesValueDAO.getStreamingSeriesValuesAfter(request, series, temporalFilterCriterion,
+                            chunkSize, lastValue, session)
+                    : seriesValueDAO.getStreamingSeriesValuesAfter(request, series, temporalFilterCriterion,
+                            chunkSize, lastTime, lastId, session);
+            if (!resutltValues.isEmpty()) {
+                lastValue = resutltValues.get(resutltValues.size() - 1);
             }
-            currentRow += chunkSize;
             checkMaxNumberOfReturnedValues(resutltValues.size());
             setSeriesValuesResult(resutltValues);
         } catch (final HibernateException he) {
@@ -181,6 +238,163 @@ public class HibernateChunkSeriesStreamingValue extends HibernateSeriesStreaming
         }
     }
 
+    /**
+     * Check if the series has values before the first consuming call decided
+     * how they are read. Only the first value is queried, it is passed on to
+     * the consumer if the values are read as {@link DataEntity}s.
+     *
+     * @return <code>true</code>, if the series has values
+     * @throws OwsExceptionReport
+     *             If an error occurs when querying the first value
+     */
+    private boolean hasFirstValue() throws OwsExceptionReport {
+        if (!seriesValueDAO.isQuantityValueProjectionSupported(request)) {
+            // nothing to decide
+            quantityValues = false;
+            return hasNext();
+        }
+        if (!firstValueQueried) {
+            Session session = null;
+            try {
+                session = getSession();
+                List<DataEntity<?>> values = seriesValueDAO.getStreamingSeriesValuesAfter(request, series,
+                        temporalFilterCriterion, 1, null, null, session);
+                firstValue = values.isEmpty() ? null : values.get(0);
+                firstValueQueried = true;
+            } catch (final HibernateException he) {
+                returnSession(session);
+                throw new NoApplicableCodeException().causedBy(he).withMessage(ERROR_LOG)
+                        .setStatus(HTTPStatus.INTERNAL_SERVER_ERROR);
+            }
+        }
+        if (firstValue == null) {
+            returnSession(getSession());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Decide on the first consuming call if the values are read as
+     * {@link QuantityValueChunk}s, which is only the case for quantity series
+     * consumed as {@link TimeValuePair}s, or as {@link DataEntity} chunks.
+     *
+     * @param timeValuePairs
+     *            if the consumer asks for a {@link TimeValuePair}
+     * @throws OwsExceptionReport
+     *             If an error occurs when querying the series
+     */
+    private void decideValueMode(boolean timeValuePairs) throws OwsExceptionReport {
+        if (quantityValues != null) {
+            return;
+        }
+        quantityValues = timeValuePairs && (!firstValueQueried || firstValue != null) && isQuantitySeries();
+        if (firstValue != null) {
+            if (quantityValues) {
+                // the quantity values start with the first value again
+                getSession().evict(firstValue);
+            } else {
+                lastValue = firstValue;
+                checkMaxNumberOfReturnedValues(1);
+                setSeriesValuesResult(Collections.singletonList(firstValue));
+            }
+            firstValue = null;
+        } else if (firstValueQueried) {
+            noChunk = true;
+        }
+    }
+
+    private boolean isQuantitySeries() throws OwsExceptionReport {
+        if (seriesValueDAO.isQuantityValueProjectionSupported(request)) {
+            try {
+                DatasetEntity dataset = getSession().get(DatasetEntity.class, series);
+                if (dataset != null && ValueType.quantity.equals(dataset.getValueType())) {
+                    if (dataset.hasUnit()) {
+                        quantityUnit = new UoM(dataset.getUnit().getUnit());
+                    }
+                    return true;
+                }
+            } catch (final HibernateException he) {
+                returnSession(getSession());
+                throw new NoApplicableCodeException().causedBy(he).withMessage(ERROR_LOG)
+                        .setStatus(HTTPStatus.INTERNAL_SERVER_ERROR);
+            }
+        }
+        return false;
+    }
+
+    private boolean hasNextQuantityValue() throws OwsExceptionReport {
+        if ((quantityValueChunk == null || quantityValueIndex >= quantityValueChunk.size()) && !noChunk
+                && getSession().isOpen()) {
+            getNextQuantityValues();
+        }
+        boolean next = quantityValueChunk != null && quantityValueIndex < quantityValueChunk.size();
+        if (!next) {
+            returnSession(getSession());
+        }
+        return next;
+    }
+
+    /**
+     * Get the next quantity values from database
+     *
+     * @throws OwsExceptionReport
+     *             If an error occurs when querying the next results
+     */
+    private void getNextQuantityValues() throws OwsExceptionReport {
+        Session session = null;
+        try {
+            session = getSession();
+            if (quantityValueChunk != null && !quantityValueChunk.isEmpty()) {
+                setLastQuantityValue(quantityValueChunk.size() - 1);
+            }
+            quantityValueChunk = seriesValueDAO.getStreamingQuantityValuesAfter(request, series,
+                    temporalFilterCriterion, chunkSize, lastTime, lastId, session);
+            quantityValueIndex = 0;
+            if (chunkSize <= 0 || quantityValueChunk.size() < chunkSize) {
+                noChunk = true;
+            }
+            checkMaxNumberOfReturnedValues(quantityValueChunk.size());
+        } catch (final HibernateException he) {
+            returnSession(session);
+            throw new NoApplicableCodeException().causedBy(he).withMessage(ERROR_LOG)
+                    .setStatus(HTTPStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Switch from quantity values to {@link DataEntity}s. The entities are
+     * queried after the last consumed quantity value.
+     */
+    private void switchToEntities() {
+        if (Boolean.TRUE.equals(quantityValues)) {
+            if (quantityValueChunk != null && quantityValueIndex > 0) {
+                setLastQuantityValue(quantityValueIndex - 1);
+                noChunk = false;
+            } else if (quantityValueChunk != null && !quantityValueChunk.isEmpty()) {
+                noChunk = false;
+            }
+            quantityValueChunk = null;
+        }
+        quantityValues = false;
+    }
+
+    private void setLastQuantityValue(int index) {
+        lastTime = new Date(quantityValueChunk.getOrderTime(index));
+        lastId = quantityValueChunk.getId(index);
+    }
+
+    private TimeValuePair createTimeValuePairFrom(int index) {
+        QuantityValue value = new QuantityValue(
+                quantityValueChunk.hasValue(index) ? quantityValueChunk.getValue(index) : null);
+        if (quantityUnit != null) {
+            value.setUnit(quantityUnit);
+        }
+        DateTime start = new DateTime(quantityValueChunk.getPhenomenonTimeStart(index), DateTimeZone.UTC);
+        DateTime end = new DateTime(quantityValueChunk.getPhenomenonTimeEnd(index), DateTimeZone.UTC);
+        return new TimeValuePair(createTime(start, end), value);
+    }
+
     /**
      * Check the queried {@link DataEntity}s for null and set
      * them as iterator to local variable.
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.hibernate.values.series;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.hibernate.HibernateException;
+import org.n52.iceland.binding.BindingRepository;
+import org.n52.iceland.ds.ConnectionProvider;
+import org.n52.janmayen.http.HTTPStatus;
+import org.n52.series.db.beans.DataEntity;
+import org.n52.shetland.ogc.om.ObservationStream;
+import org.n52.shetland.ogc.om.OmObservation;
+import org.n52.shetland.ogc.om.TimeValuePair;
+import org.n52.shetland.ogc.ows.exception.NoApplicableCodeException;
+import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
+import org.n52.shetland.ogc.sos.request.AbstractObservationRequest;
+import org.n52.sos.ds.hibernate.dao.DaoFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hibernate series streaming value implementation that takes the values from
+ * a {@link HibernateSeriesValueCursor} shared by all series of the request.
+ * If the cursor can not provide the values of the series, they are queried in
+ * chunks for this series.
+ *
+ * @since 5.3.2
+ */
+public class HibernateMultiSeriesStreamingValue extends HibernateSeriesStreamingValue {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HibernateMultiSeriesStreamingValue.class);
+
+    private static final String ERROR_LOG = "Error while querying observation data!";
+
+    private final HibernateSeriesValueCursor cursor;
+
+    private final int chunkSize;
+
+    private Iterator<DataEntity<?>> seriesValuesResult;
+
+    private DataEntity<?> lastValue;
+
+    private boolean separateQuery;
+
+    private boolean noChunk;
+
+    private boolean released;
+
+    /**
+     * constructor
+     *
+     * @param connectionProvider
+     *            the connection provider
+     * @param daoFactory
+     *            the DAO factory
+     * @param request
+     *            {@link AbstractObservationRequest}
+     * @param series
+     *            Datasource series id
+     * @param bindingRepository
+     *            the binding repository
+     * @param cursor
+     *            the cursor shared by the series of the request
+     * @param chunkSize
+     *            the chunk size for separate queries
+     * @throws OwsExceptionReport
+     *             If an error occurs
+     */
+    public HibernateMultiSeriesStreamingValue(ConnectionProvider connectionProvider, DaoFactory daoFactory,
+            AbstractObservationRequest request, long series, BindingRepository bindingRepository,
+            HibernateSeriesValueCursor cursor, int chunkSize) throws OwsExceptionReport {
+        super(connectionProvider, daoFactory, request, series, bindingRepository);
+        this.cursor = cursor;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public boolean hasNext() throws OwsExceptionReport {
+        try {
+            boolean next = false;
+            if ((seriesValuesResult == null || !seriesValuesResult.hasNext()) && !noChunk) {
+                getNextResults();
+            }
+            if (seriesValuesResult != null) {
+                next = seriesValuesResult.hasNext();
+            }
+            if (!next) {
+                if (separateQuery) {
+                    returnSession(getSession());
+                } else {
+                    cursor.finished(series);
+                }
+            }
+            return next;
+        } catch (OwsExceptionReport | RuntimeException e) {
+            release();
+            throw e;
+        }
+    }
+
+    @Override
+    public DataEntity<?> nextEntity() throws OwsExceptionReport {
+        return seriesValuesResult.next();
+    }
+
+    @Override
+    public TimeValuePair nextValue() throws OwsExceptionReport {
+        try {
+            if (hasNext()) {
+                DataEntity<?> resultObject = seriesValuesResult.next();
+                TimeValuePair value = createTimeValuePairFrom(resultObject);
+                evict(resultObject);
+                return value;
+            }
+            return null;
+        } catch (final HibernateException he) {
+            release();
+            throw new NoApplicableCodeException().causedBy(he).withMessage(ERROR_LOG)
+                    .setStatus(HTTPStatus.INTERNAL_SERVER_ERROR);
+        } catch (OwsExceptionReport | RuntimeException e) {
+            release();
+            throw e;
+        }
+    }
+
+    @Override
+    public OmObservation next() throws OwsExceptionReport {
+        try {
+            if (hasNext()) {
+                OmObservation observation = getObservationTemplate().cloneTemplate();
+                DataEntity<?> resultObject = seriesValuesResult.next();
+                addValuesToObservation(resultObject, observation, getResponseFormat());
+                checkForModifications(observation);
+                evict(resultObject);
+                return observation;
+            }
+            return null;
+        } catch (final HibernateException he) {
+            release();
+            throw new NoApplicableCodeException().causedBy(he).withMessage(ERROR_LOG)
+                    .setStatus(HTTPStatus.INTERNAL_SERVER_ERROR);
+        } catch (OwsExceptionReport | RuntimeException e) {
+            release();
+            throw e;
+        }
+    }
+
+    @Override
+    public ObservationStream merge() throws OwsExceptionReport {
+        try {
+            return super.merge();
+        } catch (OwsExceptionReport | RuntimeException e) {
+            release();
+            throw e;
+        }
+    }
+
+    /**
+     * Release the session and the shared cursor if the encoding of the values
+     * fails, otherwise they would only be released after the last series is
+     * consumed.
+     */
+    private void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        cursor.close();
+        if (separateQuery) {
+            try {
+                returnSession(getSession());
+            } catch (OwsExceptionReport | RuntimeException e) {
+                LOGGER.warn("Error while returning the session of the streaming value", e);
+            }
+        }
+    }
+
+    /**
+     * Get the next results from the cursor or, if the cursor can not provide
+     * them, from the database
+     *
+     * @throws OwsExceptionReport
+     *             If an error occurs when querying the next results
+     */
+    private void getNextResults() throws OwsExceptionReport {
+        List<DataEntity<?>> resultValues = null;
+        if (!separateQuery) {
+            resultValues = cursor.next(series);
+            if (resultValues == null) {
+                separateQuery = true;
+            } else if (resultValues.isEmpty()) {
+                noChunk = true;
+            }
+        }
+        if (separateQuery) {
+            try {
+                resultValues = seriesValueDAO.getStreamingSeriesValuesAfter(request, series,
+                        temporalFilterCriterion, chunkSize, lastValue, getSession());
+            } catch (final HibernateException he) {
+                returnSession(getSession());
+                throw new NoApplicableCodeException().causedBy(he).withMessage(ERROR_LOG)
+                        .setStatus(HTTPStatus.INTERNAL_SERVER_ERROR);
+            }
+            if (chunkSize <= 0 || resultValues.size() < chunkSize) {
+                noChunk = true;
+            }
+        }
+        if (!resultValues.isEmpty()) {
+            lastValue = resultValues.get(resultValues.size() - 1);
+        }
+        checkMaxNumberOfReturnedValues(resultValues.size());
+        seriesValuesResult = resultValues.iterator();
+    }
+
+    private void evict(DataEntity<?> value) throws OwsExceptionReport {
+        if (separateQuery) {
+            getSession().evict(value);
+        } else {
+            cursor.evict(value);
+        }
+    }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.hibernate.values.series;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.criterion.Criterion;
+import org.n52.iceland.ds.ConnectionProvider;
+import org.n52.janmayen.http.HTTPStatus;
+import org.n52.series.db.beans.DataEntity;
+import org.n52.shetland.ogc.ows.exception.NoApplicableCodeException;
+import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
+import org.n52.shetland.ogc.sos.request.AbstractObservationRequest;
+import org.n52.sos.ds.hibernate.HibernateSessionHolder;
+import org.n52.sos.ds.hibernate.dao.observation.series.AbstractSeriesValueDAO;
+
+/**
+ * Cursor that reads the values of multiple series with one query per chunk,
+ * ordered by series, time and id, and hands them out to the streaming values
+ * of the single series. At most one chunk is buffered.
+ *
+ * The series should be consumed in ascending id order. If a series is
+ * requested after values of it were skipped, the cursor returns
+ * <code>null</code> and the series has to be queried separately. The session
+ * is returned when the last series is finished, when all values are handed
+ * out or when the cursor is closed by a consumer that failed.
+ *
+ * @since 5.3.2
+ */
+public class HibernateSeriesValueCursor {
+
+    private static final String ERROR_LOG = "Error while querying observation data!";
+
+    private final HibernateSessionHolder sessionHolder;
+
+    private final AbstractSeriesValueDAO seriesValueDAO;
+
+    private final AbstractObservationRequest request;
+
+    private final Set<Long> series;
+
+    private final long lastSeries;
+
+    private final int chunkSize;
+
+    private final Deque<DataEntity<?>> buffer = new ArrayDeque<>();
+
+    private final Set<Long> skippedSeries = new HashSet<>();
+
+    private Criterion temporalFilterCriterion;
+
+    private Session session;
+
+    private DataEntity<?> lastValue;
+
+    private boolean exhausted;
+
+    private boolean closed;
+
+    /**
+     * constructor
+     *
+     * @param connectionProvider
+     *            the connection provider
+     * @param seriesValueDAO
+     *            the series value DAO
+     * @param request
+     *            {@link AbstractObservationRequest}
+     * @param series
+     *            Datasource series ids
+     * @param chunkSize
+     *            the chunk size
+     */
+    public HibernateSeriesValueCursor(ConnectionProvider connectionProvider, AbstractSeriesValueDAO seriesValueDAO,
+            AbstractObservationRequest request, Set<Long> series, int chunkSize) {
+        this.sessionHolder = new HibernateSessionHolder(connectionProvider);
+        this.seriesValueDAO = seriesValueDAO;
+        this.request = request;
+        this.series = series;
+        this.lastSeries = series.isEmpty() ? Long.MIN_VALUE : Collections.max(series);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Set the temporal filter {@link Criterion}
+     *
+     * @param temporalFilterCriterion
+     *            Temporal filter {@link Criterion}
+     */
+    public void setTemporalFilterCriterion(Criterion temporalFilterCriterion) {
+        this.temporalFilterCriterion = temporalFilterCriterion;
+    }
+
+    /**
+     * Get the next values of the series.
+     *
+     * @param seriesId
+     *            Datasource series id
+     * @return the next values, an empty list if there are no more values or
+     *         <code>null</code> if the series has to be queried separately
+     * @throws OwsExceptionReport
+     *             If an error occurs when querying the next chunk
+     */
+    public synchronized List<DataEntity<?>> next(long seriesId) throws OwsExceptionReport {
+        if (skippedSeries.contains(seriesId) || closed && !exhausted) {
+            return null;
+        }
+        List<DataEntity<?>> values = new ArrayList<>();
+        while (values.isEmpty()) {
+            while (!buffer.isEmpty() && getSeries(buffer.peek()) < seriesId) {
+                DataEntity<?> skipped = buffer.poll();
+                skippedSeries.add(getSeries(skipped));
+                evict(skipped);
+            }
+            if (buffer.isEmpty()) {
+                if (exhausted || lastValue != null && getSeries(lastValue) > seriesId) {
+                    break;
+                }
+                fill();
+            } else if (getSeries(buffer.peek()) > seriesId) {
+                break;
+            } else {
+                while (!buffer.isEmpty() && getSeries(buffer.peek()) == seriesId) {
+                    values.add(buffer.poll());
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Evict the value from the cursor session
+     *
+     * @param value
+     *            the value to evict
+     */
+    public synchronized void evict(DataEntity<?> value) {
+        if (session != null) {
+            session.evict(value);
+        }
+    }
+
+    /**
+     * Notify the cursor that all values of the series are consumed. The
+     * session is returned if no more values can be handed out.
+     *
+     * @param seriesId
+     *            Datasource series id
+     */
+    public synchronized void finished(long seriesId) {
+        if (seriesId == lastSeries || exhausted && buffer.isEmpty()) {
+            close();
+        }
+    }
+
+    /**
+     * @return if the cursor is closed and its session is returned
+     */
+    public synchronized boolean isClosed() {
+        return closed && session == null;
+    }
+
+    /**
+     * Release the buffered values and return the session
+     */
+    public synchronized void close() {
+        buffer.clear();
+        closed = true;
+        if (session != null) {
+            sessionHolder.returnSession(session);
+            session = null;
+        }
+    }
+
+    private void fill() throws OwsExceptionReport {
+        try {
+            if (session == null) {
+                session = sessionHolder.getSession();
+            }
+            List<DataEntity<?>> values = seriesValueDAO.getStreamingSeriesValuesAfter(request, series,
+                    temporalFilterCriterion, chunkSize, lastValue, session);
+            if (!values.isEmpty()) {
+                lastValue = values.get(values.size() - 1);
+                buffer.addAll(values);
+            }
+            if (chunkSize <= 0 || values.size() < chunkSize) {
+                exhausted = true;
+            }
+        } catch (final HibernateException he) {
+            close();
+            throw new NoApplicableCodeException().causedBy(he).withMessage(ERROR_LOG)
+                    .setStatus(HTTPStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    private long getSeries(DataEntity<?> value) {
+        return value.getDataset().getId();
+    }
+
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.apache.xmlbeans.XmlObject;
+import org.apache.xmlbeans.XmlOptions;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.n52.shetland.ogc.gml.AbstractFeature;
+import org.n52.shetland.ogc.gml.CodeWithAuthority;
+import org.n52.shetland.ogc.gml.ReferenceType;
+import org.n52.shetland.ogc.om.OmObservableProperty;
+import org.n52.shetland.ogc.om.OmObservation;
+import org.n52.shetland.ogc.om.OmObservationConstellation;
+import org.n52.shetland.ogc.om.features.SfConstants;
+import org.n52.shetland.ogc.om.features.samplingFeatures.SamplingFeature;
+import org.n52.shetland.ogc.sensorML.SensorMLConstants;
+import org.n52.shetland.ogc.sos.Sos2Constants;
+import org.n52.shetland.ogc.sos.SosConstants;
+import org.n52.shetland.ogc.sos.SosOffering;
+import org.n52.shetland.ogc.sos.SosProcedureDescription;
+import org.n52.shetland.ogc.sos.SosProcedureDescriptionUnknownType;
+import org.n52.shetland.ogc.sos.request.DescribeSensorRequest;
+import org.n52.shetland.ogc.sos.request.InsertObservationRequest;
+import org.n52.shetland.ogc.sos.response.InsertObservationResponse;
+import org.n52.sos.event.events.ObservationInsertion;
+import org.n52.svalbard.decode.DecoderRepository;
+import org.n52.svalbard.decode.GmlDecoderv321;
+import org.n52.svalbard.decode.SensorMLDecoderV101;
+import org.n52.svalbard.decode.SweCommonDecoderV101;
+import org.n52.svalbard.encode.Encoder;
+import org.n52.svalbard.encode.EncoderRepository;
+import org.n52.svalbard.encode.GmlEncoderv311;
+import org.n52.svalbard.encode.GmlEncoderv321;
+import org.n52.svalbard.encode.SensorMLEncoderv101;
+import org.n52.svalbard.encode.SweCommonEncoderv101;
+import org.n52.svalbard.encode.XmlEncoderKey;
+
+/**
+ * Checks that the {@link ProcedureDescriptionCache} returns the same
+ * descriptions as the uncached creation.
+ */
+public class ProcedureDescriptionCacheTest {
+
+    private static final String PROCEDURE = "procedure";
+
+    private static final String OTHER_PROCEDURE = "otherProcedure";
+
+    private static final String OFFERING = "offering";
+
+    private static final String FEATURE = "feature";
+
+    private static final String PARENT_FEATURE = "parentFeature";
+
+    private static final String OBSERVABLE_PROPERTY = "observableProperty";
+
+    private static final String PARENT_PROCEDURE = "parentProcedure";
+
+    private static final String TYPE_OF = "typeOf";
+
+    private static final String TYPE_OF_HREF = "http://www.example.org/sos?request=DescribeSensor&procedure=typeOf";
+
+    private final EncoderRepository encoderRepository = new EncoderRepository();
+
+    private final DecoderRepository decoderRepository = new DecoderRepository();
+
+    private final ProcedureDescriptionCache cache = new ProcedureDescriptionCache();
+
+    @Before
+    public void setUp() {
+        GmlEncoderv321 gmlEncoderv321 = new GmlEncoderv321();
+        gmlEncoderv321.setEncoderRepository(encoderRepository);
+        gmlEncoderv321.setXmlOptions(XmlOptions::new);
+        GmlEncoderv311 gmlEncoderv311 = new GmlEncoderv311();
+        gmlEncoderv311.setEncoderRepository(encoderRepository);
+        gmlEncoderv311.setXmlOptions(XmlOptions::new);
+        SensorMLEncoderv101 sensorMLEncoderv101 = new SensorMLEncoderv101();
+        sensorMLEncoderv101.setXmlOptions(XmlOptions::new);
+        sensorMLEncoderv101.setEncoderRepository(encoderRepository);
+        SweCommonEncoderv101 sweCommonEncoderv101 = new SweCommonEncoderv101();
+        sweCommonEncoderv101.setEncoderRepository(encoderRepository);
+        sweCommonEncoderv101.setXmlOptions(XmlOptions::new);
+        encoderRepository.setEncoders(
+                Arrays.asList(gmlEncoderv321, gmlEncoderv311, sensorMLEncoderv101, sweCommonEncoderv101));
+        encoderRepository.init();
+
+        GmlDecoderv321 gmlDecoderv321 = new GmlDecoderv321();
+        gmlDecoderv321.setDecoderRepository(decoderRepository);
+        gmlDecoderv321.setXmlOptions(XmlOptions::new);
+        SensorMLDecoderV101 sensorMLDecoderv101 = new SensorMLDecoderV101();
+        sensorMLDecoderv101.setXmlOptions(XmlOptions::new);
+        sensorMLDecoderv101.setDecoderRepository(decoderRepository);
+        SweCommonDecoderV101 sweCommonDecoderv101 = new SweCommonDecoderV101();
+        sweCommonDecoderv101.setDecoderRepository(decoderRepository);
+        sweCommonDecoderv101.setXmlOptions(XmlOptions::new);
+        decoderRepository.setDecoders(Arrays.asList(gmlDecoderv321, sensorMLDecoderv101, sweCommonDecoderv101));
+        decoderRepository.init();
+
+        cache.setEncoderRepository(encoderRepository);
+        cache.setDecoderRepository(decoderRepository);
+        cache.setCacheDuration(60);
+    }
+
+    @Test
+    public void shouldReturnCopyEqualToUncachedDescription() throws Exception {
+        SosProcedureDescription<?> uncached = createDescription(PROCEDURE);
+        List<Object> key = put(uncached);
+
+        SosProcedureDescription<?> cached = getSingle(key);
+
+        assertThat(cached, is(not(sameInstance(uncached))));
+        assertThat(cached.getProcedureDescription(), is(not(sameInstance(uncached.getProcedureDescription()))));
+        assertThat(encode(cached), is(encode(uncached)));
+        assertThat(cached.getIdentifier(), is(uncached.getIdentifier()));
+        assertThat(cached.getDescriptionFormat(), is(uncached.getDescriptionFormat()));
+        assertThat(cached.getOfferings().stream().map(SosOffering::getIdentifier).collect(Collectors.toList()),
+                contains(OFFERING));
+        assertThat(cached.getOfferings().iterator().next().getOfferingName(), is(OFFERING));
+        assertThat(cached.getPhenomenon().keySet(), contains(OBSERVABLE_PROPERTY));
+        assertThat(cached.getParentProcedure().getHref(), is(PARENT_PROCEDURE));
+        assertThat(cached.getParentProcedure().getTitle(), is(PARENT_PROCEDURE));
+        assertThat(cached.isSetTypeOf(), is(true));
+        assertThat(cached.getTypeOf().getHref(), is(TYPE_OF_HREF));
+        assertThat(cached.getTypeOf().getTitle(), is(TYPE_OF));
+
+        SamplingFeature expected = (SamplingFeature) uncached.getFeaturesOfInterestMap().get(FEATURE);
+        SamplingFeature actual = (SamplingFeature) cached.getFeaturesOfInterestMap().get(FEATURE);
+        assertThat(actual, is(not(sameInstance(expected))));
+        assertThat(actual.getIdentifier(), is(FEATURE));
+        assertThat(actual.getFeatureType(), is(expected.getFeatureType()));
+        assertThat(actual.getUrl(), is(expected.getUrl()));
+        assertThat(actual.getGeometry(), is(expected.getGeometry()));
+        assertThat(actual.getGeometry(), is(not(sameInstance(expected.getGeometry()))));
+        assertThat(actual.getSampledFeatures().stream().map(AbstractFeature::getIdentifier)
+                .collect(Collectors.toList()), contains(PARENT_FEATURE));
+    }
+
+    @Test
+    public void shouldNotExposeCachedDescription() throws Exception {
+        List<Object> key = put(createDescription(PROCEDURE));
+
+        SosProcedureDescription<?> first = getSingle(key);
+        first.setTypeOf(new ReferenceType("other"));
+        first.setParentProcedure(new ReferenceType("other"));
+        ((SamplingFeature) first.getFeaturesOfInterestMap().get(FEATURE)).setFeatureType("other");
+        first.addPhenomenon(new OmObservableProperty("other"));
+
+        SosProcedureDescription<?> second = getSingle(key);
+        assertThat(second.getTypeOf().getHref(), is(TYPE_OF_HREF));
+        assertThat(second.getParentProcedure().getHref(), is(PARENT_PROCEDURE));
+        assertThat(((SamplingFeature) second.getFeaturesOfInterestMap().get(FEATURE)).getFeatureType(),
+                is(SfConstants.SAMPLING_FEAT_TYPE_SF_SAMPLING_POINT));
+        assertThat(second.getPhenomenon().keySet(), contains(OBSERVABLE_PROPERTY));
+    }
+
+    @Test
+    public void shouldOnlyInvalidateProceduresOfInsertedObservations() throws Exception {
+        List<Object> key = put(createDescription(PROCEDURE));
+        List<Object> otherKey = put(createDescription(OTHER_PROCEDURE));
+
+        OmObservationConstellation constellation = new OmObservationConstellation();
+        constellation.setProcedure(new SosProcedureDescriptionUnknownType(PROCEDURE, SensorMLConstants.NS_SML, null));
+        OmObservation observation = new OmObservation();
+        observation.setObservationConstellation(constellation);
+        InsertObservationRequest request = new InsertObservationRequest();
+        request.setObservation(Collections.singletonList(observation));
+        cache.handle(new ObservationInsertion(request, new InsertObservationResponse()));
+
+        assertThat(cache.get(key).isPresent(), is(false));
+        assertThat(cache.get(otherKey).isPresent(), is(true));
+    }
+
+    @Test
+    public void shouldNotCacheDescriptionsStartedBeforeInvalidation() throws Exception {
+        SosProcedureDescription<?> description = createDescription(PROCEDURE);
+        List<Object> key = cache.createKey(createRequest(PROCEDURE), Locale.ENGLISH);
+        long generation = cache.getGeneration();
+        cache.invalidate(Collections.singleton(OTHER_PROCEDURE));
+        cache.put(key, generation, Collections.singletonList(description));
+
+        assertThat(cache.get(key).isPresent(), is(false));
+    }
+
+    private List<Object> put(SosProcedureDescription<?> description) {
+        List<Object> key = cache.createKey(createRequest(description.getIdentifier()), Locale.ENGLISH);
+        cache.put(key, cache.getGeneration(), Collections.singletonList(description));
+        return key;
+    }
+
+    private SosProcedureDescription<?> getSingle(List<Object> key) {
+        Optional<List<SosProcedureDescription<?>>> cached = cache.get(key);
+        assertThat(cached.isPresent(), is(true));
+        assertThat(cached.get().size(), is(1));
+        return cached.get().get(0);
+    }
+
+    private DescribeSensorRequest createRequest(String procedure) {
+        DescribeSensorRequest request = new DescribeSensorRequest();
+        request.setService(SosConstants.SOS);
+        request.setVersion(Sos2Constants.SERVICEVERSION);
+        request.setProcedure(procedure);
+        request.setProcedureDescriptionFormat(SensorMLConstants.NS_SML);
+        return request;
+    }
+
+    private SosProcedureDescription<?> createDescription(String procedure) throws Exception {
+        org.n52.shetland.ogc.sensorML.System system = new org.n52.shetland.ogc.sensorML.System();
+        system.setIdentifier(procedure);
+        SosProcedureDescription<?> description = new SosProcedureDescription<>(system);
+        description.setIdentifier(procedure);
+        description.setDescriptionFormat(SensorMLConstants.NS_SML);
+        description.addOfferings(Collections.singletonList(new SosOffering(OFFERING, OFFERING)));
+        description.addPhenomenon(new OmObservableProperty(OBSERVABLE_PROPERTY));
+        description.setParentProcedure(new ReferenceType(PARENT_PROCEDURE, PARENT_PROCEDURE));
+        description.setTypeOf(new ReferenceType(TYPE_OF_HREF, TYPE_OF));
+
+        GeometryFactory factory = new GeometryFactory(new PrecisionModel(), 4326);
+        SamplingFeature parent = new SamplingFeature(new CodeWithAuthority(PARENT_FEATURE));
+        SamplingFeature feature = new SamplingFeature(new CodeWithAuthority(FEATURE));
+        feature.addName("feature name");
+        feature.setFeatureType(SfConstants.SAMPLING_FEAT_TYPE_SF_SAMPLING_POINT);
+        feature.setUrl("http://www.example.org/feature");
+        feature.setGeometry(factory.createPoint(new Coordinate(7.0, 52.0)));
+        feature.setSampledFeatures(Collections.singletonList(parent));
+        description.addFeaturesOfInterestMap(Collections.singletonMap(FEATURE, feature));
+        description.addFeaturesOfInterest(Collections.singleton(FEATURE));
+        return description;
+    }
+
+    private String encode(SosProcedureDescription<?> description) throws Exception {
+        Object process = description.getProcedureDescription();
+        Encoder<XmlObject, Object> encoder = encoderRepository
+                .getEncoder(new XmlEncoderKey(description.getDescriptionFormat(), process.getClass()));
+        return encoder.encode(process).xmlText();
+    }
+
+}
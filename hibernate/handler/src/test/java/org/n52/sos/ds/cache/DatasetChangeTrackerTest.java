@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.n52.sos.ds.cache.DatasetChangeTracker.DatasetMark;
+import org.n52.sos.ds.cache.DatasetChangeTracker.Delta;
+
+/**
+ * @since 5.3.2
+ */
+public class DatasetChangeTrackerTest {
+
+    private static final DatasetMark FIRST =
+            new DatasetMark("offering", "procedure", "feature", "phenomenon", 1L, 2L, 1L, 2L, 10L, 2L);
+
+    private static final DatasetMark SECOND =
+            new DatasetMark("offering", "procedure", "feature2", "phenomenon", null, null, null, null, null, 0L);
+
+    private final DatasetChangeTracker tracker = new DatasetChangeTracker();
+
+    @Test
+    public void shouldBeInitialWithoutCommittedMarks() {
+        Delta delta = tracker.diff(marks(FIRST, SECOND));
+        assertThat(delta.isInitial(), is(true));
+        assertThat(delta.isEmpty(), is(false));
+        assertThat(delta.getAdded(), is(empty()));
+    }
+
+    @Test
+    public void shouldBeEmptyForTheCommittedMarks() {
+        tracker.commit(marks(FIRST, SECOND));
+        Delta delta = tracker.diff(marks(FIRST, SECOND));
+        assertThat(delta.isInitial(), is(false));
+        assertThat(delta.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldDetectAddedChangedAndRemovedDatasets() {
+        tracker.commit(marks(FIRST, SECOND));
+        DatasetMark changed =
+                new DatasetMark("offering", "procedure", "feature", "phenomenon", 1L, 3L, 1L, 3L, 11L, 3L);
+        DatasetMark added =
+                new DatasetMark("offering2", "procedure", "feature", "phenomenon", 4L, 4L, 4L, 4L, 12L, 1L);
+        Map<Long, DatasetMark> current = new HashMap<>();
+        current.put(1L, changed);
+        current.put(3L, added);
+        Delta delta = tracker.diff(current);
+        assertThat(delta.isInitial(), is(false));
+        assertThat(delta.isEmpty(), is(false));
+        assertThat(delta.getAdded(), contains(added));
+        assertThat(delta.getChanged(), contains(changed));
+        assertThat(delta.getRemoved(), contains(SECOND));
+    }
+
+    @Test
+    public void shouldDetectChangedReferences() {
+        tracker.commit(marks(FIRST));
+        DatasetMark changed =
+                new DatasetMark("offering", "procedure", null, "phenomenon", 1L, 2L, 1L, 2L, 10L, 2L);
+        assertThat(tracker.diff(marks(changed)).getChanged(), contains(changed));
+    }
+
+    @Test
+    public void shouldDetectChangedResultTimes() {
+        tracker.commit(marks(FIRST));
+        DatasetMark changed =
+                new DatasetMark("offering", "procedure", "feature", "phenomenon", 1L, 2L, 1L, 5L, 10L, 2L);
+        assertThat(tracker.diff(marks(changed)).getChanged(), contains(changed));
+    }
+
+    @Test
+    public void shouldDetectObservationsInsertedWithinTheTimeBounds() {
+        tracker.commit(marks(FIRST));
+        DatasetMark changed =
+                new DatasetMark("offering", "procedure", "feature", "phenomenon", 1L, 2L, 1L, 2L, 11L, 3L);
+        assertThat(tracker.diff(marks(changed)).getChanged(), contains(changed));
+    }
+
+    @Test
+    public void shouldDetectObservationsDeletedWithinTheTimeBounds() {
+        tracker.commit(marks(FIRST));
+        DatasetMark changed =
+                new DatasetMark("offering", "procedure", "feature", "phenomenon", 1L, 2L, 1L, 2L, 10L, 1L);
+        assertThat(tracker.diff(marks(changed)).getChanged(), contains(changed));
+    }
+
+    @Test
+    public void shouldNotBeAffectedByChangesOfTheCommittedMap() {
+        Map<Long, DatasetMark> marks = marks(FIRST);
+        tracker.commit(marks);
+        marks.put(2L, SECOND);
+        assertThat(tracker.diff(marks(FIRST)).isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldBeInitialAfterClear() {
+        tracker.commit(marks(FIRST));
+        tracker.clear();
+        assertThat(tracker.diff(marks(FIRST)).isInitial(), is(true));
+    }
+
+    private Map<Long, DatasetMark> marks(DatasetMark... marks) {
+        Map<Long, DatasetMark> map = new HashMap<>();
+        for (int i = 0; i < marks.length; i++) {
+            map.put((long) i + 1, marks[i]);
+        }
+        return map;
+    }
+
+}
@@ -113,6 +113,7 @@ import org.n52.sos.cache.ctrl.SosContentCacheControllerImpl;
 import org.n52.sos.ds.SosCacheFeederHandler;
 import org.n52.sos.ds.hibernate.dao.DaoFactory;
 import org.n52.sos.ds.hibernate.dao.GetObservationDaoImpl;
+import org.n52.sos.ds.hibernate.util.DatasetLocks;
 import org.n52.sos.ds.hibernate.util.HibernateMetadataCache;
 import org.n52.sos.ds.hibernate.util.TemporalRestrictions;
 import org.n52.sos.ds.hibernate.util.observation.AdditionalObservationCreatorRepository;
@@ -272,6 +273,8 @@ public abstract class AbstractInsertDAOTest extends HibernateTestCase {
 
     protected final InsertResultHandler insertResultDAO = new InsertResultHandler();
 
+    protected final DatasetLocks datasetLocks = new DatasetLocks();
+
     protected final GetObservationDaoImpl getObsDAO = new GetObservationDaoImpl();
 
     protected final GetResultTemplateHandler getResultTemplateHandler = new GetResultTemplateHandler();
@@ -428,6 +431,7 @@ public abstract class AbstractInsertDAOTest extends HibernateTestCase {
         deleteSensorDAO.init();
         insertObservationDAO.initForTesting(daoFactory, this);
         insertObservationDAO.setCacheController(contentCacheController);
+        insertObservationDAO.setDatasetLocks(datasetLocks);
         insertObservationDAO.init();
         insertResultTemplateDAO.initForTesting(daoFactory, this);
         insertResultTemplateDAO.setCacheController(contentCacheController);
@@ -435,6 +439,7 @@ public abstract class AbstractInsertDAOTest extends HibernateTestCase {
         insertResultDAO.initForTesting(daoFactory, this);
         insertResultDAO.setCacheController(contentCacheController);
         insertResultDAO.setDecoderRepository(decoderRepository);
+        insertResultDAO.setDatasetLocks(datasetLocks);
         insertResultDAO.init();
         getObsDAO.setConnectionProvider(this);
         getObsDAO.setDaoFactory(daoFactory);
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.hibernate;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Locale;
+
+import org.hibernate.Session;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.n52.iceland.coding.SupportedTypeRepository;
+import org.n52.iceland.convert.ConverterException;
+import org.n52.series.db.da.sos.SOSHibernateSessionHolder;
+import org.n52.shetland.ogc.gml.time.TimeInstant;
+import org.n52.shetland.ogc.om.OmConstants;
+import org.n52.shetland.ogc.om.OmObservation;
+import org.n52.shetland.ogc.om.OmObservationConstellation;
+import org.n52.shetland.ogc.om.SingleObservationValue;
+import org.n52.shetland.ogc.om.values.QuantityValue;
+import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
+import org.n52.shetland.ogc.sos.request.InsertObservationRequest;
+import org.n52.shetland.ogc.sos.response.InsertObservationResponse;
+import org.n52.shetland.util.CollectionHelper;
+import org.n52.sos.cache.InMemoryCacheImpl;
+import org.n52.sos.ds.cache.AbstractDatasourceCacheUpdate;
+import org.n52.sos.ds.cache.CacheUpdateStatistics;
+import org.n52.sos.ds.cache.base.BulkOfferingProcedureCacheUpdate;
+import org.n52.sos.ds.cache.base.OfferingCacheUpdate;
+import org.n52.sos.ds.cache.base.ProcedureCacheUpdate;
+import org.n52.sos.ds.hibernate.util.HibernateMetadataCache;
+import org.n52.sos.event.events.ObservationInsertion;
+import org.n52.sos.util.GeometryHandler;
+import org.n52.svalbard.encode.exception.EncodingException;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Checks that the {@link BulkOfferingProcedureCacheUpdate} fills the cache like
+ * the {@link OfferingCacheUpdate} and the {@link ProcedureCacheUpdate}.
+ *
+ * @since 5.3.2
+ */
+public class BulkOfferingProcedureCacheUpdateTest extends AbstractObservationInsertDAOTest {
+
+    private final SOSHibernateSessionHolder sessionStore = new SOSHibernateSessionHolder();
+
+    private final GeometryHandler geometryHandler = new GeometryHandler();
+
+    @Before
+    public void setUp() throws OwsExceptionReport, ConverterException, EncodingException {
+        super.setUp();
+        sessionStore.setConnectionProvider(this);
+        geometryHandler.setAuthority("EPSG");
+        geometryHandler.setStorageEpsg(4326);
+        geometryHandler.setSpatialDatasource(true);
+        geometryHandler.init();
+        Session session = null;
+        try {
+            session = getSession();
+            HibernateMetadataCache.init(session);
+            insertSensor(PROCEDURE1, OFFERING1, OBSPROP1, null, OmConstants.OBS_TYPE_MEASUREMENT);
+            insertSensor(PROCEDURE2, OFFERING2, OBSPROP2, PROCEDURE1, OmConstants.OBS_TYPE_MEASUREMENT);
+            insertSensor(PROCEDURE3, OFFERING3, OBSPROP3, PROCEDURE2, OmConstants.OBS_TYPE_MEASUREMENT);
+        } finally {
+            returnSession(session);
+        }
+    }
+
+    @Test
+    public void shouldFillTheCacheLikeTheSingleUpdatesWithoutObservations() throws OwsExceptionReport {
+        assertThat(updateBulk(1), is(updateSingle()));
+    }
+
+    @Test
+    public void shouldFillTheCacheLikeTheSingleUpdates() throws OwsExceptionReport, InterruptedException {
+        insertObservations(PROCEDURE3, OFFERING3, OBSPROP3);
+        insertObservations(PROCEDURE2, OFFERING2, OBSPROP2);
+        InMemoryCacheImpl expected = updateSingle();
+        assertThat(expected.getOfferings(), containsInAnyOrder(OFFERING1, OFFERING2, OFFERING3));
+        assertThat(expected.getProcedures(), containsInAnyOrder(PROCEDURE1, PROCEDURE2, PROCEDURE3));
+        assertThat(updateBulk(1), is(expected));
+    }
+
+    @Test
+    public void shouldFillTheCacheLikeTheSingleUpdatesInParallel() throws OwsExceptionReport, InterruptedException {
+        insertObservations(PROCEDURE3, OFFERING3, OBSPROP3);
+        insertObservations(PROCEDURE1, OFFERING1, OBSPROP1);
+        InMemoryCacheImpl expected = updateSingle();
+        // more threads than offerings and procedures and a partition for each of them
+        assertThat(updateBulk(2), is(expected));
+        assertThat(updateBulk(5), is(expected));
+    }
+
+    private InMemoryCacheImpl updateSingle() throws OwsExceptionReport {
+        return update(new OfferingCacheUpdate(2, Locale.ENGLISH, geometryHandler, sessionStore),
+                new ProcedureCacheUpdate(2, sessionStore));
+    }
+
+    private InMemoryCacheImpl updateBulk(int threads) throws OwsExceptionReport {
+        return update(new BulkOfferingProcedureCacheUpdate(threads, Locale.ENGLISH, geometryHandler, sessionStore));
+    }
+
+    private InMemoryCacheImpl update(AbstractDatasourceCacheUpdate... updates) throws OwsExceptionReport {
+        InMemoryCacheImpl updated = new InMemoryCacheImpl();
+        updated.setSupportedTypeRepository(Mockito.mock(SupportedTypeRepository.class));
+        List<OwsExceptionReport> errors = CollectionHelper.synchronizedList();
+        Session session = null;
+        try {
+            session = getSession();
+            for (AbstractDatasourceCacheUpdate update : updates) {
+                update.setCache(updated);
+                update.setErrors(errors);
+                update.setSession(session);
+                update.setStatistics(new CacheUpdateStatistics());
+                update.execute();
+            }
+        } finally {
+            returnSession(session);
+        }
+        assertThat(errors, is(empty()));
+        return updated;
+    }
+
+    private void insertObservations(String procedure, String offering, String obsProp)
+            throws OwsExceptionReport, InterruptedException {
+        InsertObservationRequest req = new InsertObservationRequest();
+        req.setAssignedSensorId(procedure);
+        req.setOfferings(Lists.newArrayList(offering));
+        OmObservationConstellation constellation;
+        Session session = null;
+        try {
+            session = getSession();
+            constellation = getOmObsConst(procedure, obsProp, TEMP_UNIT, offering, FEATURE3,
+                    OmConstants.OBS_TYPE_MEASUREMENT, session);
+        } finally {
+            returnSession(session);
+        }
+        req.setObservation(Lists.newArrayList(createObservation(constellation, TIME1, VAL1),
+                createObservation(constellation, TIME2, VAL2)));
+        InsertObservationResponse resp = insertObservationDAO.insertObservation(req);
+        this.serviceEventBus.submit(new ObservationInsertion(req, resp));
+    }
+
+    private OmObservation createObservation(OmObservationConstellation constellation, DateTime time, Double value) {
+        OmObservation obs = new OmObservation();
+        obs.setObservationConstellation(constellation);
+        obs.setResultTime(new TimeInstant(time));
+        SingleObservationValue<BigDecimal> obsVal = new SingleObservationValue<BigDecimal>();
+        obsVal.setPhenomenonTime(new TimeInstant(time));
+        obsVal.setValue(new QuantityValue(value, TEMP_UNIT));
+        obs.setValue(obsVal);
+        return obs;
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.hibernate;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.iceland.convert.ConverterException;
+import org.n52.shetland.ogc.gml.time.TimeInstant;
+import org.n52.shetland.ogc.om.OmConstants;
+import org.n52.shetland.ogc.om.OmObservation;
+import org.n52.shetland.ogc.om.OmObservationConstellation;
+import org.n52.shetland.ogc.om.SingleObservationValue;
+import org.n52.shetland.ogc.om.values.QuantityValue;
+import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
+import org.n52.shetland.ogc.sos.request.InsertObservationRequest;
+import org.n52.shetland.ogc.sos.response.InsertObservationResponse;
+import org.n52.sos.ds.hibernate.util.HibernateMetadataCache;
+import org.n52.sos.event.events.ObservationInsertion;
+import org.n52.svalbard.encode.exception.EncodingException;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Checks the duplicate check of the InsertObservation handler which is
+ * enabled by the setting
+ * {@link org.n52.sos.service.SosSettings#CHECK_DUPLICATED_OBSERVATIONS}.
+ *
+ * @since 5.3.2
+ */
+public class DuplicatedObservationInsertDAOTest extends AbstractObservationInsertDAOTest {
+
+    private static final String DUPLICATE_MESSAGE = "already exists in the database";
+
+    @Before
+    public void setUp() throws OwsExceptionReport, ConverterException, EncodingException {
+        super.setUp();
+        Session session = null;
+        try {
+            session = getSession();
+            HibernateMetadataCache.init(session);
+            insertSensor(PROCEDURE2, OFFERING2, OBSPROP2, null, OmConstants.OBS_TYPE_MEASUREMENT);
+            insertSensor(PROCEDURE3, OFFERING3, OBSPROP3, null, OmConstants.OBS_TYPE_MEASUREMENT);
+        } finally {
+            returnSession(session);
+        }
+    }
+
+    @Test
+    public void shouldBeDisabledByDefault() throws OwsExceptionReport, ConverterException {
+        assertThat(insertObservationDAO.isCheckDuplicatedObservations(), is(false));
+        insert(createObservation(getConstellation(PROCEDURE3, OBSPROP3, OFFERING3), TIME1, null));
+        try {
+            insert(createObservation(getConstellation(PROCEDURE3, OBSPROP3, OFFERING3), TIME1, null));
+            fail("the duplicated observation should be rejected by the database");
+        } catch (OwsExceptionReport owse) {
+            assertThat(owse.getMessage(), not(containsString(DUPLICATE_MESSAGE)));
+        }
+    }
+
+    @Test
+    public void shouldInsertNewObservations() throws OwsExceptionReport, ConverterException {
+        insertObservationDAO.setCheckDuplicatedObservations(true);
+        OmObservationConstellation constellation = getConstellation(PROCEDURE3, OBSPROP3, OFFERING3);
+        insert(createObservation(constellation, TIME1, null));
+        // before and after the last value of the dataset
+        insert(createObservation(constellation, TIME3, null), createObservation(constellation, TIME2, null));
+    }
+
+    @Test
+    public void shouldRejectDuplicatedObservations() throws OwsExceptionReport, ConverterException {
+        insertObservationDAO.setCheckDuplicatedObservations(true);
+        OmObservationConstellation constellation = getConstellation(PROCEDURE3, OBSPROP3, OFFERING3);
+        insert(createObservation(constellation, TIME1, null), createObservation(constellation, TIME2, null));
+        assertDuplicate(createObservation(constellation, TIME3, null),
+                createObservation(constellation, TIME2, null));
+    }
+
+    @Test
+    public void shouldRejectDuplicatedObservationsOfEachDataset() throws OwsExceptionReport, ConverterException {
+        insertObservationDAO.setCheckDuplicatedObservations(true);
+        OmObservationConstellation constellation2 = getConstellation(PROCEDURE2, OBSPROP2, OFFERING2);
+        OmObservationConstellation constellation3 = getConstellation(PROCEDURE3, OBSPROP3, OFFERING3);
+        insert(createObservation(constellation2, TIME1, null));
+        insert(createObservation(constellation3, TIME2, null));
+        // each time only exists in the other dataset
+        insert(createObservation(constellation3, TIME1, null), createObservation(constellation2, TIME2, null));
+        assertDuplicate(createObservation(constellation3, TIME3, null),
+                createObservation(constellation2, TIME1, null));
+    }
+
+    @Test
+    public void shouldRejectDuplicatedObservationsWithSeveralOfferings()
+            throws OwsExceptionReport, ConverterException {
+        insertObservationDAO.setCheckDuplicatedObservations(true);
+        insert(createObservation(getConstellation(PROCEDURE3, OBSPROP3, OFFERING3), TIME1, null));
+        // the observations are inserted into the dataset of the first offering
+        OmObservationConstellation constellation = getConstellation(PROCEDURE3, OBSPROP3, OFFERING3);
+        constellation.setOfferings(Sets.newLinkedHashSet(Arrays.asList(OFFERING3, OFFERING2)));
+        assertDuplicate(createObservation(constellation, TIME1, null));
+    }
+
+    @Test
+    public void shouldCheckHeightDepthOfObservationsWithTheSameTime() throws OwsExceptionReport, ConverterException {
+        insertObservationDAO.setCheckDuplicatedObservations(true);
+        OmObservationConstellation constellation = getConstellation(PROCEDURE3, OBSPROP3, OFFERING3);
+        insert(createObservation(constellation, TIME1, HEIGHT_DEPTH_VALUE));
+        // same time, other depth
+        insert(createObservation(constellation, TIME1, HEIGHT_DEPTH_VALUE_2));
+        assertDuplicate(createObservation(constellation, TIME2, HEIGHT_DEPTH_VALUE),
+                createObservation(constellation, TIME1, HEIGHT_DEPTH_VALUE_2));
+    }
+
+    private void assertDuplicate(OmObservation... observations) throws ConverterException {
+        try {
+            insert(observations);
+            fail("the duplicated observation should be rejected");
+        } catch (OwsExceptionReport owse) {
+            assertThat(owse.getMessage(), containsString(DUPLICATE_MESSAGE));
+        }
+    }
+
+    private void insert(OmObservation... observations) throws OwsExceptionReport {
+        List<OmObservation> list = Lists.newArrayList(observations);
+        InsertObservationRequest req = new InsertObservationRequest();
+        req.setAssignedSensorId(list.get(0).getObservationConstellation().getProcedureIdentifier());
+        req.setOfferings(Lists.newArrayList(list.get(0).getObservationConstellation().getOfferings()));
+        req.setObservation(list);
+        InsertObservationResponse resp = insertObservationDAO.insertObservation(req);
+        this.serviceEventBus.submit(new ObservationInsertion(req, resp));
+    }
+
+    private OmObservationConstellation getConstellation(String procedure, String obsProp, String offering)
+            throws OwsExceptionReport, ConverterException {
+        Session session = null;
+        try {
+            session = getSession();
+            return getOmObsConst(procedure, obsProp, TEMP_UNIT, offering, FEATURE3, OmConstants.OBS_TYPE_MEASUREMENT,
+                    session);
+        } finally {
+            returnSession(session);
+        }
+    }
+
+    private OmObservation createObservation(OmObservationConstellation constellation, DateTime time,
+            BigDecimal depth) {
+        OmObservation obs = new OmObservation();
+        obs.setObservationConstellation(constellation);
+        obs.setResultTime(new TimeInstant(time));
+        SingleObservationValue<BigDecimal> obsVal = new SingleObservationValue<BigDecimal>();
+        obsVal.setPhenomenonTime(new TimeInstant(time));
+        obsVal.setValue(new QuantityValue(VAL1, TEMP_UNIT));
+        obs.setValue(obsVal);
+        if (depth != null) {
+            obs.addParameter(createQuantityParameter(OmConstants.PARAMETER_NAME_DEPTH, depth, HEIGHT_DEPTH_UNIT));
+        }
+        return obs;
+    }
+
+}
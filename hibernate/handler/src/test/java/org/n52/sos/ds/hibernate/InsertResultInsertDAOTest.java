@@ -28,6 +28,10 @@
  */
 package org.n52.sos.ds.hibernate;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+
 import java.util.List;
 
 import org.hibernate.Session;
@@ -39,6 +43,7 @@ import org.n52.shetland.ogc.om.OmConstants;
 import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
 import org.n52.shetland.ogc.sos.SosResultEncoding;
 import org.n52.shetland.ogc.sos.SosResultStructure;
+import org.n52.shetland.ogc.sos.request.GetResultRequest;
 import org.n52.shetland.ogc.sos.request.InsertResultRequest;
 import org.n52.shetland.ogc.sos.request.InsertResultTemplateRequest;
 import org.n52.shetland.ogc.sos.response.InsertResultResponse;
@@ -93,6 +98,31 @@ public class InsertResultInsertDAOTest extends AbstractObservationInsertDAOTest
         checkObservation(OFFERING3, PROCEDURE3, OBSPROP3, TIME3, PROCEDURE3, OBSPROP3, FEATURE3, VAL3, TEMP_UNIT);
     }
 
+    @Test
+    public void testGetResultScrollsLikeList()
+            throws OwsExceptionReport, InterruptedException, EncodingException, ConverterException {
+        insertResultTemplate(RESULT_TEMPLATE, PROCEDURE3, OFFERING3, OBSPROP3, FEATURE3);
+        InsertResultRequest req = new InsertResultRequest();
+        req.setTemplateIdentifier(RESULT_TEMPLATE);
+        req.setResultValues(makeResultValueString(CollectionHelper.list(TIME1, TIME2, TIME3),
+                CollectionHelper.list(VAL1, VAL2, VAL3)));
+        InsertResultResponse resp = insertResultDAO.insertResult(req);
+        this.serviceEventBus.submit(new ResultInsertion(req, resp));
+
+        GetResultRequest request = new GetResultRequest();
+        request.setObservedProperty(OBSPROP3);
+        request.setOffering(OFFERING3);
+        getResultHandler.setScroll(false);
+        String listed = getResultHandler.getResult(request).getResultValues();
+        getResultHandler.setScroll(true);
+        // smaller than the number of values to clear the session in between
+        getResultHandler.setChunkSize(2);
+        String scrolled = getResultHandler.getResult(request).getResultValues();
+
+        assertThat(listed, startsWith("3" + BLOCK_SEPARATOR));
+        assertThat(scrolled, is(listed));
+    }
+
     private void insertResultTemplate(String identifier, String procedureId, String offeringId, String obsPropId,
             String featureId) throws OwsExceptionReport, ConverterException, EncodingException {
         InsertResultTemplateRequest req = new InsertResultTemplateRequest();
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.hibernate;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.criterion.Restrictions;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.n52.iceland.coding.SupportedTypeRepository;
+import org.n52.iceland.convert.ConverterException;
+import org.n52.io.request.IoParameters;
+import org.n52.series.db.DataAccessException;
+import org.n52.series.db.beans.DatasetEntity;
+import org.n52.series.db.beans.OfferingEntity;
+import org.n52.series.db.dao.DbQuery;
+import org.n52.series.db.dao.OfferingDao;
+import org.n52.shetland.ogc.gml.time.TimeInstant;
+import org.n52.shetland.ogc.gml.time.TimePeriod;
+import org.n52.shetland.ogc.om.OmConstants;
+import org.n52.shetland.ogc.om.OmObservation;
+import org.n52.shetland.ogc.om.OmObservationConstellation;
+import org.n52.shetland.ogc.om.SingleObservationValue;
+import org.n52.shetland.ogc.om.values.QuantityValue;
+import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
+import org.n52.shetland.ogc.sos.request.InsertObservationRequest;
+import org.n52.shetland.ogc.sos.response.InsertObservationResponse;
+import org.n52.shetland.util.CollectionHelper;
+import org.n52.sos.cache.InMemoryCacheImpl;
+import org.n52.sos.ds.cache.CacheUpdateStatistics;
+import org.n52.sos.ds.cache.base.ObservationTimeCacheUpdate;
+import org.n52.sos.ds.hibernate.util.HibernateMetadataCache;
+import org.n52.sos.event.events.ObservationInsertion;
+import org.n52.svalbard.encode.exception.EncodingException;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Checks that the {@link ObservationTimeCacheUpdate} aggregate query returns
+ * the same global extents as extending them with the times of each offering.
+ *
+ * @since 5.3.2
+ */
+public class ObservationTimeCacheUpdateTest extends AbstractObservationInsertDAOTest {
+
+    @Before
+    public void setUp() throws OwsExceptionReport, ConverterException, EncodingException {
+        super.setUp();
+        Session session = null;
+        try {
+            session = getSession();
+            HibernateMetadataCache.init(session);
+            insertSensor(PROCEDURE1, OFFERING1, OBSPROP1, null, OmConstants.OBS_TYPE_MEASUREMENT);
+            insertSensor(PROCEDURE2, OFFERING2, OBSPROP2, null, OmConstants.OBS_TYPE_MEASUREMENT);
+            insertSensor(PROCEDURE3, OFFERING3, OBSPROP3, null, OmConstants.OBS_TYPE_MEASUREMENT);
+        } finally {
+            returnSession(session);
+        }
+    }
+
+    @Test
+    public void shouldHaveNoExtentsWithoutObservations() throws OwsExceptionReport, DataAccessException {
+        InMemoryCacheImpl cache = update();
+        assertThat(cache.getMinPhenomenonTime(), nullValue());
+        assertThat(cache.getMaxPhenomenonTime(), nullValue());
+        assertThat(cache.getMinResultTime(), nullValue());
+        assertThat(cache.getMaxResultTime(), nullValue());
+        checkExtents(cache);
+    }
+
+    @Test
+    public void shouldAggregateTheOfferingTimes() throws OwsExceptionReport, DataAccessException {
+        insertObservation(PROCEDURE1, OFFERING1, OBSPROP1, TIME2, TIME2);
+        insertObservation(PROCEDURE2, OFFERING2, OBSPROP2, TIME1, TIME3);
+        // the offering without observations has no times
+        checkExtents(update());
+    }
+
+    @Test
+    public void shouldAggregateTheOfferingTimesOfASingleObservation() throws OwsExceptionReport, DataAccessException {
+        insertObservation(PROCEDURE3, OFFERING3, OBSPROP3, TIME3, TIME2);
+        checkExtents(update());
+    }
+
+    @Test
+    public void shouldIgnoreTheOfferingTimesOfDeletedDatasets() throws OwsExceptionReport {
+        insertObservation(PROCEDURE1, OFFERING1, OBSPROP1, TIME2, TIME2);
+        insertObservation(PROCEDURE2, OFFERING2, OBSPROP2, TIME1, TIME3);
+        deleteDatasets(OFFERING2);
+        InMemoryCacheImpl cache = update();
+        checkTime(cache.getMinPhenomenonTime(), TIME2);
+        checkTime(cache.getMaxPhenomenonTime(), TIME2);
+        checkTime(cache.getMinResultTime(), TIME2);
+        checkTime(cache.getMaxResultTime(), TIME2);
+    }
+
+    private InMemoryCacheImpl update() throws OwsExceptionReport {
+        InMemoryCacheImpl cache = new InMemoryCacheImpl();
+        cache.setSupportedTypeRepository(Mockito.mock(SupportedTypeRepository.class));
+        List<OwsExceptionReport> errors = CollectionHelper.synchronizedList();
+        Session session = null;
+        try {
+            session = getSession();
+            ObservationTimeCacheUpdate update = new ObservationTimeCacheUpdate();
+            update.setCache(cache);
+            update.setErrors(errors);
+            update.setSession(session);
+            update.setStatistics(new CacheUpdateStatistics());
+            update.execute();
+        } finally {
+            returnSession(session);
+        }
+        assertThat(errors, is(empty()));
+        return cache;
+    }
+
+    /**
+     * Compares the cache with the extents of the offering times extended one
+     * by one, as the update did before the aggregate query.
+     */
+    private void checkExtents(InMemoryCacheImpl cache) throws DataAccessException {
+        TimePeriod phenomenonTime = new TimePeriod();
+        TimePeriod resultTime = new TimePeriod();
+        Session session = null;
+        try {
+            session = getSession();
+            List<OfferingEntity> offerings =
+                    new OfferingDao(session).getAllInstances(new DbQuery(IoParameters.createDefaults()));
+            assertThat(offerings.size(), is(3));
+            for (OfferingEntity offering : offerings) {
+                phenomenonTime.extendToContain(
+                        new TimePeriod(offering.getSamplingTimeStart(), offering.getSamplingTimeEnd()));
+                resultTime.extendToContain(new TimePeriod(offering.getResultTimeStart(), offering.getResultTimeEnd()));
+            }
+        } finally {
+            returnSession(session);
+        }
+        checkTime(cache.getMinPhenomenonTime(), phenomenonTime.getStart());
+        checkTime(cache.getMaxPhenomenonTime(), phenomenonTime.getEnd());
+        checkTime(cache.getMinResultTime(), resultTime.getStart());
+        checkTime(cache.getMaxResultTime(), resultTime.getEnd());
+    }
+
+    private void deleteDatasets(String offering) {
+        Session session = getSession();
+        Transaction transaction = null;
+        try {
+            transaction = session.beginTransaction();
+            @SuppressWarnings("unchecked")
+            List<DatasetEntity> datasets = session.createCriteria(DatasetEntity.class)
+                    .createCriteria(DatasetEntity.PROPERTY_OFFERING)
+                    .add(Restrictions.eq(OfferingEntity.IDENTIFIER, offering))
+                    .list();
+            assertThat(datasets.isEmpty(), is(false));
+            for (DatasetEntity dataset : datasets) {
+                dataset.setDeleted(true);
+                session.update(dataset);
+            }
+            session.flush();
+            transaction.commit();
+        } catch (HibernateException ex) {
+            if (transaction != null) {
+                transaction.rollback();
+            }
+            throw ex;
+        } finally {
+            returnSession(session);
+        }
+    }
+
+    private void checkTime(DateTime actual, DateTime expected) {
+        if (expected == null) {
+            assertThat(actual, nullValue());
+        } else {
+            assertThat(actual.getMillis(), is(expected.getMillis()));
+        }
+    }
+
+    private void insertObservation(String procedure, String offering, String obsProp, DateTime phenomenonTime,
+            DateTime resultTime) throws OwsExceptionReport {
+        InsertObservationRequest req = new InsertObservationRequest();
+        req.setAssignedSensorId(procedure);
+        req.setOfferings(Lists.newArrayList(offering));
+        OmObservationConstellation constellation;
+        Session session = null;
+        try {
+            session = getSession();
+            constellation = getOmObsConst(procedure, obsProp, TEMP_UNIT, offering, FEATURE3,
+                    OmConstants.OBS_TYPE_MEASUREMENT, session);
+        } finally {
+            returnSession(session);
+        }
+        OmObservation obs = new OmObservation();
+        obs.setObservationConstellation(constellation);
+        obs.setResultTime(new TimeInstant(resultTime));
+        SingleObservationValue<BigDecimal> obsVal = new SingleObservationValue<BigDecimal>();
+        obsVal.setPhenomenonTime(new TimeInstant(phenomenonTime));
+        obsVal.setValue(new QuantityValue(VAL1, TEMP_UNIT));
+        obs.setValue(obsVal);
+        req.setObservation(Lists.newArrayList(obs));
+        InsertObservationResponse resp = insertObservationDAO.insertObservation(req);
+        this.serviceEventBus.submit(new ObservationInsertion(req, resp));
+    }
+
+}
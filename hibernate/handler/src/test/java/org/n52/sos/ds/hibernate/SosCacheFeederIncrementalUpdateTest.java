@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.hibernate;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.iceland.coding.SupportedTypeRepository;
+import org.n52.iceland.convert.ConverterException;
+import org.n52.series.db.beans.DatasetEntity;
+import org.n52.series.db.da.sos.SOSHibernateSessionHolder;
+import org.n52.shetland.ogc.gml.time.TimeInstant;
+import org.n52.shetland.ogc.om.OmConstants;
+import org.n52.shetland.ogc.om.OmObservation;
+import org.n52.shetland.ogc.om.OmObservationConstellation;
+import org.n52.shetland.ogc.om.SingleObservationValue;
+import org.n52.shetland.ogc.om.values.QuantityValue;
+import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
+import org.n52.shetland.ogc.sos.request.InsertObservationRequest;
+import org.n52.shetland.ogc.sos.response.InsertObservationResponse;
+import org.n52.sos.cache.InMemoryCacheImpl;
+import org.n52.sos.ds.SosCacheFeederHandler;
+import org.n52.sos.ds.hibernate.util.HibernateMetadataCache;
+import org.n52.sos.event.events.ObservationInsertion;
+import org.n52.sos.util.GeometryHandler;
+import org.n52.svalbard.encode.exception.EncodingException;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Checks when the {@link SosCacheFeederHandler} updates the cache
+ * incrementally and when a complete update is required.
+ *
+ * @since 5.3.2
+ */
+public class SosCacheFeederIncrementalUpdateTest extends AbstractObservationInsertDAOTest {
+
+    private final SosCacheFeederHandler feeder = new SosCacheFeederHandler();
+
+    private InMemoryCacheImpl feederCache;
+
+    @Before
+    public void setUp() throws OwsExceptionReport, ConverterException, EncodingException {
+        super.setUp();
+        SOSHibernateSessionHolder holder = new SOSHibernateSessionHolder();
+        holder.setConnectionProvider(this);
+        feeder.setConnectionProvider(holder);
+        GeometryHandler geometryHandler = new GeometryHandler();
+        geometryHandler.setAuthority("EPSG");
+        geometryHandler.setStorageEpsg(4326);
+        geometryHandler.setSpatialDatasource(true);
+        geometryHandler.init();
+        feeder.setGeometryHandler(geometryHandler);
+        feederCache = createCache();
+        Session session = null;
+        try {
+            session = getSession();
+            HibernateMetadataCache.init(session);
+            insertSensor(PROCEDURE1, OFFERING1, OBSPROP1, null, OmConstants.OBS_TYPE_MEASUREMENT);
+        } finally {
+            returnSession(session);
+        }
+    }
+
+    @Test
+    public void shouldRequireACompleteUpdateFirst() throws OwsExceptionReport {
+        insertObservation(PROCEDURE1, OFFERING1, OBSPROP1, TIME1, VAL1);
+        assertThat(feeder.updateCacheIncrementally(feederCache), is(false));
+        assertThat(feederCache.getOfferings(), not(hasItem(OFFERING1)));
+    }
+
+    @Test
+    public void shouldUpdateIncrementallyWithoutChanges() throws OwsExceptionReport {
+        insertObservation(PROCEDURE1, OFFERING1, OBSPROP1, TIME1, VAL1);
+        feeder.updateCache(feederCache);
+        assertThat(feeder.updateCacheIncrementally(feederCache), is(true));
+        assertThat(feederCache.getOfferings(), hasItem(OFFERING1));
+    }
+
+    @Test
+    public void shouldUpdateChangedDatasetsIncrementally() throws OwsExceptionReport {
+        insertObservation(PROCEDURE1, OFFERING1, OBSPROP1, TIME1, VAL1);
+        feeder.updateCache(feederCache);
+        assertThat(feederCache.getMaxPhenomenonTimeForOffering(OFFERING1).getMillis(), is(TIME1.getMillis()));
+        insertObservation(PROCEDURE1, OFFERING1, OBSPROP1, TIME3, VAL3);
+        assertThat(feeder.updateCacheIncrementally(feederCache), is(true));
+        assertThat(feederCache.getMaxPhenomenonTimeForOffering(OFFERING1).getMillis(), is(TIME3.getMillis()));
+        // the same as a complete update
+        InMemoryCacheImpl completeCache = createCache();
+        feeder.updateCache(completeCache);
+        assertThat(feederCache.getMaxPhenomenonTimeForOffering(OFFERING1),
+                is(completeCache.getMaxPhenomenonTimeForOffering(OFFERING1)));
+        assertThat(feederCache.getMinPhenomenonTimeForOffering(OFFERING1),
+                is(completeCache.getMinPhenomenonTimeForOffering(OFFERING1)));
+    }
+
+    @Test
+    public void shouldUpdateDatasetsWithObservationsWithinTheTimeBounds() throws OwsExceptionReport {
+        insertObservation(PROCEDURE1, OFFERING1, OBSPROP1, TIME1, VAL1);
+        insertObservation(PROCEDURE1, OFFERING1, OBSPROP1, TIME3, VAL3);
+        feeder.updateCache(feederCache);
+        // back-filled, only the result time is beyond the bounds
+        DateTime resultTime = TIME3.plusDays(1);
+        insertObservation(PROCEDURE1, OFFERING1, OBSPROP1, TIME2, resultTime, VAL2);
+        assertThat(feeder.updateCacheIncrementally(feederCache), is(true));
+        assertThat(feederCache.getMaxResultTimeForOffering(OFFERING1).getMillis(), is(resultTime.getMillis()));
+    }
+
+    @Test
+    public void shouldRequireACompleteUpdateForDatasetsWithUnknownReferences() throws OwsExceptionReport {
+        insertObservation(PROCEDURE1, OFFERING1, OBSPROP1, TIME1, VAL1);
+        feeder.updateCache(feederCache);
+        insertSensor(PROCEDURE2, OFFERING2, OBSPROP2, null, OmConstants.OBS_TYPE_MEASUREMENT);
+        insertObservation(PROCEDURE2, OFFERING2, OBSPROP2, TIME2, VAL2);
+        assertThat(feeder.updateCacheIncrementally(feederCache), is(false));
+        // the complete update stores the marks of the new dataset
+        feeder.updateCache(feederCache);
+        assertThat(feederCache.getOfferings(), hasItem(OFFERING2));
+        assertThat(feeder.updateCacheIncrementally(feederCache), is(true));
+    }
+
+    @Test
+    public void shouldRequireACompleteUpdateForRemovedDatasets() throws OwsExceptionReport {
+        insertObservation(PROCEDURE1, OFFERING1, OBSPROP1, TIME1, VAL1);
+        feeder.updateCache(feederCache);
+        deleteDatasets();
+        assertThat(feeder.updateCacheIncrementally(feederCache), is(false));
+        feeder.updateCache(feederCache);
+        assertThat(feeder.updateCacheIncrementally(feederCache), is(true));
+    }
+
+    private InMemoryCacheImpl createCache() {
+        return (InMemoryCacheImpl) new InMemoryCacheImpl().setSupportedTypeRepository(new SupportedTypeRepository());
+    }
+
+    private void deleteDatasets() {
+        Session session = getSession();
+        Transaction transaction = null;
+        try {
+            transaction = session.beginTransaction();
+            @SuppressWarnings("unchecked")
+            List<DatasetEntity> datasets = session.createCriteria(DatasetEntity.class).list();
+            for (DatasetEntity dataset : datasets) {
+                dataset.setDeleted(true);
+                session.update(dataset);
+            }
+            session.flush();
+            transaction.commit();
+        } catch (HibernateException ex) {
+            if (transaction != null) {
+                transaction.rollback();
+            }
+            throw ex;
+        } finally {
+            returnSession(session);
+        }
+    }
+
+    private void insertObservation(String procedure, String offering, String obsProp, DateTime time, Double value)
+            throws OwsExceptionReport {
+        insertObservation(procedure, offering, obsProp, time, time, value);
+    }
+
+    private void insertObservation(String procedure, String offering, String obsProp, DateTime time,
+            DateTime resultTime, Double value) throws OwsExceptionReport {
+        InsertObservationRequest req = new InsertObservationRequest();
+        req.setAssignedSensorId(procedure);
+        req.setOfferings(Lists.newArrayList(offering));
+        OmObservationConstellation constellation;
+        Session session = null;
+        try {
+            session = getSession();
+            constellation = getOmObsConst(procedure, obsProp, TEMP_UNIT, offering, FEATURE3,
+                    OmConstants.OBS_TYPE_MEASUREMENT, session);
+        } finally {
+            returnSession(session);
+        }
+        OmObservation obs = new OmObservation();
+        obs.setObservationConstellation(constellation);
+        obs.setResultTime(new TimeInstant(resultTime));
+        SingleObservationValue<BigDecimal> obsVal = new SingleObservationValue<BigDecimal>();
+        obsVal.setPhenomenonTime(new TimeInstant(time));
+        obsVal.setValue(new QuantityValue(value, TEMP_UNIT));
+        obs.setValue(obsVal);
+        req.setObservation(Lists.newArrayList(obs));
+        InsertObservationResponse resp = insertObservationDAO.insertObservation(req);
+        this.serviceEventBus.submit(new ObservationInsertion(req, resp));
+    }
+
+}
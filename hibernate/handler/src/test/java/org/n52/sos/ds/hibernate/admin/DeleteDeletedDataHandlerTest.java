@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.hibernate.admin;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.n52.iceland.convert.ConverterException;
+import org.n52.series.db.beans.DataEntity;
+import org.n52.series.db.beans.DatasetEntity;
+import org.n52.shetland.ogc.gml.time.TimeInstant;
+import org.n52.shetland.ogc.om.OmConstants;
+import org.n52.shetland.ogc.om.OmObservation;
+import org.n52.shetland.ogc.om.OmObservationConstellation;
+import org.n52.shetland.ogc.om.SingleObservationValue;
+import org.n52.shetland.ogc.om.values.QuantityValue;
+import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
+import org.n52.shetland.ogc.sos.request.InsertObservationRequest;
+import org.n52.shetland.ogc.sos.response.InsertObservationResponse;
+import org.n52.sos.ds.hibernate.AbstractObservationInsertDAOTest;
+import org.n52.sos.ds.hibernate.util.HibernateMetadataCache;
+import org.n52.sos.event.events.ObservationInsertion;
+import org.n52.svalbard.encode.exception.EncodingException;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Checks that the {@link DeleteDeletedDataHandler} deletes a deleted dataset
+ * in several batches and that an interrupted job is resumed after a restart.
+ *
+ * @since 5.3.2
+ */
+public class DeleteDeletedDataHandlerTest extends AbstractObservationInsertDAOTest {
+
+    private static final long TIMEOUT = 30000;
+
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private DeleteDeletedDataHandler handler;
+
+    private Long dataset;
+
+    @Before
+    public void setUp() throws OwsExceptionReport, ConverterException, EncodingException {
+        super.setUp();
+        Session session = null;
+        try {
+            session = getSession();
+            HibernateMetadataCache.init(session);
+            insertSensor(PROCEDURE1, OFFERING1, OBSPROP1, null, OmConstants.OBS_TYPE_MEASUREMENT);
+        } finally {
+            returnSession(session);
+        }
+        insertObservation(TIME1, VAL1);
+        insertObservation(TIME2, VAL2);
+        insertObservation(TIME3, VAL3);
+        dataset = deleteDataset();
+    }
+
+    @After
+    public void destroyHandler() {
+        if (handler != null) {
+            handler.destroy();
+        }
+    }
+
+    @Test
+    public void shouldDeleteTheDatasetInBatches() throws Exception {
+        handler = createHandler(0);
+        handler.deleteDeletedData();
+        Map<String, String> progress = awaitEnd(handler);
+        assertThat(progress.get("state"), is("finished"));
+        assertThat(progress.get("deletedDatasets"), is("1"));
+        assertThat(progress.get("deletedObservations"), is("3"));
+        assertThat(countObservations(), is(0L));
+        assertThat(getDataset(), nullValue());
+        assertThat(Files.exists(getPendingFile()), is(false));
+    }
+
+    @Test
+    public void shouldResumeAnInterruptedDeletion() throws Exception {
+        // one observation per second, the job is stopped while waiting after the first batch
+        handler = createHandler(1);
+        handler.deleteDeletedData();
+        long timeout = System.currentTimeMillis() + TIMEOUT;
+        while (Long.parseLong(handler.getProgress().getOrDefault("deletedObservations", "0")) == 0) {
+            assertThat(System.currentTimeMillis() < timeout, is(true));
+            Thread.sleep(10);
+        }
+        handler.destroy();
+        assertThat(handler.getProgress().get("state"), is("stopped"));
+        assertThat(countObservations(), is(2L));
+        assertThat(getDataset(), is(dataset));
+        assertThat(Files.exists(getPendingFile()), is(true));
+
+        // a restarted handler resumes the recorded job
+        handler = createHandler(0);
+        Map<String, String> progress = awaitEnd(handler);
+        assertThat(progress.get("state"), is("finished"));
+        assertThat(progress.get("deletedObservations"), is("2"));
+        assertThat(countObservations(), is(0L));
+        assertThat(getDataset(), nullValue());
+        assertThat(Files.exists(getPendingFile()), is(false));
+    }
+
+    private DeleteDeletedDataHandler createHandler(int rowsPerSecond) {
+        DeleteDeletedDataHandler deleteHandler = new DeleteDeletedDataHandler();
+        deleteHandler.initForTesting(daoFactory, this);
+        deleteHandler.setBatchSize(1);
+        deleteHandler.setRowsPerSecond(rowsPerSecond);
+        deleteHandler.setCacheFileFolder(tempFolder.getRoot());
+        deleteHandler.init();
+        return deleteHandler;
+    }
+
+    private Path getPendingFile() {
+        return new File(tempFolder.getRoot(), "delete-deleted-data.pending").toPath();
+    }
+
+    private Map<String, String> awaitEnd(DeleteDeletedDataHandler deleteHandler) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + TIMEOUT;
+        Map<String, String> progress = deleteHandler.getProgress();
+        while (!progress.containsKey("finished")) {
+            assertThat(System.currentTimeMillis() < timeout, is(true));
+            Thread.sleep(10);
+            progress = deleteHandler.getProgress();
+        }
+        assertThat(progress.get("error"), nullValue());
+        return progress;
+    }
+
+    private long countObservations() {
+        Session session = null;
+        try {
+            session = getSession();
+            Number count = (Number) session.createCriteria(DataEntity.class)
+                    .add(Restrictions.eq(DataEntity.PROPERTY_DATASET_ID, dataset))
+                    .setProjection(Projections.rowCount())
+                    .uniqueResult();
+            return count.longValue();
+        } finally {
+            returnSession(session);
+        }
+    }
+
+    private Long getDataset() {
+        Session session = null;
+        try {
+            session = getSession();
+            DatasetEntity entity = session.get(DatasetEntity.class, dataset);
+            return entity == null ? null : entity.getId();
+        } finally {
+            returnSession(session);
+        }
+    }
+
+    private Long deleteDataset() {
+        Session session = getSession();
+        Transaction transaction = null;
+        try {
+            transaction = session.beginTransaction();
+            DatasetEntity entity = (DatasetEntity) session.createCriteria(DatasetEntity.class).uniqueResult();
+            entity.setDeleted(true);
+            entity.setPublished(false);
+            session.update(entity);
+            session.flush();
+            transaction.commit();
+            return entity.getId();
+        } catch (HibernateException ex) {
+            if (transaction != null) {
+                transaction.rollback();
+            }
+            throw ex;
+        } finally {
+            returnSession(session);
+        }
+    }
+
+    private void insertObservation(DateTime time, Double value) throws OwsExceptionReport {
+        InsertObservationRequest req = new InsertObservationRequest();
+        req.setAssignedSensorId(PROCEDURE1);
+        req.setOfferings(Lists.newArrayList(OFFERING1));
+        OmObservationConstellation constellation;
+        Session session = null;
+        try {
+            session = getSession();
+            constellation = getOmObsConst(PROCEDURE1, OBSPROP1, TEMP_UNIT, OFFERING1, FEATURE3,
+                    OmConstants.OBS_TYPE_MEASUREMENT, session);
+        } finally {
+            returnSession(session);
+        }
+        OmObservation obs = new OmObservation();
+        obs.setObservationConstellation(constellation);
+        obs.setResultTime(new TimeInstant(time));
+        SingleObservationValue<BigDecimal> obsVal = new SingleObservationValue<BigDecimal>();
+        obsVal.setPhenomenonTime(new TimeInstant(time));
+        obsVal.setValue(new QuantityValue(value, TEMP_UNIT));
+        obs.setValue(obsVal);
+        req.setObservation(Lists.newArrayList(obs));
+        InsertObservationResponse resp = insertObservationDAO.insertObservation(req);
+        this.serviceEventBus.submit(new ObservationInsertion(req, resp));
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.hibernate.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.n52.shetland.ogc.gml.CodeWithAuthority;
+import org.n52.shetland.ogc.om.OmObservableProperty;
+import org.n52.shetland.ogc.om.OmObservationConstellation;
+import org.n52.shetland.ogc.om.features.samplingFeatures.SamplingFeature;
+
+import com.google.common.collect.Sets;
+
+public class DatasetLocksTest {
+
+    private static final long TIMEOUT = 5;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldRunDisjointKeysConcurrently() throws Exception {
+        DatasetLocks locks = new DatasetLocks(1024);
+        CountDownLatch bothHeld = new CountDownLatch(2);
+        Future<Boolean> first = executor.submit(() -> holdUntil(locks, key("p1"), bothHeld));
+        Future<Boolean> second = executor.submit(() -> holdUntil(locks, key("p2"), bothHeld));
+        assertTrue(first.get(TIMEOUT, TimeUnit.SECONDS));
+        assertTrue(second.get(TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shouldSerializeSharedKeys() throws Exception {
+        DatasetLocks locks = new DatasetLocks();
+        AtomicInteger entered = new AtomicInteger();
+        Future<?> waiting;
+        try (DatasetLocks.Lease lease = locks.lock(key("p1"))) {
+            waiting = executor.submit(() -> {
+                try (DatasetLocks.Lease other = locks.lock(Sets.union(key("p2"), key("p1")))) {
+                    entered.incrementAndGet();
+                }
+            });
+            Thread.sleep(200);
+            assertEquals(0, entered.get());
+        }
+        waiting.get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(1, entered.get());
+    }
+
+    @Test
+    public void shouldCreateKeysForDatasetAndFeature() {
+        OmObservationConstellation constellation = new OmObservationConstellation()
+                .setObservableProperty(new OmObservableProperty("obsProp"))
+                .setOfferings(Sets.newHashSet("offering1", "offering2"));
+        constellation.setFeatureOfInterest(new SamplingFeature(new CodeWithAuthority("feature")));
+        Collection<String> keys = DatasetLocks.getKeys(constellation);
+        assertEquals(3, keys.size());
+        assertTrue(keys.contains(DatasetLocks.getDatasetKey(null, "obsProp", "offering1")));
+        assertTrue(keys.contains(DatasetLocks.getDatasetKey(null, "obsProp", "offering2")));
+        assertTrue(keys.contains(DatasetLocks.getFeatureKey("feature")));
+    }
+
+    private boolean holdUntil(DatasetLocks locks, Collection<String> keys, CountDownLatch latch)
+            throws InterruptedException {
+        try (DatasetLocks.Lease lease = locks.lock(keys)) {
+            latch.countDown();
+            return latch.await(TIMEOUT, TimeUnit.SECONDS);
+        }
+    }
+
+    private Set<String> key(String procedure) {
+        return Collections.singleton(DatasetLocks.getDatasetKey(procedure, "obsProp", "offering"));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.hibernate.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class ResultValuesTokenizerTest {
+
+    private static final String TOKEN_SEPARATOR = ",";
+
+    private static final String BLOCK_SEPARATOR = "@@";
+
+    @Test
+    public void shouldTokenizeBlocks() {
+        List<List<String>> blocks = tokenize("2012-11-19T13:30:00Z,12.5@@2012-11-19T13:31:00Z,13.0");
+        assertEquals(2, blocks.size());
+        assertEquals(Arrays.asList("2012-11-19T13:30:00Z", "12.5"), blocks.get(0));
+        assertEquals(Arrays.asList("2012-11-19T13:31:00Z", "13.0"), blocks.get(1));
+    }
+
+    @Test
+    public void shouldSkipPrecedingCountValue() {
+        List<List<String>> blocks = tokenize("2@@a,1@@b,2");
+        assertEquals(2, blocks.size());
+        assertEquals(Arrays.asList("a", "1"), blocks.get(0));
+        assertEquals(Arrays.asList("b", "2"), blocks.get(1));
+    }
+
+    @Test
+    public void shouldIgnoreEmptyBlocks() {
+        List<List<String>> blocks = tokenize("a,1@@@@b,2@@");
+        assertEquals(2, blocks.size());
+        assertEquals(Arrays.asList("b", "2"), blocks.get(1));
+    }
+
+    @Test
+    public void shouldKeepEmptyTokens() {
+        List<List<String>> blocks = tokenize("a,,@@b,2");
+        assertEquals(Arrays.asList("a", "", ""), blocks.get(0));
+    }
+
+    @Test
+    public void shouldMatchSeparatorsLiterally() {
+        ResultValuesTokenizer tokenizer = new ResultValuesTokenizer("a|1.b|2", "|", ".");
+        assertEquals(Arrays.asList("a", "1"), tokenizer.next());
+        assertEquals(Arrays.asList("b", "2"), tokenizer.next());
+        assertFalse(tokenizer.hasNext());
+    }
+
+    @Test
+    public void shouldHandleEmptyValues() {
+        assertFalse(new ResultValuesTokenizer("", TOKEN_SEPARATOR, BLOCK_SEPARATOR).hasNext());
+    }
+
+    private List<List<String>> tokenize(String values) {
+        return Lists.newArrayList(new ResultValuesTokenizer(values, TOKEN_SEPARATOR, BLOCK_SEPARATOR));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.hibernate.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.junit.Test;
+import org.n52.series.db.beans.CodespaceEntity;
+import org.n52.sos.ds.hibernate.HibernateTestCase;
+import org.n52.sos.ds.hibernate.dao.CodespaceDAO;
+
+public class SharedEntityInsertionTest extends HibernateTestCase {
+
+    private static final String CODESPACE1 = "http://www.example.org/shared-entity-insertion/1";
+
+    private static final String CODESPACE2 = "http://www.example.org/shared-entity-insertion/2";
+
+    private static final String CODESPACE3 = "http://www.example.org/shared-entity-insertion/3";
+
+    @Test
+    public void shouldInsertInTheTransactionOfTheCaller() {
+        Session session = getSession();
+        try {
+            Transaction transaction = session.beginTransaction();
+            CodespaceEntity codespace = new CodespaceDAO(true).getOrInsertCodespace(CODESPACE1, session);
+            assertThat(session.contains(codespace), is(true));
+            transaction.rollback();
+            assertThat(new CodespaceDAO().getCodespace(CODESPACE1, session), nullValue());
+        } finally {
+            returnSession(session);
+        }
+    }
+
+    @Test
+    public void shouldReadTheEntityOfAConcurrentTransaction() {
+        CodespaceEntity committed;
+        Session session = getSession();
+        try {
+            Transaction transaction = session.beginTransaction();
+            committed = new CodespaceDAO().getOrInsertCodespace(CODESPACE2, session);
+            transaction.commit();
+        } finally {
+            returnSession(session);
+        }
+        session = getSession();
+        try {
+            Transaction transaction = session.beginTransaction();
+            CodespaceDAO dao = new CodespaceDAO();
+            AtomicInteger queries = new AtomicInteger();
+            // the first query misses the entity, as if it was committed after the query
+            CodespaceEntity codespace = SharedEntityInsertion.getOrInsert(
+                    s -> queries.getAndIncrement() == 0 ? null : dao.getCodespace(CODESPACE2, s), s -> {
+                        CodespaceEntity entity = new CodespaceEntity();
+                        entity.setName(CODESPACE2);
+                        return entity;
+                    }, true, session);
+            assertThat(codespace.getId(), is(committed.getId()));
+            // only the savepoint was rolled back, the transaction is still usable
+            assertThat(new CodespaceDAO(true).getOrInsertCodespace(CODESPACE3, session), notNullValue());
+            transaction.commit();
+        } finally {
+            returnSession(session);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.hibernate.values.series;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.iceland.convert.ConverterException;
+import org.n52.shetland.ogc.gml.time.TimeInstant;
+import org.n52.shetland.ogc.om.OmConstants;
+import org.n52.shetland.ogc.om.OmObservation;
+import org.n52.shetland.ogc.om.OmObservationConstellation;
+import org.n52.shetland.ogc.om.SingleObservationValue;
+import org.n52.shetland.ogc.om.StreamingValue;
+import org.n52.shetland.ogc.om.TimeValuePair;
+import org.n52.shetland.ogc.om.values.QuantityValue;
+import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
+import org.n52.shetland.ogc.sos.request.GetObservationRequest;
+import org.n52.shetland.ogc.sos.request.InsertObservationRequest;
+import org.n52.shetland.ogc.sos.response.InsertObservationResponse;
+import org.n52.sos.ds.hibernate.AbstractObservationInsertDAOTest;
+import org.n52.sos.ds.hibernate.util.HibernateMetadataCache;
+import org.n52.sos.event.events.ObservationInsertion;
+import org.n52.svalbard.encode.exception.EncodingException;
+
+import com.google.common.collect.Lists;
+
+public class HibernateChunkSeriesStreamingValueTest extends AbstractObservationInsertDAOTest {
+
+    @Before
+    public void setUp() throws OwsExceptionReport, ConverterException, EncodingException {
+        super.setUp();
+        Session session = null;
+        try {
+            session = getSession();
+            HibernateMetadataCache.init(session);
+            insertSensor(PROCEDURE3, OFFERING3, OBSPROP3, null, OmConstants.OBS_TYPE_MEASUREMENT);
+        } finally {
+            returnSession(session);
+        }
+        // smaller than the number of values to read more than one chunk
+        getObsDAO.setChunkSize(2);
+    }
+
+    @Test
+    public void shouldReadTimeValuePairs() throws OwsExceptionReport, InterruptedException {
+        insertObservations();
+        StreamingValue<?> value = getStreamingValue(null);
+        List<TimeValuePair> values = new ArrayList<>();
+        while (value.hasNext()) {
+            values.add(value.nextValue());
+        }
+        assertThat(values.size(), is(3));
+        checkTimeValuePair(values.get(0), TIME1, VAL1);
+        checkTimeValuePair(values.get(1), TIME2, VAL2);
+        checkTimeValuePair(values.get(2), TIME3, VAL3);
+        assertThat(value.nextValue(), nullValue());
+    }
+
+    @Test
+    public void shouldReadObservations() throws OwsExceptionReport, InterruptedException {
+        insertObservations();
+        StreamingValue<?> value = getStreamingValue(null);
+        List<OmObservation> observations = new ArrayList<>();
+        while (value.hasNext()) {
+            observations.add(value.next());
+        }
+        assertThat(observations.size(), is(3));
+        checkValue(observations.get(0), TIME1, VAL1, TEMP_UNIT);
+        checkValue(observations.get(1), TIME2, VAL2, TEMP_UNIT);
+        checkValue(observations.get(2), TIME3, VAL3, TEMP_UNIT);
+    }
+
+    @Test
+    public void shouldReadTimeValuePairsWithoutHasNext() throws OwsExceptionReport, InterruptedException {
+        insertObservations();
+        StreamingValue<?> value = getStreamingValue(null);
+        checkTimeValuePair(value.nextValue(), TIME1, VAL1);
+        checkTimeValuePair(value.nextValue(), TIME2, VAL2);
+        checkTimeValuePair(value.nextValue(), TIME3, VAL3);
+        assertThat(value.nextValue(), nullValue());
+    }
+
+    @Test
+    public void shouldContinueWithObservationsAfterTimeValuePairs()
+            throws OwsExceptionReport, InterruptedException {
+        insertObservations();
+        StreamingValue<?> value = getStreamingValue(null);
+        assertThat(value.hasNext(), is(true));
+        checkTimeValuePair(value.nextValue(), TIME1, VAL1);
+        assertThat(value.hasNext(), is(true));
+        checkValue(value.next(), TIME2, VAL2, TEMP_UNIT);
+        assertThat(value.hasNext(), is(true));
+        checkValue(value.next(), TIME3, VAL3, TEMP_UNIT);
+        assertThat(value.hasNext(), is(false));
+    }
+
+    @Test
+    public void shouldNotHaveValuesOutsideOfTheTemporalFilter() throws OwsExceptionReport, InterruptedException {
+        insertObservations();
+        StreamingValue<?> value = getStreamingValue(OBS_TIME);
+        assertThat(value.hasNext(), is(false));
+        assertThat(value.nextValue(), nullValue());
+        assertThat(getStreamingValue(OBS_TIME).next(), nullValue());
+    }
+
+    private void insertObservations() throws OwsExceptionReport, InterruptedException {
+        InsertObservationRequest req = new InsertObservationRequest();
+        req.setAssignedSensorId(PROCEDURE3);
+        req.setOfferings(Lists.newArrayList(OFFERING3));
+        OmObservationConstellation constellation;
+        Session session = null;
+        try {
+            session = getSession();
+            constellation = getOmObsConst(PROCEDURE3, OBSPROP3, TEMP_UNIT, OFFERING3, FEATURE3,
+                    OmConstants.OBS_TYPE_MEASUREMENT, session);
+        } finally {
+            returnSession(session);
+        }
+        // inserted in reverse order, the values are streamed ordered by time
+        req.setObservation(Lists.newArrayList(createObservation(constellation, TIME3, VAL3),
+                createObservation(constellation, TIME2, VAL2), createObservation(constellation, TIME1, VAL1)));
+        InsertObservationResponse resp = insertObservationDAO.insertObservation(req);
+        this.serviceEventBus.submit(new ObservationInsertion(req, resp));
+        assertInsertionAftermathBeforeAndAfterCacheReload();
+    }
+
+    private OmObservation createObservation(OmObservationConstellation constellation, DateTime time, Double value) {
+        OmObservation obs = new OmObservation();
+        obs.setObservationConstellation(constellation);
+        obs.setResultTime(new TimeInstant(time));
+        SingleObservationValue<BigDecimal> obsVal = new SingleObservationValue<BigDecimal>();
+        obsVal.setPhenomenonTime(new TimeInstant(time));
+        obsVal.setValue(new QuantityValue(value, TEMP_UNIT));
+        obs.setValue(obsVal);
+        return obs;
+    }
+
+    private StreamingValue<?> getStreamingValue(DateTime time) throws OwsExceptionReport {
+        GetObservationRequest req =
+                createDefaultGetObservationRequest(OFFERING3, PROCEDURE3, OBSPROP3, time, FEATURE3);
+        if (time == null) {
+            req.setTemporalFilters(new ArrayList<>());
+        }
+        OmObservation observation = getObsDAO.queryObservationData(req, getGetObservationRequest(req))
+                .getObservationCollection()
+                .next();
+        assertThat(observation.getValue(), instanceOf(StreamingValue.class));
+        return (StreamingValue<?>) observation.getValue();
+    }
+
+    private void checkTimeValuePair(TimeValuePair value, DateTime time, Double obsVal) {
+        assertThat(value, notNullValue());
+        assertThat(value.getTime(), instanceOf(TimeInstant.class));
+        assertThat(((TimeInstant) value.getTime()).getValue().toDate(), is(time.toDate()));
+        assertThat(value.getValue(), instanceOf(QuantityValue.class));
+        QuantityValue quantityValue = (QuantityValue) value.getValue();
+        assertThat(quantityValue.getValue().doubleValue(), is(obsVal));
+        assertThat(quantityValue.getUnit(), is(TEMP_UNIT));
+    }
+
+}
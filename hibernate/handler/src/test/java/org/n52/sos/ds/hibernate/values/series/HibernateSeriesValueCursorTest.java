@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2012-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sos.ds.hibernate.values.series;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import org.hibernate.Session;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.iceland.convert.ConverterException;
+import org.n52.series.db.beans.DataEntity;
+import org.n52.series.db.beans.DatasetEntity;
+import org.n52.shetland.ogc.gml.time.TimeInstant;
+import org.n52.shetland.ogc.om.ObservationStream;
+import org.n52.shetland.ogc.om.OmConstants;
+import org.n52.shetland.ogc.om.OmObservation;
+import org.n52.shetland.ogc.om.OmObservationConstellation;
+import org.n52.shetland.ogc.om.SingleObservationValue;
+import org.n52.shetland.ogc.om.StreamingValue;
+import org.n52.shetland.ogc.om.values.QuantityValue;
+import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
+import org.n52.shetland.ogc.sos.Sos2Constants;
+import org.n52.shetland.ogc.sos.SosConstants;
+import org.n52.shetland.ogc.sos.request.GetObservationRequest;
+import org.n52.shetland.ogc.sos.request.InsertObservationRequest;
+import org.n52.shetland.ogc.sos.response.InsertObservationResponse;
+import org.n52.shetland.util.CollectionHelper;
+import org.n52.sos.ds.hibernate.AbstractObservationInsertDAOTest;
+import org.n52.sos.ds.hibernate.util.HibernateMetadataCache;
+import org.n52.sos.event.events.ObservationInsertion;
+import org.n52.svalbard.encode.exception.EncodingException;
+
+import com.google.common.collect.Lists;
+
+public class HibernateSeriesValueCursorTest extends AbstractObservationInsertDAOTest {
+
+    private static final int CHUNK_SIZE = 2;
+
+    /**
+     * Procedure identifiers by dataset id
+     */
+    private final Map<Long, String> datasets = new TreeMap<>();
+
+    private long first;
+
+    private long second;
+
+    @Before
+    public void setUp() throws OwsExceptionReport, ConverterException, EncodingException {
+        super.setUp();
+        Session session = null;
+        try {
+            session = getSession();
+            HibernateMetadataCache.init(session);
+            insertSensor(PROCEDURE2, OFFERING2, OBSPROP2, null, OmConstants.OBS_TYPE_MEASUREMENT);
+            insertSensor(PROCEDURE3, OFFERING3, OBSPROP3, null, OmConstants.OBS_TYPE_MEASUREMENT);
+        } finally {
+            returnSession(session);
+        }
+        insertObservations(PROCEDURE2, OFFERING2, OBSPROP2);
+        insertObservations(PROCEDURE3, OFFERING3, OBSPROP3);
+        try {
+            session = getSession();
+            @SuppressWarnings("unchecked")
+            List<DatasetEntity> list = session.createCriteria(DatasetEntity.class).list();
+            for (DatasetEntity dataset : list) {
+                datasets.put(dataset.getId(), dataset.getProcedure().getIdentifier());
+            }
+        } finally {
+            returnSession(session);
+        }
+        assertThat(datasets.size(), is(2));
+        first = Collections.min(datasets.keySet());
+        second = Collections.max(datasets.keySet());
+    }
+
+    @Test
+    public void shouldHandOutTheValuesOfEachSeries() throws OwsExceptionReport {
+        HibernateSeriesValueCursor cursor = createCursor(CHUNK_SIZE);
+        List<DataEntity<?>> firstValues = readAll(cursor, first);
+        checkValues(firstValues, first);
+        cursor.finished(first);
+        assertThat(cursor.isClosed(), is(false));
+        List<DataEntity<?>> secondValues = readAll(cursor, second);
+        checkValues(secondValues, second);
+        cursor.finished(second);
+        assertThat(cursor.isClosed(), is(true));
+    }
+
+    @Test
+    public void shouldSkipSeriesWhichAreRequestedTooLate() throws OwsExceptionReport {
+        HibernateSeriesValueCursor cursor = createCursor(CHUNK_SIZE);
+        checkValues(readAll(cursor, second), second);
+        // the values of the first series were dropped to read the second
+        assertThat(cursor.next(first), nullValue());
+        cursor.finished(second);
+        assertThat(cursor.isClosed(), is(true));
+        assertThat(cursor.next(first), nullValue());
+    }
+
+    @Test
+    public void shouldReturnTheSessionWhenClosed() throws OwsExceptionReport {
+        HibernateSeriesValueCursor cursor = createCursor(CHUNK_SIZE);
+        assertThat(cursor.next(first).isEmpty(), is(false));
+        cursor.close();
+        assertThat(cursor.isClosed(), is(true));
+        // the not yet handed out values have to be queried separately
+        assertThat(cursor.next(second), nullValue());
+    }
+
+    @Test
+    public void shouldHandOutValuesToConcurrentConsumers()
+            throws OwsExceptionReport, InterruptedException, ExecutionException {
+        for (int i = 0; i < 10; i++) {
+            HibernateSeriesValueCursor cursor = createCursor(1);
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                List<Future<List<DataEntity<?>>>> futures =
+                        executor.invokeAll(Lists.newArrayList(consume(cursor, first), consume(cursor, second)));
+                List<DataEntity<?>> firstValues = futures.get(0).get();
+                List<DataEntity<?>> secondValues = futures.get(1).get();
+                // the first series may be skipped if the second is read first
+                if (firstValues != null) {
+                    checkValues(firstValues, first);
+                }
+                checkValues(secondValues, second);
+                assertThat(cursor.isClosed(), is(true));
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    public void shouldStreamTheSeriesOrderedById() throws OwsExceptionReport {
+        getObsDAO.setChunkSize(CHUNK_SIZE);
+        getObsDAO.setMultiSeriesStreaming(true);
+        GetObservationRequest req = new GetObservationRequest();
+        req.setOfferings(Lists.newArrayList(OFFERING3, OFFERING2));
+        req.setProcedures(Lists.newArrayList(PROCEDURE3, PROCEDURE2));
+        req.setObservedProperties(Lists.newArrayList(OBSPROP3, OBSPROP2));
+        req.setFeatureIdentifiers(CollectionHelper.list(FEATURE3));
+        req.setResponseFormat(OmConstants.NS_OM_2);
+        req.setService(SosConstants.SOS);
+        req.setVersion(Sos2Constants.SERVICEVERSION);
+        ObservationStream stream =
+                getObsDAO.queryObservationData(req, getGetObservationRequest(req)).getObservationCollection();
+        List<String> procedures = new ArrayList<>();
+        while (stream.hasNext()) {
+            OmObservation observation = stream.next();
+            procedures.add(observation.getObservationConstellation().getProcedureIdentifier());
+            assertThat(observation.getValue(), instanceOf(HibernateMultiSeriesStreamingValue.class));
+            StreamingValue<?> value = (StreamingValue<?>) observation.getValue();
+            List<Double> values = new ArrayList<>();
+            while (value.hasNext()) {
+                values.add(((QuantityValue) value.nextValue().getValue()).getValue().doubleValue());
+            }
+            assertThat(values, contains(VAL1, VAL2, VAL3));
+        }
+        assertThat(procedures, contains(datasets.get(first), datasets.get(second)));
+    }
+
+    private Callable<List<DataEntity<?>>> consume(HibernateSeriesValueCursor cursor, long series) {
+        return () -> {
+            List<DataEntity<?>> values = readAll(cursor, series);
+            cursor.finished(series);
+            return values;
+        };
+    }
+
+    private List<DataEntity<?>> readAll(HibernateSeriesValueCursor cursor, long series) throws OwsExceptionReport {
+        List<DataEntity<?>> values = new ArrayList<>();
+        List<DataEntity<?>> next = cursor.next(series);
+        while (next != null && !next.isEmpty()) {
+            values.addAll(next);
+            next = cursor.next(series);
+        }
+        // the series was skipped and has to be queried separately
+        return next == null ? null : values;
+    }
+
+    private void checkValues(Collection<DataEntity<?>> values, long series) {
+        assertThat(values.stream().map(v -> v.getDataset().getId()).collect(Collectors.toList()),
+                everyItem(is(series)));
+        assertThat(values.stream().map(v -> v.getSamplingTimeStart().getTime()).collect(Collectors.toList()),
+                contains(TIME1.getMillis(), TIME2.getMillis(), TIME3.getMillis()));
+    }
+
+    private HibernateSeriesValueCursor createCursor(int chunkSize) {
+        GetObservationRequest req = new GetObservationRequest();
+        req.setResponseFormat(OmConstants.NS_OM_2);
+        req.setService(SosConstants.SOS);
+        req.setVersion(Sos2Constants.SERVICEVERSION);
+        Set<Long> series = datasets.keySet();
+        return new HibernateSeriesValueCursor(this, daoFactory.getValueDAO(), req, series, chunkSize);
+    }
+
+    private void insertObservations(String procedure, String offering, String obsProp) throws OwsExceptionReport {
+        InsertObservationRequest req = new InsertObservationRequest();
+        req.setAssignedSensorId(procedure);
+        req.setOfferings(Lists.newArrayList(offering));
+        OmObservationConstellation constellation;
+        Session session = null;
+        try {
+            session = getSession();
+            constellation = getOmObsConst(procedure, obsProp, TEMP_UNIT, offering, FEATURE3,
+                    OmConstants.OBS_TYPE_MEASUREMENT, session);
+        } finally {
+            returnSession(session);
+        }
+        req.setObservation(Lists.newArrayList(createObservation(constellation, TIME3, VAL3),
+                createObservation(constellation, TIME2, VAL2), createObservation(constellation, TIME1, VAL1)));
+        InsertObservationResponse resp = insertObservationDAO.insertObservation(req);
+        this.serviceEventBus.submit(new ObservationInsertion(req, resp));
+    }
+
+    private OmObservation createObservation(OmObservationConstellation constellation, DateTime time, Double value) {
+        OmObservation obs = new OmObservation();
+        obs.setObservationConstellation(constellation);
+        obs.setResultTime(new TimeInstant(time));
+        SingleObservationValue<BigDecimal> obsVal = new SingleObservationValue<BigDecimal>();
+        obsVal.setPhenomenonTime(new TimeInstant(time));
+        obsVal.setValue(new QuantityValue(value, TEMP_UNIT));
+        obs.setValue(obsVal);
+        return obs;
+    }
+
+}
@@ -33,6 +33,7 @@ import java.util.Optional;
 import javax.inject.Inject;
 
 import org.n52.iceland.exception.ows.concrete.NoImplementationFoundException;
+import org.n52.janmayen.Json;
 import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
 import org.n52.sos.ds.AbstractDeleteDeletedDataHandler;
 import org.n52.sos.ds.DeleteDeletedObservationDAO;
@@ -77,4 +78,10 @@ public class AdminDeleteDeletedDataController extends AbstractAdminController {
     public void delete() throws NoImplementationFoundException, OwsExceptionReport {
         getHandler().deleteDeletedData();
     }
+
+    @ResponseBody
+    @RequestMapping(method = RequestMethod.GET, produces = "application/json; charset=UTF-8")
+    public String progress() throws NoImplementationFoundException {
+        return Json.print(Json.toJSON(getHandler().getProgress()));
+    }
 }
@@ -30,13 +30,16 @@ package org.n52.sos.web.admin;
 
 import java.util.Collection;
 import java.util.Map;
+import java.util.Optional;
 import java.util.TreeMap;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.n52.iceland.cache.ContentCacheController;
+import org.n52.sos.cache.CacheUpdateBacklog;
 import org.n52.sos.cache.SosContentCache;
+import org.n52.sos.ds.CacheFeederHandler;
 import org.n52.sos.util.GeometryHandler;
 import org.springframework.stereotype.Component;
 
@@ -66,10 +69,17 @@ public final class CacheSummaryHandler {
     public static final String NUM_RESULT_TEMPLATES = "num_result_templates";
     public static final String DEFAULT_EPSG = "default_epsg";
     public static final String NUM_EPSGS = "num_epsgs";
+    public static final String UPDATE_STATISTICS_PREFIX = "update_";
+    public static final String ASYNC_UPDATE_PREFIX = "async_update_";
 
     @Inject
     private GeometryHandler geometryHandler;
 
+    @Inject
+    private Optional<CacheFeederHandler> cacheFeederHandler;
+
+    @Inject
+    private Optional<CacheUpdateBacklog> cacheUpdateBacklog;
 
     private CacheSummaryHandler() {
 
@@ -94,6 +104,14 @@ public final class CacheSummaryHandler {
         values.put(NUM_RESULT_TEMPLATES, nullSafeToString(cache.getResultTemplates()));
         values.put(DEFAULT_EPSG, Integer.toString(cache.getDefaultEPSGCode()));
         values.put(NUM_EPSGS, nullSafeToString(geometryHandler.getSupportedCRS()));
+        if (cacheFeederHandler.isPresent()) {
+            cacheFeederHandler.get().getCacheUpdateStatistics()
+                    .forEach((phase, value) -> values.put(UPDATE_STATISTICS_PREFIX + phase, value));
+        }
+        if (cacheUpdateBacklog.isPresent()) {
+            cacheUpdateBacklog.get().getBacklogStatistics()
+                    .forEach((name, value) -> values.put(ASYNC_UPDATE_PREFIX + name, value));
+        }
         return values;
     }
 
@@ -53,6 +53,7 @@
         <button data-target="#confirmDialogClear" data-toggle="modal" title="Clear Datasource" class="btn btn-danger">Clear Datasource</button>
         <a href="<c:url value="/admin/reset" />" title="Reset Datasource Configuration" class="btn btn-warning">Reset Datasource Configuration</a>
     </div>
+    <p id="deleteDeletedDataProgress" class="hide"></p>
 </div>
 
 <div>
@@ -201,6 +202,34 @@
             $("button[data-target=#confirmDialogAddTestdata]").attr("disabled", true);
         }*/
 
+        function updateDeleteDeletedDataProgress() {
+            $.ajax({
+                "url": "<c:url value="/admin/datasource/deleteDeletedData" />",
+                "type": "GET",
+                "dataType": "json",
+                "global": false
+            }).done(function(progress) {
+                var $progress = $("#deleteDeletedDataProgress");
+                if (!progress.state || progress.state === "idle") {
+                    $progress.addClass("hide");
+                    return;
+                }
+                var text = "Deletion of deleted data " + progress.state + ": "
+                    + progress.deletedDatasets + " of " + progress.datasets + " datasets and "
+                    + progress.deletedObservations + " observations deleted";
+                if (progress.observationsPerSecond) {
+                    text += " (" + progress.observationsPerSecond + " observations/s)";
+                }
+                if (progress.error) {
+                    text += ": " + progress.error;
+                }
+                $progress.text(text).removeClass("hide");
+                if (progress.state === "running") {
+                    setTimeout(updateDeleteDeletedDataProgress, 2000);
+                }
+            });
+        }
+
         if (supportsDeleteDeleted) {
             $("#delete").click(function() {
                 $deleteDeletedDialog.find("button").attr("disabled", true);
@@ -217,11 +246,13 @@
                     $deleteDeletedDialog.find("button").removeAttr("disabled");
                     $deleteDeletedDialog.modal("hide");
                 }).done(function() {
-                    showSuccess("The deleted data were deleted.");
+                    showSuccess("The deletion of the deleted data was started.");
                     $deleteDeletedDialog.find("button").removeAttr("disabled");
                     $deleteDeletedDialog.modal("hide");
+                    updateDeleteDeletedDataProgress();
                 });
             });
+            updateDeleteDeletedDataProgress();
         } else {
             $("button[data-target=#confirmDialogDelete]").attr("disabled", true);
         }